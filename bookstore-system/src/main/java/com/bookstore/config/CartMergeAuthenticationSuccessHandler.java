@@ -0,0 +1,42 @@
+package com.bookstore.config;
+
+import com.bookstore.service.CartService;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.authentication.SimpleUrlAuthenticationSuccessHandler;
+
+import java.io.IOException;
+
+// Sau khi đăng nhập: gộp giỏ khách của session vào giỏ user và chuyển session sang dùng giỏ user.
+// Lỗi khi gộp không chặn đăng nhập (giỏ khách vẫn nằm trong DB, bị dọn khi hết hạn)
+@Slf4j
+public class CartMergeAuthenticationSuccessHandler extends SimpleUrlAuthenticationSuccessHandler {
+
+    private final ObjectProvider<CartService> cartService;
+
+    public CartMergeAuthenticationSuccessHandler(ObjectProvider<CartService> cartService, String defaultTargetUrl) {
+        super(defaultTargetUrl);
+        setAlwaysUseDefaultTargetUrl(true);
+        this.cartService = cartService;
+    }
+
+    @Override
+    public void onAuthenticationSuccess(HttpServletRequest request, HttpServletResponse response,
+                                        Authentication authentication) throws IOException, ServletException {
+        HttpSession session = request.getSession();
+        String guestCartKey = session.getAttribute(CartService.CART_KEY_ATTRIBUTE) instanceof String key ? key : null;
+        try {
+            session.setAttribute(CartService.CART_KEY_ATTRIBUTE,
+                    cartService.getObject().mergeOnLogin(guestCartKey, authentication.getName()));
+        } catch (RuntimeException e) {
+            log.error("Cart merge on login failed for {}: {}", authentication.getName(), e.getMessage());
+            session.removeAttribute(CartService.CART_KEY_ATTRIBUTE);
+        }
+        super.onAuthenticationSuccess(request, response, authentication);
+    }
+}
@@ -1,5 +1,7 @@
 package com.bookstore.config;
 
+import com.bookstore.service.CartService;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -18,19 +20,20 @@ public class SecurityConfig {
     }
 
     @Bean
-    public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain securityFilterChain(HttpSecurity http, ObjectProvider<CartService> cartService) throws Exception {
         http
                 .authorizeHttpRequests(requests -> requests
                         .requestMatchers("/admin/**").hasRole("ADMIN")
-                        .requestMatchers("/order/**", "/cart/**", "/user/**").authenticated()
-                        .requestMatchers("/", "/books/**", "/categories/**", "/login", "/register",
+                        .requestMatchers("/order/**", "/user/**").authenticated()
+                        // Khách chưa đăng nhập có giỏ riêng theo session, được gộp vào giỏ user khi đăng nhập
+                        .requestMatchers("/", "/books/**", "/api/books/**", "/categories/**", "/cart/**", "/login", "/register",
                                 "/css/**", "/js/**", "/images/**", "/uploads/**").permitAll()
                         .anyRequest().authenticated()
                 )
                 .formLogin(form -> form
                         .loginPage("/login")
                         .loginProcessingUrl("/login")
-                        .defaultSuccessUrl("/", true)
+                        .successHandler(new CartMergeAuthenticationSuccessHandler(cartService, "/"))
                         .failureUrl("/login?error=true")
                         .permitAll()
                 )
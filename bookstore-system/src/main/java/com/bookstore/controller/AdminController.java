@@ -1,16 +1,97 @@
 package com.bookstore.controller;
 
+import com.bookstore.dto.DashboardMetricsDTO;
+import com.bookstore.dto.ExportProgressDTO;
+import com.bookstore.dto.ImportReportDTO;
+import com.bookstore.service.BookImportService;
+import com.bookstore.service.DashboardMetricsService;
+import com.bookstore.service.ExportService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
 
 @Controller
 @RequestMapping("/admin")
+@RequiredArgsConstructor
 public class AdminController {
 
-    @GetMapping
+    private final DashboardMetricsService dashboardMetricsService;
+    private final ExportService exportService;
+    private final BookImportService bookImportService;
+
+    @GetMapping({"", "/dashboard"})
     public String dashboard(Model model) {
+        DashboardMetricsDTO metrics = dashboardMetricsService.getSnapshot();
+        model.addAttribute("metrics", metrics);
+        model.addAttribute("totalBooks", metrics.getTotalBooks());
+        model.addAttribute("totalOrders", metrics.getTotalOrders());
+        model.addAttribute("totalUsers", metrics.getTotalUsers());
+        model.addAttribute("totalRevenue", metrics.getTotalRevenue());
         return "admin/dashboard";
     }
-}
\ No newline at end of file
+
+    // Cùng snapshot dưới dạng JSON để trang dashboard tự polling
+    @GetMapping("/api/metrics")
+    @ResponseBody
+    public DashboardMetricsDTO metrics() {
+        return dashboardMetricsService.getSnapshot();
+    }
+
+    // Export CSV dạng streaming: ghi trực tiếp vào response, không giữ dữ liệu trong bộ nhớ
+    @GetMapping("/export/orders")
+    public ResponseEntity<StreamingResponseBody> exportOrders(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        LocalDate start = from != null ? from : LocalDate.of(1970, 1, 1);
+        LocalDate end = to != null ? to : LocalDate.now();
+        StreamingResponseBody body = out ->
+                exportService.exportOrders(out, start.atStartOfDay(), end.plusDays(1).atStartOfDay());
+        return csvResponse("orders-" + start + "-" + end + ".csv", body);
+    }
+
+    @GetMapping("/export/books")
+    public ResponseEntity<StreamingResponseBody> exportBooks() {
+        StreamingResponseBody body = exportService::exportBooks;
+        return csvResponse("books-" + LocalDate.now() + ".csv", body);
+    }
+
+    @GetMapping("/export/progress")
+    @ResponseBody
+    public List<ExportProgressDTO> exportProgress() {
+        return exportService.getRunningExports();
+    }
+
+    // Import sách từ file CSV của nhà cung cấp, trả về báo cáo (số dòng, trùng, lỗi, books/s)
+    @PostMapping("/import/books")
+    @ResponseBody
+    public ImportReportDTO importBooks(@RequestParam("file") MultipartFile file) throws IOException {
+        try (Reader reader = new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8)) {
+            return bookImportService.importBooks(reader);
+        }
+    }
+
+    private ResponseEntity<StreamingResponseBody> csvResponse(String filename, StreamingResponseBody body) {
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .contentType(new MediaType("text", "csv", StandardCharsets.UTF_8))
+                .body(body);
+    }
+}
@@ -0,0 +1,25 @@
+package com.bookstore.controller;
+
+import com.bookstore.dto.SuggestionDTO;
+import com.bookstore.service.BookSuggester;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/books")
+@RequiredArgsConstructor
+public class BookApiController {
+
+    private final BookSuggester bookSuggester;
+
+    @GetMapping("/suggest")
+    public List<SuggestionDTO> suggest(@RequestParam("q") String query,
+                                       @RequestParam(defaultValue = "8") int limit) {
+        return bookSuggester.suggest(query, limit);
+    }
+}
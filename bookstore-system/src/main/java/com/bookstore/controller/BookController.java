@@ -1,7 +1,12 @@
 package com.bookstore.controller;
 
+import com.bookstore.dto.BookDTO;
+import com.bookstore.dto.BookSearchDTO;
+import com.bookstore.dto.CursorPage;
+import com.bookstore.dto.FacetedSearchResultDTO;
 import com.bookstore.entity.Book;
 import com.bookstore.entity.Category;
+import com.bookstore.repository.BookRepositoryCustom;
 import com.bookstore.service.BookService;
 import com.bookstore.service.CategoryService;
 import lombok.RequiredArgsConstructor;
@@ -14,7 +19,6 @@ import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
-import java.util.List;
 import java.util.Optional;
 
 @Controller
@@ -30,16 +34,24 @@ public class BookController {
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "12") int size,
             @RequestParam(required = false) String sort,
+            @RequestParam(required = false) String cursor,
             Model model) {
 
+        model.addAttribute("categories", categoryService.getActiveCategories());
+        if (cursor != null) {
+            addCursorPage(model, bookService.getBooksPage(BookRepositoryCustom.Listing.ALL, null,
+                    keysetSort(sort), cursor, size));
+            model.addAttribute("sort", sort);
+            return "books/list";
+        }
+
         Pageable pageable = createPageable(page, size, sort);
-        Page<Book> booksPage = bookService.getAllBooks(pageable);
+        Page<BookDTO> booksPage = bookService.getAllBooks(pageable);
 
         model.addAttribute("books", booksPage.getContent());
         model.addAttribute("currentPage", page);
         model.addAttribute("totalPages", booksPage.getTotalPages());
         model.addAttribute("totalItems", booksPage.getTotalElements());
-        model.addAttribute("categories", categoryService.getActiveCategories());
 
         return "books/list";
     }
@@ -52,7 +64,7 @@ public class BookController {
             Model model) {
 
         Pageable pageable = PageRequest.of(page, size);
-        Page<Book> booksPage = bookService.searchBooks(keyword, pageable);
+        Page<BookDTO> booksPage = bookService.searchBooks(keyword, pageable);
 
         model.addAttribute("books", booksPage.getContent());
         model.addAttribute("keyword", keyword);
@@ -63,19 +75,46 @@ public class BookController {
         return "books/search-results";
     }
 
+    @GetMapping("/filter")
+    public String filterBooks(
+            @ModelAttribute("criteria") BookSearchDTO criteria,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "12") int size,
+            Model model) {
+
+        FacetedSearchResultDTO result = bookService.facetedSearch(criteria, PageRequest.of(page, size));
+        Page<BookDTO> booksPage = result.getBooks();
+
+        model.addAttribute("books", booksPage.getContent());
+        model.addAttribute("facets", result);
+        model.addAttribute("currentPage", page);
+        model.addAttribute("totalPages", booksPage.getTotalPages());
+        model.addAttribute("totalItems", booksPage.getTotalElements());
+
+        return "books/search";
+    }
+
     @GetMapping("/category/{categoryId}")
     public String booksByCategory(
             @PathVariable Long categoryId,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "12") int size,
+            @RequestParam(required = false) String cursor,
             Model model) {
 
-        Pageable pageable = PageRequest.of(page, size);
-        Page<Book> booksPage = bookService.getBooksByCategory(categoryId, pageable);
         Optional<Category> category = categoryService.getCategoryById(categoryId);
+        model.addAttribute("category", category.orElse(null));
+        if (cursor != null) {
+            model.addAttribute("categoryId", categoryId);
+            addCursorPage(model, bookService.getBooksPage(BookRepositoryCustom.Listing.CATEGORY, categoryId,
+                    BookRepositoryCustom.KeysetSort.NEWEST, cursor, size));
+            return "books/category";
+        }
+
+        Pageable pageable = PageRequest.of(page, size);
+        Page<BookDTO> booksPage = bookService.getBooksByCategory(categoryId, pageable);
 
         model.addAttribute("books", booksPage.getContent());
-        model.addAttribute("category", category.orElse(null));
         model.addAttribute("currentPage", page);
         model.addAttribute("totalPages", booksPage.getTotalPages());
         model.addAttribute("totalItems", booksPage.getTotalElements());
@@ -91,14 +130,8 @@ public class BookController {
         }
 
         model.addAttribute("book", book.get());
-        // Lấy sách liên quan (cùng danh mục đầu tiên)
-        List<Category> categories = book.get().getCategories();
-        if (!categories.isEmpty()) {
-            model.addAttribute("relatedBooks", bookService.getBooksByCategory(
-                    categories.get(0).getId(), PageRequest.of(0, 4)).getContent());
-        } else {
-            model.addAttribute("relatedBooks", List.of());
-        }
+        // Sách liên quan đọc từ index tính sẵn
+        model.addAttribute("relatedBooks", bookService.getRelatedBooks(book.get()));
 
         return "books/detail";
     }
@@ -107,10 +140,17 @@ public class BookController {
     public String booksOnSale(
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "12") int size,
+            @RequestParam(required = false) String cursor,
             Model model) {
 
+        if (cursor != null) {
+            addCursorPage(model, bookService.getBooksPage(BookRepositoryCustom.Listing.ON_SALE, null,
+                    BookRepositoryCustom.KeysetSort.NEWEST, cursor, size));
+            return "books/sale";
+        }
+
         Pageable pageable = PageRequest.of(page, size);
-        Page<Book> booksPage = bookService.getBooksOnSale(pageable);
+        Page<BookDTO> booksPage = bookService.getBooksOnSale(pageable);
 
         model.addAttribute("books", booksPage.getContent());
         model.addAttribute("currentPage", page);
@@ -124,10 +164,17 @@ public class BookController {
     public String bestSellers(
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "12") int size,
+            @RequestParam(required = false) String cursor,
             Model model) {
 
+        if (cursor != null) {
+            addCursorPage(model, bookService.getBooksPage(BookRepositoryCustom.Listing.BEST_SELLERS, null,
+                    BookRepositoryCustom.KeysetSort.BEST_SELLING, cursor, size));
+            return "books/bestsellers";
+        }
+
         Pageable pageable = PageRequest.of(page, size);
-        Page<Book> booksPage = bookService.getBestSellers(pageable);
+        Page<BookDTO> booksPage = bookService.getBestSellers(pageable);
 
         model.addAttribute("books", booksPage.getContent());
         model.addAttribute("currentPage", page);
@@ -137,6 +184,29 @@ public class BookController {
         return "books/bestsellers";
     }
 
+    // Chế độ cursor (?cursor=): chỉ có link "trang sau", không đếm tổng số trang
+    private void addCursorPage(Model model, CursorPage<BookDTO> cursorPage) {
+        model.addAttribute("books", cursorPage.getContent());
+        model.addAttribute("nextCursor", cursorPage.getNextCursor());
+        model.addAttribute("cursorMode", true);
+    }
+
+    private BookRepositoryCustom.KeysetSort keysetSort(String sort) {
+        if (sort != null) {
+            switch (sort) {
+                case "price-asc":
+                    return BookRepositoryCustom.KeysetSort.PRICE_ASC;
+                case "price-desc":
+                    return BookRepositoryCustom.KeysetSort.PRICE_DESC;
+                case "title":
+                    return BookRepositoryCustom.KeysetSort.TITLE;
+                case "bestselling":
+                    return BookRepositoryCustom.KeysetSort.BEST_SELLING;
+            }
+        }
+        return BookRepositoryCustom.KeysetSort.NEWEST;
+    }
+
     private Pageable createPageable(int page, int size, String sort) {
         Sort sortObj = Sort.by(Sort.Direction.DESC, "createdAt");
 
@@ -154,6 +224,9 @@ public class BookController {
                 case "newest":
                     sortObj = Sort.by(Sort.Direction.DESC, "createdAt");
                     break;
+                case "bestselling":
+                    sortObj = Sort.by(Sort.Direction.DESC, "soldQuantity");
+                    break;
             }
         }
 
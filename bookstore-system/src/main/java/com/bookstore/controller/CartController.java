@@ -4,11 +4,13 @@ import com.bookstore.entity.Book;
 import com.bookstore.entity.Cart;
 import com.bookstore.service.BookService;
 import com.bookstore.service.CartService;
+import jakarta.servlet.http.HttpSession;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 
+import java.security.Principal;
 import java.util.Optional;
 
 @Controller
@@ -20,9 +22,9 @@ public class CartController {
     private final BookService bookService;
 
     @GetMapping
-    public String viewCart(Model model) {
-        // Trong thực tế, lấy cart từ session hoặc user đăng nhập
-        Cart cart = cartService.getCurrentCart();
+    public String viewCart(HttpSession session, Principal principal, Model model) {
+        // Chỉ đọc: giỏ chưa có sách thì không tạo dòng nào trong DB
+        Cart cart = cartService.getOrCreateCart(cartKey(session, principal));
         model.addAttribute("cart", cart);
         model.addAttribute("totalItems", cart.getTotalItems());
         model.addAttribute("totalPrice", cart.getTotalPrice());
@@ -31,34 +33,45 @@ public class CartController {
     }
 
     @PostMapping("/add")
-    public String addToCart(@RequestParam Long bookId, @RequestParam Integer quantity) {
+    public String addToCart(@RequestParam Long bookId, @RequestParam Integer quantity,
+                            HttpSession session, Principal principal) {
         Optional<Book> book = bookService.getBookById(bookId);
         if (book.isPresent()) {
-            // Trong thực tế, sessionId sẽ được lấy từ session của user
-            String sessionId = "current-session-id"; // Đây là ví dụ, cần thay thế
-            cartService.addToCart(sessionId, bookId, quantity);
+            cartService.addToCart(cartKey(session, principal), bookId, quantity);
         }
         return "redirect:/cart";
     }
 
     @PostMapping("/update")
-    public String updateCartItem(@RequestParam Long bookId, @RequestParam Integer quantity) {
-        String sessionId = "current-session-id";
-        cartService.updateCartItem(sessionId, bookId, quantity);
+    public String updateCartItem(@RequestParam Long bookId, @RequestParam Integer quantity,
+                                 HttpSession session, Principal principal) {
+        cartService.updateCartItem(cartKey(session, principal), bookId, quantity);
         return "redirect:/cart";
     }
 
     @PostMapping("/remove")
-    public String removeFromCart(@RequestParam Long bookId) {
-        String sessionId = "current-session-id";
-        cartService.removeFromCart(sessionId, bookId);
+    public String removeFromCart(@RequestParam Long bookId, HttpSession session, Principal principal) {
+        cartService.removeFromCart(cartKey(session, principal), bookId);
         return "redirect:/cart";
     }
 
     @PostMapping("/clear")
-    public String clearCart() {
-        String sessionId = "current-session-id";
-        cartService.clearCart(sessionId);
+    public String clearCart(HttpSession session, Principal principal) {
+        cartService.clearCart(cartKey(session, principal));
         return "redirect:/cart";
     }
-}
\ No newline at end of file
+
+    // Khóa giỏ lưu trong session (đặt lúc đăng nhập); chưa có thì dùng giỏ của user đăng nhập
+    // hoặc tạo khóa giỏ khách mới
+    private String cartKey(HttpSession session, Principal principal) {
+        if (session.getAttribute(CartService.CART_KEY_ATTRIBUTE) instanceof String key) {
+            return key;
+        }
+        String key = principal != null ? cartService.userCartKey(principal.getName()) : null;
+        if (key == null) {
+            key = cartService.newGuestCartKey();
+        }
+        session.setAttribute(CartService.CART_KEY_ATTRIBUTE, key);
+        return key;
+    }
+}
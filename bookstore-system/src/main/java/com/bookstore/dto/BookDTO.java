@@ -1,10 +1,58 @@
 package com.bookstore.dto;
 
+import com.bookstore.entity.Book;
+import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+
+// Dữ liệu thẻ sách cho trang danh sách/tìm kiếm: không có description, không phải entity được quản lý
 @Data
+@NoArgsConstructor
+@AllArgsConstructor
 public class BookDTO {
     private Long id;
     private String title;
-    // Other fields
-}
\ No newline at end of file
+    private String author;
+    private BigDecimal price;
+    private BigDecimal discountPrice;
+    private Integer stockQuantity;
+    private Integer soldQuantity;
+    private Boolean available;
+    private String coverImage;
+    private Double averageRating;
+    private Integer reviewCount;
+    private LocalDateTime createdAt;
+
+    public static BookDTO from(Book book) {
+        return new BookDTO(book.getId(), book.getTitle(), book.getAuthor(), book.getPrice(),
+                book.getDiscountPrice(), book.getStockQuantity(), book.getSoldQuantity(), book.getAvailable(),
+                book.getCoverImage(), book.getAverageRating(), book.getReviewCount(), book.getCreatedAt());
+    }
+
+    // Cùng logic với Book để template dùng chung cho cả hai
+    public BigDecimal getCurrentPrice() {
+        return discountPrice != null ? discountPrice : price;
+    }
+
+    public boolean isOnSale() {
+        return discountPrice != null && price != null && discountPrice.compareTo(price) < 0;
+    }
+
+    public BigDecimal getDiscountPercentage() {
+        if (isOnSale() && price.compareTo(BigDecimal.ZERO) > 0) {
+            BigDecimal discountAmount = price.subtract(discountPrice);
+            return discountAmount.divide(price, 4, RoundingMode.HALF_UP)
+                    .multiply(BigDecimal.valueOf(100))
+                    .setScale(2, RoundingMode.HALF_UP);
+        }
+        return BigDecimal.ZERO;
+    }
+
+    public boolean isInStock() {
+        return Boolean.TRUE.equals(available) && stockQuantity != null && stockQuantity > 0;
+    }
+}
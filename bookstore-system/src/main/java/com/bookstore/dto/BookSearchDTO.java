@@ -11,6 +11,7 @@ public class BookSearchDTO {
     private BigDecimal minPrice;
     private BigDecimal maxPrice;
     private String author;
+    private String language;
     private String sortBy;
     private String sortDirection;
     private Boolean onSaleOnly;
@@ -0,0 +1,18 @@
+package com.bookstore.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Một trang kết quả phân trang theo cursor; không kèm tổng số bản ghi
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPage<T> {
+    private List<T> content = new ArrayList<>();
+    private String nextCursor;
+    private boolean hasNext;
+}
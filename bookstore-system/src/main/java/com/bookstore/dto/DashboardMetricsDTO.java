@@ -0,0 +1,24 @@
+package com.bookstore.dto;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+// Snapshot bất biến: được thay nguyên cả object sau mỗi lần làm mới
+@Value
+@Builder
+public class DashboardMetricsDTO {
+    long totalBooks;
+    long availableBooks;
+    long totalOrders;
+    Map<String, Long> ordersByStatus;
+    long totalUsers;
+    long activeCarts;
+    BigDecimal totalRevenue;
+    BigDecimal todayRevenue;
+    LocalDateTime refreshedAt;
+    long refreshMillis;
+}
@@ -0,0 +1,18 @@
+package com.bookstore.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExportProgressDTO {
+    private String id;
+    private String type;
+    private LocalDateTime startedAt;
+    private long rowsWritten;
+    private long rowsPerSecond;
+}
@@ -0,0 +1,22 @@
+package com.bookstore.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Page;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FacetedSearchResultDTO {
+    private Page<BookDTO> books;
+    private List<FacetCountDTO> categories = new ArrayList<>();
+    private List<FacetCountDTO> priceRanges = new ArrayList<>();
+    private List<FacetCountDTO> authors = new ArrayList<>();
+    private List<FacetCountDTO> languages = new ArrayList<>();
+    private long inStockCount;
+    private long onSaleCount;
+}
@@ -0,0 +1,24 @@
+package com.bookstore.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+@Data
+@NoArgsConstructor
+public class ImportReportDTO {
+    private long rowsRead;
+    private long imported;
+    private long duplicates;
+    private long invalid;
+    private long failed;
+    // Slug danh mục không tồn tại (sách vẫn được import, bỏ qua danh mục đó)
+    private Set<String> unknownCategories = new LinkedHashSet<>();
+    private List<String> errors = new ArrayList<>();
+    private long elapsedMillis;
+    private long booksPerSecond;
+}
@@ -0,0 +1,28 @@
+package com.bookstore.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RatingStatsDTO {
+    private Long bookId;
+    private long ratingSum;
+    private long ratingCount;
+    // starCounts[i] = số review i+1 sao
+    private long[] starCounts;
+
+    public static RatingStatsDTO empty(Long bookId) {
+        return new RatingStatsDTO(bookId, 0, 0, new long[5]);
+    }
+
+    public double getAverageRating() {
+        return ratingCount == 0 ? 0.0 : (double) ratingSum / ratingCount;
+    }
+
+    public long getCount(int rating) {
+        return rating >= 1 && rating <= 5 ? starCounts[rating - 1] : 0;
+    }
+}
@@ -0,0 +1,19 @@
+package com.bookstore.dto;
+
+import com.bookstore.entity.Order;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RevenueSummaryDTO {
+    private String paymentMethod;
+    private Order.PaymentStatus paymentStatus;
+    private Order.OrderStatus orderStatus;
+    private long orderCount;
+    private BigDecimal totalAmount;
+}
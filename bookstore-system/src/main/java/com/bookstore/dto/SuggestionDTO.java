@@ -0,0 +1,15 @@
+package com.bookstore.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SuggestionDTO {
+    private String text;
+    private String type;
+    // ID sách/danh mục tương ứng (null với gợi ý tác giả)
+    private Long id;
+}
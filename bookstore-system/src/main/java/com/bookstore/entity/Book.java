@@ -2,6 +2,9 @@ package com.bookstore.entity;
 
 import lombok.*;
 import jakarta.persistence.*;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.DynamicUpdate;
+
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDateTime;
@@ -9,16 +12,30 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "books")
+// Chỉ ghi các cột thực sự thay đổi: lưu Book (sửa thông tin, bật/tắt, gán category) không ghi đè
+// stock_quantity/sold_quantity vốn được cập nhật bằng các câu UPDATE tương đối
+@DynamicUpdate
+// Fetch plan cho trang chi tiết: nạp categories cùng câu SELECT sách
+@NamedEntityGraph(name = Book.GRAPH_DETAIL, attributeNodes = @NamedAttributeNode("categories"))
+@Table(name = "books", indexes = {
+        // Phục vụ phân trang keyset theo (cột sắp xếp, id)
+        @Index(name = "idx_books_created_at_id", columnList = "created_at, id"),
+        @Index(name = "idx_books_price_id", columnList = "price, id"),
+        @Index(name = "idx_books_title_id", columnList = "title, id"),
+        @Index(name = "idx_books_sold_quantity_id", columnList = "sold_quantity, id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-@Builder
+@Builder(toBuilder = true)
 @EqualsAndHashCode(exclude = {"categories", "images"})
 @ToString(exclude = {"categories", "images"})
 public class Book {
+    public static final String GRAPH_DETAIL = "Book.detail";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "books_seq")
+    @SequenceGenerator(name = "books_seq", sequenceName = "books_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false, length = 255)
@@ -44,6 +61,8 @@ public class Book {
     private Integer stockQuantity = 0;
 
     // THÊM TRƯỜNG MỚI: soldQuantity để khắc phục lỗi findBestSellers
+    // NOT NULL vì là cột sắp xếp của phân trang keyset (xem db/sqlserver/books-keyset-not-null.sql)
+    @Column(nullable = false)
     @Builder.Default
     private Integer soldQuantity = 0;
 
@@ -61,13 +80,16 @@ public class Book {
     @Builder.Default
     private String coverImage = "default-book.jpg";
 
+    // Trang danh sách (open-session-in-view) nạp collection theo lô thay vì từng sách một
     @ElementCollection(fetch = FetchType.LAZY)
+    @BatchSize(size = 50)
     @CollectionTable(name = "book_images", joinColumns = @JoinColumn(name = "book_id"))
     @Column(name = "image_url")
     @Builder.Default
     private List<String> images = new ArrayList<>();
 
     @ManyToMany(fetch = FetchType.LAZY, cascade = {CascadeType.PERSIST, CascadeType.MERGE})
+    @BatchSize(size = 50)
     @JoinTable(
             name = "book_categories",
             joinColumns = @JoinColumn(name = "book_id"),
@@ -86,6 +108,7 @@ public class Book {
     @Builder.Default
     private Boolean available = true;
 
+    @Column(nullable = false)
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 
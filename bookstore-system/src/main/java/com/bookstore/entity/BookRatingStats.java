@@ -0,0 +1,42 @@
+package com.bookstore.entity;
+
+import lombok.*;
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+// Tổng hợp đánh giá của một sách (tổng điểm, số lượt, số lượt theo từng mức sao).
+// ReviewService cộng/trừ trực tiếp bằng SQL khi thêm/xóa review; BookRatingReconciler sửa sai lệch định kỳ.
+@Entity
+@Table(name = "book_rating_stats")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BookRatingStats {
+    @Id
+    @Column(name = "book_id")
+    private Long bookId;
+
+    @Column(nullable = false)
+    private Long ratingSum;
+
+    @Column(nullable = false)
+    private Long ratingCount;
+
+    @Column(nullable = false)
+    private Long star1;
+
+    @Column(nullable = false)
+    private Long star2;
+
+    @Column(nullable = false)
+    private Long star3;
+
+    @Column(nullable = false)
+    private Long star4;
+
+    @Column(nullable = false)
+    private Long star5;
+
+    private LocalDateTime updatedAt;
+}
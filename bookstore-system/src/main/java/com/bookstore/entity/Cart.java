@@ -5,10 +5,12 @@ import jakarta.persistence.*;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Entity
-@Table(name = "carts")
+@Table(name = "carts", indexes = @Index(name = "idx_carts_updated_at", columnList = "updated_at"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -16,7 +18,8 @@ import java.util.List;
 @ToString(exclude = {"items"}) // QUAN TRỌNG: Loại trừ items khỏi toString
 public class Cart {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "carts_seq")
+    @SequenceGenerator(name = "carts_seq", sequenceName = "carts_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false, unique = true, length = 100)
@@ -37,6 +40,13 @@ public class Cart {
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 
+    // Chỉ mục theo book ID, dựng lại từ items khi cần (không lưu DB); tổng được cập nhật dần theo từng thay đổi
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    private Map<Long, CartItem> itemsByBook;
+
     @PrePersist
     protected void onCreate() {
         createdAt = LocalDateTime.now();
@@ -50,20 +60,28 @@ public class Cart {
         calculateTotals();
     }
 
-    public void calculateTotals() {
-        this.totalItems = items.stream()
-                .mapToInt(CartItem::getQuantity)
-                .sum();
+    public void setItems(List<CartItem> items) {
+        this.items = items;
+        this.itemsByBook = null;
+        calculateTotals();
+    }
 
-        this.totalPrice = items.stream()
-                .map(CartItem::getSubtotal)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    // Tính lại toàn bộ trong một lượt (dùng khi items bị sửa trực tiếp, không qua các method bên dưới)
+    public void calculateTotals() {
+        int count = 0;
+        BigDecimal price = BigDecimal.ZERO;
+        for (CartItem item : items) {
+            count += item.getQuantity();
+            price = price.add(item.getSubtotal());
+        }
+        this.totalItems = count;
+        this.totalPrice = price;
     }
 
     public void addItem(Book book, int quantity) {
         CartItem existingItem = findItemByBook(book);
         if (existingItem != null) {
-            existingItem.setQuantity(existingItem.getQuantity() + quantity);
+            changeQuantity(existingItem, existingItem.getQuantity() + quantity);
         } else {
             CartItem newItem = CartItem.builder()
                     .cart(this)
@@ -72,13 +90,17 @@ public class Cart {
                     .unitPrice(book.getCurrentPrice())
                     .build();
             items.add(newItem);
+            index().put(book.getId(), newItem);
+            adjustTotals(quantity, newItem.getSubtotal());
         }
-        calculateTotals();
     }
 
     public void removeItem(Book book) {
-        items.removeIf(item -> item.getBook().equals(book));
-        calculateTotals();
+        CartItem item = index().remove(book.getId());
+        if (item != null) {
+            items.remove(item);
+            adjustTotals(-item.getQuantity(), item.getSubtotal().negate());
+        }
     }
 
     public void updateItemQuantity(Book book, int quantity) {
@@ -87,22 +109,64 @@ public class Cart {
             if (quantity <= 0) {
                 removeItem(book);
             } else {
-                item.setQuantity(quantity);
+                changeQuantity(item, quantity);
             }
         }
-        calculateTotals();
+    }
+
+    // Cập nhật nhiều dòng một lần (bookId -> số lượng mới, <= 0 để xóa); sách không có trong giỏ bị bỏ qua
+    public void updateQuantities(Map<Long, Integer> quantities) {
+        boolean removed = false;
+        for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+            CartItem item = index().get(entry.getKey());
+            if (item == null) {
+                continue;
+            }
+            if (entry.getValue() <= 0) {
+                index().remove(entry.getKey());
+                adjustTotals(-item.getQuantity(), item.getSubtotal().negate());
+                removed = true;
+            } else {
+                changeQuantity(item, entry.getValue());
+            }
+        }
+        // Xóa khỏi list một lượt thay vì list.remove cho từng dòng
+        if (removed) {
+            Map<Long, CartItem> index = index();
+            items.removeIf(item -> index.get(item.getBook().getId()) != item);
+        }
     }
 
     public void clear() {
         items.clear();
-        calculateTotals();
+        itemsByBook = null;
+        totalItems = 0;
+        totalPrice = BigDecimal.ZERO;
     }
 
     private CartItem findItemByBook(Book book) {
-        return items.stream()
-                .filter(item -> item.getBook().equals(book))
-                .findFirst()
-                .orElse(null);
+        return index().get(book.getId());
+    }
+
+    private Map<Long, CartItem> index() {
+        if (itemsByBook == null) {
+            itemsByBook = new HashMap<>(Math.max(16, items.size() * 2));
+            for (CartItem item : items) {
+                itemsByBook.put(item.getBook().getId(), item);
+            }
+        }
+        return itemsByBook;
+    }
+
+    private void changeQuantity(CartItem item, int quantity) {
+        int delta = quantity - item.getQuantity();
+        item.setQuantity(quantity);
+        adjustTotals(delta, item.getUnitPrice().multiply(BigDecimal.valueOf(delta)));
+    }
+
+    private void adjustTotals(int itemDelta, BigDecimal priceDelta) {
+        totalItems += itemDelta;
+        totalPrice = totalPrice.add(priceDelta);
     }
 
     public boolean isEmpty() {
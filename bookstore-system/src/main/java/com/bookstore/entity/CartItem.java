@@ -5,7 +5,7 @@ import jakarta.persistence.*;
 import java.math.BigDecimal;
 
 @Entity
-@Table(name = "cart_items")
+@Table(name = "cart_items", indexes = @Index(name = "idx_cart_items_cart_id", columnList = "cart_id"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -13,7 +13,8 @@ import java.math.BigDecimal;
 @ToString(exclude = {"cart", "book"}) // QUAN TRỌNG: Loại trừ cart và book khỏi toString
 public class CartItem {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "cart_items_seq")
+    @SequenceGenerator(name = "cart_items_seq", sequenceName = "cart_items_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
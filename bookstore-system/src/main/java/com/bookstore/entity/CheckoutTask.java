@@ -0,0 +1,70 @@
+package com.bookstore.entity;
+
+import lombok.*;
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+// Việc phụ sau khi đặt hàng (email xác nhận...), ghi cùng transaction với đơn hàng
+// rồi được xử lý bất đồng bộ; còn PENDING/PROCESSING quá hạn thì được quét lại.
+@Entity
+@Table(name = "checkout_tasks",
+        indexes = @Index(name = "idx_checkout_tasks_status_next_attempt", columnList = "status, next_attempt_at"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CheckoutTask {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "checkout_tasks_seq")
+    @SequenceGenerator(name = "checkout_tasks_seq", sequenceName = "checkout_tasks_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long orderId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 30)
+    private TaskType type;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    @Builder.Default
+    private TaskStatus status = TaskStatus.PENDING;
+
+    @Column(nullable = false)
+    @Builder.Default
+    private Integer attempts = 0;
+
+    // PENDING: thời điểm được thử lại; PROCESSING: hết hạn lease của worker đang xử lý
+    @Column(nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(length = 1000)
+    private String lastError;
+
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        updatedAt = LocalDateTime.now();
+        if (nextAttemptAt == null) {
+            nextAttemptAt = createdAt;
+        }
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+
+    public enum TaskType {
+        ORDER_CONFIRMATION_EMAIL
+    }
+
+    public enum TaskStatus {
+        PENDING, PROCESSING, DONE, FAILED
+    }
+}
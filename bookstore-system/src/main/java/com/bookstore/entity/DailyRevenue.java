@@ -0,0 +1,45 @@
+package com.bookstore.entity;
+
+import lombok.*;
+import jakarta.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+// Bảng tổng hợp doanh thu theo ngày; được cập nhật cộng dồn cùng transaction với đơn hàng.
+// Mỗi nhóm có nhiều "slot" để các đơn đồng thời không tranh nhau khóa cùng một dòng.
+@Entity
+@Table(name = "daily_revenue",
+        uniqueConstraints = @UniqueConstraint(name = "uk_daily_revenue_bucket",
+                columnNames = {"revenue_date", "payment_method", "payment_status", "order_status", "slot"}))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class DailyRevenue {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private LocalDate revenueDate;
+
+    @Column(nullable = false, length = 50)
+    private String paymentMethod;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private Order.PaymentStatus paymentStatus;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private Order.OrderStatus orderStatus;
+
+    @Column(nullable = false)
+    private Integer slot;
+
+    @Column(nullable = false)
+    private Long orderCount;
+
+    @Column(nullable = false, precision = 15, scale = 2)
+    private BigDecimal totalAmount;
+}
@@ -15,10 +15,12 @@ import java.util.List;
 @Builder
 public class Order {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "orders_seq")
+    @SequenceGenerator(name = "orders_seq", sequenceName = "orders_seq", allocationSize = 50)
     private Long id;
 
-    @Column(unique = true, length = 50)
+    // Do OrderNumberGenerator cấp (OrderService); lưu đơn thiếu mã thì lỗi ngay thay vì ghi NULL
+    @Column(nullable = false, unique = true, length = 50)
     private String orderNumber;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -59,9 +61,6 @@ public class Order {
     protected void onCreate() {
         orderDate = LocalDateTime.now();
         updatedAt = LocalDateTime.now();
-        if (orderNumber == null) {
-            orderNumber = "ORD-" + System.currentTimeMillis();
-        }
     }
 
     @PreUpdate
@@ -0,0 +1,35 @@
+package com.bookstore.entity;
+
+import lombok.*;
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+// Sự kiện chờ gửi ra ngoài (transactional outbox): ghi bằng JDBC cùng transaction với thay đổi nghiệp vụ,
+// OutboxRelay đọc theo lô, gửi tới các sink rồi xóa. Thứ tự id gần đúng thứ tự ghi, consumer chống trùng theo id.
+@Entity
+@Table(name = "outbox_events")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class OutboxEvent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 30)
+    private String aggregateType;
+
+    @Column(nullable = false)
+    private Long aggregateId;
+
+    @Column(nullable = false, length = 50)
+    private String eventType;
+
+    @Column(nullable = false, columnDefinition = "NVARCHAR(MAX)")
+    private String payload;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+}
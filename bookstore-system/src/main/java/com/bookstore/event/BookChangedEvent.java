@@ -0,0 +1,8 @@
+package com.bookstore.event;
+
+public record BookChangedEvent(Long bookId, ChangeType type) {
+
+    public enum ChangeType {
+        CREATED, UPDATED, DELETED
+    }
+}
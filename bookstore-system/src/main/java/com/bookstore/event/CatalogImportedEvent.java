@@ -0,0 +1,5 @@
+package com.bookstore.event;
+
+// Phát sau một lần import hàng loạt: các index trong bộ nhớ build lại một lần thay vì theo từng sách
+public record CatalogImportedEvent(long importedCount) {
+}
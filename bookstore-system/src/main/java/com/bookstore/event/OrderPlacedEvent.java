@@ -0,0 +1,6 @@
+package com.bookstore.event;
+
+import java.util.Map;
+
+public record OrderPlacedEvent(Long orderId, Long userId, Map<Long, Integer> bookQuantities) {
+}
@@ -0,0 +1,10 @@
+package com.bookstore.event;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+
+import java.time.LocalDateTime;
+
+// Một dòng outbox_events như được gửi tới các OutboxSink; payload là JSON
+public record OutboxMessage(long id, String aggregateType, Long aggregateId, String eventType,
+                            @JsonRawValue String payload, LocalDateTime createdAt) {
+}
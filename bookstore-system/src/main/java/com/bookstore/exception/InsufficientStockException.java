@@ -1,7 +1,25 @@
 package com.bookstore.exception;
 
+import java.util.List;
+
 public class InsufficientStockException extends RuntimeException {
+
+    // Danh sách sách thiếu hàng khi giữ kho cho cả đơn hàng
+    private final List<Shortage> shortages;
+
     public InsufficientStockException(String message) {
+        this(message, List.of());
+    }
+
+    public InsufficientStockException(String message, List<Shortage> shortages) {
         super(message);
+        this.shortages = List.copyOf(shortages);
+    }
+
+    public List<Shortage> getShortages() {
+        return shortages;
+    }
+
+    public record Shortage(Long bookId, int requested, int available) {
     }
-}
\ No newline at end of file
+}
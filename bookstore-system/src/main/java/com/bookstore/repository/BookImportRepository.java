@@ -0,0 +1,85 @@
+package com.bookstore.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Ghi sách hàng loạt bằng JDBC batch. ID lấy theo khối từ books_seq (xem PooledSequence).
+@Repository
+@RequiredArgsConstructor
+public class BookImportRepository {
+
+    private static final String INSERT_BOOK_SQL =
+            "INSERT INTO books (id, title, description, author, isbn, price, discount_price, stock_quantity, " +
+            "sold_quantity, publisher, pages, language, cover_image, average_rating, review_count, available, " +
+            "created_at, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, 0, ?, ?, ?, ?, 0, 0, ?, ?, ?)";
+
+    private static final String INSERT_CATEGORY_SQL =
+            "INSERT INTO book_categories (book_id, category_id) VALUES (?, ?)";
+
+    private static final String ISBN_SQL = "SELECT isbn FROM books";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public record ImportRow(String isbn, String title, String author, String description, String publisher,
+                            String language, BigDecimal price, BigDecimal discountPrice, int stockQuantity,
+                            Integer pages, String coverImage, List<Long> categoryIds) {
+    }
+
+    public void forEachIsbn(Consumer<String> consumer) {
+        jdbcTemplate.query(ISBN_SQL, (RowCallbackHandler) rs -> consumer.accept(rs.getString(1)));
+    }
+
+    // Trả về ID của các sách vừa insert, cùng thứ tự với rows
+    public List<Long> insertBooks(List<ImportRow> rows) {
+        List<Long> ids = PooledSequence.allocate(jdbcTemplate, "books_seq", rows.size());
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Integer> indexes = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            indexes.add(i);
+        }
+        jdbcTemplate.batchUpdate(INSERT_BOOK_SQL, indexes, indexes.size(), (ps, i) -> {
+            ImportRow row = rows.get(i);
+            ps.setLong(1, ids.get(i));
+            ps.setString(2, row.title());
+            ps.setString(3, row.description());
+            ps.setString(4, row.author());
+            ps.setString(5, row.isbn());
+            ps.setBigDecimal(6, row.price());
+            ps.setBigDecimal(7, row.discountPrice());
+            ps.setInt(8, row.stockQuantity());
+            ps.setString(9, row.publisher());
+            if (row.pages() != null) {
+                ps.setInt(10, row.pages());
+            } else {
+                ps.setNull(10, Types.INTEGER);
+            }
+            ps.setString(11, row.language());
+            ps.setString(12, row.coverImage());
+            ps.setBoolean(13, true);
+            ps.setTimestamp(14, now);
+            ps.setTimestamp(15, now);
+        });
+        return ids;
+    }
+
+    // Mỗi phần tử: {bookId, categoryId}
+    public void insertCategoryLinks(List<long[]> links) {
+        if (links.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INSERT_CATEGORY_SQL, links, links.size(), (ps, link) -> {
+            ps.setLong(1, link[0]);
+            ps.setLong(2, link[1]);
+        });
+    }
+}
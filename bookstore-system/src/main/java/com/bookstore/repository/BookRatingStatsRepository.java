@@ -0,0 +1,170 @@
+package com.bookstore.repository;
+
+import com.bookstore.dto.RatingStatsDTO;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Đọc/ghi bảng book_rating_stats bằng JDBC (tham gia transaction JPA hiện tại).
+// Cộng/trừ bằng một câu UPDATE nên các review đồng thời của cùng một sách không ghi đè nhau.
+@Repository
+@RequiredArgsConstructor
+public class BookRatingStatsRepository {
+
+    private static final String SELECT_COLUMNS =
+            "SELECT book_id, rating_sum, rating_count, star1, star2, star3, star4, star5 FROM book_rating_stats ";
+
+    private static final String INSERT_SQL =
+            "INSERT INTO book_rating_stats (book_id, rating_sum, rating_count, star1, star2, star3, star4, star5, " +
+            "updated_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String OVERWRITE_SQL =
+            "UPDATE book_rating_stats SET rating_sum = ?, rating_count = ?, star1 = ?, star2 = ?, star3 = ?, " +
+            "star4 = ?, star5 = ?, updated_at = ? WHERE book_id = ?";
+
+    // Điểm trung bình/số review hiển thị trên books lấy từ dòng tổng hợp (một dòng theo khóa chính)
+    private static final String SYNC_BOOK_SQL =
+            "UPDATE books SET " +
+            "review_count = COALESCE((SELECT rating_count FROM book_rating_stats WHERE book_id = ?), 0), " +
+            "average_rating = COALESCE((SELECT CASE WHEN rating_count = 0 THEN 0 " +
+            "ELSE CAST(rating_sum AS FLOAT) / rating_count END FROM book_rating_stats WHERE book_id = ?), 0) " +
+            "WHERE id = ?";
+
+    // Số review thực tế theo (sách, số sao) của một khoảng sách, dùng index idx_reviews_book_rating
+    private static final String ACTUAL_SQL =
+            "SELECT book_id, rating, COUNT(*) FROM reviews WHERE book_id BETWEEN ? AND ? " +
+            "AND rating BETWEEN 1 AND 5 GROUP BY book_id, rating";
+
+    // Tạo dòng 0 cho các sách trong khoảng chưa có dòng tổng hợp (để reconcile có dòng mà khóa)
+    private static final String CREATE_MISSING_SQL =
+            "INSERT INTO book_rating_stats (book_id, rating_sum, rating_count, star1, star2, star3, star4, star5, " +
+            "updated_at) SELECT b.id, 0, 0, 0, 0, 0, 0, 0, ? FROM books b WHERE b.id BETWEEN ? AND ? " +
+            "AND NOT EXISTS (SELECT 1 FROM book_rating_stats s WHERE s.book_id = b.id)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Khóa ghi các dòng tổng hợp đến hết transaction: SQL Server dùng hint, các DB khác dùng FOR UPDATE
+    private String lockHint = "";
+    private String lockSuffix = " FOR UPDATE";
+
+    @PostConstruct
+    void detectDatabase() {
+        String product = jdbcTemplate.execute((ConnectionCallback<String>) c -> c.getMetaData().getDatabaseProductName());
+        if (product != null && product.contains("SQL Server")) {
+            lockHint = " WITH (UPDLOCK, HOLDLOCK)";
+            lockSuffix = "";
+        }
+    }
+
+    // delta = 1 khi thêm review, -1 khi xóa; tạo dòng nếu chưa có
+    public void add(Long bookId, int rating, int delta) {
+        if (rating < 1 || rating > 5) {
+            throw new IllegalArgumentException("Rating must be between 1 and 5");
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        String star = "star" + rating;
+        if (jdbcTemplate.update("UPDATE book_rating_stats SET rating_sum = rating_sum + ?, " +
+                "rating_count = rating_count + ?, " + star + " = " + star + " + ?, updated_at = ? WHERE book_id = ?",
+                (long) rating * delta, delta, delta, now, bookId) > 0) {
+            return;
+        }
+        long[] stars = new long[5];
+        stars[rating - 1] = delta;
+        try {
+            insert(new RatingStatsDTO(bookId, (long) rating * delta, delta, stars), now);
+        } catch (DuplicateKeyException e) {
+            // Transaction khác vừa tạo dòng này
+            add(bookId, rating, delta);
+        }
+    }
+
+    public void syncBook(Long bookId) {
+        jdbcTemplate.update(SYNC_BOOK_SQL, bookId, bookId, bookId);
+    }
+
+    public RatingStatsDTO find(Long bookId) {
+        List<RatingStatsDTO> found = jdbcTemplate.query(SELECT_COLUMNS + "WHERE book_id = ?",
+                (rs, rowNum) -> map(rs), bookId);
+        return found.isEmpty() ? RatingStatsDTO.empty(bookId) : found.get(0);
+    }
+
+    // ========================
+    // RECONCILE
+    // ========================
+
+    // ID sách tiếp theo sau afterId (để duyệt theo lô)
+    public List<Long> findBookIds(long afterId, int limit) {
+        return jdbcTemplate.queryForList("SELECT TOP " + limit + " id FROM books WHERE id > ? ORDER BY id",
+                Long.class, afterId);
+    }
+
+    public void createMissing(long fromBookId, long toBookId) {
+        try {
+            jdbcTemplate.update(CREATE_MISSING_SQL, Timestamp.valueOf(LocalDateTime.now()), fromBookId, toBookId);
+        } catch (DuplicateKeyException e) {
+            // Review đồng thời vừa tạo dòng của một sách trong khoảng: các dòng còn thiếu (nếu có) được ghi khi sửa
+        }
+    }
+
+    // Đọc và khóa các dòng tổng hợp của khoảng sách. add() cũng phải lấy khóa dòng này trước khi ghi review,
+    // nên trong lúc reconcile đếm lại reviews không có review nào được thêm/xóa mà số đếm bị ghi đè mất.
+    public Map<Long, RatingStatsDTO> lockStored(long fromBookId, long toBookId) {
+        Map<Long, RatingStatsDTO> stored = new HashMap<>();
+        jdbcTemplate.query("SELECT book_id, rating_sum, rating_count, star1, star2, star3, star4, star5 " +
+                        "FROM book_rating_stats" + lockHint + " WHERE book_id BETWEEN ? AND ?" + lockSuffix,
+                (RowCallbackHandler) rs -> stored.put(rs.getLong(1), map(rs)), fromBookId, toBookId);
+        return stored;
+    }
+
+    public Map<Long, RatingStatsDTO> computeActual(long fromBookId, long toBookId) {
+        Map<Long, RatingStatsDTO> actual = new HashMap<>();
+        jdbcTemplate.query(ACTUAL_SQL, (RowCallbackHandler) rs -> {
+            RatingStatsDTO stats = actual.computeIfAbsent(rs.getLong(1), RatingStatsDTO::empty);
+            int rating = rs.getInt(2);
+            long count = rs.getLong(3);
+            stats.getStarCounts()[rating - 1] = count;
+            stats.setRatingCount(stats.getRatingCount() + count);
+            stats.setRatingSum(stats.getRatingSum() + rating * count);
+        }, fromBookId, toBookId);
+        return actual;
+    }
+
+    // Ghi đè bằng giá trị đúng
+    public void overwrite(RatingStatsDTO stats) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        long[] stars = stats.getStarCounts();
+        if (jdbcTemplate.update(OVERWRITE_SQL, stats.getRatingSum(), stats.getRatingCount(),
+                stars[0], stars[1], stars[2], stars[3], stars[4], now, stats.getBookId()) == 0) {
+            insert(stats, now);
+        }
+    }
+
+    public boolean isEmpty() {
+        Integer found = jdbcTemplate.query("SELECT TOP 1 1 FROM book_rating_stats",
+                rs -> rs.next() ? 1 : null);
+        return found == null;
+    }
+
+    private void insert(RatingStatsDTO stats, Timestamp now) {
+        long[] stars = stats.getStarCounts();
+        jdbcTemplate.update(INSERT_SQL, stats.getBookId(), stats.getRatingSum(), stats.getRatingCount(),
+                stars[0], stars[1], stars[2], stars[3], stars[4], now);
+    }
+
+    private static RatingStatsDTO map(ResultSet rs) throws SQLException {
+        return new RatingStatsDTO(rs.getLong(1), rs.getLong(2), rs.getLong(3), new long[]{
+                rs.getLong(4), rs.getLong(5), rs.getLong(6), rs.getLong(7), rs.getLong(8)});
+    }
+}
@@ -1,19 +1,58 @@
 package com.bookstore.repository;
 
+import com.bookstore.dto.BookDTO;
 import com.bookstore.entity.Book;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface BookRepository extends JpaRepository<Book, Long> {
+public interface BookRepository extends JpaRepository<Book, Long>, BookRepositoryCustom {
+
+    // Projection thẻ sách cho trang danh sách: không nạp description, không tạo entity được quản lý
+    String CARD_SELECT = "SELECT new com.bookstore.dto.BookDTO(b.id, b.title, b.author, b.price, b.discountPrice, " +
+            "b.stockQuantity, b.soldQuantity, b.available, b.coverImage, b.averageRating, b.reviewCount, b.createdAt) ";
+
+    @Query(value = CARD_SELECT + "FROM Book b",
+            countQuery = "SELECT COUNT(b) FROM Book b")
+    Page<BookDTO> findAllCards(Pageable pageable);
+
+    @Query(value = CARD_SELECT + "FROM Book b WHERE b.available = true",
+            countQuery = "SELECT COUNT(b) FROM Book b WHERE b.available = true")
+    Page<BookDTO> findAvailableCards(Pageable pageable);
+
+    @Query(value = CARD_SELECT + "FROM Book b WHERE LOWER(b.title) LIKE LOWER(CONCAT('%', :title, '%'))",
+            countQuery = "SELECT COUNT(b) FROM Book b WHERE LOWER(b.title) LIKE LOWER(CONCAT('%', :title, '%'))")
+    Page<BookDTO> findCardsByTitleContaining(@Param("title") String title, Pageable pageable);
+
+    @Query(value = CARD_SELECT + "FROM Book b JOIN b.categories c WHERE c.id = :categoryId",
+            countQuery = "SELECT COUNT(b) FROM Book b JOIN b.categories c WHERE c.id = :categoryId")
+    Page<BookDTO> findCardsByCategoryId(@Param("categoryId") Long categoryId, Pageable pageable);
+
+    @Query(value = CARD_SELECT + "FROM Book b WHERE b.discountPrice IS NOT NULL",
+            countQuery = "SELECT COUNT(b) FROM Book b WHERE b.discountPrice IS NOT NULL")
+    Page<BookDTO> findCardsOnSale(Pageable pageable);
+
+    @Query(value = CARD_SELECT + "FROM Book b WHERE b.stockQuantity > 0 AND b.available = true ORDER BY b.soldQuantity DESC",
+            countQuery = "SELECT COUNT(b) FROM Book b WHERE b.stockQuantity > 0 AND b.available = true")
+    Page<BookDTO> findBestSellerCards(Pageable pageable);
+
+    @Query(value = CARD_SELECT + "FROM Book b ORDER BY b.createdAt DESC",
+            countQuery = "SELECT COUNT(b) FROM Book b")
+    Page<BookDTO> findNewestCards(Pageable pageable);
+
+    @Query(CARD_SELECT + "FROM Book b WHERE b.id IN :ids")
+    List<BookDTO> findCardsByIdIn(@Param("ids") Collection<Long> ids);
 
     // Tìm kiếm sách
     Page<Book> findByTitleContainingIgnoreCase(String title, Pageable pageable);
@@ -53,6 +92,20 @@ public interface BookRepository extends JpaRepository<Book, Long> {
                               @Param("categoryId") Long categoryId,
                               Pageable pageable);
 
+    // Duyệt toàn bộ sách theo lô (keyset theo id) để build search index, chỉ đọc các cột được index:
+    // [id, title, author, publisher, description, isbn]
+    @Query("SELECT b.id, b.title, b.author, b.publisher, b.description, b.isbn FROM Book b " +
+            "WHERE b.id > :afterId ORDER BY b.id")
+    List<Object[]> findSearchFieldsBatch(@Param("afterId") Long afterId, Pageable pageable);
+
+    @Query("SELECT b.id, b.title, b.author, b.publisher, b.description, b.isbn FROM Book b WHERE b.id = :bookId")
+    List<Object[]> findSearchFieldsById(@Param("bookId") Long bookId);
+
+    // Trang chi tiết: sách + categories trong một câu truy vấn
+    @EntityGraph(Book.GRAPH_DETAIL)
+    @Query("SELECT b FROM Book b WHERE b.id = :id")
+    Optional<Book> findDetailedById(@Param("id") Long id);
+
     Optional<Book> findByIsbn(String isbn);
     boolean existsByIsbn(String isbn);
 
@@ -60,7 +113,61 @@ public interface BookRepository extends JpaRepository<Book, Long> {
     @Query("SELECT b.stockQuantity FROM Book b WHERE b.id = :bookId")
     Integer getStockQuantity(@Param("bookId") Long bookId);
 
+    // Trừ kho nguyên tử: chỉ cập nhật khi đủ hàng, trả về 0 nếu không đủ (hoặc không có sách)
+    @Modifying
+    @Query("UPDATE Book b SET b.stockQuantity = b.stockQuantity - :quantity, " +
+            "b.soldQuantity = COALESCE(b.soldQuantity, 0) + :quantity, b.updatedAt = LOCAL DATETIME " +
+            "WHERE b.id = :bookId AND b.stockQuantity >= :quantity")
+    int decrementStock(@Param("bookId") Long bookId, @Param("quantity") int quantity);
+
+    // Như decrementStock nhưng không tính vào số lượng đã bán (điều chỉnh kho thủ công)
+    @Modifying
+    @Query("UPDATE Book b SET b.stockQuantity = b.stockQuantity - :quantity, b.updatedAt = LOCAL DATETIME " +
+            "WHERE b.id = :bookId AND b.stockQuantity >= :quantity")
+    int subtractStock(@Param("bookId") Long bookId, @Param("quantity") int quantity);
+
+    // Sửa tồn kho theo chênh lệch thay vì ghi đè giá trị tuyệt đối: không mất các lượt trừ kho đồng thời
+    @Modifying
+    @Query("UPDATE Book b SET b.stockQuantity = b.stockQuantity + :delta, b.updatedAt = LOCAL DATETIME " +
+            "WHERE b.id = :bookId AND b.stockQuantity + :delta >= 0")
+    int adjustStock(@Param("bookId") Long bookId, @Param("delta") int delta);
+
+    // [bookId, stockQuantity] cho sổ tồn kho trong bộ nhớ
+    @Query("SELECT b.id, b.stockQuantity FROM Book b")
+    List<Object[]> findStockLevels();
+
     // Đếm sách có sẵn
     @Query("SELECT COUNT(b) FROM Book b WHERE b.available = true")
     Long countAvailableBooks();
+
+    // Dữ liệu cho related-books index: [id, author, soldQuantity, available]
+    @Query("SELECT b.id, b.author, b.soldQuantity, b.available FROM Book b")
+    List<Object[]> findRelatedBookFacts();
+
+    @Query("SELECT b.id, b.author, b.soldQuantity, b.available FROM Book b WHERE b.id = :bookId")
+    List<Object[]> findRelatedBookFactsById(@Param("bookId") Long bookId);
+
+    // Dữ liệu cho gợi ý tìm kiếm: [id, title, author, soldQuantity, averageRating, available]
+    @Query("SELECT b.id, b.title, b.author, b.soldQuantity, b.averageRating, b.available FROM Book b")
+    List<Object[]> findSuggestionFacts();
+
+    @Query("SELECT b.id, b.title, b.author, b.soldQuantity, b.averageRating, b.available FROM Book b WHERE b.id = :bookId")
+    List<Object[]> findSuggestionFactsById(@Param("bookId") Long bookId);
+
+    // Dữ liệu cho facet index:
+    // [id, title, author, price, discountPrice, stockQuantity, available, language, soldQuantity, createdAt]
+    @Query("SELECT b.id, b.title, b.author, b.price, b.discountPrice, b.stockQuantity, b.available, " +
+            "b.language, b.soldQuantity, b.createdAt FROM Book b WHERE b.id > :afterId ORDER BY b.id")
+    List<Object[]> findFacetFactsBatch(@Param("afterId") Long afterId, Pageable pageable);
+
+    @Query("SELECT b.id, b.title, b.author, b.price, b.discountPrice, b.stockQuantity, b.available, " +
+            "b.language, b.soldQuantity, b.createdAt FROM Book b WHERE b.id = :bookId")
+    List<Object[]> findFacetFactsById(@Param("bookId") Long bookId);
+
+    // [bookId, categoryId]
+    @Query("SELECT b.id, c.id FROM Book b JOIN b.categories c")
+    List<Object[]> findBookCategoryPairs();
+
+    @Query("SELECT c.id FROM Book b JOIN b.categories c WHERE b.id = :bookId")
+    List<Long> findCategoryIdsByBookId(@Param("bookId") Long bookId);
 }
\ No newline at end of file
@@ -0,0 +1,40 @@
+package com.bookstore.repository;
+
+import com.bookstore.dto.BookDTO;
+
+import java.util.List;
+
+// Phân trang keyset (seek): WHERE (cột sắp xếp, id) > giá trị cuối trang trước, không OFFSET/COUNT
+public interface BookRepositoryCustom {
+
+    List<BookDTO> findKeysetPage(Listing listing, Long categoryId, KeysetSort sort,
+                              Object lastValue, Long lastId, int limit);
+
+    enum Listing {
+        ALL, ON_SALE, BEST_SELLERS, CATEGORY
+    }
+
+    enum KeysetSort {
+        NEWEST("createdAt", false),
+        PRICE_ASC("price", true),
+        PRICE_DESC("price", false),
+        TITLE("title", true),
+        BEST_SELLING("soldQuantity", false);
+
+        private final String attribute;
+        private final boolean ascending;
+
+        KeysetSort(String attribute, boolean ascending) {
+            this.attribute = attribute;
+            this.ascending = ascending;
+        }
+
+        public String getAttribute() {
+            return attribute;
+        }
+
+        public boolean isAscending() {
+            return ascending;
+        }
+    }
+}
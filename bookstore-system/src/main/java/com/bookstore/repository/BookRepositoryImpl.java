@@ -0,0 +1,86 @@
+package com.bookstore.repository;
+
+import com.bookstore.dto.BookDTO;
+import com.bookstore.entity.Book;
+import com.bookstore.entity.Category;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BookRepositoryImpl implements BookRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<BookDTO> findKeysetPage(Listing listing, Long categoryId, KeysetSort sort,
+                                     Object lastValue, Long lastId, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<BookDTO> query = cb.createQuery(BookDTO.class);
+        Root<Book> book = query.from(Book.class);
+
+        List<Predicate> predicates = new ArrayList<>();
+        switch (listing) {
+            case ON_SALE:
+                predicates.add(cb.isNotNull(book.get("discountPrice")));
+                break;
+            case BEST_SELLERS:
+                predicates.add(cb.greaterThan(book.get("stockQuantity"), 0));
+                predicates.add(cb.isTrue(book.get("available")));
+                break;
+            case CATEGORY:
+                Join<Book, Category> category = book.join("categories");
+                predicates.add(cb.equal(category.get("id"), categoryId));
+                break;
+            default:
+                break;
+        }
+
+        Path<Comparable<Object>> sortPath = book.get(sort.getAttribute());
+        Path<Long> idPath = book.get("id");
+        if (lastValue != null && lastId != null) {
+            predicates.add(after(cb, sortPath, idPath, asComparable(lastValue), lastId, sort.isAscending()));
+        }
+
+        // Cùng projection với BookRepository.CARD_SELECT
+        query.select(cb.construct(BookDTO.class,
+                        book.get("id"), book.get("title"), book.get("author"), book.get("price"),
+                        book.get("discountPrice"), book.get("stockQuantity"), book.get("soldQuantity"),
+                        book.get("available"), book.get("coverImage"), book.get("averageRating"),
+                        book.get("reviewCount"), book.get("createdAt")))
+                .where(predicates.toArray(new Predicate[0]))
+                .orderBy(sort.isAscending()
+                        ? List.of(cb.asc(sortPath), cb.asc(idPath))
+                        : List.of(cb.desc(sortPath), cb.desc(idPath)));
+
+        return entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    // (sortCol > v) OR (sortCol = v AND id > lastId), đảo chiều khi sắp xếp giảm dần
+    private Predicate after(CriteriaBuilder cb, Path<Comparable<Object>> sortPath, Path<Long> idPath,
+                            Comparable<Object> lastValue, Long lastId, boolean ascending) {
+        if (ascending) {
+            return cb.or(
+                    cb.greaterThan(sortPath, lastValue),
+                    cb.and(cb.equal(sortPath, lastValue), cb.greaterThan(idPath, lastId)));
+        }
+        return cb.or(
+                cb.lessThan(sortPath, lastValue),
+                cb.and(cb.equal(sortPath, lastValue), cb.lessThan(idPath, lastId)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Comparable<Object> asComparable(Object value) {
+        return (Comparable<Object>) value;
+    }
+}
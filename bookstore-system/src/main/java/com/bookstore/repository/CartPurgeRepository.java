@@ -0,0 +1,68 @@
+package com.bookstore.repository;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Xóa giỏ hết hạn theo từng lô nhỏ bằng JDBC (tham gia transaction hiện tại).
+// Mỗi lô: cart_items trước (tránh lỗi FK) rồi carts; cả hai kiểm tra lại updated_at
+// để giỏ vừa được cập nhật sau khi chọn lô không bị xóa.
+@Repository
+@RequiredArgsConstructor
+public class CartPurgeRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // SQL Server: bỏ qua giỏ đang bị transaction khác ghi (giỏ đang hoạt động) thay vì chờ khóa
+    private String readHint = "";
+
+    @PostConstruct
+    void detectDatabase() {
+        String product = jdbcTemplate.execute((ConnectionCallback<String>) c -> c.getMetaData().getDatabaseProductName());
+        if (product != null && product.contains("SQL Server")) {
+            readHint = " WITH (READPAST)";
+        }
+    }
+
+    // Dùng index idx_carts_updated_at, cũ nhất trước
+    public List<Long> findExpiredCartIds(LocalDateTime cutoff, int limit) {
+        return jdbcTemplate.queryForList("SELECT TOP " + limit + " id FROM carts" + readHint +
+                " WHERE updated_at < ? ORDER BY updated_at", Long.class, Timestamp.valueOf(cutoff));
+    }
+
+    // Dùng index idx_cart_items_cart_id
+    public int deleteItems(List<Long> cartIds, LocalDateTime cutoff) {
+        if (cartIds.isEmpty()) {
+            return 0;
+        }
+        return jdbcTemplate.update("DELETE FROM cart_items WHERE cart_id IN (SELECT id FROM carts WHERE id IN (" +
+                placeholders(cartIds.size()) + ") AND updated_at < ?)", arguments(cartIds, cutoff));
+    }
+
+    public int deleteCarts(List<Long> cartIds, LocalDateTime cutoff) {
+        if (cartIds.isEmpty()) {
+            return 0;
+        }
+        return jdbcTemplate.update("DELETE FROM carts WHERE id IN (" + placeholders(cartIds.size()) +
+                ") AND updated_at < ?", arguments(cartIds, cutoff));
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    private static Object[] arguments(List<Long> cartIds, LocalDateTime cutoff) {
+        List<Object> args = new ArrayList<>(cartIds.size() + 1);
+        args.addAll(cartIds);
+        args.add(Timestamp.valueOf(cutoff));
+        return args.toArray();
+    }
+}
@@ -0,0 +1,239 @@
+package com.bookstore.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Đọc/ghi carts + cart_items bằng JDBC batch cho CartStore (tham gia transaction hiện tại).
+// Giỏ đã có trong DB chỉ ghi các dòng đã đổi (UPDATE theo (cart_id, book_id), INSERT nếu chưa có, DELETE dòng đã bỏ);
+// giỏ mới hoặc bị job dọn dẹp xóa mất thì được tạo lại cùng toàn bộ dòng.
+@Repository
+@RequiredArgsConstructor
+public class CartStoreRepository {
+
+    private static final String FIND_CART_SQL = "SELECT id FROM carts WHERE session_id = ?";
+
+    private static final String FIND_LINES_SQL =
+            "SELECT book_id, quantity, unit_price FROM cart_items WHERE cart_id = ? ORDER BY id";
+
+    private static final String UPDATE_CART_SQL =
+            "UPDATE carts SET total_price = ?, total_items = ?, updated_at = ? WHERE id = ?";
+
+    private static final String INSERT_CART_SQL =
+            "INSERT INTO carts (id, session_id, total_price, total_items, created_at, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?)";
+
+    private static final String DELETE_LINES_SQL = "DELETE FROM cart_items WHERE cart_id = ?";
+
+    private static final String UPDATE_LINE_SQL =
+            "UPDATE cart_items SET quantity = ?, unit_price = ? WHERE cart_id = ? AND book_id = ?";
+
+    private static final String DELETE_LINE_SQL = "DELETE FROM cart_items WHERE cart_id = ? AND book_id = ?";
+
+    private static final String INSERT_LINE_SQL =
+            "INSERT INTO cart_items (id, cart_id, book_id, quantity, unit_price) VALUES (?, ?, ?, ?, ?)";
+
+    // Cộng số lượng của sách có ở cả hai giỏ vào dòng của giỏ user
+    private static final String MERGE_DUPLICATE_LINES_SQL =
+            "MERGE INTO cart_items AS target " +
+            "USING (SELECT book_id, quantity FROM cart_items WHERE cart_id = ?) AS source " +
+            "ON target.cart_id = ? AND target.book_id = source.book_id " +
+            "WHEN MATCHED THEN UPDATE SET quantity = target.quantity + source.quantity;";
+
+    // Các dòng còn lại của giỏ khách được chuyển nguyên sang giỏ user (giữ ID, không cần INSERT)
+    private static final String MOVE_LINES_SQL =
+            "UPDATE cart_items SET cart_id = ? WHERE cart_id = ? " +
+            "AND book_id NOT IN (SELECT book_id FROM cart_items WHERE cart_id = ?)";
+
+    private static final String UPDATE_TOTALS_SQL =
+            "UPDATE carts SET " +
+            "total_items = (SELECT COALESCE(SUM(quantity), 0) FROM cart_items WHERE cart_id = ?), " +
+            "total_price = (SELECT COALESCE(SUM(quantity * unit_price), 0) FROM cart_items WHERE cart_id = ?), " +
+            "updated_at = ? WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public record CartLine(long bookId, int quantity, BigDecimal unitPrice) {
+    }
+
+    // cartId == null: giỏ chưa có trong DB. changedBookIds: sách có dòng đã thêm/sửa/xóa từ lần ghi trước
+    // (sách không còn trong lines thì dòng bị xóa)
+    public record CartWrite(String sessionId, Long cartId, List<CartLine> lines, Set<Long> changedBookIds,
+                            int totalItems, BigDecimal totalPrice) {
+    }
+
+    // null nếu session chưa có giỏ
+    public Long findCartId(String sessionId) {
+        List<Long> ids = jdbcTemplate.queryForList(FIND_CART_SQL, Long.class, sessionId);
+        return ids.isEmpty() ? null : ids.get(0);
+    }
+
+    public List<CartLine> findLines(long cartId) {
+        List<CartLine> lines = new ArrayList<>();
+        jdbcTemplate.query(FIND_LINES_SQL, (RowCallbackHandler) rs -> lines.add(
+                new CartLine(rs.getLong(1), rs.getInt(2), rs.getBigDecimal(3))), cartId);
+        return lines;
+    }
+
+    // Gộp giỏ khách vào giỏ user bằng một số câu lệnh cố định, không phụ thuộc số dòng trong giỏ.
+    // User chưa có giỏ: chỉ đổi session_id của giỏ khách. Trả về ID giỏ user (null nếu cả hai đều không có)
+    public Long mergeCarts(String guestSessionId, String userSessionId) {
+        Long guestCartId = findCartId(guestSessionId);
+        Long userCartId = findCartId(userSessionId);
+        if (guestCartId == null) {
+            return userCartId;
+        }
+        if (userCartId == null) {
+            jdbcTemplate.update("UPDATE carts SET session_id = ?, updated_at = ? WHERE id = ?",
+                    userSessionId, Timestamp.valueOf(LocalDateTime.now()), guestCartId);
+            return guestCartId;
+        }
+
+        jdbcTemplate.update(MERGE_DUPLICATE_LINES_SQL, guestCartId, userCartId);
+        jdbcTemplate.update(MOVE_LINES_SQL, userCartId, guestCartId, userCartId);
+        jdbcTemplate.update(DELETE_LINES_SQL, guestCartId);
+        jdbcTemplate.update("DELETE FROM carts WHERE id = ?", guestCartId);
+        jdbcTemplate.update(UPDATE_TOTALS_SQL, userCartId, userCartId, Timestamp.valueOf(LocalDateTime.now()), userCartId);
+        return userCartId;
+    }
+
+    // Trả về ID giỏ trong DB, cùng thứ tự với carts (giỏ mới hoặc đã bị xóa khỏi DB được tạo lại)
+    public List<Long> saveAll(List<CartWrite> carts) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Long> cartIds = new ArrayList<>(carts.size());
+        List<Integer> existing = new ArrayList<>();
+        for (int i = 0; i < carts.size(); i++) {
+            cartIds.add(carts.get(i).cartId());
+            if (carts.get(i).cartId() != null) {
+                existing.add(i);
+            }
+        }
+
+        List<Integer> missing = new ArrayList<>();
+        if (!existing.isEmpty()) {
+            int[][] updated = jdbcTemplate.batchUpdate(UPDATE_CART_SQL, existing, existing.size(), (ps, i) -> {
+                CartWrite cart = carts.get(i);
+                ps.setBigDecimal(1, cart.totalPrice());
+                ps.setInt(2, cart.totalItems());
+                ps.setTimestamp(3, now);
+                ps.setLong(4, cart.cartId());
+            });
+            for (int i = 0; i < existing.size(); i++) {
+                // Giỏ đã bị job dọn dẹp xóa: tạo lại với ID mới
+                if (updated[0][i] == 0) {
+                    missing.add(existing.get(i));
+                }
+            }
+        }
+        for (int i = 0; i < carts.size(); i++) {
+            if (carts.get(i).cartId() == null) {
+                missing.add(i);
+            }
+        }
+        insertCarts(carts, missing, cartIds, now);
+        Set<Integer> created = new HashSet<>(missing);
+
+        // Giỏ vừa được tạo: ghi mọi dòng. Giỏ đã có: chỉ các dòng đã đổi
+        List<long[]> inserts = new ArrayList<>();
+        List<long[]> updates = new ArrayList<>();
+        List<long[]> deletes = new ArrayList<>();
+        List<CartLine> lines = new ArrayList<>();
+        for (int i = 0; i < carts.size(); i++) {
+            CartWrite cart = carts.get(i);
+            long cartId = cartIds.get(i);
+            if (created.contains(i)) {
+                for (CartLine line : cart.lines()) {
+                    inserts.add(new long[]{cartId, lines.size()});
+                    lines.add(line);
+                }
+                continue;
+            }
+            Map<Long, CartLine> byBook = new HashMap<>();
+            cart.lines().forEach(line -> byBook.put(line.bookId(), line));
+            for (Long bookId : cart.changedBookIds()) {
+                CartLine line = byBook.get(bookId);
+                if (line == null) {
+                    deletes.add(new long[]{cartId, bookId});
+                } else {
+                    updates.add(new long[]{cartId, lines.size()});
+                    lines.add(line);
+                }
+            }
+        }
+
+        if (!deletes.isEmpty()) {
+            jdbcTemplate.batchUpdate(DELETE_LINE_SQL, deletes, deletes.size(), (ps, row) -> {
+                ps.setLong(1, row[0]);
+                ps.setLong(2, row[1]);
+            });
+        }
+        if (!updates.isEmpty()) {
+            int[][] updated = jdbcTemplate.batchUpdate(UPDATE_LINE_SQL, updates, updates.size(), (ps, row) -> {
+                CartLine line = lines.get((int) row[1]);
+                ps.setInt(1, line.quantity());
+                ps.setBigDecimal(2, line.unitPrice());
+                ps.setLong(3, row[0]);
+                ps.setLong(4, line.bookId());
+            });
+            for (int i = 0; i < updates.size(); i++) {
+                // Sách mới thêm vào giỏ: chưa có dòng
+                if (updated[0][i] == 0) {
+                    inserts.add(updates.get(i));
+                }
+            }
+        }
+        insertLines(inserts, lines);
+        return cartIds;
+    }
+
+    private void insertCarts(List<CartWrite> carts, List<Integer> indexes, List<Long> cartIds, Timestamp now) {
+        if (indexes.isEmpty()) {
+            return;
+        }
+        List<Long> ids = PooledSequence.allocate(jdbcTemplate, "carts_seq", indexes.size());
+        for (int i = 0; i < indexes.size(); i++) {
+            cartIds.set(indexes.get(i), ids.get(i));
+        }
+        jdbcTemplate.batchUpdate(INSERT_CART_SQL, indexes, indexes.size(), (ps, i) -> {
+            CartWrite cart = carts.get(i);
+            ps.setLong(1, cartIds.get(i));
+            ps.setString(2, cart.sessionId());
+            ps.setBigDecimal(3, cart.totalPrice());
+            ps.setInt(4, cart.totalItems());
+            ps.setTimestamp(5, now);
+            ps.setTimestamp(6, now);
+        });
+    }
+
+    // rows: [cartId, vị trí dòng trong lines]; chỉ lấy ID cart_items_seq cho dòng thật sự mới
+    private void insertLines(List<long[]> rows, List<CartLine> lines) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        List<Long> ids = PooledSequence.allocate(jdbcTemplate, "cart_items_seq", rows.size());
+        List<Integer> positions = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            positions.add(i);
+        }
+        jdbcTemplate.batchUpdate(INSERT_LINE_SQL, positions, positions.size(), (ps, position) -> {
+            long[] row = rows.get(position);
+            CartLine line = lines.get((int) row[1]);
+            ps.setLong(1, ids.get(position));
+            ps.setLong(2, row[0]);
+            ps.setLong(3, line.bookId());
+            ps.setInt(4, line.quantity());
+            ps.setBigDecimal(5, line.unitPrice());
+        });
+    }
+}
@@ -0,0 +1,43 @@
+package com.bookstore.repository;
+
+import com.bookstore.entity.CheckoutTask;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface CheckoutTaskRepository extends JpaRepository<CheckoutTask, Long> {
+
+    @Query("SELECT t.id FROM CheckoutTask t WHERE t.orderId = :orderId AND t.status = 'PENDING'")
+    List<Long> findPendingIdsByOrderId(@Param("orderId") Long orderId);
+
+    // Việc đến hạn thử lại hoặc có worker giữ quá hạn lease
+    @Query("SELECT t.id FROM CheckoutTask t WHERE t.status IN ('PENDING', 'PROCESSING') " +
+            "AND t.nextAttemptAt <= :now ORDER BY t.nextAttemptAt")
+    List<Long> findDueIds(@Param("now") LocalDateTime now, Pageable pageable);
+
+    // Nhận việc nguyên tử: chỉ một worker (trên mọi node) cập nhật được, trả về 0 nếu đã bị nhận
+    @Transactional
+    @Modifying
+    @Query("UPDATE CheckoutTask t SET t.status = 'PROCESSING', t.attempts = t.attempts + 1, " +
+            "t.nextAttemptAt = :leaseUntil, t.updatedAt = :now " +
+            "WHERE t.id = :id AND t.status IN ('PENDING', 'PROCESSING') AND t.nextAttemptAt <= :now")
+    int claim(@Param("id") Long id, @Param("now") LocalDateTime now, @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE CheckoutTask t SET t.status = :status, t.nextAttemptAt = :nextAttemptAt, " +
+            "t.lastError = :lastError, t.updatedAt = LOCAL DATETIME WHERE t.id = :id")
+    int updateStatus(@Param("id") Long id, @Param("status") CheckoutTask.TaskStatus status,
+                     @Param("nextAttemptAt") LocalDateTime nextAttemptAt, @Param("lastError") String lastError);
+
+    @Query("SELECT COUNT(t) FROM CheckoutTask t WHERE t.status = :status")
+    long countByStatus(@Param("status") CheckoutTask.TaskStatus status);
+}
@@ -0,0 +1,104 @@
+package com.bookstore.repository;
+
+import com.bookstore.dto.RevenueSummaryDTO;
+import com.bookstore.entity.Order;
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Đọc/ghi bảng daily_revenue bằng JDBC (tham gia transaction JPA hiện tại).
+// Lỗi trùng khóa khi INSERT chỉ hủy câu lệnh đó, không làm hỏng transaction của đơn hàng.
+@Repository
+@RequiredArgsConstructor
+public class DailyRevenueRepository {
+
+    private static final String UPDATE_SQL =
+            "UPDATE daily_revenue SET order_count = order_count + ?, total_amount = total_amount + ? " +
+            "WHERE revenue_date = ? AND payment_method = ? AND payment_status = ? AND order_status = ? AND slot = ?";
+
+    private static final String INSERT_SQL =
+            "INSERT INTO daily_revenue (revenue_date, payment_method, payment_status, order_status, slot, " +
+            "order_count, total_amount) VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String BACKFILL_SQL =
+            "INSERT INTO daily_revenue (revenue_date, payment_method, payment_status, order_status, slot, " +
+            "order_count, total_amount) " +
+            "SELECT CAST(order_date AS DATE), COALESCE(payment_method, ''), COALESCE(payment_status, 'PENDING'), " +
+            "status, 0, COUNT(*), SUM(total_amount) FROM orders " +
+            "GROUP BY CAST(order_date AS DATE), COALESCE(payment_method, ''), COALESCE(payment_status, 'PENDING'), status";
+
+    private static final String SUMMARY_SQL =
+            "SELECT payment_method, payment_status, order_status, SUM(order_count), SUM(total_amount) " +
+            "FROM daily_revenue WHERE revenue_date BETWEEN ? AND ? " +
+            "GROUP BY payment_method, payment_status, order_status";
+
+    private static final String DAILY_SQL =
+            "SELECT revenue_date, SUM(total_amount) FROM daily_revenue " +
+            "WHERE payment_status = ? AND revenue_date BETWEEN ? AND ? GROUP BY revenue_date";
+
+    private static final String TOTAL_SQL =
+            "SELECT COALESCE(SUM(total_amount), 0) FROM daily_revenue WHERE payment_status = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Cộng (hoặc trừ, nếu count/amount âm) vào một nhóm; tạo dòng nếu chưa có
+    public void add(LocalDate date, String paymentMethod, Order.PaymentStatus paymentStatus,
+                    Order.OrderStatus orderStatus, int slot, long count, BigDecimal amount) {
+        Object[] key = {Date.valueOf(date), paymentMethod, paymentStatus.name(), orderStatus.name(), slot};
+        if (update(count, amount, key) > 0) {
+            return;
+        }
+        try {
+            jdbcTemplate.update(INSERT_SQL, key[0], key[1], key[2], key[3], key[4], count, amount);
+        } catch (DuplicateKeyException e) {
+            // Transaction khác vừa tạo dòng này
+            update(count, amount, key);
+        }
+    }
+
+    // Tính lại toàn bộ bảng từ orders (chạy một lần khi bảng còn trống)
+    public int backfill() {
+        jdbcTemplate.update("DELETE FROM daily_revenue");
+        return jdbcTemplate.update(BACKFILL_SQL);
+    }
+
+    public boolean isEmpty() {
+        Integer found = jdbcTemplate.query("SELECT TOP 1 1 FROM daily_revenue",
+                rs -> rs.next() ? 1 : null);
+        return found == null;
+    }
+
+    public List<RevenueSummaryDTO> summarize(LocalDate from, LocalDate to) {
+        return jdbcTemplate.query(SUMMARY_SQL, (rs, rowNum) -> new RevenueSummaryDTO(
+                rs.getString(1),
+                Order.PaymentStatus.valueOf(rs.getString(2)),
+                Order.OrderStatus.valueOf(rs.getString(3)),
+                rs.getLong(4),
+                rs.getBigDecimal(5)), Date.valueOf(from), Date.valueOf(to));
+    }
+
+    public Map<LocalDate, BigDecimal> sumByDay(Order.PaymentStatus paymentStatus, LocalDate from, LocalDate to) {
+        Map<LocalDate, BigDecimal> result = new TreeMap<>();
+        jdbcTemplate.query(DAILY_SQL, (RowCallbackHandler) rs ->
+                        result.put(rs.getDate(1).toLocalDate(), rs.getBigDecimal(2)),
+                paymentStatus.name(), Date.valueOf(from), Date.valueOf(to));
+        return result;
+    }
+
+    public BigDecimal sumAll(Order.PaymentStatus paymentStatus) {
+        return jdbcTemplate.queryForObject(TOTAL_SQL, BigDecimal.class, paymentStatus.name());
+    }
+
+    private int update(long count, BigDecimal amount, Object[] key) {
+        return jdbcTemplate.update(UPDATE_SQL, count, amount, key[0], key[1], key[2], key[3], key[4]);
+    }
+}
@@ -0,0 +1,47 @@
+package com.bookstore.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+// Đọc dữ liệu export bằng con trỏ JDBC forward-only, read-only: mỗi dòng được xử lý rồi bỏ,
+// không tạo entity nên bộ nhớ không tăng theo số dòng.
+@Repository
+public class ExportRepository {
+
+    private static final String ORDER_LINES_SQL =
+            "SELECT o.id, o.order_number, o.order_date, o.status, o.payment_status, o.payment_method, " +
+            "o.total_amount, u.email, u.full_name, o.shipping_address, " +
+            "b.isbn, b.title, oi.quantity, oi.unit_price, oi.total_price " +
+            "FROM orders o " +
+            "JOIN users u ON u.id = o.user_id " +
+            "JOIN order_items oi ON oi.order_id = o.id " +
+            "JOIN books b ON b.id = oi.book_id " +
+            "WHERE o.order_date >= ? AND o.order_date < ? " +
+            "ORDER BY o.id, oi.id";
+
+    private static final String BOOKS_SQL =
+            "SELECT b.id, b.isbn, b.title, b.author, b.publisher, b.language, b.price, b.discount_price, " +
+            "b.stock_quantity, b.sold_quantity, b.available, b.average_rating, b.review_count, b.created_at " +
+            "FROM books b ORDER BY b.id";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ExportRepository(DataSource dataSource, @Value("${app.export.fetch-size:1000}") int fetchSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+    }
+
+    public void streamOrderLines(LocalDateTime from, LocalDateTime to, RowCallbackHandler handler) {
+        jdbcTemplate.query(ORDER_LINES_SQL, handler, Timestamp.valueOf(from), Timestamp.valueOf(to));
+    }
+
+    public void streamBooks(RowCallbackHandler handler) {
+        jdbcTemplate.query(BOOKS_SQL, handler);
+    }
+}
@@ -0,0 +1,20 @@
+package com.bookstore.repository;
+
+import com.bookstore.entity.Order;
+import com.bookstore.entity.OrderItem;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface OrderItemRepository extends JpaRepository<OrderItem, Long> {
+
+    // Cặp sách được mua cùng đơn hàng: [bookId, otherBookId, số đơn]
+    @Query("SELECT a.book.id, b.book.id, COUNT(a) FROM OrderItem a, OrderItem b " +
+            "WHERE a.order.id = b.order.id AND a.book.id <> b.book.id AND a.order.status <> :excludedStatus " +
+            "GROUP BY a.book.id, b.book.id")
+    List<Object[]> countCoPurchasedPairs(@Param("excludedStatus") Order.OrderStatus excludedStatus);
+}
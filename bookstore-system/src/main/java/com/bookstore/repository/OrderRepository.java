@@ -7,6 +7,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface OrderRepository extends JpaRepository<Order, Long> {
@@ -17,4 +18,11 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
 
     @Query("SELECT COUNT(o) FROM Order o WHERE o.status = :status")
     Long countByStatus(@Param("status") Order.OrderStatus status);
+
+    // [status, count] cho mọi trạng thái trong một truy vấn
+    @Query("SELECT o.status, COUNT(o) FROM Order o GROUP BY o.status")
+    List<Object[]> countGroupByStatus();
+
+    @Query("SELECT o FROM Order o JOIN FETCH o.user WHERE o.id = :id")
+    Optional<Order> findWithUserById(@Param("id") Long id);
 }
\ No newline at end of file
@@ -0,0 +1,66 @@
+package com.bookstore.repository;
+
+import com.bookstore.event.OutboxMessage;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// Đọc/ghi bảng outbox_events bằng JDBC (tham gia transaction JPA hiện tại)
+@Repository
+@RequiredArgsConstructor
+public class OutboxRepository {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO outbox_events (aggregate_type, aggregate_id, event_type, payload, created_at) " +
+            "VALUES (?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // SQL Server: bỏ qua dòng đang bị transaction khác ghi dở thay vì chờ khóa của nó
+    private String readHint = "";
+
+    @PostConstruct
+    void detectDatabase() {
+        String product = jdbcTemplate.execute((ConnectionCallback<String>) c -> c.getMetaData().getDatabaseProductName());
+        if (product != null && product.contains("SQL Server")) {
+            readHint = " WITH (READPAST)";
+        }
+    }
+
+    public void insert(String aggregateType, Long aggregateId, String eventType, String payload) {
+        jdbcTemplate.update(INSERT_SQL, aggregateType, aggregateId, eventType, payload,
+                Timestamp.valueOf(LocalDateTime.now()));
+    }
+
+    // Các sự kiện đã commit, cũ nhất trước; không giữ khóa sau khi đọc xong
+    public List<OutboxMessage> fetchBatch(int limit) {
+        List<OutboxMessage> batch = new ArrayList<>(limit);
+        jdbcTemplate.query("SELECT TOP " + limit + " id, aggregate_type, aggregate_id, event_type, payload, created_at " +
+                        "FROM outbox_events" + readHint + " ORDER BY id",
+                (RowCallbackHandler) rs -> batch.add(new OutboxMessage(rs.getLong(1), rs.getString(2),
+                        rs.getLong(3), rs.getString(4), rs.getString(5), rs.getTimestamp(6).toLocalDateTime())));
+        return batch;
+    }
+
+    // Xóa theo id (không theo khoảng): id nhỏ hơn của transaction chưa commit không bị xóa nhầm
+    public void delete(List<OutboxMessage> delivered) {
+        if (delivered.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate("DELETE FROM outbox_events WHERE id = ?", delivered, delivered.size(),
+                (ps, message) -> ps.setLong(1, message.id()));
+    }
+
+    public long count() {
+        Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM outbox_events", Long.class);
+        return count == null ? 0 : count;
+    }
+}
@@ -0,0 +1,29 @@
+package com.bookstore.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Cấp ID theo khối cho các insert bằng JDBC, giống pooled optimizer của Hibernate:
+// mỗi giá trị V lấy từ sequence sở hữu các ID V-49..V, nên không trùng với ID do Hibernate cấp
+final class PooledSequence {
+
+    // Phải bằng allocationSize của các entity
+    static final int BLOCK_SIZE = 50;
+
+    private PooledSequence() {
+    }
+
+    static List<Long> allocate(JdbcTemplate jdbcTemplate, String sequence, int count) {
+        List<Long> ids = new ArrayList<>(count);
+        while (ids.size() < count) {
+            Long hi = jdbcTemplate.queryForObject("SELECT NEXT VALUE FOR " + sequence, Long.class);
+            // Giá trị đầu tiên của sequence mới (1) chỉ sở hữu chính nó
+            for (long id = Math.max(1, hi - BLOCK_SIZE + 1); id <= hi && ids.size() < count; id++) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+}
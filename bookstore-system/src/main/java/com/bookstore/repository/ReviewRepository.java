@@ -30,5 +30,8 @@ public interface ReviewRepository extends JpaRepository<Review, Long> {
     @Query("SELECT COUNT(r) FROM Review r WHERE r.book.id = :bookId AND r.rating = :rating")
     Long countByBookIdAndRating(@Param("bookId") Long bookId, @Param("rating") Integer rating);
 
+    @Query("SELECT r.rating FROM Review r WHERE r.id = :id")
+    Optional<Integer> findRatingById(@Param("id") Long id);
+
     boolean existsByBookIdAndUserId(Long bookId, Long userId);
 }
\ No newline at end of file
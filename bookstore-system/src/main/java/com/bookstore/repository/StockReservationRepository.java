@@ -0,0 +1,100 @@
+package com.bookstore.repository;
+
+import com.bookstore.exception.InsufficientStockException;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+// Trừ kho cho nhiều sách trong một JDBC batch (tham gia transaction JPA hiện tại)
+@Repository
+@RequiredArgsConstructor
+public class StockReservationRepository {
+
+    private static final String DECREMENT_SQL =
+            "UPDATE books SET stock_quantity = stock_quantity - ?, " +
+            "sold_quantity = COALESCE(sold_quantity, 0) + ?, updated_at = ? " +
+            "WHERE id = ? AND stock_quantity >= ?";
+
+    // Trả hàng của đơn bị hủy: cộng lại kho và trừ lại số đã bán (không xuống dưới 0)
+    private static final String RESTORE_SQL =
+            "UPDATE books SET stock_quantity = stock_quantity + ?, " +
+            "sold_quantity = CASE WHEN COALESCE(sold_quantity, 0) > ? THEN sold_quantity - ? ELSE 0 END, " +
+            "updated_at = ? WHERE id = ?";
+
+    private static final String STOCK_SQL = "SELECT id, stock_quantity FROM books WHERE id IN (:ids)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    // Cập nhật theo thứ tự ID tăng dần để các đơn đồng thời luôn khóa dòng cùng thứ tự (tránh deadlock).
+    // Trả về danh sách thiếu hàng; caller phải rollback transaction nếu danh sách không rỗng.
+    public List<InsufficientStockException.Shortage> decrementAll(SortedMap<Long, Integer> quantities) {
+        if (quantities.isEmpty()) {
+            return List.of();
+        }
+        List<Map.Entry<Long, Integer>> entries = new ArrayList<>(quantities.entrySet());
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+
+        int[] counts = jdbcTemplate.batchUpdate(DECREMENT_SQL, entries, entries.size(), (ps, entry) -> {
+            ps.setInt(1, entry.getValue());
+            ps.setInt(2, entry.getValue());
+            ps.setTimestamp(3, now);
+            ps.setLong(4, entry.getKey());
+            ps.setInt(5, entry.getValue());
+        })[0];
+
+        List<Long> failed = new ArrayList<>();
+        for (int i = 0; i < counts.length; i++) {
+            // Một số driver không trả về số dòng (SUCCESS_NO_INFO): coi như thành công
+            if (counts[i] == 0) {
+                failed.add(entries.get(i).getKey());
+            } else if (counts[i] != 1 && counts[i] != Statement.SUCCESS_NO_INFO) {
+                throw new IllegalStateException("Unexpected update count " + counts[i]
+                        + " for book ID: " + entries.get(i).getKey());
+            }
+        }
+        if (failed.isEmpty()) {
+            return List.of();
+        }
+
+        Map<Long, Integer> available = new HashMap<>();
+        namedParameterJdbcTemplate.query(STOCK_SQL, new MapSqlParameterSource("ids", failed),
+                (RowCallbackHandler) rs -> available.put(rs.getLong("id"), rs.getInt("stock_quantity")));
+
+        List<InsufficientStockException.Shortage> shortages = new ArrayList<>();
+        for (Long bookId : failed) {
+            shortages.add(new InsufficientStockException.Shortage(
+                    bookId, quantities.get(bookId), available.getOrDefault(bookId, 0)));
+        }
+        return shortages;
+    }
+
+    // Ngược lại của decrementAll cho đơn bị hủy, cùng thứ tự ID tăng dần
+    public void restoreAll(SortedMap<Long, Integer> quantities) {
+        if (quantities.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<Long, Integer>> entries = new ArrayList<>(quantities.entrySet());
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+
+        jdbcTemplate.batchUpdate(RESTORE_SQL, entries, entries.size(), (ps, entry) -> {
+            ps.setInt(1, entry.getValue());
+            ps.setInt(2, entry.getValue());
+            ps.setInt(3, entry.getValue());
+            ps.setTimestamp(4, now);
+            ps.setLong(5, entry.getKey());
+        });
+    }
+}
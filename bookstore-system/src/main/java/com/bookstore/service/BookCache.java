@@ -0,0 +1,88 @@
+package com.bookstore.service;
+
+import com.bookstore.entity.Book;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Hibernate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.function.Function;
+
+// Near-cache cho trang chi tiết sách: giữ snapshot Book (categories đã load sẵn) theo ID.
+// Snapshot không bao giờ ra khỏi cache: mỗi lần đọc trả về một bản sao riêng, nên người gọi sửa Book
+// (giá, tồn kho, danh sách categories...) không làm đổi dữ liệu mà các request khác đang đọc.
+@Slf4j
+@Component
+public class BookCache implements MeterBinder {
+
+    private static final String CACHE_NAME = "books";
+
+    private final Cache<Long, Book> cache;
+
+    public BookCache(@Value("${app.cache.books.max-size:10000}") long maxSize,
+                     @Value("${app.cache.books.ttl:10m}") Duration ttl) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        log.info("Book cache initialized with max size {} and TTL {}", maxSize, ttl);
+    }
+
+    public Optional<Book> get(Long id, Function<Long, Book> loader) {
+        // Loader trả về null khi không tìm thấy -> không cache kết quả rỗng.
+        // Cache giữ bản sao của entity vừa nạp (entity đó có thể đang thuộc persistence context của người gọi)
+        return Optional.ofNullable(cache.get(id, key -> copyOf(loader.apply(key)))).map(BookCache::copyOf);
+    }
+
+    public void evict(Long id) {
+        if (id == null) {
+            return;
+        }
+        cache.invalidate(id);
+
+        // Xóa lại sau commit để request đọc song song không nạp lại dữ liệu cũ vào cache
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.invalidate(id);
+                }
+            });
+        }
+    }
+
+    // Danh sách được chép sang list mới; ảnh phụ chỉ có khi entity gốc đã nạp chúng (trang chi tiết không dùng)
+    private static Book copyOf(Book book) {
+        if (book == null) {
+            return null;
+        }
+        return book.toBuilder()
+                .categories(new ArrayList<>(book.getCategories()))
+                .images(Hibernate.isInitialized(book.getImages()) ? new ArrayList<>(book.getImages()) : new ArrayList<>())
+                .build();
+    }
+
+    public void evictAll() {
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, CACHE_NAME);
+    }
+}
@@ -0,0 +1,557 @@
+package com.bookstore.service;
+
+import com.bookstore.dto.BookSearchDTO;
+import com.bookstore.dto.FacetCountDTO;
+import com.bookstore.event.BookChangedEvent;
+import com.bookstore.event.CatalogImportedEvent;
+import com.bookstore.event.OrderPlacedEvent;
+import com.bookstore.repository.BookRepository;
+import com.bookstore.util.PriceFormatter;
+import com.bookstore.util.TextNormalizer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Facet index trong bộ nhớ: mỗi giá trị facet giữ một bitset các sách,
+// lọc bằng phép AND bitset và đếm facet trong một lượt duyệt kết quả
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BookFacetIndex {
+
+    // Khoảng giá (VND): [0, 50k), [50k, 100k), [100k, 200k), [200k, 500k), [500k, ...)
+    private static final long[] PRICE_BUCKET_BOUNDS = {0, 50_000, 100_000, 200_000, 500_000};
+    private static final int MAX_AUTHOR_FACETS = 20;
+    private static final int REBUILD_BATCH_SIZE = 1000;
+    private static final int MIN_DOCS_FOR_COMPACTION = 1000;
+
+    // Các chiều lọc; sách trượt đúng một chiều vẫn được đếm cho facet của chiều đó
+    private static final int DIM_CATEGORY = 0;
+    private static final int DIM_PRICE = 1;
+    private static final int DIM_AUTHOR = 2;
+    private static final int DIM_LANGUAGE = 3;
+    private static final int DIM_IN_STOCK = 4;
+    private static final int DIM_ON_SALE = 5;
+    private static final int DIMENSIONS = 6;
+
+    private final BookRepository bookRepository;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Segment segment = new Segment();
+
+    // Khác null khi đang rebuild: thay đổi của từng sách (null = đã xóa/ngừng bán) được ghi lại
+    // để áp lên segment mới lúc hoán đổi
+    private Map<Long, DocFacts> changedDuringRebuild;
+
+    private volatile boolean ready = false;
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return segment.liveDocs.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ========================
+    // INDEXING
+    // ========================
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuild();
+    }
+
+    @EventListener
+    public void onCatalogImported(CatalogImportedEvent event) {
+        rebuild();
+    }
+
+    // Build vào segment mới ngoài khóa rồi hoán đổi: index cũ vẫn phục vụ tìm kiếm trong suốt quá trình rebuild
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            changedDuringRebuild = new HashMap<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Segment rebuilt = new Segment();
+        try {
+            Map<Long, List<Long>> categoriesByBook = new HashMap<>();
+            for (Object[] row : bookRepository.findBookCategoryPairs()) {
+                categoriesByBook.computeIfAbsent((Long) row[0], k -> new ArrayList<>()).add((Long) row[1]);
+            }
+            Long lastId = 0L;
+            List<Object[]> batch;
+            do {
+                batch = bookRepository.findFacetFactsBatch(lastId, PageRequest.of(0, REBUILD_BATCH_SIZE));
+                for (Object[] row : batch) {
+                    Long bookId = (Long) row[0];
+                    DocFacts facts = toFacts(row, categoriesByBook.getOrDefault(bookId, List.of()));
+                    if (facts != null) {
+                        rebuilt.addDoc(facts);
+                    }
+                    lastId = bookId;
+                }
+            } while (batch.size() == REBUILD_BATCH_SIZE);
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                changedDuringRebuild = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+
+        lock.writeLock().lock();
+        try {
+            // Sách/tồn kho thay đổi trong lúc rebuild: áp bản mới nhất lên segment mới
+            changedDuringRebuild.forEach((bookId, facts) -> rebuilt.replace(bookId, facts));
+            changedDuringRebuild = null;
+            rebuilt.compactIfNeeded();
+            segment = rebuilt;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        log.info("Facet index rebuilt with {} books, {} categories, {} authors in {} ms",
+                rebuilt.liveDocs.cardinality(), rebuilt.docsByCategory.size(), rebuilt.docsByAuthor.size(),
+                System.currentTimeMillis() - start);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBookChanged(BookChangedEvent event) {
+        if (event.type() == BookChangedEvent.ChangeType.DELETED) {
+            remove(event.bookId());
+            return;
+        }
+        reindex(event.bookId());
+    }
+
+    // Đặt hàng làm thay đổi tồn kho -> cập nhật facet "còn hàng".
+    // Gọi từ PostCheckoutService trên luồng nền, sau khi đơn hàng đã commit
+    public void onOrderPlaced(OrderPlacedEvent event) {
+        event.bookQuantities().keySet().forEach(this::reindex);
+    }
+
+    public void reindex(Long bookId) {
+        List<Object[]> rows = bookRepository.findFacetFactsById(bookId);
+        DocFacts facts = rows.isEmpty() ? null : toFacts(rows.get(0), bookRepository.findCategoryIdsByBookId(bookId));
+        apply(bookId, facts);
+    }
+
+    public void remove(Long bookId) {
+        apply(bookId, null);
+    }
+
+    private void apply(Long bookId, DocFacts facts) {
+        lock.writeLock().lock();
+        try {
+            segment.replace(bookId, facts);
+            segment.compactIfNeeded();
+            if (changedDuringRebuild != null) {
+                changedDuringRebuild.put(bookId, facts);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private DocFacts toFacts(Object[] row, List<Long> categoryIds) {
+        if (!Boolean.TRUE.equals(row[6])) {
+            // Sách ngừng bán không xuất hiện trong kết quả tìm kiếm
+            return null;
+        }
+        BigDecimal price = (BigDecimal) row[3];
+        BigDecimal discountPrice = (BigDecimal) row[4];
+        boolean onSale = price != null && discountPrice != null && discountPrice.compareTo(price) < 0;
+        BigDecimal currentPrice = discountPrice != null ? discountPrice : price;
+        int stock = row[5] == null ? 0 : ((Number) row[5]).intValue();
+        int sold = row[8] == null ? 0 : ((Number) row[8]).intValue();
+
+        return new DocFacts(
+                (Long) row[0],
+                TextNormalizer.fold((String) row[1]),
+                (String) row[2],
+                currentPrice == null ? BigDecimal.ZERO : currentPrice,
+                stock > 0,
+                onSale,
+                (String) row[7],
+                sold,
+                (LocalDateTime) row[9],
+                categoryIds.stream().mapToLong(Long::longValue).toArray());
+    }
+
+    // Trả về true nếu giá trị facet không còn sách nào
+    private static <K> boolean clearBit(Map<K, BitSet> index, K value, int doc) {
+        BitSet bits = index.get(value);
+        if (bits == null) {
+            return false;
+        }
+        bits.clear(doc);
+        if (bits.isEmpty()) {
+            index.remove(value);
+            return true;
+        }
+        return false;
+    }
+
+    // ========================
+    // SEARCH
+    // ========================
+
+    // rankedBookIds: kết quả từ full-text index theo thứ tự liên quan, null nếu không có từ khóa
+    public FacetResult search(BookSearchDTO criteria, List<Long> rankedBookIds, int offset, int limit) {
+        lock.readLock().lock();
+        try {
+            return segment.search(criteria, rankedBookIds, offset, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static <K> List<FacetCountDTO> toFacetCounts(Map<K, Long> counts,
+                                                         Function<K, String> value,
+                                                         Function<K, String> label,
+                                                         int limit) {
+        return counts.entrySet().stream()
+                .sorted(Map.Entry.<K, Long>comparingByValue().reversed()
+                        .thenComparing(entry -> value.apply(entry.getKey())))
+                .limit(limit)
+                .map(entry -> new FacetCountDTO(value.apply(entry.getKey()),
+                        label.apply(entry.getKey()), entry.getValue()))
+                .collect(Collectors.toList());
+    }
+
+    private static List<FacetCountDTO> priceFacets(long[] counts) {
+        List<FacetCountDTO> result = new ArrayList<>();
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            if (counts[bucket] == 0) {
+                continue;
+            }
+            long min = PRICE_BUCKET_BOUNDS[bucket];
+            boolean last = bucket == counts.length - 1;
+            String value = last ? min + "-" : min + "-" + PRICE_BUCKET_BOUNDS[bucket + 1];
+            String label;
+            if (bucket == 0) {
+                label = "Under " + PriceFormatter.formatVND(PRICE_BUCKET_BOUNDS[1]);
+            } else if (last) {
+                label = "Over " + PriceFormatter.formatVND(min);
+            } else {
+                label = PriceFormatter.formatVND(min) + " - " + PriceFormatter.formatVND(PRICE_BUCKET_BOUNDS[bucket + 1]);
+            }
+            result.add(new FacetCountDTO(value, label, counts[bucket]));
+        }
+        return result;
+    }
+
+    private static int priceBucket(BigDecimal price) {
+        long value = price.longValue();
+        for (int bucket = PRICE_BUCKET_BOUNDS.length - 1; bucket > 0; bucket--) {
+            if (value >= PRICE_BUCKET_BOUNDS[bucket]) {
+                return bucket;
+            }
+        }
+        return 0;
+    }
+
+    private static boolean inPriceRange(BigDecimal price, BigDecimal minPrice, BigDecimal maxPrice) {
+        return (minPrice == null || price.compareTo(minPrice) >= 0)
+                && (maxPrice == null || price.compareTo(maxPrice) <= 0);
+    }
+
+    private static String key(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // Dữ liệu của một phiên bản index. Rebuild tạo segment mới (không ai khác thấy) rồi hoán đổi dưới write lock
+    private static final class Segment {
+        private final Map<Long, Integer> docByBook = new HashMap<>();
+        private final BitSet liveDocs = new BitSet();
+        private final Map<Long, BitSet> docsByCategory = new HashMap<>();
+        private final Map<String, BitSet> docsByAuthor = new HashMap<>();
+        private final Map<String, BitSet> docsByLanguage = new HashMap<>();
+        private final BitSet[] docsByPriceBucket = new BitSet[PRICE_BUCKET_BOUNDS.length];
+        private final BitSet inStockDocs = new BitSet();
+        private final BitSet onSaleDocs = new BitSet();
+        private final Map<String, String> authorLabels = new HashMap<>();
+        private final Map<String, String> languageLabels = new HashMap<>();
+        private DocFacts[] docs = new DocFacts[1024];
+        private int docCount = 0;
+
+        {
+            for (int i = 0; i < docsByPriceBucket.length; i++) {
+                docsByPriceBucket[i] = new BitSet();
+            }
+        }
+
+        // Bỏ doc cũ của sách rồi thêm lại nếu sách vẫn đang bán
+        private void replace(Long bookId, DocFacts facts) {
+            removeInternal(bookId);
+            if (facts != null) {
+                addDoc(facts);
+            }
+        }
+
+        private void addDoc(DocFacts facts) {
+            int doc = docCount++;
+            if (doc >= docs.length) {
+                docs = Arrays.copyOf(docs, Math.max(docs.length * 2, docCount));
+            }
+            docs[doc] = facts;
+            docByBook.put(facts.bookId(), doc);
+            liveDocs.set(doc);
+
+            for (long categoryId : facts.categoryIds()) {
+                docsByCategory.computeIfAbsent(categoryId, k -> new BitSet()).set(doc);
+            }
+            String authorKey = key(facts.author());
+            if (authorKey != null) {
+                docsByAuthor.computeIfAbsent(authorKey, k -> new BitSet()).set(doc);
+                authorLabels.putIfAbsent(authorKey, facts.author().trim());
+            }
+            String languageKey = key(facts.language());
+            if (languageKey != null) {
+                docsByLanguage.computeIfAbsent(languageKey, k -> new BitSet()).set(doc);
+                languageLabels.putIfAbsent(languageKey, facts.language().trim());
+            }
+            docsByPriceBucket[priceBucket(facts.price())].set(doc);
+            if (facts.inStock()) {
+                inStockDocs.set(doc);
+            }
+            if (facts.onSale()) {
+                onSaleDocs.set(doc);
+            }
+        }
+
+        private void removeInternal(Long bookId) {
+            Integer doc = docByBook.remove(bookId);
+            if (doc == null) {
+                return;
+            }
+            DocFacts facts = docs[doc];
+            docs[doc] = null;
+            liveDocs.clear(doc);
+
+            for (long categoryId : facts.categoryIds()) {
+                clearBit(docsByCategory, categoryId, doc);
+            }
+            String authorKey = key(facts.author());
+            if (authorKey != null && clearBit(docsByAuthor, authorKey, doc)) {
+                authorLabels.remove(authorKey);
+            }
+            String languageKey = key(facts.language());
+            if (languageKey != null && clearBit(docsByLanguage, languageKey, doc)) {
+                languageLabels.remove(languageKey);
+            }
+            docsByPriceBucket[priceBucket(facts.price())].clear(doc);
+            inStockDocs.clear(doc);
+            onSaleDocs.clear(doc);
+        }
+
+        // Doc ID chỉ tăng; đánh số lại khi quá nửa số slot là sách đã xóa/cập nhật
+        private void compactIfNeeded() {
+            int live = docByBook.size();
+            if (docCount < MIN_DOCS_FOR_COMPACTION || docCount - live <= live) {
+                return;
+            }
+            List<DocFacts> remaining = new ArrayList<>(live);
+            for (int doc = liveDocs.nextSetBit(0); doc >= 0; doc = liveDocs.nextSetBit(doc + 1)) {
+                remaining.add(docs[doc]);
+            }
+            clear();
+            remaining.forEach(this::addDoc);
+        }
+
+        private void clear() {
+            docByBook.clear();
+            liveDocs.clear();
+            docsByCategory.clear();
+            docsByAuthor.clear();
+            docsByLanguage.clear();
+            authorLabels.clear();
+            languageLabels.clear();
+            for (BitSet bucket : docsByPriceBucket) {
+                bucket.clear();
+            }
+            inStockDocs.clear();
+            onSaleDocs.clear();
+            docs = new DocFacts[1024];
+            docCount = 0;
+        }
+
+        // rankedBookIds: kết quả từ full-text index theo thứ tự liên quan, null nếu không có từ khóa
+        private FacetResult search(BookSearchDTO criteria, List<Long> rankedBookIds, int offset, int limit) {
+            BitSet candidates;
+            Map<Integer, Integer> rankByDoc = null;
+            if (rankedBookIds != null) {
+                candidates = new BitSet(docCount);
+                rankByDoc = new HashMap<>();
+                for (int rank = 0; rank < rankedBookIds.size(); rank++) {
+                    Integer doc = docByBook.get(rankedBookIds.get(rank));
+                    if (doc != null) {
+                        candidates.set(doc);
+                        rankByDoc.put(doc, rank);
+                    }
+                }
+            } else {
+                candidates = (BitSet) liveDocs.clone();
+            }
+
+            BitSet[] filters = filtersFor(criteria);
+            BigDecimal minPrice = criteria.getMinPrice();
+            BigDecimal maxPrice = criteria.getMaxPrice();
+
+            Map<Long, Long> categoryCounts = new HashMap<>();
+            long[] priceCounts = new long[PRICE_BUCKET_BOUNDS.length];
+            Map<String, Long> authorCounts = new HashMap<>();
+            Map<String, Long> languageCounts = new HashMap<>();
+            long inStockCount = 0;
+            long onSaleCount = 0;
+            List<Integer> matches = new ArrayList<>();
+
+            for (int doc = candidates.nextSetBit(0); doc >= 0; doc = candidates.nextSetBit(doc + 1)) {
+                DocFacts facts = docs[doc];
+                int failed = -1;
+                int failures = 0;
+                for (int dim = 0; dim < DIMENSIONS && failures < 2; dim++) {
+                    boolean passes = dim == DIM_PRICE
+                            ? inPriceRange(facts.price(), minPrice, maxPrice)
+                            : filters[dim] == null || filters[dim].get(doc);
+                    if (!passes) {
+                        failed = dim;
+                        failures++;
+                    }
+                }
+                if (failures > 1) {
+                    continue;
+                }
+                if (failures == 0) {
+                    matches.add(doc);
+                }
+
+                // Facet của một chiều được đếm bỏ qua bộ lọc của chính chiều đó
+                if (failed == -1 || failed == DIM_CATEGORY) {
+                    for (long categoryId : facts.categoryIds()) {
+                        categoryCounts.merge(categoryId, 1L, Long::sum);
+                    }
+                }
+                if (failed == -1 || failed == DIM_PRICE) {
+                    priceCounts[priceBucket(facts.price())]++;
+                }
+                if ((failed == -1 || failed == DIM_AUTHOR) && key(facts.author()) != null) {
+                    authorCounts.merge(key(facts.author()), 1L, Long::sum);
+                }
+                if ((failed == -1 || failed == DIM_LANGUAGE) && key(facts.language()) != null) {
+                    languageCounts.merge(key(facts.language()), 1L, Long::sum);
+                }
+                if ((failed == -1 || failed == DIM_IN_STOCK) && facts.inStock()) {
+                    inStockCount++;
+                }
+                if ((failed == -1 || failed == DIM_ON_SALE) && facts.onSale()) {
+                    onSaleCount++;
+                }
+            }
+
+            matches.sort(orderFor(criteria, rankByDoc));
+            List<Long> page = matches.stream()
+                    .skip(offset)
+                    .limit(limit)
+                    .map(doc -> docs[doc].bookId())
+                    .collect(Collectors.toList());
+
+            return new FacetResult(page, matches.size(),
+                    toFacetCounts(categoryCounts, String::valueOf, id -> null, Integer.MAX_VALUE),
+                    priceFacets(priceCounts),
+                    toFacetCounts(authorCounts, k -> k, authorLabels::get, MAX_AUTHOR_FACETS),
+                    toFacetCounts(languageCounts, k -> k, languageLabels::get, Integer.MAX_VALUE),
+                    inStockCount, onSaleCount);
+        }
+
+        private BitSet[] filtersFor(BookSearchDTO criteria) {
+            BitSet[] filters = new BitSet[DIMENSIONS];
+            if (criteria.getCategoryId() != null) {
+                filters[DIM_CATEGORY] = docsByCategory.getOrDefault(criteria.getCategoryId(), new BitSet());
+            }
+            String authorKey = key(criteria.getAuthor());
+            if (authorKey != null) {
+                filters[DIM_AUTHOR] = docsByAuthor.getOrDefault(authorKey, new BitSet());
+            }
+            String languageKey = key(criteria.getLanguage());
+            if (languageKey != null) {
+                filters[DIM_LANGUAGE] = docsByLanguage.getOrDefault(languageKey, new BitSet());
+            }
+            if (Boolean.TRUE.equals(criteria.getInStockOnly())) {
+                filters[DIM_IN_STOCK] = inStockDocs;
+            }
+            if (Boolean.TRUE.equals(criteria.getOnSaleOnly())) {
+                filters[DIM_ON_SALE] = onSaleDocs;
+            }
+            return filters;
+        }
+
+        private Comparator<Integer> orderFor(BookSearchDTO criteria, Map<Integer, Integer> rankByDoc) {
+            String sortBy = criteria.getSortBy();
+            Comparator<DocFacts> order;
+            if ("price".equals(sortBy)) {
+                order = Comparator.comparing(DocFacts::price);
+            } else if ("title".equals(sortBy)) {
+                order = Comparator.comparing(DocFacts::title);
+            } else if ("soldQuantity".equals(sortBy)) {
+                order = Comparator.comparingInt(DocFacts::sold);
+            } else if (rankByDoc != null) {
+                // Có từ khóa và không chọn sắp xếp cụ thể: giữ thứ tự liên quan
+                return Comparator.comparing(rankByDoc::get);
+            } else {
+                order = Comparator.comparing(DocFacts::createdAt, Comparator.nullsFirst(Comparator.naturalOrder()));
+            }
+            if ("DESC".equalsIgnoreCase(criteria.getSortDirection())) {
+                order = order.reversed();
+            }
+            Comparator<DocFacts> withTieBreak = order.thenComparingLong(DocFacts::bookId);
+            return (a, b) -> withTieBreak.compare(docs[a], docs[b]);
+        }
+    }
+
+    public record FacetResult(List<Long> bookIds, long totalHits,
+                              List<FacetCountDTO> categories, List<FacetCountDTO> priceRanges,
+                              List<FacetCountDTO> authors, List<FacetCountDTO> languages,
+                              long inStockCount, long onSaleCount) {
+    }
+
+    private record DocFacts(Long bookId, String title, String author, BigDecimal price,
+                            boolean inStock, boolean onSale, String language, int sold,
+                            LocalDateTime createdAt, long[] categoryIds) {
+    }
+}
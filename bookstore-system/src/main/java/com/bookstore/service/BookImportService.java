@@ -0,0 +1,292 @@
+package com.bookstore.service;
+
+import com.bookstore.dto.ImportReportDTO;
+import com.bookstore.entity.Category;
+import com.bookstore.event.CatalogImportedEvent;
+import com.bookstore.repository.BookImportRepository;
+import com.bookstore.repository.CategoryRepository;
+import com.bookstore.util.CsvReader;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Import sách hàng loạt từ CSV của nhà cung cấp.
+// Cột bắt buộc: isbn, title, author, price. Cột tùy chọn: description, publisher, language,
+// discount_price, stock_quantity, pages, cover_image, categories (slug, ngăn cách bằng '|').
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BookImportService {
+
+    private static final int MAX_ERRORS = 100;
+    private static final int MAX_BATCH_SIZE = 1000;
+    private static final String[] REQUIRED_COLUMNS = {"isbn", "title", "author", "price"};
+
+    private final BookImportRepository bookImportRepository;
+    private final CategoryRepository categoryRepository;
+    private final PlatformTransactionManager transactionManager;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${app.import.batch-size:500}")
+    private int batchSize;
+
+    private ThreadPoolExecutor rebuildExecutor;
+
+    @PostConstruct
+    public void start() {
+        // Một luồng, tối đa một lần rebuild chờ: lần đang chờ sẽ đọc lại toàn bộ DB nên các lần import sau được gộp vào
+        rebuildExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(1), runnable -> {
+                    Thread thread = new Thread(runnable, "catalog-rebuild");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        rebuildExecutor.shutdown();
+        if (!rebuildExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+            rebuildExecutor.shutdownNow();
+        }
+    }
+
+    public ImportReportDTO importBooks(Reader source) throws IOException {
+        long start = System.nanoTime();
+        ImportReportDTO report = new ImportReportDTO();
+        CsvReader reader = new CsvReader(source);
+
+        List<String> header = reader.next();
+        if (header == null) {
+            return report;
+        }
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            columns.put(header.get(i).trim().toLowerCase(Locale.ROOT), i);
+        }
+        for (String required : REQUIRED_COLUMNS) {
+            if (!columns.containsKey(required)) {
+                throw new IllegalArgumentException("Missing required column: " + required);
+            }
+        }
+
+        // Nạp trước ISBN đã có và danh mục theo slug: không truy vấn DB cho từng dòng
+        Set<String> knownIsbns = new HashSet<>();
+        bookImportRepository.forEachIsbn(isbn -> knownIsbns.add(normalizeIsbn(isbn)));
+        Map<String, Long> categoryIds = new HashMap<>();
+        for (Category category : categoryRepository.findAll()) {
+            if (category.getSlug() != null) {
+                categoryIds.put(category.getSlug().toLowerCase(Locale.ROOT), category.getId());
+            }
+        }
+
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        int size = Math.max(1, Math.min(batchSize, MAX_BATCH_SIZE));
+        List<BookImportRepository.ImportRow> batch = new ArrayList<>(size);
+        // ISBN của batch chưa ghi: chỉ đưa vào knownIsbns khi batch commit, batch lỗi thì dòng trùng sau đó vẫn được thử lại
+        Set<String> pendingIsbns = new HashSet<>();
+        int batches = 0;
+
+        List<String> record;
+        while ((record = reader.next()) != null) {
+            report.setRowsRead(report.getRowsRead() + 1);
+            BookImportRepository.ImportRow row;
+            try {
+                row = parse(record, columns, categoryIds, report);
+            } catch (IllegalArgumentException e) {
+                report.setInvalid(report.getInvalid() + 1);
+                addError(report, "Line " + reader.getRecordLine() + ": " + e.getMessage());
+                continue;
+            }
+            String isbn = normalizeIsbn(row.isbn());
+            if (knownIsbns.contains(isbn) || !pendingIsbns.add(isbn)) {
+                report.setDuplicates(report.getDuplicates() + 1);
+                continue;
+            }
+            batch.add(row);
+            if (batch.size() == size) {
+                if (flush(batch, transactionTemplate, report, reader.getRecordLine())) {
+                    knownIsbns.addAll(pendingIsbns);
+                }
+                batch.clear();
+                pendingIsbns.clear();
+                if (++batches % 100 == 0) {
+                    log.info("Book import progress: {} rows read, {} imported, {} books/s",
+                            report.getRowsRead(), report.getImported(), perSecond(report.getImported(), start));
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            flush(batch, transactionTemplate, report, reader.getRecordLine());
+        }
+
+        report.setElapsedMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        report.setBooksPerSecond(perSecond(report.getImported(), start));
+        log.info("Book import finished: {} rows, {} imported, {} duplicates, {} invalid, {} failed in {} ms ({} books/s)",
+                report.getRowsRead(), report.getImported(), report.getDuplicates(), report.getInvalid(),
+                report.getFailed(), report.getElapsedMillis(), report.getBooksPerSecond());
+
+        if (report.getImported() > 0) {
+            // Rebuild các index chạy nền: request import trả về ngay khi dữ liệu đã ghi xong
+            long imported = report.getImported();
+            rebuildExecutor.execute(() -> {
+                try {
+                    eventPublisher.publishEvent(new CatalogImportedEvent(imported));
+                } catch (RuntimeException e) {
+                    log.error("Rebuilding indexes after book import failed: {}", e.getMessage(), e);
+                }
+            });
+        }
+        return report;
+    }
+
+    // Mỗi batch một transaction: batch lỗi chỉ mất batch đó, các batch trước vẫn được giữ
+    private boolean flush(List<BookImportRepository.ImportRow> batch, TransactionTemplate transactionTemplate,
+                          ImportReportDTO report, int line) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                List<Long> ids = bookImportRepository.insertBooks(batch);
+                List<long[]> links = new ArrayList<>();
+                for (int i = 0; i < batch.size(); i++) {
+                    for (Long categoryId : batch.get(i).categoryIds()) {
+                        links.add(new long[]{ids.get(i), categoryId});
+                    }
+                }
+                bookImportRepository.insertCategoryLinks(links);
+            });
+            report.setImported(report.getImported() + batch.size());
+            return true;
+        } catch (DataAccessException e) {
+            report.setFailed(report.getFailed() + batch.size());
+            addError(report, "Batch ending at line " + line + " failed: " + e.getMostSpecificCause().getMessage());
+            log.error("Book import batch ending at line {} failed: {}", line, e.getMessage());
+            return false;
+        }
+    }
+
+    private BookImportRepository.ImportRow parse(List<String> record, Map<String, Integer> columns,
+                                                 Map<String, Long> categoryIds, ImportReportDTO report) {
+        String isbn = required(record, columns, "isbn", 20);
+        String title = required(record, columns, "title", 255);
+        String author = required(record, columns, "author", 100);
+        BigDecimal price = decimal(required(record, columns, "price", 20), "price");
+        BigDecimal discountPrice = decimal(optional(record, columns, "discount_price"), "discount_price");
+        String stock = optional(record, columns, "stock_quantity");
+        String pages = optional(record, columns, "pages");
+
+        List<Long> categories = new ArrayList<>();
+        String slugs = optional(record, columns, "categories");
+        if (slugs != null) {
+            for (String slug : slugs.split("\\|")) {
+                String key = slug.trim().toLowerCase(Locale.ROOT);
+                if (key.isEmpty()) {
+                    continue;
+                }
+                Long categoryId = categoryIds.get(key);
+                if (categoryId == null) {
+                    report.getUnknownCategories().add(key);
+                } else if (!categories.contains(categoryId)) {
+                    categories.add(categoryId);
+                }
+            }
+        }
+
+        return new BookImportRepository.ImportRow(
+                isbn, title, author,
+                optional(record, columns, "description"),
+                truncate(optional(record, columns, "publisher"), 100),
+                truncate(optional(record, columns, "language"), 20),
+                price, discountPrice,
+                stock != null ? integer(stock, "stock_quantity") : 0,
+                pages != null ? integer(pages, "pages") : null,
+                truncate(optional(record, columns, "cover_image"), 500),
+                categories);
+    }
+
+    private static String required(List<String> record, Map<String, Integer> columns, String name, int maxLength) {
+        String value = optional(record, columns, name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing " + name);
+        }
+        if (value.length() > maxLength) {
+            throw new IllegalArgumentException(name + " is longer than " + maxLength + " characters");
+        }
+        return value;
+    }
+
+    private static String optional(List<String> record, Map<String, Integer> columns, String name) {
+        Integer index = columns.get(name);
+        if (index == null || index >= record.size()) {
+            return null;
+        }
+        String value = record.get(index).trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    private static BigDecimal decimal(String value, String name) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            BigDecimal result = new BigDecimal(value);
+            if (result.signum() < 0) {
+                throw new IllegalArgumentException(name + " must not be negative");
+            }
+            return result;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        }
+    }
+
+    private static int integer(String value, String name) {
+        try {
+            int result = Integer.parseInt(value);
+            if (result < 0) {
+                throw new IllegalArgumentException(name + " must not be negative");
+            }
+            return result;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        }
+    }
+
+    private static String truncate(String value, int maxLength) {
+        return value == null || value.length() <= maxLength ? value : value.substring(0, maxLength);
+    }
+
+    private static String normalizeIsbn(String isbn) {
+        return isbn == null ? "" : isbn.replace("-", "").replace(" ", "").toUpperCase(Locale.ROOT);
+    }
+
+    private static void addError(ImportReportDTO report, String error) {
+        if (report.getErrors().size() < MAX_ERRORS) {
+            report.getErrors().add(error);
+        }
+    }
+
+    private static long perSecond(long count, long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        return elapsed <= 0 ? 0 : count * TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+}
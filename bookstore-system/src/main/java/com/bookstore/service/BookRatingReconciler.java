@@ -0,0 +1,98 @@
+package com.bookstore.service;
+
+import com.bookstore.dto.RatingStatsDTO;
+import com.bookstore.repository.BookRatingStatsRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+// So book_rating_stats với số đếm thực tế từ reviews (GROUP BY trên index, không đọc comment) theo từng lô sách
+// và ghi đè các dòng bị lệch (review sửa/xóa ngoài ReviewService, dữ liệu cũ trước khi có bảng tổng hợp...).
+// Mỗi lô khóa các dòng tổng hợp trước khi đếm lại, nên số cộng/trừ của review đồng thời không bị ghi đè mất.
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BookRatingReconciler {
+
+    private final BookRatingStatsRepository bookRatingStatsRepository;
+    private final BookCache bookCache;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${app.reviews.reconcile-batch-size:1000}")
+    private int batchSize;
+
+    // Lần chạy đầu tiên: tạo bảng tổng hợp từ các review đã có
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfEmpty() {
+        if (bookRatingStatsRepository.isEmpty()) {
+            reconcileAll();
+        }
+    }
+
+    @Scheduled(cron = "${app.reviews.reconcile-cron:0 0 4 * * *}")
+    public void scheduledReconcile() {
+        try {
+            reconcileAll();
+        } catch (RuntimeException e) {
+            log.error("Rating reconcile failed: {}", e.getMessage());
+        }
+    }
+
+    // Trả về số sách đã sửa
+    public synchronized int reconcileAll() {
+        long start = System.currentTimeMillis();
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        int limit = Math.max(1, batchSize);
+        int checked = 0;
+        int repaired = 0;
+        long afterId = 0;
+        while (true) {
+            List<Long> bookIds = bookRatingStatsRepository.findBookIds(afterId, limit);
+            if (bookIds.isEmpty()) {
+                break;
+            }
+            bookRatingStatsRepository.createMissing(bookIds.get(0), bookIds.get(bookIds.size() - 1));
+            Integer fixed = transactionTemplate.execute(status -> reconcile(bookIds));
+            repaired += fixed == null ? 0 : fixed;
+            checked += bookIds.size();
+            afterId = bookIds.get(bookIds.size() - 1);
+            if (bookIds.size() < limit) {
+                break;
+            }
+        }
+        log.info("Rating reconcile checked {} books, repaired {} in {} ms",
+                checked, repaired, System.currentTimeMillis() - start);
+        return repaired;
+    }
+
+    private int reconcile(List<Long> bookIds) {
+        long from = bookIds.get(0);
+        long to = bookIds.get(bookIds.size() - 1);
+        // Review đang ghi dở đã giữ khóa dòng của nó: chờ nó commit rồi mới đếm, review sau đó chờ lô này commit
+        Map<Long, RatingStatsDTO> stored = bookRatingStatsRepository.lockStored(from, to);
+        Map<Long, RatingStatsDTO> actual = bookRatingStatsRepository.computeActual(from, to);
+        int repaired = 0;
+        for (Long bookId : bookIds) {
+            RatingStatsDTO expected = actual.getOrDefault(bookId, RatingStatsDTO.empty(bookId));
+            if (expected.equals(stored.getOrDefault(bookId, RatingStatsDTO.empty(bookId)))) {
+                continue;
+            }
+            log.debug("Rating stats drift for book {}: stored {}, actual {} reviews", bookId,
+                    stored.containsKey(bookId) ? stored.get(bookId).getRatingCount() : 0, expected.getRatingCount());
+            bookRatingStatsRepository.overwrite(expected);
+            bookRatingStatsRepository.syncBook(bookId);
+            bookCache.evict(bookId);
+            repaired++;
+        }
+        return repaired;
+    }
+}
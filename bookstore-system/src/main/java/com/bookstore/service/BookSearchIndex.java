@@ -0,0 +1,546 @@
+package com.bookstore.service;
+
+import com.bookstore.entity.Book;
+import com.bookstore.event.BookChangedEvent;
+import com.bookstore.event.CatalogImportedEvent;
+import com.bookstore.repository.BookRepository;
+import com.bookstore.util.TextNormalizer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+// Inverted index full-text trong bộ nhớ (BM25, không dấu, khớp tiền tố) thay cho LIKE '%keyword%'
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BookSearchIndex {
+
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+
+    private static final float TITLE_WEIGHT = 3.0f;
+    private static final float AUTHOR_WEIGHT = 2.0f;
+    private static final float ISBN_WEIGHT = 3.0f;
+    private static final float PUBLISHER_WEIGHT = 1.0f;
+    private static final float DESCRIPTION_WEIGHT = 1.0f;
+
+    // Term khớp theo tiền tố được tính điểm thấp hơn term khớp chính xác
+    private static final float PREFIX_BOOST = 0.7f;
+    private static final int MIN_PREFIX_LENGTH = 2;
+    private static final int MAX_PREFIX_EXPANSIONS = 64;
+
+    private static final int REBUILD_BATCH_SIZE = 1000;
+    private static final int MIN_DOCS_FOR_COMPACTION = 1000;
+
+    private static final Pattern ISBN_QUERY = Pattern.compile("\\d{9}[\\dxX]|\\d{13}");
+    private static final Pattern ISBN_SEPARATORS = Pattern.compile("[\\s-]");
+
+    private final BookRepository bookRepository;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Segment segment = new Segment();
+
+    // Khác null khi đang rebuild: thay đổi của từng sách (null = đã xóa) được ghi lại để áp lên index mới lúc hoán đổi
+    private Map<Long, Map<String, Float>> changedDuringRebuild;
+
+    private volatile boolean ready = false;
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return segment.liveDocs;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ========================
+    // INDEXING
+    // ========================
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuild();
+    }
+
+    @EventListener
+    public void onCatalogImported(CatalogImportedEvent event) {
+        rebuild();
+    }
+
+    // Build vào segment mới rồi hoán đổi: index cũ vẫn phục vụ tìm kiếm trong suốt quá trình rebuild
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            changedDuringRebuild = new HashMap<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Segment rebuilt = new Segment();
+        try {
+            Long lastId = 0L;
+            List<Object[]> batch;
+            do {
+                batch = bookRepository.findSearchFieldsBatch(lastId, PageRequest.of(0, REBUILD_BATCH_SIZE));
+                for (Object[] row : batch) {
+                    lastId = (Long) row[0];
+                    rebuilt.add(lastId, analyze(row));
+                }
+            } while (batch.size() == REBUILD_BATCH_SIZE);
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                changedDuringRebuild = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+
+        int terms;
+        lock.writeLock().lock();
+        try {
+            // Sách được sửa/xóa trong lúc rebuild: áp bản mới nhất lên segment mới
+            changedDuringRebuild.forEach((bookId, frequencies) -> {
+                if (frequencies == null) {
+                    rebuilt.remove(bookId);
+                } else {
+                    rebuilt.add(bookId, frequencies);
+                }
+            });
+            changedDuringRebuild = null;
+            rebuilt.compactIfNeeded();
+            segment = rebuilt;
+            terms = rebuilt.terms.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        ready = true;
+        log.info("Search index rebuilt with {} books, {} terms in {} ms",
+                size(), terms, System.currentTimeMillis() - start);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBookChanged(BookChangedEvent event) {
+        if (event.type() == BookChangedEvent.ChangeType.DELETED) {
+            remove(event.bookId());
+            return;
+        }
+        List<Object[]> rows = bookRepository.findSearchFieldsById(event.bookId());
+        if (rows.isEmpty()) {
+            remove(event.bookId());
+        } else {
+            index(event.bookId(), analyze(rows.get(0)));
+        }
+    }
+
+    public void index(Book book) {
+        index(book.getId(), analyze(book.getTitle(), book.getAuthor(), book.getPublisher(),
+                book.getDescription(), book.getIsbn()));
+    }
+
+    public void remove(Long bookId) {
+        lock.writeLock().lock();
+        try {
+            segment.remove(bookId);
+            segment.compactIfNeeded();
+            if (changedDuringRebuild != null) {
+                changedDuringRebuild.put(bookId, null);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void index(Long bookId, Map<String, Float> termFrequencies) {
+        lock.writeLock().lock();
+        try {
+            segment.add(bookId, termFrequencies);
+            segment.compactIfNeeded();
+            if (changedDuringRebuild != null) {
+                changedDuringRebuild.put(bookId, termFrequencies);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // row: [id, title, author, publisher, description, isbn]
+    private Map<String, Float> analyze(Object[] row) {
+        return analyze((String) row[1], (String) row[2], (String) row[3], (String) row[4], (String) row[5]);
+    }
+
+    private Map<String, Float> analyze(String title, String author, String publisher, String description,
+                                      String isbn) {
+        Map<String, Float> frequencies = new HashMap<>();
+        addField(frequencies, title, TITLE_WEIGHT);
+        addField(frequencies, author, AUTHOR_WEIGHT);
+        addField(frequencies, publisher, PUBLISHER_WEIGHT);
+        addField(frequencies, description, DESCRIPTION_WEIGHT);
+
+        // ISBN được index nguyên khối (bỏ dấu gạch) để tìm chính xác theo mã
+        if (isbn != null) {
+            String normalized = normalizeIsbn(isbn);
+            if (!normalized.isEmpty()) {
+                frequencies.merge(normalized, ISBN_WEIGHT, Float::sum);
+            }
+        }
+        return frequencies;
+    }
+
+    private void addField(Map<String, Float> frequencies, String text, float weight) {
+        for (String token : TextNormalizer.tokenize(text)) {
+            frequencies.merge(token, weight, Float::sum);
+        }
+    }
+
+    // ========================
+    // SEARCH
+    // ========================
+
+    public SearchResult search(String query, int offset, int limit) {
+        List<String> tokens = queryTokens(query);
+        if (tokens.isEmpty()) {
+            return new SearchResult(List.of(), 0);
+        }
+
+        lock.readLock().lock();
+        try {
+            Segment current = segment;
+            List<List<TermMatch>> clauses = new ArrayList<>();
+            for (String token : tokens) {
+                List<TermMatch> matches = current.expand(token);
+                if (matches.isEmpty()) {
+                    // Mọi từ khóa đều phải khớp
+                    return new SearchResult(List.of(), 0);
+                }
+                clauses.add(matches);
+            }
+            // Bắt đầu từ mệnh đề hiếm nhất để tập ứng viên nhỏ nhất
+            clauses.sort(Comparator.comparingInt(BookSearchIndex::cost));
+
+            // Điểm cộng dồn trong bảng băm primitive cỡ theo posting của mệnh đề đầu (không theo số doc của index),
+            // danh sách ứng viên là mảng int (không boxing)
+            double averageLength = current.liveDocs == 0 ? 1.0 : Math.max(current.totalLength / current.liveDocs, 1.0);
+            int[] candidates = new int[Math.min(cost(clauses.get(0)), current.docCount)];
+            DocScores scores = new DocScores(candidates.length);
+            int candidateCount = 0;
+            for (TermMatch match : clauses.get(0)) {
+                float idf = current.idf(match.postings);
+                for (int i = 0; i < match.postings.size; i++) {
+                    int doc = match.postings.docs[i];
+                    if (!current.deletedDocs.get(doc)
+                            && scores.add(doc, match.boost * current.bm25(idf, match.postings.frequencies[i], doc, averageLength))) {
+                        candidates[candidateCount++] = doc;
+                    }
+                }
+            }
+
+            for (int c = 1; c < clauses.size() && candidateCount > 0; c++) {
+                List<TermMatch> clause = clauses.get(c);
+                float[] idfs = new float[clause.size()];
+                for (int m = 0; m < idfs.length; m++) {
+                    idfs[m] = current.idf(clause.get(m).postings);
+                }
+                int kept = 0;
+                for (int k = 0; k < candidateCount; k++) {
+                    int doc = candidates[k];
+                    float clauseScore = 0;
+                    for (int m = 0; m < idfs.length; m++) {
+                        TermMatch match = clause.get(m);
+                        float frequency = match.postings.frequencyOf(doc);
+                        if (frequency > 0) {
+                            clauseScore += match.boost * current.bm25(idfs[m], frequency, doc, averageLength);
+                        }
+                    }
+                    if (clauseScore > 0) {
+                        scores.add(doc, clauseScore);
+                        candidates[kept++] = doc;
+                    }
+                }
+                candidateCount = kept;
+            }
+
+            return new SearchResult(current.topBookIds(candidates, candidateCount, scores, offset, limit),
+                    candidateCount);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<String> queryTokens(String query) {
+        if (query == null || query.isBlank()) {
+            return List.of();
+        }
+        String isbn = ISBN_SEPARATORS.matcher(query.trim()).replaceAll("");
+        if (ISBN_QUERY.matcher(isbn).matches()) {
+            return List.of(isbn.toLowerCase(Locale.ROOT));
+        }
+        return TextNormalizer.tokenize(query);
+    }
+
+    private static int cost(List<TermMatch> clause) {
+        int cost = 0;
+        for (TermMatch match : clause) {
+            cost += match.postings.size;
+        }
+        return cost;
+    }
+
+    private static String normalizeIsbn(String isbn) {
+        return isbn.replaceAll("[^0-9Xx]", "").toLowerCase(Locale.ROOT);
+    }
+
+    public record SearchResult(List<Long> bookIds, long totalHits) {
+    }
+
+    private record TermMatch(Postings postings, float boost) {
+    }
+
+    private record ScoredDoc(int doc, float score) {
+    }
+
+    // Dữ liệu của một phiên bản index. Rebuild tạo segment mới (không ai khác thấy) rồi hoán đổi dưới write lock
+    private static final class Segment {
+        private final TreeMap<String, Postings> terms = new TreeMap<>();
+        private final Map<Long, Integer> docByBook = new HashMap<>();
+        private final BitSet deletedDocs = new BitSet();
+        private long[] docBookIds = new long[1024];
+        private float[] docLengths = new float[1024];
+        private int docCount = 0;
+        private int liveDocs = 0;
+        private double totalLength = 0;
+
+        private void add(Long bookId, Map<String, Float> termFrequencies) {
+            remove(bookId);
+
+            int doc = docCount++;
+            ensureCapacity(docCount);
+            float length = 0;
+            for (Map.Entry<String, Float> entry : termFrequencies.entrySet()) {
+                terms.computeIfAbsent(entry.getKey(), k -> new Postings()).add(doc, entry.getValue());
+                length += entry.getValue();
+            }
+            docBookIds[doc] = bookId;
+            docLengths[doc] = length;
+            docByBook.put(bookId, doc);
+            liveDocs++;
+            totalLength += length;
+        }
+
+        private void remove(Long bookId) {
+            Integer doc = docByBook.remove(bookId);
+            if (doc != null) {
+                deletedDocs.set(doc);
+                liveDocs--;
+                totalLength -= docLengths[doc];
+            }
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > docBookIds.length) {
+                int newLength = Math.max(capacity, docBookIds.length * 2);
+                docBookIds = Arrays.copyOf(docBookIds, newLength);
+                docLengths = Arrays.copyOf(docLengths, newLength);
+            }
+        }
+
+        // Dồn lại doc ID khi hơn 1/4 số doc đã bị xóa/cập nhật
+        private void compactIfNeeded() {
+            int deleted = docCount - liveDocs;
+            if (docCount < MIN_DOCS_FOR_COMPACTION || deleted * 4 < docCount) {
+                return;
+            }
+
+            int[] remap = new int[docCount];
+            int next = 0;
+            for (int doc = 0; doc < docCount; doc++) {
+                if (deletedDocs.get(doc)) {
+                    remap[doc] = -1;
+                } else {
+                    remap[doc] = next;
+                    docBookIds[next] = docBookIds[doc];
+                    docLengths[next] = docLengths[doc];
+                    docByBook.put(docBookIds[next], next);
+                    next++;
+                }
+            }
+
+            Iterator<Postings> iterator = terms.values().iterator();
+            while (iterator.hasNext()) {
+                Postings postings = iterator.next();
+                postings.remap(remap);
+                if (postings.size == 0) {
+                    iterator.remove();
+                }
+            }
+
+            log.debug("Compacted search index from {} to {} documents", docCount, next);
+            docCount = next;
+            deletedDocs.clear();
+        }
+
+        private List<TermMatch> expand(String token) {
+            List<TermMatch> matches = new ArrayList<>();
+            Postings exact = terms.get(token);
+            if (exact != null) {
+                matches.add(new TermMatch(exact, 1.0f));
+            }
+            if (token.length() >= MIN_PREFIX_LENGTH) {
+                int expansions = 0;
+                for (Map.Entry<String, Postings> entry
+                        : terms.subMap(token, false, token + Character.MAX_VALUE, true).entrySet()) {
+                    if (expansions++ >= MAX_PREFIX_EXPANSIONS) {
+                        break;
+                    }
+                    matches.add(new TermMatch(entry.getValue(), PREFIX_BOOST));
+                }
+            }
+            return matches;
+        }
+
+        // Chỉ tạo ScoredDoc cho doc lọt vào heap top-(offset + limit)
+        private List<Long> topBookIds(int[] candidates, int count, DocScores scores, int offset, int limit) {
+            int wanted = (int) Math.min((long) offset + limit, count);
+            if (wanted <= 0 || offset >= count) {
+                return List.of();
+            }
+
+            Comparator<ScoredDoc> worstFirst = Comparator.comparingDouble(ScoredDoc::score)
+                    .thenComparing(ScoredDoc::doc, Comparator.reverseOrder());
+            PriorityQueue<ScoredDoc> heap = new PriorityQueue<>(wanted, worstFirst);
+            for (int k = 0; k < count; k++) {
+                int doc = candidates[k];
+                float score = scores.get(doc);
+                if (heap.size() < wanted) {
+                    heap.add(new ScoredDoc(doc, score));
+                } else {
+                    ScoredDoc worst = heap.peek();
+                    if (score > worst.score() || (score == worst.score() && doc < worst.doc())) {
+                        heap.poll();
+                        heap.add(new ScoredDoc(doc, score));
+                    }
+                }
+            }
+
+            List<ScoredDoc> ranked = new ArrayList<>(heap);
+            ranked.sort(worstFirst.reversed());
+            List<Long> bookIds = new ArrayList<>(ranked.size() - offset);
+            for (int i = offset; i < ranked.size(); i++) {
+                bookIds.add(docBookIds[ranked.get(i).doc()]);
+            }
+            return bookIds;
+        }
+
+        private float idf(Postings postings) {
+            int documentFrequency = Math.min(postings.size, Math.max(liveDocs, 1));
+            return (float) Math.log(1 + (liveDocs - documentFrequency + 0.5) / (documentFrequency + 0.5));
+        }
+
+        private float bm25(float idf, float frequency, int doc, double averageLength) {
+            double norm = K1 * (1 - B + B * docLengths[doc] / averageLength);
+            return (float) (idf * frequency * (K1 + 1) / (frequency + norm));
+        }
+    }
+
+    // Bảng băm địa chỉ mở doc -> điểm, giữ tải <= 1/2 vì số doc thêm vào không vượt quá "expected"
+    private static final class DocScores {
+        // doc + 1, 0 là ô trống
+        private final int[] keys;
+        private final float[] values;
+        private final int mask;
+
+        private DocScores(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(expected, 1) * 2);
+            if (capacity < expected * 2) {
+                capacity <<= 1;
+            }
+            keys = new int[capacity];
+            values = new float[capacity];
+            mask = capacity - 1;
+        }
+
+        // true nếu doc lần đầu được cộng điểm
+        private boolean add(int doc, float score) {
+            int slot = slot(doc);
+            boolean added = keys[slot] == 0;
+            keys[slot] = doc + 1;
+            values[slot] += score;
+            return added;
+        }
+
+        private float get(int doc) {
+            int slot = slot(doc);
+            return keys[slot] == 0 ? 0 : values[slot];
+        }
+
+        private int slot(int doc) {
+            int hash = doc * 0x9E3779B9;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (keys[slot] != 0 && keys[slot] != doc + 1) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+    }
+
+    // Danh sách doc tăng dần kèm tần suất đã nhân trọng số field
+    private static final class Postings {
+        private int[] docs = new int[4];
+        private float[] frequencies = new float[4];
+        private int size = 0;
+
+        private void add(int doc, float frequency) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            docs[size] = doc;
+            frequencies[size] = frequency;
+            size++;
+        }
+
+        private float frequencyOf(int doc) {
+            int index = Arrays.binarySearch(docs, 0, size, doc);
+            return index >= 0 ? frequencies[index] : 0;
+        }
+
+        private void remap(int[] remap) {
+            int next = 0;
+            for (int i = 0; i < size; i++) {
+                int mapped = remap[docs[i]];
+                if (mapped >= 0) {
+                    docs[next] = mapped;
+                    frequencies[next] = frequencies[i];
+                    next++;
+                }
+            }
+            size = next;
+        }
+    }
+}
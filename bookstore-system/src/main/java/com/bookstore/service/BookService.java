@@ -1,19 +1,40 @@
 package com.bookstore.service;
 
+import com.bookstore.dto.BookDTO;
+import com.bookstore.dto.BookSearchDTO;
+import com.bookstore.dto.CursorPage;
+import com.bookstore.dto.FacetCountDTO;
+import com.bookstore.dto.FacetedSearchResultDTO;
 import com.bookstore.entity.Book;
 import com.bookstore.entity.Category;
+import com.bookstore.event.BookChangedEvent;
+import com.bookstore.exception.InsufficientStockException;
 import com.bookstore.repository.BookRepository;
+import com.bookstore.repository.BookRepositoryCustom;
 import com.bookstore.repository.CategoryRepository;
+import com.bookstore.repository.StockReservationRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
@@ -21,17 +42,33 @@ import java.util.Optional;
 @Transactional
 public class BookService {
 
+    private static final int MAX_PAGE_SIZE = 100;
+
     private final BookRepository bookRepository;
+    private final StockReservationRepository stockReservationRepository;
     private final CategoryRepository categoryRepository;
-
-    public Page<Book> getAllBooks(Pageable pageable) {
+    private final BookCache bookCache;
+    private final RelatedBooksIndex relatedBooksIndex;
+    private final BookSearchIndex bookSearchIndex;
+    private final BookFacetIndex bookFacetIndex;
+    private final ApplicationEventPublisher eventPublisher;
+    private final OutboxService outboxService;
+
+    // Các trang danh sách đọc projection BookDTO trong transaction read-only (flush MANUAL, không dirty-check)
+    @Transactional(readOnly = true)
+    public Page<BookDTO> getAllBooks(Pageable pageable) {
         log.info("Fetching all books with pageable: {}", pageable);
-        return bookRepository.findAll(pageable);
+        return bookRepository.findAllCards(pageable);
     }
 
     public Optional<Book> getBookById(Long id) {
         log.info("Fetching book by ID: {}", id);
-        return bookRepository.findById(id);
+        return bookCache.get(id, this::loadBookSnapshot);
+    }
+
+    // Nạp sách kèm categories (entity graph) để snapshot trong cache dùng được ngoài transaction
+    private Book loadBookSnapshot(Long id) {
+        return bookRepository.findDetailedById(id).orElse(null);
     }
 
     public Book saveBook(Book book) {
@@ -41,7 +78,9 @@ public class BookService {
             throw new IllegalArgumentException("Book with ISBN " + book.getIsbn() + " already exists");
         }
 
-        return bookRepository.save(book);
+        Book savedBook = bookRepository.save(book);
+        eventPublisher.publishEvent(new BookChangedEvent(savedBook.getId(), BookChangedEvent.ChangeType.CREATED));
+        return savedBook;
     }
 
     public Book updateBook(Long id, Book bookDetails) {
@@ -56,15 +95,25 @@ public class BookService {
         existingBook.setIsbn(bookDetails.getIsbn());
         existingBook.setPrice(bookDetails.getPrice());
         existingBook.setDiscountPrice(bookDetails.getDiscountPrice());
-        existingBook.setStockQuantity(bookDetails.getStockQuantity());
         existingBook.setPublisher(bookDetails.getPublisher());
         existingBook.setPublicationDate(bookDetails.getPublicationDate());
         existingBook.setPages(bookDetails.getPages());
         existingBook.setLanguage(bookDetails.getLanguage());
         existingBook.setCoverImage(bookDetails.getCoverImage());
         existingBook.setAvailable(bookDetails.getAvailable());
+        Book saved = bookRepository.save(existingBook);
+
+        // Tồn kho không đi qua dirty-check của entity: áp phần chênh lệch bằng một câu UPDATE tương đối
+        if (bookDetails.getStockQuantity() != null) {
+            int delta = bookDetails.getStockQuantity() - existingBook.getStockQuantity();
+            if (delta != 0 && bookRepository.adjustStock(id, delta) == 0) {
+                throw new InsufficientStockException("Cannot adjust stock for book ID: " + id + " by " + delta);
+            }
+        }
 
-        return bookRepository.save(existingBook);
+        bookCache.evict(id);
+        eventPublisher.publishEvent(new BookChangedEvent(id, BookChangedEvent.ChangeType.UPDATED));
+        return saved;
     }
 
     public void deleteBook(Long id) {
@@ -72,14 +121,36 @@ public class BookService {
         Book book = bookRepository.findById(id)
                 .orElseThrow(() -> new IllegalArgumentException("Book not found with ID: " + id));
         bookRepository.delete(book);
+        bookCache.evict(id);
+        eventPublisher.publishEvent(new BookChangedEvent(id, BookChangedEvent.ChangeType.DELETED));
     }
 
-    public Page<Book> searchBooks(String keyword, Pageable pageable) {
+    @Transactional(readOnly = true)
+    public Page<BookDTO> searchBooks(String keyword, Pageable pageable) {
         log.info("Searching books with keyword: {}", keyword);
         if (keyword == null || keyword.trim().isEmpty()) {
-            return bookRepository.findByAvailableTrue(pageable);
+            return bookRepository.findAvailableCards(pageable);
+        }
+        if (bookSearchIndex.isReady()) {
+            BookSearchIndex.SearchResult result = bookSearchIndex.search(
+                    keyword, (int) pageable.getOffset(), pageable.getPageSize());
+            return new PageImpl<>(findCardsInOrder(result.bookIds()), pageable, result.totalHits());
         }
-        return bookRepository.findByTitleContainingIgnoreCase(keyword, pageable);
+        // Index chưa sẵn sàng (đang build lúc khởi động)
+        return bookRepository.findCardsByTitleContaining(keyword, pageable);
+    }
+
+    // Giữ nguyên thứ tự xếp hạng của index khi nạp dữ liệu
+    private List<BookDTO> findCardsInOrder(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, BookDTO> booksById = bookRepository.findCardsByIdIn(ids).stream()
+                .collect(Collectors.toMap(BookDTO::getId, Function.identity()));
+        return ids.stream()
+                .map(booksById::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
     }
 
     public Page<Book> searchByAuthor(String author, Pageable pageable) {
@@ -87,24 +158,135 @@ public class BookService {
         return bookRepository.findByAuthorContainingIgnoreCase(author, pageable);
     }
 
-    public Page<Book> getBooksByCategory(Long categoryId, Pageable pageable) {
+    @Transactional(readOnly = true)
+    public Page<BookDTO> getBooksByCategory(Long categoryId, Pageable pageable) {
         log.info("Fetching books by category ID: {}", categoryId);
-        return bookRepository.findByCategoryId(categoryId, pageable);
+        return bookRepository.findCardsByCategoryId(categoryId, pageable);
+    }
+
+    public List<Book> getRelatedBooks(Book book) {
+        if (relatedBooksIndex.isReady()) {
+            return relatedBooksIndex.getRelatedBookIds(book.getId()).stream()
+                    .map(relatedId -> bookCache.get(relatedId, this::loadBookSnapshot))
+                    .flatMap(Optional::stream)
+                    .collect(Collectors.toList());
+        }
+
+        // Index chưa build xong: lấy sách cùng danh mục đầu tiên như trước
+        List<Category> categories = book.getCategories();
+        if (categories.isEmpty()) {
+            return List.of();
+        }
+        return bookRepository.findByCategoryId(categories.get(0).getId(),
+                PageRequest.of(0, RelatedBooksIndex.RELATED_BOOKS_LIMIT)).getContent();
+    }
+
+    // Phân trang keyset: chi phí mỗi trang như nhau dù sâu tới đâu, không chạy COUNT(*)
+    @Transactional(readOnly = true)
+    public CursorPage<BookDTO> getBooksPage(BookRepositoryCustom.Listing listing, Long categoryId,
+                                         BookRepositoryCustom.KeysetSort sort, String cursor, int size) {
+        // size lấy từ query string: size <= 0 làm subList lỗi, size quá lớn kéo cả bảng trong một lần
+        size = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        Object lastValue = null;
+        Long lastId = null;
+        Object[] position = decodeCursor(sort, cursor);
+        if (position != null) {
+            lastValue = position[0];
+            lastId = (Long) position[1];
+        }
+
+        List<BookDTO> books = bookRepository.findKeysetPage(listing, categoryId, sort, lastValue, lastId, size + 1);
+        boolean hasNext = books.size() > size;
+        if (hasNext) {
+            books = books.subList(0, size);
+        }
+        String nextCursor = hasNext ? encodeCursor(sort, books.get(books.size() - 1)) : null;
+        return new CursorPage<>(books, nextCursor, hasNext);
     }
 
-    public Page<Book> getBooksOnSale(Pageable pageable) {
+    // Cursor = base64("SORT|id|giá trị cột sắp xếp"), giá trị để cuối vì tiêu đề có thể chứa '|'
+    private static String encodeCursor(BookRepositoryCustom.KeysetSort sort, BookDTO last) {
+        Object value;
+        switch (sort) {
+            case PRICE_ASC:
+            case PRICE_DESC:
+                value = last.getPrice().toPlainString();
+                break;
+            case TITLE:
+                value = last.getTitle();
+                break;
+            case BEST_SELLING:
+                // Cùng quy ước với các câu UPDATE kho: null tính là 0
+                value = last.getSoldQuantity() == null ? 0 : last.getSoldQuantity();
+                break;
+            default:
+                value = last.getCreatedAt();
+                break;
+        }
+        String raw = sort.name() + "|" + last.getId() + "|" + value;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Trả về {giá trị cột sắp xếp, id}; cursor của kiểu sắp xếp khác (vừa đổi sort) -> quay về trang đầu.
+    // Cursor hỏng -> IllegalArgumentException (400) thay vì lặng lẽ về trang đầu khiến "Next" lặp vô hạn
+    private static Object[] decodeCursor(BookRepositoryCustom.KeysetSort sort, String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|", 3);
+        } catch (IllegalArgumentException e) {
+            throw invalidCursor(cursor);
+        }
+        if (parts.length != 3) {
+            throw invalidCursor(cursor);
+        }
+        if (!parts[0].equals(sort.name())) {
+            return null;
+        }
+        try {
+            return new Object[]{parseSortValue(sort, parts[2]), Long.valueOf(parts[1])};
+        } catch (RuntimeException e) {
+            throw invalidCursor(cursor);
+        }
+    }
+
+    private static IllegalArgumentException invalidCursor(String cursor) {
+        log.warn("Rejecting invalid cursor: {}", cursor);
+        return new IllegalArgumentException("Invalid page cursor");
+    }
+
+    private static Object parseSortValue(BookRepositoryCustom.KeysetSort sort, String value) {
+        switch (sort) {
+            case PRICE_ASC:
+            case PRICE_DESC:
+                return new BigDecimal(value);
+            case TITLE:
+                return value;
+            case BEST_SELLING:
+                return Integer.valueOf(value);
+            default:
+                return LocalDateTime.parse(value);
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public Page<BookDTO> getBooksOnSale(Pageable pageable) {
         log.info("Fetching books on sale");
-        return bookRepository.findByDiscountPriceIsNotNull(pageable);
+        return bookRepository.findCardsOnSale(pageable);
     }
 
-    public Page<Book> getBestSellers(Pageable pageable) {
+    @Transactional(readOnly = true)
+    public Page<BookDTO> getBestSellers(Pageable pageable) {
         log.info("Fetching best sellers");
-        return bookRepository.findBestSellers(pageable);
+        return bookRepository.findBestSellerCards(pageable);
     }
 
-    public Page<Book> getNewBooks(Pageable pageable) {
+    @Transactional(readOnly = true)
+    public Page<BookDTO> getNewBooks(Pageable pageable) {
         log.info("Fetching new books");
-        return bookRepository.findByOrderByCreatedAtDesc(pageable);
+        return bookRepository.findNewestCards(pageable);
     }
 
     public Page<Book> advancedSearch(String title, String author,
@@ -115,6 +297,53 @@ public class BookService {
         return bookRepository.advancedSearch(title, author, minPrice, maxPrice, categoryId, pageable);
     }
 
+    // Tìm kiếm có facet: lọc và đếm trên bitset trong bộ nhớ thay vì nhiều câu COUNT
+    @Transactional(readOnly = true)
+    public FacetedSearchResultDTO facetedSearch(BookSearchDTO criteria, Pageable pageable) {
+        log.info("Faceted search with criteria: {}", criteria);
+        String keyword = criteria.getKeyword();
+        boolean hasKeyword = keyword != null && !keyword.isBlank();
+        if (!bookFacetIndex.isReady() || (hasKeyword && !bookSearchIndex.isReady())) {
+            // Index chưa sẵn sàng (hoặc có từ khóa mà full-text index chưa sẵn sàng):
+            // trả kết quả lọc thông thường, không có facet
+            Page<BookDTO> books = bookRepository.advancedSearch(blankToNull(criteria.getKeyword()),
+                    blankToNull(criteria.getAuthor()), criteria.getMinPrice(), criteria.getMaxPrice(),
+                    criteria.getCategoryId(), pageable).map(BookDTO::from);
+            FacetedSearchResultDTO result = new FacetedSearchResultDTO();
+            result.setBooks(books);
+            return result;
+        }
+
+        List<Long> rankedBookIds = null;
+        if (hasKeyword) {
+            rankedBookIds = bookSearchIndex.search(keyword, 0, Integer.MAX_VALUE).bookIds();
+        }
+
+        BookFacetIndex.FacetResult facets = bookFacetIndex.search(
+                criteria, rankedBookIds, (int) pageable.getOffset(), pageable.getPageSize());
+
+        List<FacetCountDTO> categories = facets.categories();
+        Map<Long, String> categoryNames = categoryRepository.findAllById(categories.stream()
+                        .map(facet -> Long.valueOf(facet.getValue()))
+                        .collect(Collectors.toList()))
+                .stream()
+                .collect(Collectors.toMap(Category::getId, Category::getName));
+        categories.forEach(facet -> facet.setLabel(categoryNames.get(Long.valueOf(facet.getValue()))));
+
+        return new FacetedSearchResultDTO(
+                new PageImpl<>(findCardsInOrder(facets.bookIds()), pageable, facets.totalHits()),
+                categories.stream().filter(facet -> facet.getLabel() != null).collect(Collectors.toList()),
+                facets.priceRanges(),
+                facets.authors(),
+                facets.languages(),
+                facets.inStockCount(),
+                facets.onSaleCount());
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+
     public boolean isBookAvailable(Long bookId, Integer quantity) {
         Integer stock = bookRepository.getStockQuantity(bookId);
         return stock != null && stock >= quantity;
@@ -122,23 +351,58 @@ public class BookService {
 
     @Transactional
     public void updateStock(Long bookId, Integer quantity) {
-        Book book = bookRepository.findById(bookId)
-                .orElseThrow(() -> new RuntimeException("Book not found"));
+        requirePositive(quantity);
+        applyStockUpdate(bookId, quantity, bookRepository.subtractStock(bookId, quantity));
+    }
 
-        if (book.getStockQuantity() < quantity) {
-            throw new RuntimeException("Insufficient stock");
+    // Giữ kho cho cả đơn hàng trong một JDBC batch; thiếu bất kỳ sách nào thì rollback toàn bộ.
+    // Mỗi sách đã trừ ghi một StockDecreased vào outbox trong cùng transaction với đơn hàng
+    public void reserveStock(Map<Long, Integer> bookQuantities) {
+        SortedMap<Long, Integer> ordered = new TreeMap<>();
+        bookQuantities.forEach((bookId, quantity) -> {
+            requirePositive(quantity);
+            ordered.merge(bookId, quantity, Integer::sum);
+        });
+
+        List<InsufficientStockException.Shortage> shortages = stockReservationRepository.decrementAll(ordered);
+        if (!shortages.isEmpty()) {
+            String details = shortages.stream()
+                    .map(s -> "book ID " + s.bookId() + " (requested " + s.requested()
+                            + ", available " + s.available() + ")")
+                    .collect(Collectors.joining(", "));
+            // Exception unchecked -> transaction bị rollback, kể cả các dòng đã trừ trong batch
+            throw new InsufficientStockException("Insufficient stock for " + details, shortages);
         }
+        ordered.forEach(outboxService::stockDecreased);
+        ordered.keySet().forEach(bookCache::evict);
+    }
 
-        book.setStockQuantity(book.getStockQuantity() - quantity);
-        bookRepository.save(book);
+    // Trả kho của đơn bị hủy: cộng lại tồn kho và trừ lại số đã bán bằng UPDATE tương đối
+    public void restoreStock(Map<Long, Integer> bookQuantities) {
+        SortedMap<Long, Integer> ordered = new TreeMap<>();
+        bookQuantities.forEach((bookId, quantity) -> {
+            requirePositive(quantity);
+            ordered.merge(bookId, quantity, Integer::sum);
+        });
+        stockReservationRepository.restoreAll(ordered);
+        ordered.keySet().forEach(bookCache::evict);
     }
 
-    public void decreaseStock(Long bookId, int quantity) {
-        Book book = bookRepository.findById(bookId)
-                .orElseThrow(() -> new IllegalArgumentException("Book not found with ID: " + bookId));
+    private static void requirePositive(Integer quantity) {
+        if (quantity == null || quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive");
+        }
+    }
 
-        book.decreaseStock(quantity);
-        bookRepository.save(book);
+    private void applyStockUpdate(Long bookId, int quantity, int updatedRows) {
+        if (updatedRows == 0) {
+            if (!bookRepository.existsById(bookId)) {
+                throw new IllegalArgumentException("Book not found with ID: " + bookId);
+            }
+            throw new InsufficientStockException("Insufficient stock for book ID: " + bookId
+                    + ". Requested: " + quantity);
+        }
+        bookCache.evict(bookId);
     }
 
     public boolean existsByIsbn(String isbn) {
@@ -159,6 +423,8 @@ public class BookService {
                 .orElseThrow(() -> new IllegalArgumentException("Category not found with ID: " + categoryId));
 
         book.addCategory(category);
+        bookCache.evict(bookId);
+        eventPublisher.publishEvent(new BookChangedEvent(bookId, BookChangedEvent.ChangeType.UPDATED));
         return bookRepository.save(book);
     }
 
@@ -172,6 +438,8 @@ public class BookService {
                 .orElseThrow(() -> new IllegalArgumentException("Category not found with ID: " + categoryId));
 
         book.removeCategory(category);
+        bookCache.evict(bookId);
+        eventPublisher.publishEvent(new BookChangedEvent(bookId, BookChangedEvent.ChangeType.UPDATED));
         return bookRepository.save(book);
     }
 
@@ -186,6 +454,8 @@ public class BookService {
                 .orElseThrow(() -> new IllegalArgumentException("Book not found with ID: " + bookId));
 
         book.setAvailable(!book.getAvailable());
+        bookCache.evict(bookId);
+        eventPublisher.publishEvent(new BookChangedEvent(bookId, BookChangedEvent.ChangeType.UPDATED));
         return bookRepository.save(book);
     }
 }
\ No newline at end of file
@@ -0,0 +1,340 @@
+package com.bookstore.service;
+
+import com.bookstore.dto.SuggestionDTO;
+import com.bookstore.entity.Category;
+import com.bookstore.event.BookChangedEvent;
+import com.bookstore.event.CatalogImportedEvent;
+import com.bookstore.repository.BookRepository;
+import com.bookstore.repository.CategoryRepository;
+import com.bookstore.util.TextNormalizer;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Gợi ý tìm kiếm khi gõ: key đã chuẩn hóa được sắp xếp trong bộ nhớ,
+// các tiền tố ngắn (nơi tập khớp lớn nhất) giữ sẵn tập gợi ý sắp theo trọng số
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BookSuggester {
+
+    public static final int MAX_SUGGESTIONS = 10;
+
+    private static final int CACHED_PREFIX_LENGTH = 3;
+    private static final int MAX_KEY_LENGTH = 40;
+    private static final int MAX_WORD_SUFFIXES = 4;
+    // Giới hạn số key duyệt cho tiền tố dài để giữ độ trễ ổn định
+    private static final int MAX_SCAN = 20_000;
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    private static final Comparator<Suggestion> BY_WEIGHT = Comparator
+            .comparingDouble(Suggestion::getWeight).reversed()
+            .thenComparing(Suggestion::getId);
+
+    private final BookRepository bookRepository;
+    private final CategoryRepository categoryRepository;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final NavigableMap<String, Suggestion> keys = new TreeMap<>();
+    // Tiền tố 1..CACHED_PREFIX_LENGTH ký tự -> mọi gợi ý khớp, sắp theo BY_WEIGHT. Xóa/sửa một gợi ý đứng đầu
+    // chỉ cần bỏ nó khỏi tập, gợi ý kế tiếp có sẵn (không phải duyệt lại key theo thứ tự chữ cái)
+    private final Map<String, NavigableSet<Suggestion>> byPrefix = new HashMap<>();
+    private final Map<String, Suggestion> suggestions = new HashMap<>();
+    private final Map<Long, BookState> books = new HashMap<>();
+    private final Map<Long, String> categoryNames = new HashMap<>();
+
+    private volatile boolean ready = false;
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public List<SuggestionDTO> suggest(String query, int limit) {
+        String prefix = normalize(query);
+        int size = Math.max(1, Math.min(limit, MAX_SUGGESTIONS));
+        if (prefix.isEmpty()) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            Stream<Suggestion> top = prefix.length() <= CACHED_PREFIX_LENGTH
+                    ? byPrefix.getOrDefault(prefix, Collections.emptyNavigableSet()).stream()
+                    : Arrays.stream(scan(prefix));
+            return top.limit(size)
+                    .map(s -> new SuggestionDTO(s.getText(), s.getType().name(), s.getTargetId()))
+                    .collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ========================
+    // BUILD & INCREMENTAL UPDATES
+    // ========================
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuild();
+    }
+
+    @EventListener
+    public void onCatalogImported(CatalogImportedEvent event) {
+        rebuild();
+    }
+
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+
+        Map<Long, String> names = new HashMap<>();
+        for (Category category : categoryRepository.findByActiveTrue()) {
+            names.put(category.getId(), category.getName());
+        }
+        Map<Long, List<Long>> categoriesByBook = new HashMap<>();
+        for (Object[] row : bookRepository.findBookCategoryPairs()) {
+            categoriesByBook.computeIfAbsent((Long) row[0], k -> new ArrayList<>()).add((Long) row[1]);
+        }
+        List<Object[]> rows = bookRepository.findSuggestionFacts();
+
+        lock.writeLock().lock();
+        try {
+            keys.clear();
+            byPrefix.clear();
+            suggestions.clear();
+            books.clear();
+            categoryNames.clear();
+            categoryNames.putAll(names);
+
+            for (Object[] row : rows) {
+                Long bookId = (Long) row[0];
+                applyBook(bookId, toState(row, categoriesByBook.getOrDefault(bookId, List.of())));
+            }
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        log.info("Suggestion index rebuilt with {} suggestions, {} keys in {} ms",
+                suggestions.size(), keys.size(), System.currentTimeMillis() - start);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBookChanged(BookChangedEvent event) {
+        if (!ready) {
+            return;
+        }
+        Long bookId = event.bookId();
+        BookState state = null;
+        if (event.type() != BookChangedEvent.ChangeType.DELETED) {
+            List<Object[]> rows = bookRepository.findSuggestionFactsById(bookId);
+            if (!rows.isEmpty()) {
+                state = toState(rows.get(0), bookRepository.findCategoryIdsByBookId(bookId));
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            applyBook(bookId, state);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private BookState toState(Object[] row, List<Long> categoryIds) {
+        int sold = row[3] == null ? 0 : ((Number) row[3]).intValue();
+        double rating = row[4] == null ? 0.0 : ((Number) row[4]).doubleValue();
+        // Ưu tiên sách bán chạy, điểm đánh giá làm trọng số phụ
+        double weight = 2 * Math.log1p(sold) + rating;
+        return new BookState((String) row[1], (String) row[2], Boolean.TRUE.equals(row[5]), weight, categoryIds);
+    }
+
+    private void applyBook(Long bookId, BookState state) {
+        BookState previous = state == null ? books.remove(bookId) : books.put(bookId, state);
+
+        if (previous != null) {
+            removeSuggestion("book:" + bookId);
+            if (previous.author() != null) {
+                removeContribution("author:" + normalize(previous.author()), bookId);
+            }
+            for (Long categoryId : previous.categoryIds()) {
+                removeContribution("category:" + categoryId, bookId);
+            }
+        }
+
+        if (state == null || !state.available()) {
+            return;
+        }
+        if (state.title() != null) {
+            Suggestion book = new Suggestion("book:" + bookId, SuggestionType.BOOK, state.title(), bookId);
+            book.setWeight(state.weight());
+            addSuggestion(book);
+        }
+        if (state.author() != null) {
+            addContribution("author:" + normalize(state.author()), SuggestionType.AUTHOR,
+                    state.author(), null, bookId, state.weight());
+        }
+        for (Long categoryId : state.categoryIds()) {
+            String name = categoryNames.get(categoryId);
+            if (name != null) {
+                addContribution("category:" + categoryId, SuggestionType.CATEGORY,
+                        name, categoryId, bookId, state.weight());
+            }
+        }
+    }
+
+    // Tác giả/danh mục lấy trọng số cao nhất trong các sách đóng góp
+    private void addContribution(String id, SuggestionType type, String text, Long targetId,
+                                 Long bookId, double weight) {
+        Suggestion existing = suggestions.get(id);
+        Suggestion updated = new Suggestion(id, type, text, targetId);
+        if (existing != null) {
+            updated.getContributions().putAll(existing.getContributions());
+        }
+        updated.getContributions().put(bookId, weight);
+        replaceSuggestion(existing, updated);
+    }
+
+    private void removeContribution(String id, Long bookId) {
+        Suggestion existing = suggestions.get(id);
+        if (existing == null || !existing.getContributions().containsKey(bookId)) {
+            return;
+        }
+        Suggestion updated = new Suggestion(id, existing.getType(), existing.getText(), existing.getTargetId());
+        updated.getContributions().putAll(existing.getContributions());
+        updated.getContributions().remove(bookId);
+        replaceSuggestion(existing, updated);
+    }
+
+    private void replaceSuggestion(Suggestion existing, Suggestion updated) {
+        updated.setWeight(updated.getContributions().values().stream()
+                .mapToDouble(Double::doubleValue)
+                .max()
+                .orElse(0.0));
+        if (existing != null) {
+            if (existing.getWeight() == updated.getWeight()
+                    && existing.getContributions().isEmpty() == updated.getContributions().isEmpty()) {
+                // Trọng số không đổi: chỉ cập nhật danh sách đóng góp
+                existing.getContributions().clear();
+                existing.getContributions().putAll(updated.getContributions());
+                return;
+            }
+            removeSuggestion(existing.getId());
+        }
+        if (!updated.getContributions().isEmpty()) {
+            addSuggestion(updated);
+        }
+    }
+
+    // Trọng số không được đổi khi gợi ý đang nằm trong index (vị trí trong các tập byPrefix phụ thuộc vào nó)
+    private void addSuggestion(Suggestion suggestion) {
+        suggestions.put(suggestion.getId(), suggestion);
+        for (String key : keysFor(suggestion.getText())) {
+            keys.put(key + KEY_SEPARATOR + suggestion.getId(), suggestion);
+            for (int length = 1; length <= Math.min(CACHED_PREFIX_LENGTH, key.length()); length++) {
+                byPrefix.computeIfAbsent(key.substring(0, length), p -> new TreeSet<>(BY_WEIGHT)).add(suggestion);
+            }
+        }
+    }
+
+    private void removeSuggestion(String id) {
+        Suggestion suggestion = suggestions.remove(id);
+        if (suggestion == null) {
+            return;
+        }
+        for (String key : keysFor(suggestion.getText())) {
+            keys.remove(key + KEY_SEPARATOR + id);
+            for (int length = 1; length <= Math.min(CACHED_PREFIX_LENGTH, key.length()); length++) {
+                String prefix = key.substring(0, length);
+                NavigableSet<Suggestion> matches = byPrefix.get(prefix);
+                if (matches != null && matches.remove(suggestion) && matches.isEmpty()) {
+                    byPrefix.remove(prefix);
+                }
+            }
+        }
+    }
+
+    // Chỉ dùng cho tiền tố dài hơn CACHED_PREFIX_LENGTH, nơi tập khớp đã nhỏ
+    private Suggestion[] scan(String prefix) {
+        List<Suggestion> matches = new ArrayList<>();
+        Set<String> seen = new LinkedHashSet<>();
+        int scanned = 0;
+        for (Suggestion suggestion : keys.subMap(prefix, true, prefix + Character.MAX_VALUE, true).values()) {
+            if (scanned++ >= MAX_SCAN) {
+                break;
+            }
+            if (seen.add(suggestion.getId())) {
+                matches.add(suggestion);
+            }
+        }
+        return matches.stream()
+                .sorted(BY_WEIGHT)
+                .limit(MAX_SUGGESTIONS)
+                .toArray(Suggestion[]::new);
+    }
+
+    // Key gồm toàn bộ chuỗi và các hậu tố bắt đầu từ mỗi từ: "harry potter" khớp cả "potter"
+    private static List<String> keysFor(String text) {
+        List<String> tokens = TextNormalizer.tokenize(text);
+        Set<String> result = new LinkedHashSet<>();
+        for (int i = 0; i < tokens.size() && i <= MAX_WORD_SUFFIXES; i++) {
+            String key = String.join(" ", tokens.subList(i, tokens.size()));
+            result.add(key.length() > MAX_KEY_LENGTH ? key.substring(0, MAX_KEY_LENGTH) : key);
+        }
+        return new ArrayList<>(result);
+    }
+
+    private static String normalize(String text) {
+        String normalized = String.join(" ", TextNormalizer.tokenize(text));
+        return normalized.length() > MAX_KEY_LENGTH ? normalized.substring(0, MAX_KEY_LENGTH) : normalized;
+    }
+
+    public enum SuggestionType {
+        BOOK, AUTHOR, CATEGORY
+    }
+
+    private record BookState(String title, String author, boolean available, double weight,
+                             List<Long> categoryIds) {
+    }
+
+    // So sánh theo identity: mỗi ID chỉ có một đối tượng Suggestion đang nằm trong index
+    @Getter
+    @Setter
+    private static final class Suggestion {
+        private final String id;
+        private final SuggestionType type;
+        private final String text;
+        private final Long targetId;
+        private final Map<Long, Double> contributions = new HashMap<>();
+        private double weight;
+
+        private Suggestion(String id, SuggestionType type, String text, Long targetId) {
+            this.id = id;
+            this.type = type;
+            this.text = text;
+            this.targetId = targetId;
+        }
+    }
+}
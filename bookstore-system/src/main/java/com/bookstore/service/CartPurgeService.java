@@ -0,0 +1,108 @@
+package com.bookstore.service;
+
+import com.bookstore.repository.CartPurgeRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Dọn giỏ hàng không cập nhật quá app.cart.purge.retention. Mỗi lô là một transaction ngắn
+// (cart_items rồi carts, tối đa batch-size giỏ) để khóa được nhả ngay, nghỉ giữa các lô
+// để checkout không phải chờ; dừng khi hết thời gian cho phép, lần chạy sau làm tiếp.
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CartPurgeService {
+
+    // SQL Server giới hạn 2100 tham số mỗi câu lệnh (IN (...))
+    private static final int MAX_BATCH_SIZE = 2000;
+
+    private final CartPurgeRepository cartPurgeRepository;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${app.cart.purge.retention:7d}")
+    private Duration retention;
+
+    @Value("${app.cart.purge.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.cart.purge.pause:100ms}")
+    private Duration pause;
+
+    @Value("${app.cart.purge.max-duration:30m}")
+    private Duration maxDuration;
+
+    public record PurgeResult(long carts, long items, long elapsedMillis) {
+
+        public long rowsPerSecond() {
+            return (carts + items) * 1000 / Math.max(1, elapsedMillis);
+        }
+    }
+
+    @Scheduled(cron = "${app.cart.purge.cron:0 30 3 * * *}")
+    public void scheduledPurge() {
+        try {
+            purge();
+        } catch (RuntimeException e) {
+            log.error("Expired cart purge failed: {}", e.getMessage());
+        }
+    }
+
+    public synchronized PurgeResult purge() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(retention);
+        int limit = Math.max(1, Math.min(batchSize, MAX_BATCH_SIZE));
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        long start = System.nanoTime();
+        long deadline = start + maxDuration.toNanos();
+        long carts = 0;
+        long items = 0;
+
+        while (true) {
+            long[] deleted = transactionTemplate.execute(status -> {
+                List<Long> cartIds = cartPurgeRepository.findExpiredCartIds(cutoff, limit);
+                int itemCount = cartPurgeRepository.deleteItems(cartIds, cutoff);
+                int cartCount = cartPurgeRepository.deleteCarts(cartIds, cutoff);
+                return new long[]{cartIds.size(), cartCount, itemCount};
+            });
+            carts += deleted[1];
+            items += deleted[2];
+            if (deleted[0] < limit) {
+                break;
+            }
+            if (System.nanoTime() - deadline > 0) {
+                log.warn("Expired cart purge stopped after {}; remaining carts are purged on the next run", maxDuration);
+                break;
+            }
+            if (!sleep()) {
+                break;
+            }
+        }
+
+        PurgeResult result = new PurgeResult(carts, items,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        log.info("Purged {} expired carts and {} cart items older than {} in {} ms ({} rows/s)",
+                result.carts(), result.items(), cutoff, result.elapsedMillis(), result.rowsPerSecond());
+        return result;
+    }
+
+    private boolean sleep() {
+        if (pause.isZero()) {
+            return true;
+        }
+        try {
+            Thread.sleep(pause.toMillis());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -6,35 +6,47 @@ import com.bookstore.entity.CartItem;
 import com.bookstore.entity.User;
 import com.bookstore.repository.BookRepository;
 import com.bookstore.repository.CartRepository;
+import com.bookstore.repository.CartStoreRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
-import java.time.LocalDateTime;
-import java.util.Optional;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
+// Mọi thay đổi giỏ hàng chạy trên CartStore trong bộ nhớ (sách lấy từ BookCache, giữ hàng qua InventoryService);
+// carts/cart_items được ghi ở background và ghi đồng bộ khi checkout (getCartDetails)
 @Slf4j
 @Service
 @RequiredArgsConstructor
-@Transactional
 public class CartService {
 
+    // Thuộc tính HttpSession giữ khóa giỏ hiện tại
+    public static final String CART_KEY_ATTRIBUTE = "CART_KEY";
+
+    private static final String GUEST_CART_PREFIX = "guest-";
+    private static final String USER_CART_PREFIX = "user-cart-";
+
     private final CartRepository cartRepository;
     private final BookRepository bookRepository;
+    private final InventoryService inventoryService;
+    private final CartStore cartStore;
+    private final BookCache bookCache;
+    private final CartPurgeService cartPurgeService;
+    private final CartStoreRepository cartStoreRepository;
+    private final UserService userService;
+    private final PlatformTransactionManager transactionManager;
 
     public Cart getOrCreateCart(String sessionId) {
         log.debug("Getting or creating cart for session: {}", sessionId);
-
-        return cartRepository.findBySessionId(sessionId)
-                .orElseGet(() -> {
-                    Cart newCart = Cart.builder()
-                            .sessionId(sessionId)
-                            .build();
-                    return cartRepository.save(newCart);
-                });
+        return cartStore.read(sessionId, this::toCart);
     }
 
     public Cart addToCart(String sessionId, Long bookId, Integer quantity) {
@@ -44,96 +56,223 @@ public class CartService {
             throw new IllegalArgumentException("Quantity must be greater than 0");
         }
 
-        Book book = bookRepository.findById(bookId)
-                .orElseThrow(() -> new IllegalArgumentException("Book not found with ID: " + bookId));
+        Book book = findBook(bookId);
 
         if (!book.isInStock()) {
             throw new IllegalStateException("Book is out of stock");
         }
 
-        if (quantity > book.getStockQuantity()) {
-            throw new IllegalStateException("Requested quantity exceeds available stock");
-        }
-
-        Cart cart = getOrCreateCart(sessionId);
-        cart.addItem(book, quantity);
-
-        return cartRepository.save(cart);
+        return cartStore.update(sessionId, state -> {
+            int newQuantity = state.getQuantity(bookId) + quantity;
+            // Giữ hàng cho giỏ trong một khoảng thời gian (tự hết hạn nếu không checkout)
+            if (!inventoryService.reserve(sessionId, bookId, newQuantity)) {
+                throw new IllegalStateException("Requested quantity exceeds available stock");
+            }
+            state.setQuantity(bookId, newQuantity, book.getCurrentPrice());
+            return toCart(state);
+        });
     }
 
     public Cart updateCartItem(String sessionId, Long bookId, Integer quantity) {
         log.info("Updating cart item for session {}, book {}, quantity: {}", sessionId, bookId, quantity);
 
-        Cart cart = getCartBySessionId(sessionId);
-        Book book = bookRepository.findById(bookId)
-                .orElseThrow(() -> new IllegalArgumentException("Book not found with ID: " + bookId));
+        requireCart(sessionId);
+        Book book = findBook(bookId);
 
-        cart.updateItemQuantity(book, quantity);
+        return cartStore.update(sessionId, state -> {
+            if (state.contains(bookId)) {
+                if (quantity <= 0) {
+                    inventoryService.release(sessionId, bookId);
+                } else if (!inventoryService.reserve(sessionId, bookId, quantity)) {
+                    throw new IllegalStateException("Requested quantity exceeds available stock");
+                }
+                state.setQuantity(bookId, quantity, book.getCurrentPrice());
+            }
+            return toCart(state);
+        });
+    }
+
+    // Cập nhật cả giỏ một lần (bookId -> số lượng mới, <= 0 để xóa); sách không có trong giỏ bị bỏ qua.
+    // Tất cả hoặc không: thiếu hàng cho bất kỳ dòng nào thì giỏ và lượng giữ hàng giữ nguyên như trước
+    public Cart updateCartItems(String sessionId, Map<Long, Integer> quantities) {
+        log.info("Updating {} cart items for session {}", quantities.size(), sessionId);
+
+        quantities.forEach((bookId, quantity) -> {
+            if (bookId == null || quantity == null) {
+                throw new IllegalArgumentException("Book ID and quantity are required");
+            }
+        });
+        requireCart(sessionId);
 
-        return cartRepository.save(cart);
+        return cartStore.update(sessionId, state -> {
+            Map<Long, Integer> changes = new LinkedHashMap<>();
+            quantities.forEach((bookId, quantity) -> {
+                if (state.contains(bookId) && state.getQuantity(bookId) != Math.max(quantity, 0)) {
+                    changes.put(bookId, Math.max(quantity, 0));
+                }
+            });
+
+            // Giữ thêm hàng trước; một dòng thất bại thì trả các dòng đã giữ về lượng cũ
+            Map<Long, Integer> previous = new LinkedHashMap<>();
+            for (Map.Entry<Long, Integer> change : changes.entrySet()) {
+                Long bookId = change.getKey();
+                int held = inventoryService.getHeldQuantity(sessionId, bookId);
+                if (change.getValue() <= held) {
+                    continue;
+                }
+                if (!inventoryService.reserve(sessionId, bookId, change.getValue())) {
+                    previous.forEach((id, quantity) -> inventoryService.reserve(sessionId, id, quantity));
+                    throw new IllegalStateException("Requested quantity exceeds available stock for book ID: " + bookId);
+                }
+                previous.put(bookId, held);
+            }
+            // Giảm/xóa luôn thành công nên làm sau cùng
+            changes.forEach((bookId, quantity) -> {
+                if (quantity == 0) {
+                    inventoryService.release(sessionId, bookId);
+                } else if (quantity < inventoryService.getHeldQuantity(sessionId, bookId)) {
+                    inventoryService.reserve(sessionId, bookId, quantity);
+                }
+            });
+            state.updateQuantities(changes);
+            return toCart(state);
+        });
     }
 
     public Cart removeFromCart(String sessionId, Long bookId) {
         log.info("Removing book {} from cart for session {}", bookId, sessionId);
 
-        Cart cart = getCartBySessionId(sessionId);
-        Book book = bookRepository.findById(bookId)
-                .orElseThrow(() -> new IllegalArgumentException("Book not found with ID: " + bookId));
+        requireCart(sessionId);
+        findBook(bookId);
 
-        cart.removeItem(book);
-
-        return cartRepository.save(cart);
+        return cartStore.update(sessionId, state -> {
+            state.remove(bookId);
+            inventoryService.release(sessionId, bookId);
+            return toCart(state);
+        });
     }
 
     public void clearCart(String sessionId) {
         log.info("Clearing cart for session: {}", sessionId);
 
-        Cart cart = getCartBySessionId(sessionId);
-        cart.clear();
-        cartRepository.save(cart);
+        requireCart(sessionId);
+        cartStore.update(sessionId, state -> {
+            state.clear();
+            return null;
+        });
+        inventoryService.releaseAll(sessionId);
     }
 
     public Cart getCartBySessionId(String sessionId) {
-        return cartRepository.findBySessionId(sessionId)
-                .orElseThrow(() -> new IllegalArgumentException("Cart not found for session: " + sessionId));
+        requireCart(sessionId);
+        return cartStore.read(sessionId, this::toCart);
     }
 
-    public void cleanupExpiredCarts() {
-        log.info("Cleaning up expired carts");
-        LocalDateTime expiryDate = LocalDateTime.now().minusDays(7);
-        cartRepository.deleteExpiredCarts(expiryDate);
+    private void requireCart(String sessionId) {
+        if (!cartStore.read(sessionId, CartStore.CartState::exists)) {
+            throw new IllegalArgumentException("Cart not found for session: " + sessionId);
+        }
     }
 
-    public String generateSessionId() {
-        return UUID.randomUUID().toString();
+    private Book findBook(Long bookId) {
+        return bookCache.get(bookId, id -> bookRepository.findDetailedById(id).orElse(null))
+                .orElseThrow(() -> new IllegalArgumentException("Book not found with ID: " + bookId));
     }
 
+    // Cart tạm (không được quản lý bởi JPA) để hiển thị; sách đã bị xóa thì bỏ qua
+    private Cart toCart(CartStore.CartState state) {
+        Cart cart = Cart.builder()
+                .id(state.getCartId())
+                .sessionId(state.getSessionId())
+                .build();
+        for (CartStoreRepository.CartLine line : state.getLines()) {
+            bookCache.get(line.bookId(), id -> bookRepository.findDetailedById(id).orElse(null))
+                    .ifPresent(book -> cart.getItems().add(CartItem.builder()
+                            .cart(cart)
+                            .book(book)
+                            .quantity(line.quantity())
+                            .unitPrice(line.unitPrice())
+                            .build()));
+        }
+        cart.calculateTotals();
+        return cart;
+    }
+
+    // Xóa theo lô, xem CartPurgeService (cũng chạy định kỳ theo app.cart.purge.cron)
+    public CartPurgeService.PurgeResult cleanupExpiredCarts() {
+        log.info("Cleaning up expired carts");
+        return cartPurgeService.purge();
+    }
+
+    // Tổng được giữ sẵn trong CartState, không dựng lại Cart
     public BigDecimal calculateCartTotal(String sessionId) {
-        Cart cart = getCartBySessionId(sessionId);
-        return cart.getTotalPrice();
+        requireCart(sessionId);
+        return cartStore.read(sessionId, CartStore.CartState::getTotalPrice);
     }
 
     public int getCartItemCount(String sessionId) {
-        try {
-            Cart cart = getCartBySessionId(sessionId);
-            return cart.getTotalItems();
-        } catch (IllegalArgumentException e) {
-            return 0;
+        return cartStore.read(sessionId, CartStore.CartState::getTotalItems);
+    }
+
+    // ========================
+    // CART IDENTITY
+    // ========================
+
+    // Khóa giỏ (carts.session_id): khách dùng khóa ngẫu nhiên lưu trong HttpSession, user đăng nhập
+    // dùng khóa cố định theo user ID nên giỏ được giữ qua các phiên và thiết bị
+    public String newGuestCartKey() {
+        return GUEST_CART_PREFIX + UUID.randomUUID();
+    }
+
+    public String userCartKey(Long userId) {
+        return USER_CART_PREFIX + userId;
+    }
+
+    // null nếu không tìm thấy user
+    public String userCartKey(String email) {
+        return userService.getUserByEmail(email).map(user -> userCartKey(user.getId())).orElse(null);
+    }
+
+    // Gọi khi đăng nhập: gộp giỏ khách (nếu có) vào giỏ user, trả về khóa giỏ user
+    public String mergeOnLogin(String guestCartKey, String email) {
+        String userCartKey = userCartKey(email);
+        if (userCartKey == null || guestCartKey == null || !guestCartKey.startsWith(GUEST_CART_PREFIX)) {
+            return userCartKey;
         }
+        mergeCarts(guestCartKey, userCartKey);
+        return userCartKey;
     }
 
-    // Method for getting current cart (simplified - in real app, you'd get session from HTTP request)
-    public Cart getCurrentCart() {
-        // This is a simplified version. In a real application, you would get the session ID from the HTTP session.
-        // For now, we generate a new session ID for demonstration.
-        String sessionId = generateSessionId();
-        return getOrCreateCart(sessionId);
+    public void mergeCarts(String guestCartKey, String userCartKey) {
+        long start = System.nanoTime();
+        // Gộp trực tiếp trong DB trong khi giữ khóa của cả hai giỏ: write-behind không thể ghi lại
+        // bản cũ của giỏ user (xóa rồi chèn lại các dòng) đè lên các dòng vừa gộp từ giỏ khách
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        Long cartId = cartStore.rewrite(List.of(guestCartKey, userCartKey), () -> transactionTemplate
+                .execute(status -> cartStoreRepository.mergeCarts(guestCartKey, userCartKey)));
+
+        // Chuyển phần giữ hàng sang giỏ user theo số lượng sau khi gộp
+        inventoryService.releaseAll(guestCartKey);
+        cartStore.read(userCartKey, state -> {
+            for (CartStoreRepository.CartLine line : state.getLines()) {
+                if (!inventoryService.reserve(userCartKey, line.bookId(), line.quantity())) {
+                    log.warn("Not enough stock to hold {} x book {} for merged cart {}",
+                            line.quantity(), line.bookId(), userCartKey);
+                }
+            }
+            return null;
+        });
+        log.info("Merged guest cart {} into {} (cart {}) in {} ms", guestCartKey, userCartKey, cartId,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
     }
 
     // Thêm method getCartDetails để fix lỗi
+    // Checkout: ghi đồng bộ các thay đổi còn chờ rồi đọc giỏ (entity JPA) từ DB
+    @Transactional
     public Cart getCartDetails(User user) {
-        // Giả sử giỏ hàng liên kết với user qua sessionId dựa trên user ID
-        String sessionId = "user-cart-" + user.getId();  // Có thể thay bằng logic thực tế (tìm cart theo user)
-        return getOrCreateCart(sessionId);  // Hoặc throw exception nếu không tìm thấy
+        String sessionId = userCartKey(user.getId());
+        cartStore.flush(sessionId);
+        return cartRepository.findBySessionId(sessionId)
+                .orElseGet(() -> Cart.builder().sessionId(sessionId).build());
     }
 }
\ No newline at end of file
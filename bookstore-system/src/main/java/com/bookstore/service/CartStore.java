@@ -0,0 +1,425 @@
+package com.bookstore.service;
+
+import com.bookstore.repository.CartStoreRepository;
+import com.bookstore.repository.CartStoreRepository.CartLine;
+import com.bookstore.repository.CartStoreRepository.CartWrite;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// Giỏ hàng đang hoạt động giữ trong bộ nhớ theo session (giới hạn số lượng, hết hạn khi không dùng).
+// Thay đổi chỉ đánh dấu giỏ "dirty"; job nền gom các giỏ dirty và ghi xuống carts/cart_items theo lô
+// (write-behind). Checkout gọi flush(sessionId) để ghi đồng bộ. Restart chỉ mất tối đa một chu kỳ flush.
+// Không có khóa chung cho cả store: mỗi giỏ có khóa ghi riêng, job nền bỏ qua giỏ đang bị khóa
+// nên flush của một giỏ khi checkout không phải chờ cả lượt write-behind.
+@Slf4j
+@Component
+public class CartStore {
+
+    private final CartStoreRepository cartStoreRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int flushBatchSize;
+    private final Cache<String, CartState> carts;
+    // Giỏ có thay đổi chưa ghi. Giữ cả object: giỏ bị đẩy khỏi cache vẫn được ghi và được nạp lại từ đây
+    private final Map<String, CartState> dirty = new ConcurrentHashMap<>();
+    // Giỏ đang bị update/rewrite khóa: bị đẩy khỏi cache giữa chừng thì get vẫn trả về đúng object đang khóa
+    private final Map<String, CartState> pinned = new ConcurrentHashMap<>();
+
+    public CartStore(CartStoreRepository cartStoreRepository,
+                     PlatformTransactionManager transactionManager,
+                     @Value("${app.cart.store.max-size:100000}") long maxSize,
+                     @Value("${app.cart.store.idle-timeout:30m}") Duration idleTimeout,
+                     @Value("${app.cart.flush-batch-size:500}") int flushBatchSize) {
+        this.cartStoreRepository = cartStoreRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.flushBatchSize = Math.max(1, flushBatchSize);
+        this.carts = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterAccess(idleTimeout)
+                .build();
+        log.info("Cart store initialized with max size {} and idle timeout {}", maxSize, idleTimeout);
+    }
+
+    public CartState get(String sessionId) {
+        return carts.get(sessionId, this::load);
+    }
+
+    // Thay đổi giỏ dưới khóa của giỏ; mutation ném exception thì giỏ không bị đánh dấu dirty
+    public <T> T update(String sessionId, Function<CartState, T> mutation) {
+        CartState state = lockCurrent(sessionId);
+        try {
+            synchronized (state) {
+                T result = mutation.apply(state);
+                state.version++;
+                dirty.put(sessionId, state);
+                return result;
+            }
+        } finally {
+            unlock(state);
+        }
+    }
+
+    public <T> T read(String sessionId, Function<CartState, T> reader) {
+        while (true) {
+            CartState state = get(sessionId);
+            synchronized (state) {
+                // Giỏ vừa bị bỏ khỏi bộ nhớ: đọc lại bản mới
+                if (!state.discarded) {
+                    return reader.apply(state);
+                }
+            }
+        }
+    }
+
+    public int getDirtyCount() {
+        return dirty.size();
+    }
+
+    // Ghi đồng bộ một giỏ (checkout); chỉ chờ lượt ghi đang chạy của chính giỏ này
+    public void flush(String sessionId) {
+        CartState state = dirty.get(sessionId);
+        if (state == null) {
+            return;
+        }
+        state.writeLock.lock();
+        try {
+            write(List.of(state));
+        } finally {
+            state.writeLock.unlock();
+        }
+    }
+
+    // Bỏ giỏ khỏi bộ nhớ sau khi DB bị sửa trực tiếp; lần get sau nạp lại từ DB
+    public void invalidate(String sessionId) {
+        CartState state = carts.getIfPresent(sessionId);
+        if (state == null) {
+            state = dirty.get(sessionId);
+        }
+        if (state == null) {
+            return;
+        }
+        state.writeLock.lock();
+        try {
+            discard(state);
+        } finally {
+            state.writeLock.unlock();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.cart.flush-interval-ms:2000}")
+    public void scheduledFlush() {
+        try {
+            flushAll();
+        } catch (RuntimeException e) {
+            log.error("Cart write-behind flush failed: {}", e.getMessage());
+        }
+    }
+
+    // Sửa trực tiếp trong DB các giỏ đã cho (gộp giỏ khi đăng nhập). Giữ khóa ghi của mọi giỏ từ lúc ghi
+    // các thay đổi còn chờ tới khi bỏ bản trong bộ nhớ, nên không flush/update nào chen vào giữa
+    // để ghi đè kết quả. Thành công thì lần get sau nạp lại giỏ từ DB; change ném exception thì giữ nguyên.
+    public <T> T rewrite(Collection<String> sessionIds, Supplier<T> change) {
+        List<CartState> locked = new ArrayList<>(sessionIds.size());
+        try {
+            // Khóa theo thứ tự sessionId để hai lần gộp đồng thời không deadlock
+            for (String sessionId : new TreeSet<>(sessionIds)) {
+                locked.add(lockCurrent(sessionId));
+            }
+            write(locked);
+            T result = change.get();
+            locked.forEach(this::discard);
+            return result;
+        } finally {
+            locked.forEach(this::unlock);
+        }
+    }
+
+    // Ghi nốt các giỏ dirty khi tắt ứng dụng
+    @PreDestroy
+    public void flushOnShutdown() {
+        int written = flushAll();
+        log.info("Flushed {} carts on shutdown, {} still dirty", written, dirty.size());
+    }
+
+    // Giỏ đang bị khóa (checkout flush, đang sửa) thì bỏ qua: bên giữ khóa tự ghi hoặc lần sau ghi tiếp
+    public int flushAll() {
+        if (dirty.isEmpty()) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        int written = 0;
+        int skipped = 0;
+        List<CartState> batch = new ArrayList<>(flushBatchSize);
+        for (CartState state : dirty.values()) {
+            if (!state.writeLock.tryLock()) {
+                skipped++;
+                continue;
+            }
+            batch.add(state);
+            if (batch.size() == flushBatchSize) {
+                written += writeAndUnlock(batch);
+            }
+        }
+        if (!batch.isEmpty()) {
+            written += writeAndUnlock(batch);
+        }
+        log.debug("Flushed {} carts ({} busy, skipped) in {} ms", written, skipped,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return written;
+    }
+
+    private int writeAndUnlock(List<CartState> batch) {
+        try {
+            return write(batch);
+        } finally {
+            batch.forEach(state -> state.writeLock.unlock());
+            batch.clear();
+        }
+    }
+
+    // Khóa ghi của giỏ hiện tại trong bộ nhớ và ghim nó cho tới unlock (lấy lại nếu giỏ vừa bị bỏ/bị thay)
+    private CartState lockCurrent(String sessionId) {
+        while (true) {
+            CartState state = get(sessionId);
+            state.writeLock.lock();
+            boolean discarded;
+            synchronized (state) {
+                discarded = state.discarded;
+            }
+            if (!discarded) {
+                if (pin(state)) {
+                    return state;
+                }
+                // Giỏ đã bị đẩy khỏi cache (không dirty) và request khác đã nạp bản mới: bỏ bản cũ
+                discard(state);
+            }
+            state.writeLock.unlock();
+        }
+    }
+
+    // Ghim trong cùng compute với load() của Caffeine: chỉ ghim được khi chưa có CartState nào khác
+    // là giỏ hiện tại của session, nên không bao giờ có hai object của cùng một giỏ được sửa song song
+    private boolean pin(CartState state) {
+        boolean[] pinnedNow = new boolean[1];
+        carts.asMap().compute(state.sessionId, (sessionId, current) -> {
+            CartState live = current != null ? current : pinned.getOrDefault(sessionId, dirty.get(sessionId));
+            if (live != null && live != state) {
+                return current;
+            }
+            pinned.put(sessionId, state);
+            pinnedNow[0] = true;
+            return state;
+        });
+        return pinnedNow[0];
+    }
+
+    private void unlock(CartState state) {
+        pinned.remove(state.sessionId, state);
+        state.writeLock.unlock();
+    }
+
+    // Dùng trong test: giả lập Caffeine đẩy giỏ khỏi cache (hết hạn/quá số lượng)
+    void evict(String sessionId) {
+        carts.invalidate(sessionId);
+    }
+
+    // Gọi khi đang giữ khóa ghi của giỏ
+    private void discard(CartState state) {
+        synchronized (state) {
+            state.discarded = true;
+        }
+        dirty.remove(state.sessionId, state);
+        carts.asMap().remove(state.sessionId, state);
+    }
+
+    // Gọi khi đang giữ khóa ghi của mọi giỏ trong "states"
+    private int write(Collection<CartState> states) {
+        List<CartState> pending = new ArrayList<>(states.size());
+        List<CartWrite> writes = new ArrayList<>(states.size());
+        List<Long> versions = new ArrayList<>(states.size());
+        for (CartState state : states) {
+            synchronized (state) {
+                // Đã được ghi (hoặc đã bị bỏ) trước khi lấy được khóa
+                if (state.discarded || dirty.get(state.sessionId) != state) {
+                    continue;
+                }
+                // Giỏ mới chưa có sách: không cần tạo dòng trong DB
+                if (state.cartId == null && state.lines.isEmpty()) {
+                    dirty.remove(state.sessionId, state);
+                    continue;
+                }
+                pending.add(state);
+                writes.add(new CartWrite(state.sessionId, state.cartId, List.copyOf(state.lines.values()),
+                        Set.copyOf(state.changedBooks), state.totalItems, state.totalPrice));
+                versions.add(state.version);
+            }
+        }
+        if (writes.isEmpty()) {
+            return 0;
+        }
+
+        List<Long> cartIds = transactionTemplate.execute(status -> cartStoreRepository.saveAll(writes));
+        for (int i = 0; i < pending.size(); i++) {
+            CartState state = pending.get(i);
+            synchronized (state) {
+                state.cartId = cartIds.get(i);
+                // Có thay đổi mới trong lúc ghi: giữ dirty (và các dòng đã đổi) cho lần flush sau
+                if (state.version == versions.get(i)) {
+                    state.changedBooks.clear();
+                    dirty.remove(state.sessionId, state);
+                }
+            }
+        }
+        return writes.size();
+    }
+
+    private CartState load(String sessionId) {
+        CartState pending = dirty.get(sessionId);
+        if (pending == null) {
+            pending = pinned.get(sessionId);
+        }
+        if (pending != null) {
+            return pending;
+        }
+        CartState state = new CartState(sessionId);
+        Long cartId = cartStoreRepository.findCartId(sessionId);
+        if (cartId != null) {
+            state.cartId = cartId;
+            cartStoreRepository.findLines(cartId).forEach(line -> state.setQuantity(line.bookId(), line.quantity(), line.unitPrice()));
+            state.changedBooks.clear();
+        }
+        return state;
+    }
+
+    // Trạng thái một giỏ; chỉ đọc/ghi khi giữ khóa của chính object (CartStore.update).
+    // writeLock bao cả lượt ghi DB để hai lần flush của cùng một giỏ không chạy song song
+    public static class CartState {
+
+        private final ReentrantLock writeLock = new ReentrantLock();
+        private final String sessionId;
+        private final Map<Long, CartLine> lines = new LinkedHashMap<>();
+        // Sách có dòng đã thêm/sửa/xóa so với DB: lần ghi sau chỉ ghi các dòng này
+        private final Set<Long> changedBooks = new LinkedHashSet<>();
+        private Long cartId;
+        private long version;
+        private boolean discarded;
+        // Cập nhật dần theo từng thay đổi dòng, không duyệt lại cả giỏ
+        private int totalItems;
+        private BigDecimal totalPrice = BigDecimal.ZERO;
+
+        CartState(String sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        public String getSessionId() {
+            return sessionId;
+        }
+
+        public Long getCartId() {
+            return cartId;
+        }
+
+        public boolean exists() {
+            return cartId != null || !lines.isEmpty();
+        }
+
+        public boolean isEmpty() {
+            return lines.isEmpty();
+        }
+
+        public boolean contains(Long bookId) {
+            return lines.containsKey(bookId);
+        }
+
+        public int getQuantity(Long bookId) {
+            CartLine line = lines.get(bookId);
+            return line == null ? 0 : line.quantity();
+        }
+
+        public Collection<CartLine> getLines() {
+            return Collections.unmodifiableCollection(lines.values());
+        }
+
+        // Giữ đơn giá lúc thêm lần đầu, như Cart.addItem
+        public void setQuantity(Long bookId, int quantity, BigDecimal unitPrice) {
+            if (quantity <= 0) {
+                remove(bookId);
+                return;
+            }
+            CartLine existing = lines.get(bookId);
+            CartLine line = new CartLine(bookId, quantity, existing != null ? existing.unitPrice() : unitPrice);
+            lines.put(bookId, line);
+            changedBooks.add(bookId);
+            if (existing != null) {
+                subtract(existing);
+            }
+            add(line);
+        }
+
+        // Cập nhật nhiều dòng đã có trong giỏ (bookId -> số lượng mới, <= 0 để xóa)
+        public void updateQuantities(Map<Long, Integer> quantities) {
+            quantities.forEach((bookId, quantity) -> {
+                CartLine existing = lines.get(bookId);
+                if (existing != null) {
+                    setQuantity(bookId, quantity, existing.unitPrice());
+                }
+            });
+        }
+
+        public void remove(Long bookId) {
+            CartLine removed = lines.remove(bookId);
+            if (removed != null) {
+                changedBooks.add(bookId);
+                subtract(removed);
+            }
+        }
+
+        public void clear() {
+            changedBooks.addAll(lines.keySet());
+            lines.clear();
+            totalItems = 0;
+            totalPrice = BigDecimal.ZERO;
+        }
+
+        public int getTotalItems() {
+            return totalItems;
+        }
+
+        public BigDecimal getTotalPrice() {
+            return totalPrice;
+        }
+
+        private void add(CartLine line) {
+            totalItems += line.quantity();
+            totalPrice = totalPrice.add(line.unitPrice().multiply(BigDecimal.valueOf(line.quantity())));
+        }
+
+        private void subtract(CartLine line) {
+            totalItems -= line.quantity();
+            totalPrice = totalPrice.subtract(line.unitPrice().multiply(BigDecimal.valueOf(line.quantity())));
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.bookstore.service;
+
+import com.bookstore.dto.DashboardMetricsDTO;
+import com.bookstore.entity.Order;
+import com.bookstore.repository.BookRepository;
+import com.bookstore.repository.CartRepository;
+import com.bookstore.repository.OrderRepository;
+import com.bookstore.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+// KPI cho trang admin: tính lại định kỳ ở background, request chỉ đọc snapshot trong bộ nhớ
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DashboardMetricsService {
+
+    private final BookRepository bookRepository;
+    private final OrderRepository orderRepository;
+    private final UserRepository userRepository;
+    private final CartRepository cartRepository;
+    private final RevenueService revenueService;
+
+    @Value("${app.dashboard.active-cart-window:24h}")
+    private Duration activeCartWindow;
+
+    private final AtomicReference<DashboardMetricsDTO> snapshot = new AtomicReference<>();
+
+    public DashboardMetricsDTO getSnapshot() {
+        DashboardMetricsDTO current = snapshot.get();
+        // Chỉ xảy ra khi có request trước lần làm mới đầu tiên
+        return current != null ? current : refresh();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        refresh();
+    }
+
+    @Scheduled(fixedDelayString = "${app.dashboard.refresh-interval-ms:30000}",
+            initialDelayString = "${app.dashboard.refresh-interval-ms:30000}")
+    public void scheduledRefresh() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            // Giữ snapshot cũ nếu lần làm mới này lỗi
+            log.error("Failed to refresh dashboard metrics: {}", e.getMessage());
+        }
+    }
+
+    // Không đánh @Transactional: refresh được gọi nội bộ (self-invocation) nên annotation không có tác dụng.
+    // Các truy vấn đếm chạy độc lập với nhau, snapshot KPI không cần nhất quán tuyệt đối
+    public DashboardMetricsDTO refresh() {
+        long start = System.currentTimeMillis();
+
+        Map<String, Long> ordersByStatus = new LinkedHashMap<>();
+        for (Order.OrderStatus status : Order.OrderStatus.values()) {
+            ordersByStatus.put(status.name(), 0L);
+        }
+        long totalOrders = 0;
+        for (Object[] row : orderRepository.countGroupByStatus()) {
+            long count = ((Number) row[1]).longValue();
+            ordersByStatus.put(((Order.OrderStatus) row[0]).name(), count);
+            totalOrders += count;
+        }
+
+        LocalDate today = LocalDate.now();
+        BigDecimal todayRevenue = revenueService.getDailyRevenue(today, today)
+                .getOrDefault(today, BigDecimal.ZERO);
+
+        DashboardMetricsDTO metrics = DashboardMetricsDTO.builder()
+                .totalBooks(bookRepository.count())
+                .availableBooks(nullToZero(bookRepository.countAvailableBooks()))
+                .totalOrders(totalOrders)
+                .ordersByStatus(Collections.unmodifiableMap(ordersByStatus))
+                .totalUsers(userRepository.count())
+                .activeCarts(nullToZero(cartRepository.countActiveCarts(LocalDateTime.now().minus(activeCartWindow))))
+                .totalRevenue(revenueService.getTotalRevenue())
+                .todayRevenue(todayRevenue)
+                .refreshedAt(LocalDateTime.now())
+                .refreshMillis(System.currentTimeMillis() - start)
+                .build();
+
+        snapshot.set(metrics);
+        log.debug("Dashboard metrics refreshed in {} ms", metrics.getRefreshMillis());
+        return metrics;
+    }
+
+    private static long nullToZero(Long value) {
+        return value == null ? 0 : value;
+    }
+}
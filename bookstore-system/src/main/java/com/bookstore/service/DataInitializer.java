@@ -1,13 +1,45 @@
 package com.bookstore.service;
 
+import com.bookstore.repository.BookRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
 import org.springframework.stereotype.Component;
 
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+@Slf4j
 @Component
+@RequiredArgsConstructor
 public class DataInitializer implements CommandLineRunner {
 
+    private final BookRepository bookRepository;
+    private final BookImportService bookImportService;
+    private final ResourceLoader resourceLoader;
+
+    // Vd: classpath:data/books.csv hoặc file:/data/feeds/books.csv; để trống thì bỏ qua
+    @Value("${app.import.initial-books:}")
+    private String initialBooks;
+
     @Override
     public void run(String... args) throws Exception {
-        // Initialize data if needed
+        // Chỉ import khi catalog còn trống
+        if (initialBooks.isBlank() || bookRepository.count() > 0) {
+            return;
+        }
+        Resource resource = resourceLoader.getResource(initialBooks);
+        if (!resource.exists()) {
+            log.warn("Initial book file not found: {}", initialBooks);
+            return;
+        }
+        log.info("Importing initial catalog from {}", initialBooks);
+        try (Reader reader = new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8)) {
+            bookImportService.importBooks(reader);
+        }
     }
-}
\ No newline at end of file
+}
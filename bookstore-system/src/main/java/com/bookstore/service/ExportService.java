@@ -0,0 +1,174 @@
+package com.bookstore.service;
+
+import com.bookstore.dto.ExportProgressDTO;
+import com.bookstore.repository.ExportRepository;
+import com.bookstore.util.CsvWriter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Export CSV dạng streaming: đọc từng dòng từ con trỏ JDBC và ghi thẳng ra response
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ExportService {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String[] ORDER_HEADER = {
+            "Order Number", "Order Date", "Status", "Payment Status", "Payment Method", "Order Total",
+            "Customer Email", "Customer Name", "Shipping Address",
+            "ISBN", "Title", "Quantity", "Unit Price", "Line Total"
+    };
+
+    private static final String[] BOOK_HEADER = {
+            "ID", "ISBN", "Title", "Author", "Publisher", "Language", "Price", "Discount Price",
+            "Stock", "Sold", "Available", "Average Rating", "Review Count", "Created At"
+    };
+
+    private final ExportRepository exportRepository;
+
+    @Value("${app.export.progress-interval:100000}")
+    private int progressInterval;
+
+    private final Map<String, Progress> running = new ConcurrentHashMap<>();
+
+    // Mỗi dòng CSV là một OrderItem, lặp lại thông tin đơn hàng
+    public long exportOrders(OutputStream out, LocalDateTime from, LocalDateTime to) throws IOException {
+        return export("orders", out, ORDER_HEADER,
+                handler -> exportRepository.streamOrderLines(from, to, handler),
+                (rs, csv) -> csv
+                        .field(rs.getString("order_number"))
+                        .field(toDateTime(rs.getTimestamp("order_date")))
+                        .field(rs.getString("status"))
+                        .field(rs.getString("payment_status"))
+                        .field(rs.getString("payment_method"))
+                        .field(toPlain(rs.getBigDecimal("total_amount")))
+                        .field(rs.getString("email"))
+                        .field(rs.getString("full_name"))
+                        .field(rs.getString("shipping_address"))
+                        .field(rs.getString("isbn"))
+                        .field(rs.getString("title"))
+                        .field(rs.getInt("quantity"))
+                        .field(toPlain(rs.getBigDecimal("unit_price")))
+                        .field(toPlain(rs.getBigDecimal("total_price"))));
+    }
+
+    public long exportBooks(OutputStream out) throws IOException {
+        return export("books", out, BOOK_HEADER,
+                exportRepository::streamBooks,
+                (rs, csv) -> csv
+                        .field(rs.getLong("id"))
+                        .field(rs.getString("isbn"))
+                        .field(rs.getString("title"))
+                        .field(rs.getString("author"))
+                        .field(rs.getString("publisher"))
+                        .field(rs.getString("language"))
+                        .field(toPlain(rs.getBigDecimal("price")))
+                        .field(toPlain(rs.getBigDecimal("discount_price")))
+                        .field(rs.getInt("stock_quantity"))
+                        .field(rs.getInt("sold_quantity"))
+                        .field(rs.getBoolean("available"))
+                        .field(rs.getObject("average_rating"))
+                        .field(rs.getObject("review_count"))
+                        .field(toDateTime(rs.getTimestamp("created_at"))));
+    }
+
+    public List<ExportProgressDTO> getRunningExports() {
+        return running.values().stream()
+                .map(Progress::toDTO)
+                .toList();
+    }
+
+    private long export(String type, OutputStream out, String[] header,
+                        Consumer<RowCallbackHandler> query, RowWriter rowWriter) throws IOException {
+        Progress progress = new Progress(UUID.randomUUID().toString(), type);
+        running.put(progress.id, progress);
+        try {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+            CsvWriter csv = new CsvWriter(writer);
+            writer.write(CsvWriter.UTF8_BOM);
+            csv.row((Object[]) header);
+
+            query.accept(rs -> {
+                try {
+                    rowWriter.write(rs, csv);
+                    csv.endRow();
+                } catch (IOException e) {
+                    // Client ngắt kết nối: dừng đọc con trỏ
+                    throw new UncheckedIOException(e);
+                }
+                long rows = ++progress.rows;
+                if (rows % progressInterval == 0) {
+                    log.info("Export {} ({}): {} rows, {} rows/s", type, progress.id, rows, progress.rowsPerSecond());
+                }
+            });
+            csv.flush();
+
+            log.info("Export {} ({}) finished: {} rows in {} ms", type, progress.id, progress.rows,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - progress.startNanos));
+            return progress.rows;
+        } catch (UncheckedIOException e) {
+            log.warn("Export {} ({}) aborted after {} rows: {}", type, progress.id, progress.rows, e.getMessage());
+            throw e.getCause();
+        } finally {
+            running.remove(progress.id);
+        }
+    }
+
+    private static String toDateTime(Timestamp timestamp) {
+        return timestamp == null ? null : timestamp.toLocalDateTime().toString();
+    }
+
+    private static String toPlain(BigDecimal value) {
+        return value == null ? null : value.toPlainString();
+    }
+
+    @FunctionalInterface
+    private interface RowWriter {
+        void write(ResultSet rs, CsvWriter csv) throws SQLException, IOException;
+    }
+
+    private static final class Progress {
+        private final String id;
+        private final String type;
+        private final LocalDateTime startedAt = LocalDateTime.now();
+        private final long startNanos = System.nanoTime();
+        private volatile long rows;
+
+        private Progress(String id, String type) {
+            this.id = id;
+            this.type = type;
+        }
+
+        private long rowsPerSecond() {
+            long elapsed = System.nanoTime() - startNanos;
+            return elapsed <= 0 ? 0 : rows * TimeUnit.SECONDS.toNanos(1) / elapsed;
+        }
+
+        private ExportProgressDTO toDTO() {
+            return new ExportProgressDTO(id, type, startedAt, rows, rowsPerSecond());
+        }
+    }
+}
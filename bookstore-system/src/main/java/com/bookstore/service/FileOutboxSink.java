@@ -0,0 +1,49 @@
+package com.bookstore.service;
+
+import com.bookstore.event.OutboxMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+// Ghi mỗi sự kiện thành một dòng JSON (append) vào file cục bộ
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.outbox.file.enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class FileOutboxSink implements OutboxSink {
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.outbox.file.path:logs/outbox-events.jsonl}")
+    private Path path;
+
+    @Override
+    public String name() {
+        return "file";
+    }
+
+    @Override
+    public synchronized void deliver(List<OutboxMessage> batch) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (OutboxMessage message : batch) {
+                writer.write(objectMapper.writeValueAsString(message));
+                writer.write('\n');
+            }
+        }
+    }
+}
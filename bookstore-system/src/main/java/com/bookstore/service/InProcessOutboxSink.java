@@ -0,0 +1,36 @@
+package com.bookstore.service;
+
+import com.bookstore.event.OutboxMessage;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+// Subscriber trong cùng ứng dụng. Chạy trên luồng của relay: subscriber chậm thì relay chậm theo
+// (backpressure), subscriber ném exception thì cả lô được gửi lại
+@Component
+public class InProcessOutboxSink implements OutboxSink {
+
+    private final List<Consumer<List<OutboxMessage>>> subscribers = new CopyOnWriteArrayList<>();
+
+    public void subscribe(Consumer<List<OutboxMessage>> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    public void unsubscribe(Consumer<List<OutboxMessage>> subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    @Override
+    public String name() {
+        return "in-process";
+    }
+
+    @Override
+    public void deliver(List<OutboxMessage> batch) {
+        for (Consumer<List<OutboxMessage>> subscriber : subscribers) {
+            subscriber.accept(batch);
+        }
+    }
+}
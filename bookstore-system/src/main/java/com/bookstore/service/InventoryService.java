@@ -1,8 +1,485 @@
 package com.bookstore.service;
 
+import com.bookstore.event.CatalogImportedEvent;
+import com.bookstore.exception.InsufficientStockException;
+import com.bookstore.repository.BookRepository;
+import com.bookstore.util.TimingWheel;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Sổ tồn kho trong bộ nhớ: số lượng còn bán được / đang giữ cho từng sách, cập nhật bằng CAS.
+// DB vẫn là nguồn sự thật: mọi thay đổi tồn kho đi thẳng xuống DB, sổ chỉ được cập nhật sau khi transaction
+// đó commit, và lượng giữ chỗ (chưa thanh toán) chỉ nằm trong bộ nhớ nên mất khi restart cũng không sai tồn kho.
+// Checkout cũng đi qua sổ (holdForCheckout) nên đơn không lấy được phần giỏ khác đang giữ; giới hạn còn lại:
+// hold chỉ có trên node đã nhận request, nhiều node thì mỗi node chỉ thấy hold của mình.
+@Slf4j
 @Service
+@RequiredArgsConstructor
 public class InventoryService {
-    // Methods for inventory management
-}
\ No newline at end of file
+
+    private final BookRepository bookRepository;
+
+    @Value("${app.inventory.reservation-ttl:15m}")
+    private Duration reservationTtl;
+
+    // ConcurrentHashMap chia lock theo bucket; mỗi ledger tự cập nhật lock-free
+    private final Map<Long, StockLedger> ledgers = new ConcurrentHashMap<>();
+    private final Map<String, Map<Long, Hold>> holdsByHolder = new ConcurrentHashMap<>();
+    // Hạn giữ hàng theo tick 1 giây; reaper chỉ lấy các hold tới hạn thay vì quét mọi giỏ
+    private final TimingWheel<HoldKey> expiryWheel =
+            new TimingWheel<>(TimeUnit.SECONDS.toNanos(1), 1024, System.nanoTime());
+
+    private volatile boolean ready = false;
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        load();
+    }
+
+    @EventListener
+    public void onCatalogImported(CatalogImportedEvent event) {
+        load();
+    }
+
+    public void load() {
+        long start = System.currentTimeMillis();
+        for (Object[] row : bookRepository.findStockLevels()) {
+            // Chỉ thêm sách chưa có trong sổ: không xóa lượng đang giữ của sách đã có
+            ledgers.computeIfAbsent((Long) row[0], id -> {
+                StockLedger ledger = new StockLedger();
+                ledger.reset(toInt(row[1]), 0);
+                return ledger;
+            });
+        }
+        ready = true;
+        log.info("Inventory ledger loaded for {} books in {} ms", ledgers.size(), System.currentTimeMillis() - start);
+    }
+
+    // ========================
+    // QUERIES
+    // ========================
+
+    public int getAvailable(Long bookId) {
+        return ledger(bookId).available();
+    }
+
+    public int getReserved(Long bookId) {
+        return ledger(bookId).reserved();
+    }
+
+    // Số mục đang chờ trong timing wheel
+    int pendingExpiries() {
+        return expiryWheel.size();
+    }
+
+    public int getHeldQuantity(String holder, Long bookId) {
+        Map<Long, Hold> holds = holdsByHolder.get(holder);
+        if (holds == null) {
+            return 0;
+        }
+        synchronized (holds) {
+            Hold hold = holds.get(bookId);
+            return hold == null ? 0 : hold.quantity;
+        }
+    }
+
+    // ========================
+    // RESERVATIONS
+    // ========================
+
+    // Đặt lượng giữ chỗ của holder (vd: giỏ hàng) cho một sách thành đúng "quantity"; false nếu không đủ hàng
+    public boolean reserve(String holder, Long bookId, int quantity) {
+        if (quantity < 0) {
+            throw new IllegalArgumentException("Quantity must not be negative");
+        }
+        StockLedger ledger = ledger(bookId);
+        while (true) {
+            Map<Long, Hold> holds = holdsByHolder.computeIfAbsent(holder, k -> new HashMap<>());
+            synchronized (holds) {
+                // Reaper/releaseAll có thể vừa gỡ map này khỏi holdsByHolder: lấy lại map mới
+                if (holdsByHolder.get(holder) != holds) {
+                    continue;
+                }
+                Hold hold = holds.get(bookId);
+                int current = hold == null ? 0 : hold.quantity;
+                int delta = quantity - current;
+                if (delta > 0 && !ledger.tryReserve(delta)) {
+                    return false;
+                }
+                if (delta < 0) {
+                    ledger.release(-delta);
+                }
+                if (quantity == 0) {
+                    holds.remove(bookId);
+                } else {
+                    long expiresAt = System.nanoTime() + reservationTtl.toNanos();
+                    if (hold == null) {
+                        expiryWheel.schedule(new HoldKey(holder, bookId, expiresAt), expiresAt);
+                        holds.put(bookId, new Hold(quantity, expiresAt, expiresAt));
+                    } else {
+                        // Gia hạn không thêm mục mới vào wheel: mục hiện có tới hạn thì reaper mới lên lịch lại
+                        holds.put(bookId, new Hold(quantity, expiresAt, hold.scheduledAt));
+                    }
+                }
+                return true;
+            }
+        }
+    }
+
+    // Gọi trong transaction tạo đơn, trước khi trừ kho DB: nâng hold của holder lên đúng số lượng đặt.
+    // Giỏ có hold hết hạn hoặc đơn không qua giỏ (holder null) cũng phải giữ được hàng mới checkout được,
+    // thay vì lấy phần giỏ khác đang giữ. Thiếu hàng thì trả các hold về mức cũ và trả về danh sách thiếu
+    public List<InsufficientStockException.Shortage> holdForCheckout(String holder, Map<Long, Integer> quantities) {
+        Map<Long, Integer> previous = new HashMap<>();
+        List<InsufficientStockException.Shortage> shortages = new ArrayList<>();
+        quantities.forEach((bookId, quantity) -> {
+            int held = getHeldQuantity(holder, bookId);
+            if (held >= quantity) {
+                return;
+            }
+            if (reserve(holder, bookId, quantity)) {
+                previous.put(bookId, held);
+            } else {
+                shortages.add(new InsufficientStockException.Shortage(bookId, quantity, held + getAvailable(bookId)));
+            }
+        });
+        if (!shortages.isEmpty()) {
+            restore(holder, previous);
+        } else if (!previous.isEmpty() && TransactionSynchronizationManager.isSynchronizationActive()) {
+            // Đơn rollback: phần vừa nâng thêm không còn ai dùng
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        restore(holder, previous);
+                    }
+                }
+            });
+        }
+        return shortages;
+    }
+
+    private void restore(String holder, Map<Long, Integer> previous) {
+        previous.forEach((bookId, held) -> reserve(holder, bookId, held));
+        // Holder tạm của đơn không qua giỏ: không để lại map rỗng
+        Map<Long, Hold> holds = holdsByHolder.get(holder);
+        if (holds != null) {
+            synchronized (holds) {
+                if (holds.isEmpty()) {
+                    holdsByHolder.remove(holder, holds);
+                }
+            }
+        }
+    }
+
+    public void release(String holder, Long bookId) {
+        Map<Long, Hold> holds = holdsByHolder.get(holder);
+        if (holds == null) {
+            return;
+        }
+        synchronized (holds) {
+            Hold hold = holds.remove(bookId);
+            if (hold != null) {
+                ledger(bookId).release(hold.quantity);
+            }
+        }
+    }
+
+    public void releaseAll(String holder) {
+        Map<Long, Hold> holds = holdsByHolder.remove(holder);
+        if (holds == null) {
+            return;
+        }
+        synchronized (holds) {
+            holds.forEach((bookId, hold) -> ledger(bookId).release(hold.quantity));
+            holds.clear();
+        }
+    }
+
+    // Gọi sau khi DB đã trừ kho cho đơn hàng: chuyển phần đang giữ thành đã bán khi transaction commit
+    // (rollback thì hold của giỏ vẫn còn nguyên)
+    public void confirm(String holder, Map<Long, Integer> soldQuantities) {
+        afterCommit(soldQuantities.keySet(), () -> applyConfirm(holder, soldQuantities));
+    }
+
+    private void applyConfirm(String holder, Map<Long, Integer> soldQuantities) {
+        Map<Long, Hold> holds = holder == null ? null : holdsByHolder.remove(holder);
+        Map<Long, Integer> held = new HashMap<>();
+        if (holds != null) {
+            synchronized (holds) {
+                holds.forEach((bookId, hold) -> held.put(bookId, hold.quantity));
+                holds.clear();
+            }
+        }
+        soldQuantities.forEach((bookId, sold) -> {
+            // Chưa có trong sổ thì lần đọc DB sau đã phản ánh phần bán này
+            StockLedger ledger = ledgers.get(bookId);
+            if (ledger != null) {
+                ledger.sell(held.getOrDefault(bookId, 0), sold);
+            }
+        });
+        // Giữ chỗ cho sách không có trong đơn thì trả lại
+        held.forEach((bookId, quantity) -> {
+            if (!soldQuantities.containsKey(bookId)) {
+                ledger(bookId).release(quantity);
+            }
+        });
+    }
+
+    // Reaper: gom các hold tới hạn từ timing wheel rồi trả hàng theo từng holder
+    @Scheduled(fixedDelayString = "${app.inventory.expiry-check-interval-ms:5000}")
+    public void releaseExpiredHolds() {
+        long now = System.nanoTime();
+        List<HoldKey> due = expiryWheel.advance(now);
+        if (due.isEmpty()) {
+            return;
+        }
+        Map<String, List<HoldKey>> byHolder = new HashMap<>();
+        for (HoldKey key : due) {
+            byHolder.computeIfAbsent(key.holder(), k -> new ArrayList<>()).add(key);
+        }
+        int released = 0;
+        for (Map.Entry<String, List<HoldKey>> entry : byHolder.entrySet()) {
+            Map<Long, Hold> holds = holdsByHolder.get(entry.getKey());
+            if (holds == null) {
+                continue;
+            }
+            synchronized (holds) {
+                for (HoldKey key : entry.getValue()) {
+                    Hold hold = holds.get(key.bookId());
+                    // Mục của hold đã bị gỡ rồi tạo lại: hold mới có mục riêng trong wheel
+                    if (hold == null || hold.scheduledAt != key.deadline()) {
+                        continue;
+                    }
+                    if (hold.expiresAt - now <= 0) {
+                        holds.remove(key.bookId());
+                        ledger(key.bookId()).release(hold.quantity);
+                        released++;
+                    } else {
+                        // Hold đã được gia hạn: lên lịch lại đúng một mục theo hạn mới
+                        expiryWheel.schedule(new HoldKey(key.holder(), key.bookId(), hold.expiresAt), hold.expiresAt);
+                        holds.put(key.bookId(), new Hold(hold.quantity, hold.expiresAt, hold.expiresAt));
+                    }
+                }
+                if (holds.isEmpty()) {
+                    holdsByHolder.remove(entry.getKey(), holds);
+                }
+            }
+        }
+        if (released > 0) {
+            log.info("Released {} expired stock holds", released);
+        }
+    }
+
+    // ========================
+    // STOCK CHANGES
+    // ========================
+
+    // Tồn kho DB đã được tăng trực tiếp (vd: hủy đơn), cập nhật sổ khi transaction đó commit
+    public void stockReturned(Long bookId, int quantity) {
+        afterCommit(List.of(bookId), () -> {
+            StockLedger ledger = ledgers.get(bookId);
+            if (ledger != null) {
+                ledger.returned(quantity);
+            }
+        });
+    }
+
+    // Đánh dấu các sổ liên quan là đang có thay đổi chưa commit để reconcile không ghi đè lên chúng.
+    // Không có transaction (job, test) thì áp dụng ngay
+    private void afterCommit(Collection<Long> bookIds, Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        List<StockLedger> affected = new ArrayList<>();
+        for (Long bookId : bookIds) {
+            StockLedger ledger = ledgers.get(bookId);
+            if (ledger != null) {
+                ledger.beginChange();
+                affected.add(ledger);
+            }
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                try {
+                    if (status == STATUS_COMMITTED) {
+                        action.run();
+                    }
+                } finally {
+                    affected.forEach(StockLedger::endChange);
+                }
+            }
+        });
+    }
+
+    // Đối chiếu định kỳ với DB để sửa sai lệch (vd: admin sửa tồn kho trực tiếp).
+    // Ghi nhận version của từng sổ trước khi đọc DB; sổ nào có đơn đang commit hoặc đã đổi version
+    // sau thời điểm đó thì bỏ qua (giá trị DB đọc được có thể đã cũ), lần chạy sau sẽ đối chiếu lại
+    @Scheduled(fixedDelayString = "${app.inventory.reconcile-interval-ms:60000}",
+            initialDelayString = "${app.inventory.reconcile-interval-ms:60000}")
+    public void reconcile() {
+        if (!ready) {
+            return;
+        }
+        Map<Long, Long> versions = new HashMap<>(ledgers.size() * 2);
+        ledgers.forEach((bookId, ledger) -> versions.put(bookId, ledger.version()));
+        int corrected = 0;
+        int skipped = 0;
+        for (Object[] row : bookRepository.findStockLevels()) {
+            Long bookId = (Long) row[0];
+            StockLedger ledger = ledgers.computeIfAbsent(bookId, id -> new StockLedger());
+            switch (ledger.reconcile(toInt(row[1]), versions.getOrDefault(bookId, 0L))) {
+                case CORRECTED -> corrected++;
+                case SKIPPED -> skipped++;
+                default -> { }
+            }
+        }
+        if (corrected > 0 || skipped > 0) {
+            log.info("Inventory reconciliation corrected {} books, skipped {} with in-flight changes", corrected, skipped);
+        }
+    }
+
+    private StockLedger ledger(Long bookId) {
+        StockLedger ledger = ledgers.get(bookId);
+        if (ledger != null) {
+            return ledger;
+        }
+        // Sách mới tạo sau khi load: đọc tồn kho từ DB một lần
+        Integer stock = bookRepository.getStockQuantity(bookId);
+        return ledgers.computeIfAbsent(bookId, id -> {
+            StockLedger created = new StockLedger();
+            created.reset(stock == null ? 0 : stock, 0);
+            return created;
+        });
+    }
+
+    private static int toInt(Object value) {
+        return value == null ? 0 : ((Number) value).intValue();
+    }
+
+    // scheduledAt: hạn của mục đang nằm trong wheel cho hold này
+    private record Hold(int quantity, long expiresAt, long scheduledAt) {
+    }
+
+    private record HoldKey(String holder, Long bookId, long deadline) {
+    }
+
+    enum ReconcileResult { UNCHANGED, CORRECTED, SKIPPED }
+
+    // available (32 bit cao) và reserved (32 bit thấp) nằm chung một long để đổi cả hai bằng một CAS.
+    // version tăng trước mỗi thay đổi tồn kho đã commit, inFlight đếm các transaction chưa kết thúc
+    static final class StockLedger {
+        private final AtomicLong state = new AtomicLong();
+        private final AtomicLong version = new AtomicLong();
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        int available() {
+            return (int) (state.get() >> 32);
+        }
+
+        int reserved() {
+            return (int) state.get();
+        }
+
+        void reset(int available, int reserved) {
+            state.set(pack(available, reserved));
+        }
+
+        boolean tryReserve(int quantity) {
+            while (true) {
+                long current = state.get();
+                int available = (int) (current >> 32);
+                if (available < quantity) {
+                    return false;
+                }
+                if (state.compareAndSet(current, pack(available - quantity, (int) current + quantity))) {
+                    return true;
+                }
+            }
+        }
+
+        void release(int quantity) {
+            update(quantity, -quantity);
+        }
+
+        long version() {
+            return version.get();
+        }
+
+        void beginChange() {
+            inFlight.incrementAndGet();
+        }
+
+        void endChange() {
+            inFlight.decrementAndGet();
+        }
+
+        void returned(int quantity) {
+            version.incrementAndGet();
+            update(quantity, 0);
+        }
+
+        // Bán "sold" cuốn, trong đó "held" cuốn đã được giữ trước
+        void sell(int held, int sold) {
+            version.incrementAndGet();
+            update(held - sold, -held);
+        }
+
+        // Đọc state trước rồi mới kiểm tra version: thay đổi nào đã vào state thì version của nó đã tăng
+        ReconcileResult reconcile(int stock, long expectedVersion) {
+            while (true) {
+                long current = state.get();
+                if (inFlight.get() > 0 || version.get() != expectedVersion) {
+                    return ReconcileResult.SKIPPED;
+                }
+                int reserved = (int) current;
+                long target = pack(stock - reserved, reserved);
+                if (current == target) {
+                    return ReconcileResult.UNCHANGED;
+                }
+                if (state.compareAndSet(current, target)) {
+                    return ReconcileResult.CORRECTED;
+                }
+            }
+        }
+
+        private void update(int availableDelta, int reservedDelta) {
+            while (true) {
+                long current = state.get();
+                int available = (int) (current >> 32) + availableDelta;
+                int reserved = Math.max(0, (int) current + reservedDelta);
+                if (state.compareAndSet(current, pack(available, reserved))) {
+                    return;
+                }
+            }
+        }
+
+        private static long pack(int available, int reserved) {
+            return ((long) available << 32) | (reserved & 0xFFFFFFFFL);
+        }
+    }
+}
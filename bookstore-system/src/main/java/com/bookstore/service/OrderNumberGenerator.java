@@ -0,0 +1,84 @@
+package com.bookstore.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+// Sinh mã đơn hàng kiểu Snowflake: 41 bit thời gian (ms từ EPOCH) | 10 bit node | 12 bit sequence.
+// Không khóa trong một node (CAS trên một AtomicLong), không trùng giữa các node có node-id khác nhau
+// và tăng dần theo thời gian. Tối đa 4096 mã/ms mỗi node; vượt quá thì mượn ms kế tiếp thay vì chờ.
+@Slf4j
+@Component
+public class OrderNumberGenerator {
+
+    public static final String PREFIX = "ORD-";
+
+    // 2025-01-01T00:00:00Z
+    static final long EPOCH = 1735689600000L;
+    static final int NODE_BITS = 10;
+    static final int SEQUENCE_BITS = 12;
+    static final int MAX_NODE_ID = (1 << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private final long node;
+    private final LongSupplier clock;
+    // (thời gian << SEQUENCE_BITS) | sequence của mã cấp gần nhất
+    private final AtomicLong state = new AtomicLong();
+
+    // Không có node id mặc định: hai instance cùng dùng 0 sẽ sinh trùng mã. Chỉ khi khai báo rõ là chạy
+    // một instance (app.order-number.single-node=true) mới được bỏ trống và dùng node 0
+    @Autowired
+    public OrderNumberGenerator(@Value("${app.order-number.node-id:}") Integer nodeId,
+                                @Value("${app.order-number.single-node:false}") boolean singleNode) {
+        this(resolveNodeId(nodeId, singleNode), System::currentTimeMillis);
+    }
+
+    OrderNumberGenerator(int nodeId, LongSupplier clock) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Order number node id must be between 0 and " + MAX_NODE_ID);
+        }
+        this.node = (long) nodeId << SEQUENCE_BITS;
+        this.clock = clock;
+        log.info("Order number generator started with node id {}", nodeId);
+    }
+
+    static int resolveNodeId(Integer nodeId, boolean singleNode) {
+        if (nodeId != null) {
+            return nodeId;
+        }
+        if (!singleNode) {
+            throw new IllegalStateException("app.order-number.node-id (ORDER_NODE_ID) must be set to a value unique "
+                    + "per instance, or app.order-number.single-node=true when only one instance runs");
+        }
+        return 0;
+    }
+
+    public String next() {
+        return PREFIX + nextId();
+    }
+
+    public long nextId() {
+        while (true) {
+            long previous = state.get();
+            long now = clock.getAsLong() - EPOCH;
+            // Đồng hồ lùi hoặc cùng ms: tiếp tục từ mã trước để không trùng và không giảm;
+            // sequence tràn thì cộng dồn sang bit thời gian (mượn ms kế tiếp)
+            long next = now > (previous >>> SEQUENCE_BITS) ? now << SEQUENCE_BITS : previous + 1;
+            if (state.compareAndSet(previous, next)) {
+                return ((next >>> SEQUENCE_BITS) << (NODE_BITS + SEQUENCE_BITS)) | node | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    public static long timestampOf(long id) {
+        return (id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH;
+    }
+
+    public static int nodeOf(long id) {
+        return (int) ((id >>> SEQUENCE_BITS) & MAX_NODE_ID);
+    }
+}
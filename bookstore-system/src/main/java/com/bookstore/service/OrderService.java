@@ -4,11 +4,15 @@ import com.bookstore.entity.CartItem;
 import com.bookstore.entity.Order;
 import com.bookstore.entity.OrderItem;
 import com.bookstore.entity.User;
+import com.bookstore.event.BookChangedEvent;
+import com.bookstore.event.OrderPlacedEvent;
+import com.bookstore.exception.InsufficientStockException;
 import com.bookstore.exception.UserNotFoundException;
 import com.bookstore.repository.OrderRepository;
 import com.bookstore.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
@@ -16,8 +20,11 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -29,8 +36,17 @@ public class OrderService {
     private final OrderRepository orderRepository;
     private final UserRepository userRepository;
     private final BookService bookService;
+    private final InventoryService inventoryService;
+    private final RevenueService revenueService;
+    private final OrderNumberGenerator orderNumberGenerator;
+    private final PostCheckoutService postCheckoutService;
+    private final OutboxService outboxService;
+    private final ApplicationEventPublisher eventPublisher;
 
     public Order saveOrder(Order order) {
+        if (order.getOrderNumber() == null) {
+            order.setOrderNumber(orderNumberGenerator.next());
+        }
         log.info("Saving order: {}", order.getOrderNumber());
         return orderRepository.save(order);
     }
@@ -71,6 +87,7 @@ public class OrderService {
 
         // Create order
         Order order = Order.builder()
+                .orderNumber(orderNumberGenerator.next())
                 .user(user)
                 .totalAmount(totalAmount)
                 .shippingAddress(shippingAddress)
@@ -94,14 +111,33 @@ public class OrderService {
 
         order.setOrderItems(orderItems);
 
-        // Decrease stock for each book
+        Map<Long, Integer> bookQuantities = new LinkedHashMap<>();
         for (CartItem item : items) {
-            bookService.decreaseStock(item.getBook().getId(), item.getQuantity());
+            bookQuantities.merge(item.getBook().getId(), item.getQuantity(), Integer::sum);
+        }
+
+        // Giữ đủ hàng trong sổ trước: không lấy phần các giỏ khác đang giữ
+        String holder = resolveHolder(items);
+        List<InsufficientStockException.Shortage> shortages = inventoryService.holdForCheckout(holder, bookQuantities);
+        if (!shortages.isEmpty()) {
+            throw new InsufficientStockException("Insufficient stock for book IDs "
+                    + shortages.stream().map(s -> String.valueOf(s.bookId())).collect(Collectors.joining(", ")),
+                    shortages);
         }
+        // Giữ kho cho mọi sách trong đơn bằng một batch; thiếu hàng thì cả đơn thất bại
+        bookService.reserveStock(bookQuantities);
+        // Chuyển phần đang giữ thành đã bán trong sổ tồn kho
+        inventoryService.confirm(holder, bookQuantities);
 
         Order savedOrder = orderRepository.save(order);
+        revenueService.recordCreated(savedOrder);
+        // Email xác nhận... được xử lý bất đồng bộ sau commit, không nằm trong thời gian checkout
+        postCheckoutService.enqueue(savedOrder);
+        outboxService.orderPlaced(savedOrder, bookQuantities);
         log.info("Order created successfully: {}", savedOrder.getOrderNumber());
 
+        eventPublisher.publishEvent(new OrderPlacedEvent(savedOrder.getId(), userId, bookQuantities));
+
         return savedOrder;
     }
 
@@ -117,27 +153,47 @@ public class OrderService {
         }
 
         order.setStatus(Order.OrderStatus.CANCELLED);
+        revenueService.recordTransition(order, order.getPaymentStatus(), Order.OrderStatus.PENDING);
 
-        // Restore stock for each book
+        // Trả kho bằng UPDATE tương đối (kèm trừ sold_quantity), không ghi đè stock_quantity qua entity Book
+        Map<Long, Integer> bookQuantities = new LinkedHashMap<>();
         order.getOrderItems().forEach(item ->
-                item.getBook().increaseStock(item.getQuantity()));
+                bookQuantities.merge(item.getBook().getId(), item.getQuantity(), Integer::sum));
+        bookService.restoreStock(bookQuantities);
+        bookQuantities.forEach((bookId, quantity) -> {
+            inventoryService.stockReturned(bookId, quantity);
+            eventPublisher.publishEvent(new BookChangedEvent(bookId, BookChangedEvent.ChangeType.UPDATED));
+        });
 
         Order cancelledOrder = orderRepository.save(order);
+        outboxService.orderCancelled(cancelledOrder, reason);
         log.info("Order cancelled successfully: {}", cancelledOrder.getOrderNumber());
 
         return cancelledOrder;
     }
 
+    // Đơn không qua giỏ thì giữ hàng dưới một holder tạm riêng cho đơn đó
+    private String resolveHolder(List<CartItem> items) {
+        if (items.isEmpty() || items.get(0).getCart() == null) {
+            return "order:" + UUID.randomUUID();
+        }
+        return items.get(0).getCart().getSessionId();
+    }
+
     public Order updateOrderStatus(Long orderId, Order.OrderStatus status) {
         log.info("Updating order {} status to: {}", orderId, status);
 
         Order order = orderRepository.findById(orderId)
                 .orElseThrow(() -> new RuntimeException("Order not found with ID: " + orderId));
 
+        Order.OrderStatus previousStatus = order.getStatus();
         order.setStatus(status);
         order.setUpdatedAt(LocalDateTime.now());
+        revenueService.recordTransition(order, order.getPaymentStatus(), previousStatus);
 
-        return orderRepository.save(order);
+        Order updatedOrder = orderRepository.save(order);
+        outboxService.orderStatusChanged(updatedOrder, previousStatus);
+        return updatedOrder;
     }
 
     public Order updatePaymentStatus(Long orderId, Order.PaymentStatus paymentStatus) {
@@ -146,8 +202,10 @@ public class OrderService {
         Order order = orderRepository.findById(orderId)
                 .orElseThrow(() -> new RuntimeException("Order not found with ID: " + orderId));
 
+        Order.PaymentStatus previousPaymentStatus = order.getPaymentStatus();
         order.setPaymentStatus(paymentStatus);
         order.setUpdatedAt(LocalDateTime.now());
+        revenueService.recordTransition(order, previousPaymentStatus, order.getStatus());
 
         return orderRepository.save(order);
     }
@@ -156,10 +214,8 @@ public class OrderService {
         return orderRepository.countByStatus(status);
     }
 
+    // Đọc từ bảng tổng hợp thay vì nạp toàn bộ orders
     public BigDecimal getTotalRevenue() {
-        return orderRepository.findAll().stream()
-                .filter(order -> order.getPaymentStatus() == Order.PaymentStatus.PAID)
-                .map(Order::getTotalAmount)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        return revenueService.getTotalRevenue();
     }
 }
\ No newline at end of file
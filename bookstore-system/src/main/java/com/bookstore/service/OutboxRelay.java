@@ -0,0 +1,111 @@
+package com.bookstore.service;
+
+import com.bookstore.event.OutboxMessage;
+import com.bookstore.repository.OutboxRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Chuyển sự kiện từ outbox_events tới mọi OutboxSink theo lô: đọc (không giữ khóa) -> gửi -> xóa.
+// Chỉ đọc lô tiếp theo khi lô trước đã được mọi sink nhận (backpressure); sink lỗi thì tạm dừng
+// với backoff lũy thừa, sự kiện vẫn nằm trong bảng. Chỉ nên bật trên một node (app.outbox.relay-enabled).
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.outbox.relay-enabled", havingValue = "true", matchIfMissing = true)
+@RequiredArgsConstructor
+public class OutboxRelay {
+
+    private static final Duration MIN_BACKOFF = Duration.ofSeconds(1);
+
+    private final OutboxRepository outboxRepository;
+    private final List<OutboxSink> sinks;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${app.outbox.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.outbox.max-batches-per-run:100}")
+    private int maxBatchesPerRun;
+
+    @Value("${app.outbox.max-backoff:60s}")
+    private Duration maxBackoff;
+
+    private final AtomicLong relayed = new AtomicLong();
+    private int consecutiveFailures = 0;
+    private long pausedUntil;
+
+    @Scheduled(fixedDelayString = "${app.outbox.relay-interval-ms:500}")
+    public void scheduledDrain() {
+        try {
+            drain();
+        } catch (RuntimeException e) {
+            log.error("Outbox relay failed: {}", e.getMessage());
+        }
+    }
+
+    // Trả về số sự kiện đã gửi trong lần chạy này
+    public synchronized int drain() {
+        if (consecutiveFailures > 0 && System.nanoTime() - pausedUntil < 0) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        int total = 0;
+        for (int i = 0; i < maxBatchesPerRun; i++) {
+            List<OutboxMessage> batch = outboxRepository.fetchBatch(batchSize);
+            if (batch.isEmpty()) {
+                break;
+            }
+            for (OutboxSink sink : sinks) {
+                try {
+                    sink.deliver(batch);
+                } catch (Exception e) {
+                    pause(sink, batch, e);
+                    return total;
+                }
+            }
+            transactionTemplate.executeWithoutResult(status -> outboxRepository.delete(batch));
+            consecutiveFailures = 0;
+            total += batch.size();
+            if (batch.size() < batchSize) {
+                break;
+            }
+        }
+        if (total > 0) {
+            relayed.addAndGet(total);
+            long elapsed = System.nanoTime() - start;
+            log.debug("Relayed {} outbox events in {} ms ({} events/s)", total,
+                    TimeUnit.NANOSECONDS.toMillis(elapsed), total * TimeUnit.SECONDS.toNanos(1) / Math.max(1, elapsed));
+        }
+        return total;
+    }
+
+    public long getRelayedCount() {
+        return relayed.get();
+    }
+
+    public boolean isPaused() {
+        return consecutiveFailures > 0 && System.nanoTime() - pausedUntil < 0;
+    }
+
+    private void pause(OutboxSink sink, List<OutboxMessage> batch, Exception e) {
+        consecutiveFailures++;
+        Duration backoff = MIN_BACKOFF.multipliedBy(1L << Math.min(consecutiveFailures - 1, 16));
+        if (backoff.compareTo(maxBackoff) > 0) {
+            backoff = maxBackoff;
+        }
+        pausedUntil = System.nanoTime() + backoff.toNanos();
+        log.warn("Outbox sink '{}' failed on batch starting at event {}, pausing relay for {} ms: {}",
+                sink.name(), batch.get(0).id(), backoff.toMillis(), e.getMessage());
+    }
+}
@@ -0,0 +1,87 @@
+package com.bookstore.service;
+
+import com.bookstore.entity.Order;
+import com.bookstore.repository.OutboxRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+// Ghi sự kiện vào outbox_events trong CÙNG transaction với thay đổi nghiệp vụ:
+// rollback thì sự kiện cũng biến mất, commit thì OutboxRelay chắc chắn sẽ gửi
+@Service
+@RequiredArgsConstructor
+@Transactional(propagation = Propagation.MANDATORY)
+public class OutboxService {
+
+    public static final String ORDER = "ORDER";
+    public static final String BOOK = "BOOK";
+    public static final String REVIEW = "REVIEW";
+
+    private final OutboxRepository outboxRepository;
+    private final ObjectMapper objectMapper;
+
+    public void orderPlaced(Order order, Map<Long, Integer> bookQuantities) {
+        Map<String, Object> payload = orderPayload(order);
+        payload.put("userId", order.getUser().getId());
+        payload.put("totalAmount", order.getTotalAmount());
+        payload.put("paymentMethod", order.getPaymentMethod());
+        payload.put("items", bookQuantities.entrySet().stream()
+                .map(e -> Map.of("bookId", e.getKey(), "quantity", e.getValue()))
+                .collect(Collectors.toList()));
+        append(ORDER, order.getId(), "OrderPlaced", payload);
+    }
+
+    public void orderCancelled(Order order, String reason) {
+        Map<String, Object> payload = orderPayload(order);
+        payload.put("reason", reason);
+        payload.put("items", order.getOrderItems().stream()
+                .map(item -> Map.of("bookId", item.getBook().getId(), "quantity", item.getQuantity()))
+                .collect(Collectors.toList()));
+        append(ORDER, order.getId(), "OrderCancelled", payload);
+    }
+
+    public void orderStatusChanged(Order order, Order.OrderStatus previousStatus) {
+        Map<String, Object> payload = orderPayload(order);
+        payload.put("previousStatus", previousStatus);
+        payload.put("status", order.getStatus());
+        append(ORDER, order.getId(), "OrderStatusChanged", payload);
+    }
+
+    public void stockDecreased(Long bookId, int quantity) {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("bookId", bookId);
+        payload.put("quantity", quantity);
+        append(BOOK, bookId, "StockDecreased", payload);
+    }
+
+    public void reviewAdded(Long reviewId, Long bookId, Long userId, Integer rating) {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("reviewId", reviewId);
+        payload.put("bookId", bookId);
+        payload.put("userId", userId);
+        payload.put("rating", rating);
+        append(REVIEW, reviewId, "ReviewAdded", payload);
+    }
+
+    public void append(String aggregateType, Long aggregateId, String eventType, Map<String, Object> payload) {
+        try {
+            outboxRepository.insert(aggregateType, aggregateId, eventType, objectMapper.writeValueAsString(payload));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Cannot serialize " + eventType + " payload", e);
+        }
+    }
+
+    private static Map<String, Object> orderPayload(Order order) {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("orderId", order.getId());
+        payload.put("orderNumber", order.getOrderNumber());
+        return payload;
+    }
+}
@@ -0,0 +1,15 @@
+package com.bookstore.service;
+
+import com.bookstore.event.OutboxMessage;
+
+import java.util.List;
+
+// Đích nhận sự kiện từ OutboxRelay. Giao "ít nhất một lần": một lô có thể được gửi lại
+// nếu sink khác trong cùng lần gửi bị lỗi, nên phía nhận cần chống trùng theo OutboxMessage.id
+public interface OutboxSink {
+
+    String name();
+
+    // Ném exception nếu chưa nhận được cả lô; relay sẽ dừng lại và thử lại sau
+    void deliver(List<OutboxMessage> batch) throws Exception;
+}
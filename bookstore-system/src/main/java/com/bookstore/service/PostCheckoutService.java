@@ -0,0 +1,202 @@
+package com.bookstore.service;
+
+import com.bookstore.entity.CheckoutTask;
+import com.bookstore.entity.Order;
+import com.bookstore.event.OrderPlacedEvent;
+import com.bookstore.repository.CheckoutTaskRepository;
+import com.bookstore.repository.OrderRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Xử lý việc phụ sau khi đặt hàng trên thread pool riêng, ngoài request checkout:
+// - email xác nhận: ghi vào checkout_tasks cùng transaction với đơn hàng, thử lại với backoff
+// - cập nhật index sách liên quan / facet: chỉ trong bộ nhớ, index tự build lại khi khởi động
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PostCheckoutService {
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private final CheckoutTaskRepository checkoutTaskRepository;
+    private final OrderRepository orderRepository;
+    private final RelatedBooksIndex relatedBooksIndex;
+    private final BookFacetIndex bookFacetIndex;
+    private final ObjectProvider<EmailService> emailService;
+
+    @Value("${app.checkout-tasks.threads:4}")
+    private int threads;
+
+    @Value("${app.checkout-tasks.queue-capacity:1000}")
+    private int queueCapacity;
+
+    @Value("${app.checkout-tasks.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${app.checkout-tasks.retry-backoff:30s}")
+    private Duration retryBackoff;
+
+    @Value("${app.checkout-tasks.lease:5m}")
+    private Duration lease;
+
+    @Value("${app.checkout-tasks.sweep-batch-size:100}")
+    private int sweepBatchSize;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger counter = new AtomicInteger();
+        // Hàng đợi có giới hạn: khi đầy thì từ chối, việc vẫn nằm trong DB và được quét lại sau
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "checkout-worker-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            executor.shutdownNow();
+        }
+    }
+
+    // Gọi trong transaction tạo đơn hàng
+    public void enqueue(Order order) {
+        if (emailService.getIfAvailable() == null) {
+            return;
+        }
+        checkoutTaskRepository.save(CheckoutTask.builder()
+                .orderId(order.getId())
+                .type(CheckoutTask.TaskType.ORDER_CONFIRMATION_EMAIL)
+                .build());
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onOrderPlaced(OrderPlacedEvent event) {
+        submit(() -> {
+            relatedBooksIndex.onOrderPlaced(event);
+            bookFacetIndex.onOrderPlaced(event);
+            checkoutTaskRepository.findPendingIdsByOrderId(event.orderId()).forEach(this::process);
+        });
+    }
+
+    // Việc lỗi chờ thử lại, việc bị từ chối khi hàng đợi đầy, việc của worker/node đã chết (hết lease)
+    @Scheduled(fixedDelayString = "${app.checkout-tasks.sweep-interval-ms:10000}",
+            initialDelayString = "${app.checkout-tasks.sweep-interval-ms:10000}")
+    public void sweep() {
+        try {
+            List<Long> due = checkoutTaskRepository.findDueIds(LocalDateTime.now(), PageRequest.of(0, sweepBatchSize));
+            for (Long taskId : due) {
+                if (!submit(() -> process(taskId))) {
+                    break;
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("Checkout task sweep failed: {}", e.getMessage());
+        }
+    }
+
+    public void process(Long taskId) {
+        LocalDateTime now = LocalDateTime.now();
+        if (checkoutTaskRepository.claim(taskId, now, now.plus(lease)) == 0) {
+            return;
+        }
+        CheckoutTask task = checkoutTaskRepository.findById(taskId).orElse(null);
+        if (task == null) {
+            return;
+        }
+        try {
+            handle(task);
+            checkoutTaskRepository.updateStatus(taskId, CheckoutTask.TaskStatus.DONE, task.getNextAttemptAt(), null);
+        } catch (RuntimeException e) {
+            String error = truncate(e.getMessage());
+            if (task.getAttempts() >= maxAttempts) {
+                log.error("Checkout task {} ({}) for order {} failed permanently after {} attempts: {}",
+                        taskId, task.getType(), task.getOrderId(), task.getAttempts(), error);
+                checkoutTaskRepository.updateStatus(taskId, CheckoutTask.TaskStatus.FAILED, task.getNextAttemptAt(), error);
+            } else {
+                // Backoff lũy thừa: retryBackoff, 2x, 4x...
+                Duration delay = retryBackoff.multipliedBy(1L << Math.min(task.getAttempts() - 1, 10));
+                log.warn("Checkout task {} ({}) for order {} failed, retrying in {}s: {}",
+                        taskId, task.getType(), task.getOrderId(), delay.toSeconds(), error);
+                checkoutTaskRepository.updateStatus(taskId, CheckoutTask.TaskStatus.PENDING,
+                        LocalDateTime.now().plus(delay), error);
+            }
+        }
+    }
+
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    private void handle(CheckoutTask task) {
+        switch (task.getType()) {
+            case ORDER_CONFIRMATION_EMAIL -> sendConfirmation(task.getOrderId());
+        }
+    }
+
+    private void sendConfirmation(Long orderId) {
+        EmailService sender = emailService.getIfAvailable();
+        if (sender == null) {
+            log.info("Mail is not configured, skipping confirmation for order {}", orderId);
+            return;
+        }
+        Order order = orderRepository.findWithUserById(orderId).orElse(null);
+        if (order == null) {
+            log.warn("Order {} no longer exists, skipping confirmation email", orderId);
+            return;
+        }
+        sender.sendEmail(order.getUser().getEmail(),
+                "Xác nhận đơn hàng " + order.getOrderNumber(),
+                "Xin chào " + order.getUser().getFullName() + ",\n\n"
+                        + "Cảm ơn bạn đã đặt hàng tại Bookstore.\n"
+                        + "Mã đơn hàng: " + order.getOrderNumber() + "\n"
+                        + "Tổng tiền: " + order.getTotalAmount().toPlainString() + " VNĐ\n"
+                        + "Địa chỉ giao hàng: " + (order.getShippingAddress() != null ? order.getShippingAddress() : "") + "\n");
+    }
+
+    private boolean submit(Runnable work) {
+        try {
+            executor.execute(() -> {
+                try {
+                    work.run();
+                } catch (RuntimeException e) {
+                    log.error("Post-checkout work failed: {}", e.getMessage());
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            log.warn("Checkout worker queue is full ({} tasks), leaving work for the sweeper", queueCapacity);
+            return false;
+        }
+    }
+
+    private static String truncate(String message) {
+        if (message == null) {
+            return null;
+        }
+        return message.length() <= MAX_ERROR_LENGTH ? message : message.substring(0, MAX_ERROR_LENGTH);
+    }
+}
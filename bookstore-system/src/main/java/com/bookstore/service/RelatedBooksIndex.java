@@ -0,0 +1,331 @@
+package com.bookstore.service;
+
+import com.bookstore.entity.Order;
+import com.bookstore.event.BookChangedEvent;
+import com.bookstore.event.CatalogImportedEvent;
+import com.bookstore.event.OrderPlacedEvent;
+import com.bookstore.repository.BookRepository;
+import com.bookstore.repository.OrderItemRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Index sách liên quan tính sẵn trong bộ nhớ: trang chi tiết chỉ cần đọc tối đa 4 ID
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RelatedBooksIndex {
+
+    public static final int RELATED_BOOKS_LIMIT = 4;
+
+    private static final double CO_PURCHASE_WEIGHT = 3.0;
+    private static final double AUTHOR_WEIGHT = 2.0;
+    private static final double CATEGORY_WEIGHT = 1.0;
+    // Chỉ xét các sách bán chạy nhất của mỗi danh mục làm ứng viên
+    private static final int CATEGORY_CANDIDATES = 50;
+
+    private static final Comparator<RankedBook> BY_SOLD_DESC = Comparator
+            .comparingInt(RankedBook::sold).reversed()
+            .thenComparingLong(RankedBook::id);
+
+    private final BookRepository bookRepository;
+    private final OrderItemRepository orderItemRepository;
+
+    // Kết quả đọc lock-free từ trang chi tiết
+    private final Map<Long, long[]> related = new ConcurrentHashMap<>();
+
+    // Dữ liệu nguồn, chỉ thay đổi dưới lock của index
+    private final Map<Long, BookFacts> books = new HashMap<>();
+    private final Map<String, Set<Long>> booksByAuthor = new HashMap<>();
+    private final Map<Long, NavigableSet<RankedBook>> booksByCategory = new HashMap<>();
+    private final Map<Long, Map<Long, Integer>> coPurchases = new HashMap<>();
+    private final Map<Long, Set<Long>> referencedBy = new HashMap<>();
+
+    private volatile boolean ready = false;
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public List<Long> getRelatedBookIds(Long bookId) {
+        long[] ids = related.get(bookId);
+        if (ids == null) {
+            return List.of();
+        }
+        List<Long> result = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            result.add(id);
+        }
+        return result;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuild();
+    }
+
+    @EventListener
+    public void onCatalogImported(CatalogImportedEvent event) {
+        rebuild();
+    }
+
+    @Scheduled(cron = "${app.related-books.rebuild-cron:0 0 3 * * *}")
+    public void scheduledRebuild() {
+        rebuild();
+    }
+
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        log.info("Rebuilding related-books index");
+
+        books.clear();
+        booksByAuthor.clear();
+        booksByCategory.clear();
+        coPurchases.clear();
+        referencedBy.clear();
+
+        for (Object[] row : bookRepository.findRelatedBookFacts()) {
+            Long bookId = (Long) row[0];
+            books.put(bookId, new BookFacts((String) row[1], toInt(row[2]), Boolean.TRUE.equals(row[3])));
+        }
+
+        Map<Long, List<Long>> categoriesByBook = new HashMap<>();
+        for (Object[] row : bookRepository.findBookCategoryPairs()) {
+            categoriesByBook.computeIfAbsent((Long) row[0], k -> new ArrayList<>()).add((Long) row[1]);
+        }
+
+        books.forEach((bookId, facts) -> {
+            facts.categoryIds = categoriesByBook.getOrDefault(bookId, List.of());
+            link(bookId, facts);
+        });
+
+        for (Object[] row : orderItemRepository.countCoPurchasedPairs(Order.OrderStatus.CANCELLED)) {
+            coPurchases.computeIfAbsent((Long) row[0], k -> new HashMap<>())
+                    .put((Long) row[1], toInt(row[2]));
+        }
+
+        Map<Long, long[]> computed = new HashMap<>();
+        for (Long bookId : books.keySet()) {
+            long[] top = computeTop(bookId);
+            computed.put(bookId, top);
+            for (long other : top) {
+                referencedBy.computeIfAbsent(other, k -> new HashSet<>()).add(bookId);
+            }
+        }
+        related.keySet().retainAll(computed.keySet());
+        related.putAll(computed);
+        ready = true;
+
+        log.info("Related-books index rebuilt for {} books in {} ms",
+                books.size(), System.currentTimeMillis() - start);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBookChanged(BookChangedEvent event) {
+        if (!ready) {
+            return;
+        }
+        Long bookId = event.bookId();
+        if (event.type() == BookChangedEvent.ChangeType.DELETED) {
+            removeBook(bookId);
+            return;
+        }
+
+        List<Object[]> rows = bookRepository.findRelatedBookFactsById(bookId);
+        if (rows.isEmpty()) {
+            removeBook(bookId);
+            return;
+        }
+        Object[] row = rows.get(0);
+        BookFacts facts = new BookFacts((String) row[1], toInt(row[2]), Boolean.TRUE.equals(row[3]));
+        facts.categoryIds = bookRepository.findCategoryIdsByBookId(bookId);
+        updateBook(bookId, facts);
+    }
+
+    // Gọi từ PostCheckoutService trên luồng nền, sau khi đơn hàng đã commit
+    public void onOrderPlaced(OrderPlacedEvent event) {
+        if (!ready) {
+            return;
+        }
+        recordOrder(event.bookQuantities());
+    }
+
+    public synchronized void recordOrder(Map<Long, Integer> bookQuantities) {
+        Set<Long> affected = new HashSet<>(bookQuantities.keySet());
+        bookQuantities.forEach((bookId, quantity) -> {
+            BookFacts facts = books.get(bookId);
+            if (facts != null) {
+                unlink(bookId, facts);
+                facts.sold += quantity;
+                link(bookId, facts);
+            }
+            for (Long other : bookQuantities.keySet()) {
+                if (!other.equals(bookId)) {
+                    coPurchases.computeIfAbsent(bookId, k -> new HashMap<>()).merge(other, 1, Integer::sum);
+                }
+            }
+        });
+        affected.forEach(this::refresh);
+    }
+
+    private synchronized void updateBook(Long bookId, BookFacts facts) {
+        BookFacts previous = books.put(bookId, facts);
+        if (previous != null) {
+            unlink(bookId, previous);
+        }
+        link(bookId, facts);
+
+        refresh(bookId);
+        // Các sách đang trỏ tới sách này có thể cần bỏ nó ra (vd: ngừng bán)
+        for (Long other : new ArrayList<>(referencedBy.getOrDefault(bookId, Set.of()))) {
+            refresh(other);
+        }
+    }
+
+    private synchronized void removeBook(Long bookId) {
+        BookFacts previous = books.remove(bookId);
+        if (previous != null) {
+            unlink(bookId, previous);
+        }
+        coPurchases.remove(bookId);
+        coPurchases.values().forEach(partners -> partners.remove(bookId));
+
+        long[] own = related.remove(bookId);
+        if (own != null) {
+            for (long other : own) {
+                Set<Long> refs = referencedBy.get(other);
+                if (refs != null) {
+                    refs.remove(bookId);
+                }
+            }
+        }
+        Set<Long> referrers = referencedBy.remove(bookId);
+        if (referrers != null) {
+            referrers.forEach(this::refresh);
+        }
+    }
+
+    private void refresh(Long bookId) {
+        long[] previous = related.get(bookId);
+        if (previous != null) {
+            for (long other : previous) {
+                Set<Long> refs = referencedBy.get(other);
+                if (refs != null) {
+                    refs.remove(bookId);
+                }
+            }
+        }
+        if (!books.containsKey(bookId)) {
+            related.remove(bookId);
+            return;
+        }
+        long[] top = computeTop(bookId);
+        for (long other : top) {
+            referencedBy.computeIfAbsent(other, k -> new HashSet<>()).add(bookId);
+        }
+        related.put(bookId, top);
+    }
+
+    private long[] computeTop(Long bookId) {
+        BookFacts facts = books.get(bookId);
+        Map<Long, Double> scores = new HashMap<>();
+
+        coPurchases.getOrDefault(bookId, Map.of())
+                .forEach((other, count) -> scores.merge(other, CO_PURCHASE_WEIGHT * count, Double::sum));
+
+        if (facts.author != null) {
+            for (Long other : booksByAuthor.getOrDefault(authorKey(facts.author), Set.of())) {
+                scores.merge(other, AUTHOR_WEIGHT, Double::sum);
+            }
+        }
+
+        for (Long categoryId : facts.categoryIds) {
+            int taken = 0;
+            for (RankedBook candidate : booksByCategory.getOrDefault(categoryId, Collections.emptyNavigableSet())) {
+                if (taken++ >= CATEGORY_CANDIDATES) {
+                    break;
+                }
+                scores.merge(candidate.id(), CATEGORY_WEIGHT, Double::sum);
+            }
+        }
+        scores.remove(bookId);
+
+        return scores.entrySet().stream()
+                .filter(entry -> {
+                    BookFacts candidate = books.get(entry.getKey());
+                    return candidate != null && candidate.available;
+                })
+                .sorted(Comparator.<Map.Entry<Long, Double>>comparingDouble(Map.Entry::getValue).reversed()
+                        .thenComparingInt(entry -> -books.get(entry.getKey()).sold)
+                        .thenComparingLong(Map.Entry::getKey))
+                .limit(RELATED_BOOKS_LIMIT)
+                .mapToLong(Map.Entry::getKey)
+                .toArray();
+    }
+
+    private void link(Long bookId, BookFacts facts) {
+        if (facts.author != null) {
+            booksByAuthor.computeIfAbsent(authorKey(facts.author), k -> new HashSet<>()).add(bookId);
+        }
+        for (Long categoryId : facts.categoryIds) {
+            booksByCategory.computeIfAbsent(categoryId, k -> new TreeSet<>(BY_SOLD_DESC))
+                    .add(new RankedBook(bookId, facts.sold));
+        }
+    }
+
+    private void unlink(Long bookId, BookFacts facts) {
+        if (facts.author != null) {
+            Set<Long> byAuthor = booksByAuthor.get(authorKey(facts.author));
+            if (byAuthor != null) {
+                byAuthor.remove(bookId);
+            }
+        }
+        for (Long categoryId : facts.categoryIds) {
+            NavigableSet<RankedBook> members = booksByCategory.get(categoryId);
+            if (members != null) {
+                members.remove(new RankedBook(bookId, facts.sold));
+            }
+        }
+    }
+
+    private static String authorKey(String author) {
+        return author.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static int toInt(Object value) {
+        return value == null ? 0 : ((Number) value).intValue();
+    }
+
+    private record RankedBook(long id, int sold) {
+    }
+
+    private static final class BookFacts {
+        private final String author;
+        private final boolean available;
+        private int sold;
+        private List<Long> categoryIds = List.of();
+
+        private BookFacts(String author, int sold, boolean available) {
+            this.author = author;
+            this.sold = sold;
+            this.available = available;
+        }
+    }
+}
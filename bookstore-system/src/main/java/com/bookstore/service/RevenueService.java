@@ -0,0 +1,83 @@
+package com.bookstore.service;
+
+import com.bookstore.dto.RevenueSummaryDTO;
+import com.bookstore.entity.Order;
+import com.bookstore.repository.DailyRevenueRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Doanh thu tổng hợp theo (ngày, phương thức thanh toán, trạng thái thanh toán, trạng thái đơn).
+// OrderService gọi trong cùng transaction nên bảng tổng hợp luôn khớp với orders mà không cần quét lại.
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@Transactional
+public class RevenueService {
+
+    static final int SLOTS = 8;
+
+    private final DailyRevenueRepository dailyRevenueRepository;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfEmpty() {
+        if (dailyRevenueRepository.isEmpty()) {
+            rebuild();
+        }
+    }
+
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        int rows = dailyRevenueRepository.backfill();
+        log.info("Revenue summary rebuilt with {} rows in {} ms", rows, System.currentTimeMillis() - start);
+    }
+
+    public void recordCreated(Order order) {
+        apply(order, order.getPaymentStatus(), order.getStatus(), 1, order.getTotalAmount());
+    }
+
+    // Chuyển đơn từ nhóm cũ sang nhóm mới (gọi sau khi đã đổi trạng thái trên order)
+    public void recordTransition(Order order, Order.PaymentStatus previousPaymentStatus,
+                                 Order.OrderStatus previousStatus) {
+        if (previousPaymentStatus == order.getPaymentStatus() && previousStatus == order.getStatus()) {
+            return;
+        }
+        apply(order, previousPaymentStatus, previousStatus, -1, order.getTotalAmount().negate());
+        apply(order, order.getPaymentStatus(), order.getStatus(), 1, order.getTotalAmount());
+    }
+
+    @Transactional(readOnly = true)
+    public BigDecimal getTotalRevenue() {
+        return dailyRevenueRepository.sumAll(Order.PaymentStatus.PAID);
+    }
+
+    @Transactional(readOnly = true)
+    public Map<LocalDate, BigDecimal> getDailyRevenue(LocalDate from, LocalDate to) {
+        return dailyRevenueRepository.sumByDay(Order.PaymentStatus.PAID, from, to);
+    }
+
+    @Transactional(readOnly = true)
+    public List<RevenueSummaryDTO> getRevenueSummary(LocalDate from, LocalDate to) {
+        return dailyRevenueRepository.summarize(from, to);
+    }
+
+    private void apply(Order order, Order.PaymentStatus paymentStatus, Order.OrderStatus status,
+                       long count, BigDecimal amount) {
+        LocalDateTime orderDate = order.getOrderDate() != null ? order.getOrderDate() : LocalDateTime.now();
+        String paymentMethod = order.getPaymentMethod() != null ? order.getPaymentMethod() : "";
+        // Trừ và cộng có thể rơi vào slot khác nhau: khi đọc luôn SUM qua mọi slot
+        int slot = ThreadLocalRandom.current().nextInt(SLOTS);
+        dailyRevenueRepository.add(orderDate.toLocalDate(), paymentMethod,
+                paymentStatus != null ? paymentStatus : Order.PaymentStatus.PENDING, status, slot, count, amount);
+    }
+}
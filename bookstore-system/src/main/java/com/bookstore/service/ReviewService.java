@@ -1,8 +1,10 @@
 package com.bookstore.service;
 
+import com.bookstore.dto.RatingStatsDTO;
 import com.bookstore.entity.Book;
 import com.bookstore.entity.Review;
 import com.bookstore.entity.User;
+import com.bookstore.repository.BookRatingStatsRepository;
 import com.bookstore.repository.BookRepository;
 import com.bookstore.repository.ReviewRepository;
 import com.bookstore.repository.UserRepository;
@@ -26,10 +28,25 @@ public class ReviewService {
     private final ReviewRepository reviewRepository;
     private final BookRepository bookRepository;
     private final UserRepository userRepository;
+    private final BookCache bookCache;
+    private final OutboxService outboxService;
+    private final BookRatingStatsRepository bookRatingStatsRepository;
 
+    // Thêm mới hoặc sửa review: cập nhật book_rating_stats bằng cùng đường cộng/trừ như addReview/deleteReview
     public Review saveReview(Review review) {
-        log.info("Saving review for book ID: {}", review.getBook().getId());
-        return reviewRepository.save(review);
+        Long bookId = review.getBook().getId();
+        log.info("Saving review for book ID: {}", bookId);
+        Integer previousRating = review.getId() == null ? null
+                : reviewRepository.findRatingById(review.getId()).orElse(null);
+        if (!review.getRating().equals(previousRating)) {
+            if (previousRating != null) {
+                bookRatingStatsRepository.add(bookId, previousRating, -1);
+            }
+            bookRatingStatsRepository.add(bookId, review.getRating(), 1);
+        }
+        Review savedReview = reviewRepository.save(review);
+        updateBookRating(bookId);
+        return savedReview;
     }
 
     public Optional<Review> getReviewById(Long id) {
@@ -74,7 +91,10 @@ public class ReviewService {
                 .createdAt(LocalDateTime.now())
                 .build();
 
+        // Cộng vào dòng tổng hợp (giữ khóa dòng) trước khi ghi review, cùng thứ tự với BookRatingReconciler
+        bookRatingStatsRepository.add(bookId, rating, 1);
         Review savedReview = reviewRepository.save(review);
+        outboxService.reviewAdded(savedReview.getId(), bookId, userId, rating);
 
         // Update book's average rating and review count
         updateBookRating(bookId);
@@ -82,28 +102,12 @@ public class ReviewService {
         return savedReview;
     }
 
+    // Chép điểm trung bình/số review từ book_rating_stats sang books (không đọc lại các review)
     @Transactional
     public void updateBookRating(Long bookId) {
-        List<Review> reviews = reviewRepository.findByBookId(bookId);
-
-        if (!reviews.isEmpty()) {
-            double averageRating = reviews.stream()
-                    .mapToInt(Review::getRating)
-                    .average()
-                    .orElse(0.0);
-
-            int reviewCount = reviews.size();
-
-            Book book = bookRepository.findById(bookId)
-                    .orElseThrow(() -> new RuntimeException("Book not found"));
-
-            book.setAverageRating(averageRating);
-            book.setReviewCount(reviewCount);
-            bookRepository.save(book);
-
-            log.info("Updated book ID: {} rating to: {} based on {} reviews",
-                    bookId, averageRating, reviewCount);
-        }
+        bookRatingStatsRepository.syncBook(bookId);
+        bookCache.evict(bookId);
+        log.debug("Updated rating of book ID: {} from rating stats", bookId);
     }
 
     public void deleteReview(Long reviewId) {
@@ -112,6 +116,7 @@ public class ReviewService {
                 .orElseThrow(() -> new RuntimeException("Review not found with ID: " + reviewId));
 
         Long bookId = review.getBook().getId();
+        bookRatingStatsRepository.add(bookId, review.getRating(), -1);
         reviewRepository.delete(review);
 
         // Update book rating after deletion
@@ -123,10 +128,20 @@ public class ReviewService {
     }
 
     public Double getAverageRatingForBook(Long bookId) {
-        return reviewRepository.findAverageRatingByBookId(bookId);
+        RatingStatsDTO stats = bookRatingStatsRepository.find(bookId);
+        return stats.getRatingCount() == 0 ? null : stats.getAverageRating();
     }
 
     public Long getReviewCountForBook(Long bookId) {
-        return reviewRepository.countByBookId(bookId);
+        return bookRatingStatsRepository.find(bookId).getRatingCount();
+    }
+
+    // Số review theo từng mức sao (1..5), đọc từ một dòng tổng hợp
+    public RatingStatsDTO getRatingStats(Long bookId) {
+        return bookRatingStatsRepository.find(bookId);
+    }
+
+    public Long countReviewsByRating(Long bookId, Integer rating) {
+        return bookRatingStatsRepository.find(bookId).getCount(rating);
     }
 }
\ No newline at end of file
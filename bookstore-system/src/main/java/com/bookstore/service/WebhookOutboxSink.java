@@ -0,0 +1,57 @@
+package com.bookstore.service;
+
+import com.bookstore.event.OutboxMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+
+// POST cả lô dưới dạng mảng JSON tới webhook; mã trả về khác 2xx = chưa nhận
+@Component
+@ConditionalOnProperty(name = "app.outbox.webhook.enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class WebhookOutboxSink implements OutboxSink {
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.outbox.webhook.url}")
+    private URI url;
+
+    @Value("${app.outbox.webhook.timeout:5s}")
+    private Duration timeout;
+
+    private HttpClient httpClient;
+
+    @PostConstruct
+    void init() {
+        httpClient = HttpClient.newBuilder().connectTimeout(timeout).build();
+    }
+
+    @Override
+    public String name() {
+        return "webhook";
+    }
+
+    @Override
+    public void deliver(List<OutboxMessage> batch) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(url)
+                .timeout(timeout)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(batch)))
+                .build();
+        HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() / 100 != 2) {
+            throw new IOException("Webhook " + url + " returned HTTP " + response.statusCode());
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.bookstore.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+// Đọc CSV (RFC 4180) từng bản ghi một, không nạp cả file; hỗ trợ field có ngoặc kép chứa dấu phẩy/xuống dòng
+public class CsvReader {
+
+    private final Reader reader;
+    private final StringBuilder field = new StringBuilder();
+    private int lineNumber = 1;
+    private int recordLine;
+    private boolean started = false;
+    private int pushback = -1;
+
+    public CsvReader(Reader reader) {
+        this.reader = reader instanceof BufferedReader ? reader : new BufferedReader(reader, 64 * 1024);
+    }
+
+    // Trả về null khi hết file; bỏ qua dòng trống
+    public List<String> next() throws IOException {
+        while (true) {
+            List<String> record = readRecord();
+            if (record == null) {
+                return null;
+            }
+            if (record.size() > 1 || !record.get(0).isEmpty()) {
+                return record;
+            }
+        }
+    }
+
+    // Dòng bắt đầu của bản ghi vừa đọc (dùng cho thông báo lỗi)
+    public int getRecordLine() {
+        return recordLine;
+    }
+
+    private List<String> readRecord() throws IOException {
+        int c = read();
+        if (!started) {
+            started = true;
+            if (c == CsvWriter.UTF8_BOM) {
+                c = read();
+            }
+        }
+        if (c == -1) {
+            return null;
+        }
+        recordLine = lineNumber;
+        List<String> record = new ArrayList<>();
+        field.setLength(0);
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    throw new IOException("Unterminated quoted field starting at line " + recordLine);
+                }
+                if (c == '"') {
+                    int next = read();
+                    if (next == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        c = next;
+                        continue;
+                    }
+                } else {
+                    if (c == '\n') {
+                        lineNumber++;
+                    }
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.isEmpty()) {
+                quoted = true;
+            } else if (c == ',') {
+                record.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\r' || c == '\n' || c == -1) {
+                if (c == '\r') {
+                    int next = read();
+                    if (next != '\n') {
+                        pushback = next;
+                    }
+                }
+                if (c != -1) {
+                    lineNumber++;
+                }
+                record.add(field.toString());
+                return record;
+            } else {
+                field.append((char) c);
+            }
+            c = read();
+        }
+    }
+
+    private int read() throws IOException {
+        if (pushback != -1) {
+            int c = pushback;
+            pushback = -1;
+            return c;
+        }
+        return reader.read();
+    }
+}
@@ -0,0 +1,69 @@
+package com.bookstore.util;
+
+import java.io.IOException;
+import java.io.Writer;
+
+// Ghi CSV theo RFC 4180: chỉ bọc ngoặc kép khi field có dấu phẩy, ngoặc kép hoặc xuống dòng
+public class CsvWriter {
+
+    // BOM để Excel nhận đúng UTF-8 (tiếng Việt)
+    public static final char UTF8_BOM = '\uFEFF';
+
+    private final Writer writer;
+    private boolean firstField = true;
+
+    public CsvWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    public CsvWriter field(Object value) throws IOException {
+        if (!firstField) {
+            writer.write(',');
+        }
+        firstField = false;
+        if (value != null) {
+            writeEscaped(value.toString());
+        }
+        return this;
+    }
+
+    public void endRow() throws IOException {
+        writer.write("\r\n");
+        firstField = true;
+    }
+
+    public void row(Object... values) throws IOException {
+        for (Object value : values) {
+            field(value);
+        }
+        endRow();
+    }
+
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    private void writeEscaped(String value) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                quote = true;
+                break;
+            }
+        }
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                writer.write('"');
+            }
+            writer.write(c);
+        }
+        writer.write('"');
+    }
+}
@@ -0,0 +1,76 @@
+package com.bookstore.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+// Hashed timing wheel: lên lịch O(1), mỗi lần advance chỉ duyệt các ô đã tới hạn thay vì toàn bộ phần tử.
+// Không hỗ trợ hủy: caller tự kiểm tra phần tử trả về còn hiệu lực hay không (vd: đã được gia hạn).
+public class TimingWheel<K> {
+
+    private final long tickNanos;
+    private final List<Entry<K>>[] slots;
+    private final List<K> overdue = new ArrayList<>();
+    private final long originNanos;
+    private long currentTick;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickNanos, int wheelSize, long originNanos) {
+        if (tickNanos <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("Tick and wheel size must be positive");
+        }
+        this.tickNanos = tickNanos;
+        this.slots = new List[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            slots[i] = new ArrayList<>();
+        }
+        this.originNanos = originNanos;
+    }
+
+    public synchronized void schedule(K key, long deadlineNanos) {
+        // Làm tròn lên để không bao giờ hết hạn sớm hơn deadline
+        long deadlineTick = Math.floorDiv(deadlineNanos - originNanos + tickNanos - 1, tickNanos);
+        if (deadlineTick <= currentTick) {
+            overdue.add(key);
+        } else {
+            slots[(int) (deadlineTick % slots.length)].add(new Entry<>(key, deadlineTick));
+        }
+        size++;
+    }
+
+    // Trả về mọi phần tử có hạn <= nowNanos (theo độ phân giải tick)
+    public synchronized List<K> advance(long nowNanos) {
+        long targetTick = tickOf(nowNanos);
+        List<K> expired = new ArrayList<>(overdue);
+        overdue.clear();
+        if (targetTick > currentTick) {
+            // Trễ hơn một vòng thì mỗi ô chỉ cần duyệt một lần
+            long ticks = Math.min(targetTick - currentTick, slots.length);
+            for (long tick = targetTick - ticks + 1; tick <= targetTick; tick++) {
+                Iterator<Entry<K>> iterator = slots[(int) (tick % slots.length)].iterator();
+                while (iterator.hasNext()) {
+                    Entry<K> entry = iterator.next();
+                    if (entry.deadlineTick <= targetTick) {
+                        expired.add(entry.key);
+                        iterator.remove();
+                    }
+                }
+            }
+            currentTick = targetTick;
+        }
+        size -= expired.size();
+        return expired;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private long tickOf(long nanos) {
+        return Math.max(0, (nanos - originNanos) / tickNanos);
+    }
+
+    private record Entry<K>(K key, long deadlineTick) {
+    }
+}
@@ -0,0 +1,28 @@
+-- =====================================================================
+-- books.sold_quantity và books.created_at thành NOT NULL
+-- Hai cột này là cột sắp xếp của phân trang keyset (BEST_SELLING, NEWEST): dòng NULL bị điều kiện
+-- "(col < v) OR (col = v AND id < lastId)" loại bỏ, còn cursor chứa "null" thì không đọc lại được.
+-- ddl-auto=update không đổi cột đã có, nên DB cũ cần chạy script này MỘT lần (sau khi backup).
+--
+--   1. Xóa hai index keyset (SQL Server không cho ALTER COLUMN cột đang nằm trong index).
+--   2. Điền giá trị cho các dòng NULL: sold_quantity = 0, created_at = updated_at hoặc thời điểm hiện tại.
+--   3. ALTER COLUMN ... NOT NULL rồi tạo lại index.
+-- =====================================================================
+SET XACT_ABORT ON;
+BEGIN TRANSACTION;
+
+IF EXISTS (SELECT 1 FROM sys.indexes WHERE name = N'idx_books_sold_quantity_id' AND object_id = OBJECT_ID(N'books'))
+    DROP INDEX idx_books_sold_quantity_id ON books;
+IF EXISTS (SELECT 1 FROM sys.indexes WHERE name = N'idx_books_created_at_id' AND object_id = OBJECT_ID(N'books'))
+    DROP INDEX idx_books_created_at_id ON books;
+
+UPDATE books SET sold_quantity = 0 WHERE sold_quantity IS NULL;
+UPDATE books SET created_at = COALESCE(updated_at, SYSDATETIME()) WHERE created_at IS NULL;
+
+ALTER TABLE books ALTER COLUMN sold_quantity INT NOT NULL;
+ALTER TABLE books ALTER COLUMN created_at DATETIME2(6) NOT NULL;
+
+CREATE INDEX idx_books_sold_quantity_id ON books (sold_quantity, id);
+CREATE INDEX idx_books_created_at_id ON books (created_at, id);
+
+COMMIT TRANSACTION;
@@ -0,0 +1,126 @@
+-- =====================================================================
+-- Chuyển khóa chính từ IDENTITY sang SEQUENCE (pooled, INCREMENT BY 50)
+-- Dành cho SQL Server 2017+ với DB đã được tạo bởi phiên bản dùng IDENTITY.
+-- Chạy MỘT lần khi ứng dụng đang dừng và đã backup DB.
+--
+-- Với mỗi bảng:
+--   1. Tạo sequence bắt đầu từ MAX(id) + 50: Hibernate (pooled optimizer) dùng khối [V - 49, V]
+--      cho mỗi giá trị V lấy từ sequence, nên ID mới luôn lớn hơn ID cũ.
+--   2. Xóa FK trỏ tới/đi ra khỏi bảng và các index/unique phụ.
+--      Hibernate (ddl-auto=update) tạo lại chúng ở lần khởi động tiếp theo.
+--   3. Tạo bảng <tên>_new cùng cột nhưng id không có IDENTITY, rồi ALTER TABLE ... SWITCH
+--      (chỉ đổi metadata, không copy dữ liệu), xóa bảng cũ và đổi tên bảng mới.
+--
+-- daily_revenue giữ IDENTITY vì chỉ được ghi bằng JDBC.
+-- =====================================================================
+SET XACT_ABORT ON;
+BEGIN TRANSACTION;
+
+DECLARE @tables TABLE (table_name SYSNAME, sequence_name SYSNAME);
+INSERT INTO @tables (table_name, sequence_name) VALUES
+    (N'users', N'users_seq'),
+    (N'addresses.html', N'addresses_seq'),
+    (N'categories', N'categories_seq'),
+    (N'books', N'books_seq'),
+    (N'reviews', N'reviews_seq'),
+    (N'wishlists', N'wishlists_seq'),
+    (N'carts', N'carts_seq'),
+    (N'cart_items', N'cart_items_seq'),
+    (N'orders', N'orders_seq'),
+    (N'order_items', N'order_items_seq');
+
+DECLARE @table SYSNAME, @sequence SYSNAME, @newTable SYSNAME, @objectId INT;
+DECLARE @sql NVARCHAR(MAX), @columns NVARCHAR(MAX), @pk NVARCHAR(MAX), @pkType NVARCHAR(20), @maxId BIGINT;
+
+DECLARE table_cursor CURSOR LOCAL FAST_FORWARD FOR
+    SELECT table_name, sequence_name FROM @tables;
+OPEN table_cursor;
+FETCH NEXT FROM table_cursor INTO @table, @sequence;
+
+WHILE @@FETCH_STATUS = 0
+BEGIN
+    SET @objectId = OBJECT_ID(QUOTENAME(@table));
+
+    IF @objectId IS NULL OR NOT EXISTS (SELECT 1 FROM sys.identity_columns WHERE object_id = @objectId)
+    BEGIN
+        PRINT N'Skipping ' + @table + N' (missing or already migrated)';
+    END
+    ELSE
+    BEGIN
+        PRINT N'Migrating ' + @table;
+        SET @newTable = @table + N'_new';
+
+        -- 1. Sequence
+        SET @sql = N'SELECT @maxId = COALESCE(MAX(id), 0) FROM ' + QUOTENAME(@table);
+        EXEC sp_executesql @sql, N'@maxId BIGINT OUTPUT', @maxId = @maxId OUTPUT;
+        IF OBJECT_ID(QUOTENAME(@sequence), N'SO') IS NULL
+        BEGIN
+            SET @sql = N'CREATE SEQUENCE ' + QUOTENAME(@sequence) + N' AS BIGINT START WITH '
+                + CAST(@maxId + 50 AS NVARCHAR(20)) + N' INCREMENT BY 50';
+            EXEC (@sql);
+        END
+
+        -- 2. FK, index và unique phụ
+        SET @sql = N'';
+        SELECT @sql += N'ALTER TABLE ' + QUOTENAME(OBJECT_SCHEMA_NAME(fk.parent_object_id)) + N'.'
+                + QUOTENAME(OBJECT_NAME(fk.parent_object_id)) + N' DROP CONSTRAINT ' + QUOTENAME(fk.name) + N';'
+        FROM sys.foreign_keys fk
+        WHERE fk.referenced_object_id = @objectId OR fk.parent_object_id = @objectId;
+        EXEC (@sql);
+
+        SET @sql = N'';
+        SELECT @sql += CASE
+                WHEN i.is_unique_constraint = 1
+                    THEN N'ALTER TABLE ' + QUOTENAME(@table) + N' DROP CONSTRAINT ' + QUOTENAME(i.name) + N';'
+                ELSE N'DROP INDEX ' + QUOTENAME(i.name) + N' ON ' + QUOTENAME(@table) + N';'
+            END
+        FROM sys.indexes i
+        WHERE i.object_id = @objectId AND i.is_primary_key = 0 AND i.type > 0;
+        EXEC (@sql);
+
+        -- 3. Bảng mới không IDENTITY + SWITCH
+        SELECT @columns = STRING_AGG(CAST(QUOTENAME(c.name) + N' ' +
+                CASE
+                    WHEN t.name IN (N'varchar', N'char', N'varbinary', N'binary')
+                        THEN t.name + N'(' + IIF(c.max_length = -1, N'MAX', CAST(c.max_length AS NVARCHAR(10))) + N')'
+                    WHEN t.name IN (N'nvarchar', N'nchar')
+                        THEN t.name + N'(' + IIF(c.max_length = -1, N'MAX', CAST(c.max_length / 2 AS NVARCHAR(10))) + N')'
+                    WHEN t.name IN (N'decimal', N'numeric')
+                        THEN t.name + N'(' + CAST(c.precision AS NVARCHAR(10)) + N',' + CAST(c.scale AS NVARCHAR(10)) + N')'
+                    WHEN t.name IN (N'datetime2', N'time', N'datetimeoffset')
+                        THEN t.name + N'(' + CAST(c.scale AS NVARCHAR(10)) + N')'
+                    ELSE t.name
+                END
+                + IIF(c.collation_name IS NOT NULL, N' COLLATE ' + c.collation_name, N'')
+                + IIF(c.is_nullable = 1, N' NULL', N' NOT NULL') AS NVARCHAR(MAX)), N', ')
+                WITHIN GROUP (ORDER BY c.column_id)
+        FROM sys.columns c
+        JOIN sys.types t ON t.user_type_id = c.user_type_id
+        WHERE c.object_id = @objectId;
+
+        SELECT @pk = STRING_AGG(QUOTENAME(c.name), N', ') WITHIN GROUP (ORDER BY ic.key_ordinal),
+               @pkType = MAX(IIF(i.type = 1, N'CLUSTERED', N'NONCLUSTERED'))
+        FROM sys.indexes i
+        JOIN sys.index_columns ic ON ic.object_id = i.object_id AND ic.index_id = i.index_id
+        JOIN sys.columns c ON c.object_id = ic.object_id AND c.column_id = ic.column_id
+        WHERE i.object_id = @objectId AND i.is_primary_key = 1;
+
+        SET @sql = N'CREATE TABLE ' + QUOTENAME(@newTable) + N' (' + @columns + N', CONSTRAINT '
+            + QUOTENAME(N'PK_' + @newTable) + N' PRIMARY KEY ' + @pkType + N' (' + @pk + N'))';
+        EXEC (@sql);
+
+        SET @sql = N'ALTER TABLE ' + QUOTENAME(@table) + N' SWITCH TO ' + QUOTENAME(@newTable) + N';'
+            + N'DROP TABLE ' + QUOTENAME(@table) + N';';
+        EXEC (@sql);
+
+        SET @sql = QUOTENAME(@newTable);
+        EXEC sp_rename @objname = @sql, @newname = @table, @objtype = N'OBJECT';
+    END
+
+    FETCH NEXT FROM table_cursor INTO @table, @sequence;
+END
+
+CLOSE table_cursor;
+DEALLOCATE table_cursor;
+
+COMMIT TRANSACTION;
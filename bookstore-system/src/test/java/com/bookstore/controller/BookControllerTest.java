@@ -1,7 +1,9 @@
 package com.bookstore.controller;
 
 import com.bookstore.config.SecurityConfig;
-import com.bookstore.entity.Book;
+import com.bookstore.dto.BookDTO;
+import com.bookstore.dto.CursorPage;
+import com.bookstore.repository.BookRepositoryCustom;
 import com.bookstore.service.BookService;
 import com.bookstore.service.CategoryService;
 import org.junit.jupiter.api.Test;
@@ -21,6 +23,9 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.model;
@@ -47,8 +52,8 @@ public class BookControllerTest {
         Sort sort = Sort.by(Sort.Direction.DESC, "createdAt");
         Pageable pageable = PageRequest.of(0, 12, sort);
 
-        List<Book> books = Collections.emptyList();
-        Page<Book> bookPage = new PageImpl<>(books, pageable, books.size());
+        List<BookDTO> books = Collections.emptyList();
+        Page<BookDTO> bookPage = new PageImpl<>(books, pageable, books.size());
         when(bookService.getAllBooks(pageable)).thenReturn(bookPage);
         when(categoryService.getActiveCategories()).thenReturn(Collections.emptyList());
 
@@ -59,12 +64,29 @@ public class BookControllerTest {
                 .andExpect(model().attributeExists("categories"));
     }
 
+    @Test
+    @WithAnonymousUser
+    void listBooks_WithCursor_ShouldUseKeysetPagination() throws Exception {
+        CursorPage<BookDTO> cursorPage = new CursorPage<>(Collections.emptyList(), "next", true);
+        when(bookService.getBooksPage(BookRepositoryCustom.Listing.ALL, null,
+                BookRepositoryCustom.KeysetSort.PRICE_ASC, "abc", 12)).thenReturn(cursorPage);
+        when(categoryService.getActiveCategories()).thenReturn(Collections.emptyList());
+
+        mockMvc.perform(get("/books").param("sort", "price-asc").param("cursor", "abc"))
+                .andExpect(status().isOk())
+                .andExpect(view().name("books/list"))
+                .andExpect(model().attribute("nextCursor", "next"))
+                .andExpect(model().attributeDoesNotExist("totalPages"));
+
+        verify(bookService, never()).getAllBooks(any());
+    }
+
     @Test
     @WithAnonymousUser  // Allow anonymous access
     void searchBooks_ShouldReturnSearchView() throws Exception {
         Pageable pageable = PageRequest.of(0, 12);
-        List<Book> books = Collections.emptyList();
-        Page<Book> bookPage = new PageImpl<>(books);
+        List<BookDTO> books = Collections.emptyList();
+        Page<BookDTO> bookPage = new PageImpl<>(books);
         when(bookService.searchBooks("keyword", pageable)).thenReturn(bookPage);
 
         mockMvc.perform(get("/books/search").param("keyword", "keyword"))
@@ -78,8 +100,8 @@ public class BookControllerTest {
     @WithAnonymousUser  // Allow anonymous access
     void booksByCategory_ShouldReturnCategoryView() throws Exception {
         Pageable pageable = PageRequest.of(0, 12);
-        List<Book> books = Collections.emptyList();
-        Page<Book> bookPage = new PageImpl<>(books);
+        List<BookDTO> books = Collections.emptyList();
+        Page<BookDTO> bookPage = new PageImpl<>(books);
         when(bookService.getBooksByCategory(1L, pageable)).thenReturn(bookPage);
         when(categoryService.getCategoryById(1L)).thenReturn(Optional.empty());
 
@@ -6,19 +6,25 @@ import com.bookstore.entity.Cart;
 import com.bookstore.entity.CartItem;
 import com.bookstore.service.BookService;
 import com.bookstore.service.CartService;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Import;
 import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.mock.web.MockHttpSession;
 import org.springframework.test.web.servlet.MockMvc;
 
 import java.math.BigDecimal;
 import java.util.Arrays;
 import java.util.Collections;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
@@ -38,6 +44,13 @@ public class CartControllerTest {
     @MockBean
     private BookService bookService;
 
+    @BeforeEach
+    void setUp() {
+        when(cartService.userCartKey("user")).thenReturn("user-cart-1");
+        when(cartService.userCartKey("admin")).thenReturn("user-cart-1");
+        when(cartService.newGuestCartKey()).thenReturn("guest-1", "guest-2");
+    }
+
     @Test
     @WithMockUser
     void viewCart_ShouldReturnCartView() throws Exception {
@@ -49,7 +62,7 @@ public class CartControllerTest {
         mockCart.setTotalPrice(new BigDecimal("0.00"));
         mockCart.setItems(Collections.emptyList()); // Sử dụng empty list
 
-        when(cartService.getCurrentCart()).thenReturn(mockCart);
+        when(cartService.getOrCreateCart("user-cart-1")).thenReturn(mockCart);
 
         mockMvc.perform(get("/cart"))
                 .andExpect(status().isOk())
@@ -84,6 +97,8 @@ public class CartControllerTest {
                         .with(csrf()))
                 .andExpect(status().is3xxRedirection())
                 .andExpect(redirectedUrl("/cart"));
+
+        verify(cartService).addToCart("user-cart-1", 1L, 1);
     }
 
     @Test
@@ -136,7 +151,7 @@ public class CartControllerTest {
         emptyCart.setTotalPrice(BigDecimal.ZERO);
         emptyCart.setItems(Collections.emptyList()); // Sử dụng empty list
 
-        when(cartService.getCurrentCart()).thenReturn(emptyCart);
+        when(cartService.getOrCreateCart("user-cart-1")).thenReturn(emptyCart);
 
         mockMvc.perform(get("/cart"))
                 .andExpect(status().isOk())
@@ -154,10 +169,50 @@ public class CartControllerTest {
         mockCart.setTotalPrice(new BigDecimal("0.00"));
         mockCart.setItems(Collections.emptyList()); // Sử dụng empty list
 
-        when(cartService.getCurrentCart()).thenReturn(mockCart);
+        when(cartService.getOrCreateCart("user-cart-1")).thenReturn(mockCart);
 
         mockMvc.perform(get("/cart"))
                 .andExpect(status().isOk())
                 .andExpect(view().name("cart/view"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void addToCart_AsGuest_UsesSessionCartKey() throws Exception {
+        when(bookService.getBookById(1L)).thenReturn(java.util.Optional.of(Book.builder().id(1L).build()));
+        MockHttpSession session = new MockHttpSession();
+
+        mockMvc.perform(post("/cart/add")
+                        .param("bookId", "1")
+                        .param("quantity", "2")
+                        .session(session)
+                        .with(csrf()))
+                .andExpect(status().is3xxRedirection())
+                .andExpect(redirectedUrl("/cart"));
+        mockMvc.perform(post("/cart/remove")
+                        .param("bookId", "1")
+                        .session(session)
+                        .with(csrf()))
+                .andExpect(status().is3xxRedirection());
+
+        // Cùng session -> cùng giỏ khách, không tạo khóa mới mỗi request
+        verify(cartService).addToCart("guest-1", 1L, 2);
+        verify(cartService).removeFromCart("guest-1", 1L);
+        verify(cartService, times(1)).newGuestCartKey();
+        assertEquals("guest-1", session.getAttribute(CartService.CART_KEY_ATTRIBUTE));
+    }
+
+    @Test
+    @WithMockUser
+    void viewCart_UsesCartKeyFromSession() throws Exception {
+        MockHttpSession session = new MockHttpSession();
+        session.setAttribute(CartService.CART_KEY_ATTRIBUTE, "user-cart-7");
+        Cart cart = new Cart();
+        when(cartService.getOrCreateCart("user-cart-7")).thenReturn(cart);
+
+        mockMvc.perform(get("/cart").session(session))
+                .andExpect(status().isOk())
+                .andExpect(model().attribute("cart", cart));
+
+        verify(cartService, never()).userCartKey(anyString());
+    }
+}
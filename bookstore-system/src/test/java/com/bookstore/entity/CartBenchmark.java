@@ -0,0 +1,106 @@
+package com.bookstore.entity;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Chi phí thao tác trên giỏ N dòng. Chạy: mvn test-compile rồi
+// java -cp target/test-classes:<classpath test> com.bookstore.entity.CartBenchmark
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CartBenchmark {
+
+    @Param({"1", "10", "100", "500"})
+    private int lines;
+
+    private List<Book> books;
+
+    private Map<Long, Integer> quantities;
+
+    private Cart cart;
+
+    @Setup(Level.Trial)
+    public void createBooks() {
+        books = new ArrayList<>(lines);
+        quantities = new LinkedHashMap<>();
+        for (int i = 0; i < lines; i++) {
+            books.add(Book.builder()
+                    .id((long) i + 1)
+                    .title("Book " + i)
+                    .author("Author")
+                    .isbn("978" + String.format("%010d", i))
+                    .price(new BigDecimal("50000"))
+                    .stockQuantity(1000)
+                    .build());
+            quantities.put((long) i + 1, 3);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void fillCart() {
+        cart = new Cart();
+        for (Book book : books) {
+            cart.addItem(book, 1);
+        }
+    }
+
+    @Benchmark
+    public Cart buildCart() {
+        Cart fresh = new Cart();
+        for (Book book : books) {
+            fresh.addItem(book, 1);
+        }
+        return fresh;
+    }
+
+    @Benchmark
+    public Cart updateEachLine() {
+        for (Book book : books) {
+            cart.updateItemQuantity(book, 3);
+        }
+        return cart;
+    }
+
+    @Benchmark
+    public Cart updateQuantities() {
+        cart.updateQuantities(quantities);
+        return cart;
+    }
+
+    @Benchmark
+    public Cart removeEachLine() {
+        for (Book book : books) {
+            cart.removeItem(book);
+        }
+        return cart;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CartBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,112 @@
+package com.bookstore.entity;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CartTest {
+
+    private Book first;
+    private Book second;
+    private Book third;
+    private Cart cart;
+
+    @BeforeEach
+    void setUp() {
+        first = book(1L, "50000", null);
+        second = book(2L, "80000", "60000");
+        third = book(3L, "120000", null);
+        cart = new Cart();
+    }
+
+    @Test
+    void testAddItem_MergesSameBookAndKeepsTotals() {
+        cart.addItem(first, 1);
+        cart.addItem(second, 2);
+        cart.addItem(first, 2);
+
+        assertEquals(2, cart.getItems().size());
+        assertEquals(5, cart.getTotalItems());
+        assertEquals(0, new BigDecimal("270000").compareTo(cart.getTotalPrice()));
+        assertTotalsMatchRecalculation();
+    }
+
+    @Test
+    void testUpdateQuantities_UpdatesAndRemovesInOnePass() {
+        cart.addItem(first, 1);
+        cart.addItem(second, 1);
+        cart.addItem(third, 1);
+
+        Map<Long, Integer> quantities = new LinkedHashMap<>();
+        quantities.put(1L, 4);
+        quantities.put(2L, 0);
+        quantities.put(99L, 7);
+        cart.updateQuantities(quantities);
+
+        assertEquals(List.of(first, third), cart.getItems().stream().map(CartItem::getBook).toList());
+        assertEquals(5, cart.getTotalItems());
+        assertEquals(0, new BigDecimal("320000").compareTo(cart.getTotalPrice()));
+        assertTotalsMatchRecalculation();
+    }
+
+    @Test
+    void testRemoveAndUpdate_KeepIndexInSync() {
+        cart.addItem(first, 2);
+        cart.addItem(second, 1);
+
+        cart.removeItem(first);
+        cart.updateItemQuantity(second, 3);
+        cart.updateItemQuantity(first, 5);
+        cart.addItem(first, 1);
+
+        assertEquals(2, cart.getItems().size());
+        assertEquals(4, cart.getTotalItems());
+        assertTotalsMatchRecalculation();
+
+        cart.clear();
+        cart.addItem(third, 1);
+        assertEquals(1, cart.getTotalItems());
+        assertTotalsMatchRecalculation();
+    }
+
+    @Test
+    void testIndex_BuiltFromLoadedItems() {
+        // Giống giỏ Hibernate nạp từ DB: items có sẵn, chỉ mục chưa được dựng
+        CartItem loaded = CartItem.builder().book(first).quantity(2).unitPrice(first.getPrice()).build();
+        Cart loadedCart = Cart.builder().items(new ArrayList<>(List.of(loaded))).build();
+        loadedCart.calculateTotals();
+
+        loadedCart.addItem(first, 1);
+
+        assertEquals(1, loadedCart.getItems().size());
+        assertEquals(3, loaded.getQuantity());
+        assertEquals(3, loadedCart.getTotalItems());
+    }
+
+    private void assertTotalsMatchRecalculation() {
+        int items = cart.getTotalItems();
+        BigDecimal price = cart.getTotalPrice();
+        cart.calculateTotals();
+        assertEquals(cart.getTotalItems(), items);
+        assertEquals(0, cart.getTotalPrice().compareTo(price));
+    }
+
+    private Book book(Long id, String price, String discountPrice) {
+        return Book.builder()
+                .id(id)
+                .title("Book " + id)
+                .author("Author")
+                .isbn("97810000000" + id)
+                .price(new BigDecimal(price))
+                .discountPrice(discountPrice != null ? new BigDecimal(discountPrice) : null)
+                .stockQuantity(100)
+                .build();
+    }
+}
@@ -0,0 +1,135 @@
+package com.bookstore.repository;
+
+import com.bookstore.dto.BookDTO;
+import com.bookstore.entity.Book;
+import com.bookstore.entity.Category;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Đếm số câu SQL cho các truy vấn phía sau từng trang để phát hiện N+1
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:statementcount;MODE=MSSQLServer;DB_CLOSE_DELAY=-1",
+        "spring.sql.init.mode=never",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+class BookRepositoryStatementCountTest {
+
+    private static final int PAGE_SIZE = 12;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Long firstBookId;
+
+    @BeforeEach
+    void setUp() {
+        Category fiction = entityManager.persist(Category.builder().name("Fiction").slug("fiction").build());
+        Category science = entityManager.persist(Category.builder().name("Science").slug("science").build());
+
+        for (int i = 0; i < PAGE_SIZE * 2; i++) {
+            Book book = Book.builder()
+                    .title("Book " + i)
+                    .author("Author " + (i % 3))
+                    .isbn("978000000" + String.format("%04d", i))
+                    .price(new BigDecimal("100000"))
+                    .stockQuantity(10)
+                    .build();
+            book.addCategory(i % 2 == 0 ? fiction : science);
+            book.addImage("book-" + i + ".jpg");
+            Book saved = entityManager.persist(book);
+            if (firstBookId == null) {
+                firstBookId = saved.getId();
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void detailPage_LoadsBookAndCategoriesInOneStatement() {
+        long statements = countStatements(() -> {
+            Book book = bookRepository.findDetailedById(firstBookId).orElseThrow();
+            return book.getCategories().size();
+        });
+
+        assertEquals(1, statements);
+    }
+
+    @Test
+    void listingPage_BatchesCategoryAndImageLoads() {
+        long statements = countStatements(() -> {
+            Page<Book> page = bookRepository.findAll(PageRequest.of(0, PAGE_SIZE, Sort.by("id")));
+            page.forEach(book -> {
+                book.getCategories().size();
+                book.getImages().size();
+            });
+            return page.getNumberOfElements();
+        });
+
+        // Trang + COUNT + 1 lô categories + 1 lô images, không phụ thuộc số sách trên trang
+        assertEquals(4, statements);
+    }
+
+    @Test
+    void listingCards_AreProjectedWithoutCollectionLoads() {
+        long statements = countStatements(() -> {
+            Page<BookDTO> page = bookRepository.findAllCards(PageRequest.of(0, PAGE_SIZE, Sort.by("createdAt")));
+            page.forEach(card -> {
+                card.isOnSale();
+                card.getCurrentPrice();
+            });
+            return page.getNumberOfElements();
+        });
+
+        // Trang + COUNT, không có entity nào được nạp vào persistence context
+        assertEquals(2, statements);
+        assertEquals(0, entityManagerFactory.unwrap(SessionFactory.class).getStatistics().getEntityLoadCount());
+    }
+
+    @Test
+    void keysetPage_DoesNotRunCountQuery() {
+        long statements = countStatements(() -> {
+            List<BookDTO> books = bookRepository.findKeysetPage(BookRepositoryCustom.Listing.ALL, null,
+                    BookRepositoryCustom.KeysetSort.NEWEST, null, null, PAGE_SIZE + 1);
+            books.forEach(BookDTO::isOnSale);
+            return books.size();
+        });
+
+        assertEquals(1, statements);
+    }
+
+    private long countStatements(Supplier<Integer> work) {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        entityManager.clear();
+        statistics.clear();
+        assertTrue(work.get() >= 0);
+        return statistics.getPrepareStatementCount();
+    }
+}
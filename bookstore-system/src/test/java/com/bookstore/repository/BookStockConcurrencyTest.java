@@ -0,0 +1,104 @@
+package com.bookstore.repository;
+
+import com.bookstore.entity.Book;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Nhiều luồng cùng mua một sách "hot": không được bán vượt tồn kho
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:stockconcurrency;MODE=MSSQLServer;DB_CLOSE_DELAY=-1",
+        "spring.sql.init.mode=never"
+})
+class BookStockConcurrencyTest {
+
+    private static final int INITIAL_STOCK = 100;
+    private static final int THREADS = 32;
+    private static final int ATTEMPTS_PER_THREAD = 10;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Long bookId;
+
+    @BeforeEach
+    void setUp() {
+        Book book = bookRepository.save(Book.builder()
+                .title("Hot Book")
+                .author("Author")
+                .isbn("9780000009999")
+                .price(new BigDecimal("100000"))
+                .stockQuantity(INITIAL_STOCK)
+                .build());
+        bookId = book.getId();
+    }
+
+    @AfterEach
+    void tearDown() {
+        bookRepository.deleteAll();
+    }
+
+    @Test
+    void decrementStock_UnderContention_NeverOversells() throws Exception {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+                    Integer updated = transaction.execute(status -> bookRepository.decrementStock(bookId, 1));
+                    if (updated != null && updated == 1) {
+                        succeeded.incrementAndGet();
+                    } else {
+                        rejected.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        Book book = bookRepository.findById(bookId).orElseThrow();
+        assertEquals(INITIAL_STOCK, succeeded.get());
+        assertEquals(THREADS * ATTEMPTS_PER_THREAD - INITIAL_STOCK, rejected.get());
+        assertEquals(0, book.getStockQuantity());
+        assertEquals(INITIAL_STOCK, book.getSoldQuantity());
+    }
+}
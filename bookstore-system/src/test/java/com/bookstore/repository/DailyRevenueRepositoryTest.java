@@ -0,0 +1,116 @@
+package com.bookstore.repository;
+
+import com.bookstore.dto.RevenueSummaryDTO;
+import com.bookstore.entity.Order;
+import com.bookstore.entity.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Import(DailyRevenueRepository.class)
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:dailyrevenue;MODE=MSSQLServer;DB_CLOSE_DELAY=-1",
+        "spring.sql.init.mode=never"
+})
+class DailyRevenueRepositoryTest {
+
+    private static final LocalDate DAY = LocalDate.of(2025, 10, 1);
+
+    @Autowired
+    private DailyRevenueRepository dailyRevenueRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Test
+    void add_AccumulatesIntoExistingBucketAcrossSlots() {
+        dailyRevenueRepository.add(DAY, "COD", Order.PaymentStatus.PAID, Order.OrderStatus.DELIVERED,
+                0, 1, new BigDecimal("100000.00"));
+        dailyRevenueRepository.add(DAY, "COD", Order.PaymentStatus.PAID, Order.OrderStatus.DELIVERED,
+                0, 1, new BigDecimal("50000.00"));
+        dailyRevenueRepository.add(DAY, "COD", Order.PaymentStatus.PAID, Order.OrderStatus.DELIVERED,
+                3, 1, new BigDecimal("25000.00"));
+
+        List<RevenueSummaryDTO> summary = dailyRevenueRepository.summarize(DAY, DAY);
+
+        assertEquals(1, summary.size());
+        assertEquals(3, summary.get(0).getOrderCount());
+        assertEquals(0, new BigDecimal("175000").compareTo(summary.get(0).getTotalAmount()));
+    }
+
+    @Test
+    void add_NegativeDeltaMovesOrderBetweenBuckets() {
+        dailyRevenueRepository.add(DAY, "COD", Order.PaymentStatus.PENDING, Order.OrderStatus.PENDING,
+                1, 1, new BigDecimal("80000.00"));
+        dailyRevenueRepository.add(DAY, "COD", Order.PaymentStatus.PENDING, Order.OrderStatus.PENDING,
+                5, -1, new BigDecimal("-80000.00"));
+        dailyRevenueRepository.add(DAY, "COD", Order.PaymentStatus.PAID, Order.OrderStatus.PENDING,
+                2, 1, new BigDecimal("80000.00"));
+
+        assertEquals(0, new BigDecimal("80000").compareTo(dailyRevenueRepository.sumAll(Order.PaymentStatus.PAID)));
+        assertEquals(0, BigDecimal.ZERO.compareTo(dailyRevenueRepository.sumAll(Order.PaymentStatus.PENDING)));
+    }
+
+    @Test
+    void sumByDay_FiltersDateRange() {
+        dailyRevenueRepository.add(DAY, "COD", Order.PaymentStatus.PAID, Order.OrderStatus.DELIVERED,
+                0, 1, new BigDecimal("10000.00"));
+        dailyRevenueRepository.add(DAY.plusDays(1), "VNPAY", Order.PaymentStatus.PAID, Order.OrderStatus.DELIVERED,
+                0, 1, new BigDecimal("20000.00"));
+        dailyRevenueRepository.add(DAY.plusDays(5), "COD", Order.PaymentStatus.PAID, Order.OrderStatus.DELIVERED,
+                0, 1, new BigDecimal("40000.00"));
+
+        Map<LocalDate, BigDecimal> daily = dailyRevenueRepository.sumByDay(Order.PaymentStatus.PAID, DAY, DAY.plusDays(1));
+
+        assertEquals(List.of(DAY, DAY.plusDays(1)), List.copyOf(daily.keySet()));
+    }
+
+    @Test
+    void backfill_GroupsExistingOrders() {
+        User user = userRepository.save(User.builder()
+                .email("revenue@test.com").password("secret").fullName("Revenue Test").build());
+        orderRepository.save(order(user, "ORD-1", "COD", Order.PaymentStatus.PAID, "120000.00"));
+        orderRepository.save(order(user, "ORD-2", "COD", Order.PaymentStatus.PAID, "30000.00"));
+        orderRepository.save(order(user, "ORD-3", "VNPAY", Order.PaymentStatus.PENDING, "99000.00"));
+        orderRepository.flush();
+
+        assertTrue(dailyRevenueRepository.isEmpty());
+        dailyRevenueRepository.backfill();
+
+        assertFalse(dailyRevenueRepository.isEmpty());
+        assertEquals(0, new BigDecimal("150000").compareTo(dailyRevenueRepository.sumAll(Order.PaymentStatus.PAID)));
+        List<RevenueSummaryDTO> today = dailyRevenueRepository.summarize(LocalDate.now(), LocalDate.now());
+        assertEquals(2, today.size());
+        assertEquals(3, today.stream().mapToLong(RevenueSummaryDTO::getOrderCount).sum());
+    }
+
+    private Order order(User user, String orderNumber, String paymentMethod,
+                        Order.PaymentStatus paymentStatus, String amount) {
+        return Order.builder()
+                .orderNumber(orderNumber)
+                .user(user)
+                .paymentMethod(paymentMethod)
+                .paymentStatus(paymentStatus)
+                .totalAmount(new BigDecimal(amount))
+                .orderDate(LocalDateTime.now())
+                .build();
+    }
+}
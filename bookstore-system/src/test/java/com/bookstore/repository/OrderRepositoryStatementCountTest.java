@@ -0,0 +1,105 @@
+package com.bookstore.repository;
+
+import com.bookstore.entity.Book;
+import com.bookstore.entity.Order;
+import com.bookstore.entity.OrderItem;
+import com.bookstore.entity.User;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Đếm số câu SQL khi lưu một đơn hàng: ID lấy từ sequence pooled nên các dòng order_items được gửi theo lô
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:orderstatementcount;MODE=MSSQLServer;DB_CLOSE_DELAY=-1",
+        "spring.sql.init.mode=never",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "spring.jpa.properties.hibernate.jdbc.batch_size=50",
+        "spring.jpa.properties.hibernate.order_inserts=true"
+})
+class OrderRepositoryStatementCountTest {
+
+    private static final int ITEMS_PER_ORDER = 10;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private User user;
+
+    private List<Book> books;
+
+    @BeforeEach
+    void setUp() {
+        user = entityManager.persist(User.builder()
+                .email("batch@test.com").password("secret").fullName("Batch Test").build());
+        books = new ArrayList<>();
+        for (int i = 0; i < ITEMS_PER_ORDER; i++) {
+            books.add(entityManager.persist(Book.builder()
+                    .title("Book " + i)
+                    .author("Author")
+                    .isbn("978100000" + String.format("%04d", i))
+                    .price(new BigDecimal("50000"))
+                    .stockQuantity(100)
+                    .build()));
+        }
+        // Đơn đầu tiên lấy khối ID đầu tiên từ orders_seq / order_items_seq
+        orderRepository.save(order("ORD-WARMUP"));
+        entityManager.flush();
+    }
+
+    @Test
+    void saveOrder_InsertsItemsInOneBatch() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        Order saved = orderRepository.save(order("ORD-BATCH"));
+        entityManager.flush();
+
+        // IDENTITY: 1 + ITEMS_PER_ORDER câu INSERT. Sequence pooled: 1 INSERT orders + 1 lô INSERT order_items,
+        // ID lấy từ khối đã cấp sẵn nên không cần gọi sequence
+        assertEquals(2, statistics.getPrepareStatementCount());
+        assertEquals(ITEMS_PER_ORDER, saved.getOrderItems().size());
+        assertTrue(saved.getOrderItems().stream().allMatch(item -> item.getId() != null));
+    }
+
+    private Order order(String orderNumber) {
+        Order order = Order.builder()
+                .orderNumber(orderNumber)
+                .user(user)
+                .paymentMethod("COD")
+                .totalAmount(new BigDecimal("500000"))
+                .build();
+        for (Book book : books) {
+            order.getOrderItems().add(OrderItem.builder()
+                    .order(order)
+                    .book(book)
+                    .quantity(1)
+                    .unitPrice(book.getPrice())
+                    .totalPrice(book.getPrice())
+                    .build());
+        }
+        return order;
+    }
+}
@@ -0,0 +1,120 @@
+package com.bookstore.repository;
+
+import com.bookstore.entity.Book;
+import com.bookstore.exception.InsufficientStockException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Import(StockReservationRepository.class)
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:stockreservation;MODE=MSSQLServer;DB_CLOSE_DELAY=-1",
+        "spring.sql.init.mode=never"
+})
+class StockReservationRepositoryTest {
+
+    @Autowired
+    private StockReservationRepository stockReservationRepository;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Long firstId;
+    private Long secondId;
+
+    @BeforeEach
+    void setUp() {
+        firstId = bookRepository.save(book("9780000000001", 5)).getId();
+        secondId = bookRepository.save(book("9780000000002", 1)).getId();
+    }
+
+    @AfterEach
+    void tearDown() {
+        bookRepository.deleteAll();
+    }
+
+    @Test
+    void decrementAll_ReservesEveryBookInOneBatch() {
+        List<InsufficientStockException.Shortage> shortages = reserve(2, 1);
+
+        assertTrue(shortages.isEmpty());
+        assertEquals(3, stockOf(firstId));
+        assertEquals(0, stockOf(secondId));
+        assertEquals(2, bookRepository.findById(firstId).orElseThrow().getSoldQuantity());
+    }
+
+    @Test
+    void decrementAll_ReportsShortageAndRollsBackWholeOrder() {
+        List<InsufficientStockException.Shortage> shortages = reserve(2, 3);
+
+        assertEquals(List.of(new InsufficientStockException.Shortage(secondId, 3, 1)), shortages);
+        // Dòng đủ hàng cũng không bị trừ vì transaction bị rollback
+        assertEquals(5, stockOf(firstId));
+        assertEquals(1, stockOf(secondId));
+    }
+
+    @Test
+    void restoreAll_ReturnsStockAndSoldQuantity() {
+        reserve(2, 1);
+
+        TreeMap<Long, Integer> quantities = new TreeMap<>();
+        quantities.put(firstId, 2);
+        quantities.put(secondId, 1);
+        new TransactionTemplate(transactionManager)
+                .executeWithoutResult(status -> stockReservationRepository.restoreAll(quantities));
+
+        assertEquals(5, stockOf(firstId));
+        assertEquals(1, stockOf(secondId));
+        assertEquals(0, bookRepository.findById(firstId).orElseThrow().getSoldQuantity());
+    }
+
+    private List<InsufficientStockException.Shortage> reserve(int firstQuantity, int secondQuantity) {
+        TreeMap<Long, Integer> quantities = new TreeMap<>();
+        quantities.put(firstId, firstQuantity);
+        quantities.put(secondId, secondQuantity);
+        return new TransactionTemplate(transactionManager).execute(status -> {
+            List<InsufficientStockException.Shortage> result = stockReservationRepository.decrementAll(quantities);
+            if (!result.isEmpty()) {
+                status.setRollbackOnly();
+            }
+            return result;
+        });
+    }
+
+    private int stockOf(Long bookId) {
+        return bookRepository.findById(bookId).orElseThrow().getStockQuantity();
+    }
+
+    private static Book book(String isbn, int stock) {
+        return Book.builder()
+                .title("Book " + isbn)
+                .author("Author")
+                .isbn(isbn)
+                .price(new BigDecimal("100000"))
+                .stockQuantity(stock)
+                .build();
+    }
+}
@@ -0,0 +1,134 @@
+package com.bookstore.service;
+
+import com.bookstore.dto.BookSearchDTO;
+import com.bookstore.dto.FacetCountDTO;
+import com.bookstore.event.BookChangedEvent;
+import com.bookstore.event.OrderPlacedEvent;
+import com.bookstore.repository.BookRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class BookFacetIndexTest {
+
+    @Mock
+    private BookRepository bookRepository;
+
+    @InjectMocks
+    private BookFacetIndex bookFacetIndex;
+
+    @BeforeEach
+    void setUp() {
+        List<Object[]> facts = new ArrayList<>();
+        facts.add(row(1L, "Clean Code", "Robert Martin", "120000", null, 5, true, "English", 10));
+        facts.add(row(2L, "Clean Architecture", "Robert Martin", "250000", "180000", 0, true, "English", 3));
+        facts.add(row(3L, "Dế Mèn Phiêu Lưu Ký", "Tô Hoài", "45000", null, 8, true, "Vietnamese", 50));
+        facts.add(row(4L, "Sách ngừng bán", "Tô Hoài", "30000", null, 8, false, "Vietnamese", 0));
+
+        List<Object[]> categoryPairs = new ArrayList<>();
+        categoryPairs.add(new Object[]{1L, 10L});
+        categoryPairs.add(new Object[]{2L, 10L});
+        categoryPairs.add(new Object[]{3L, 20L});
+
+        when(bookRepository.findBookCategoryPairs()).thenReturn(categoryPairs);
+        when(bookRepository.findFacetFactsBatch(eq(0L), any())).thenReturn(facts);
+
+        bookFacetIndex.rebuild();
+    }
+
+    @Test
+    void testSearch_CountsAllFacetsWithoutFilters() {
+        BookFacetIndex.FacetResult result = bookFacetIndex.search(new BookSearchDTO(), null, 0, 10);
+
+        assertEquals(3, result.totalHits());
+        assertEquals(Map.of("10", 2L, "20", 1L), counts(result.categories()));
+        assertEquals(Map.of("0-50000", 1L, "100000-200000", 2L), counts(result.priceRanges()));
+        assertEquals(Map.of("robert martin", 2L, "tô hoài", 1L), counts(result.authors()));
+        assertEquals(2, result.inStockCount());
+        assertEquals(1, result.onSaleCount());
+    }
+
+    @Test
+    void testSearch_FilteredDimensionStillCountsOtherValues() {
+        BookSearchDTO criteria = new BookSearchDTO();
+        criteria.setCategoryId(10L);
+        criteria.setInStockOnly(true);
+
+        BookFacetIndex.FacetResult result = bookFacetIndex.search(criteria, null, 0, 10);
+
+        assertEquals(List.of(1L), result.bookIds());
+        // Danh mục được đếm bỏ qua bộ lọc danh mục, nhưng vẫn áp dụng "còn hàng"
+        assertEquals(Map.of("10", 1L, "20", 1L), counts(result.categories()));
+        assertEquals(1, result.inStockCount());
+    }
+
+    @Test
+    void testSearch_RestrictsToKeywordMatchesInRankOrder() {
+        BookFacetIndex.FacetResult result = bookFacetIndex.search(new BookSearchDTO(), List.of(2L, 1L), 0, 10);
+
+        assertEquals(List.of(2L, 1L), result.bookIds());
+        assertEquals(Map.of("10", 2L), counts(result.categories()));
+    }
+
+    @Test
+    void testOnBookChanged_RemovesDeletedBook() {
+        bookFacetIndex.onBookChanged(new BookChangedEvent(3L, BookChangedEvent.ChangeType.DELETED));
+
+        BookFacetIndex.FacetResult result = bookFacetIndex.search(new BookSearchDTO(), null, 0, 10);
+
+        assertEquals(2, result.totalHits());
+        assertEquals(Map.of("10", 2L), counts(result.categories()));
+    }
+
+    @Test
+    void testRebuild_KeepsServingAndReplaysChangesMadeWhileRebuilding() {
+        List<Object[]> facts = new ArrayList<>();
+        facts.add(row(1L, "Clean Code", "Robert Martin", "120000", null, 5, true, "English", 10));
+        facts.add(row(2L, "Clean Architecture", "Robert Martin", "250000", "180000", 0, true, "English", 3));
+        facts.add(row(3L, "Dế Mèn Phiêu Lưu Ký", "Tô Hoài", "45000", null, 8, true, "Vietnamese", 50));
+        when(bookRepository.findFacetFactsById(1L)).thenReturn(List.<Object[]>of(
+                row(1L, "Clean Code", "Robert Martin", "120000", null, 0, true, "English", 15)));
+        when(bookRepository.findCategoryIdsByBookId(1L)).thenReturn(List.of(10L));
+        when(bookRepository.findFacetFactsBatch(eq(0L), any())).thenAnswer(invocation -> {
+            // Đang rebuild: index cũ vẫn trả kết quả, và các thay đổi vẫn được áp dụng
+            assertEquals(3, bookFacetIndex.search(new BookSearchDTO(), null, 0, 10).totalHits());
+            bookFacetIndex.onOrderPlaced(new OrderPlacedEvent(99L, 1L, Map.of(1L, 5)));
+            bookFacetIndex.onBookChanged(new BookChangedEvent(3L, BookChangedEvent.ChangeType.DELETED));
+            return facts;
+        });
+
+        bookFacetIndex.rebuild();
+
+        BookFacetIndex.FacetResult result = bookFacetIndex.search(new BookSearchDTO(), null, 0, 10);
+        assertEquals(2, result.totalHits());
+        assertEquals(0, result.inStockCount());
+        assertEquals(Map.of("10", 2L), counts(result.categories()));
+    }
+
+    private static Object[] row(Long id, String title, String author, String price, String discountPrice,
+                                int stock, boolean available, String language, int sold) {
+        return new Object[]{id, title, author, new BigDecimal(price),
+                discountPrice == null ? null : new BigDecimal(discountPrice),
+                stock, available, language, sold, LocalDateTime.now().minusDays(id)};
+    }
+
+    private static Map<String, Long> counts(List<FacetCountDTO> facets) {
+        return facets.stream().collect(Collectors.toMap(FacetCountDTO::getValue, FacetCountDTO::getCount));
+    }
+}
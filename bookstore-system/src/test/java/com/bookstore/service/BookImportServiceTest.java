@@ -0,0 +1,131 @@
+package com.bookstore.service;
+
+import com.bookstore.dto.ImportReportDTO;
+import com.bookstore.entity.Book;
+import com.bookstore.entity.Category;
+import com.bookstore.repository.BookImportRepository;
+import com.bookstore.repository.BookRepository;
+import com.bookstore.repository.CategoryRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Import({BookImportRepository.class, BookImportService.class})
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:bookimport;MODE=MSSQLServer;DB_CLOSE_DELAY=-1",
+        "spring.sql.init.mode=never",
+        "app.import.batch-size=4"
+})
+class BookImportServiceTest {
+
+    @Autowired
+    private BookImportService bookImportService;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        for (String slug : List.of("van-hoc", "thieu-nhi", "kinh-te", "ky-nang-song", "khoa-hoc")) {
+            categoryRepository.save(Category.builder().name(slug).slug(slug).build());
+        }
+        // Sách đã có sẵn trong DB: dòng cùng ISBN trong file phải bị bỏ qua
+        bookRepository.save(Book.builder()
+                .title("Đắc Nhân Tâm")
+                .author("Dale Carnegie")
+                .isbn("978-604-1-00005-9")
+                .price(new BigDecimal("86000"))
+                .stockQuantity(5)
+                .build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM book_categories");
+        jdbcTemplate.update("DELETE FROM books");
+        jdbcTemplate.update("DELETE FROM categories");
+    }
+
+    @Test
+    void testImportBooks_ImportsSampleFeedInBatches() throws IOException {
+        ImportReportDTO report;
+        try (Reader reader = new InputStreamReader(
+                new ClassPathResource("test-data/books.csv").getInputStream(), StandardCharsets.UTF_8)) {
+            report = bookImportService.importBooks(reader);
+        }
+
+        assertEquals(12, report.getRowsRead());
+        assertEquals(8, report.getImported());
+        // Một ISBN trùng trong file (khác định dạng) và một ISBN đã có trong DB
+        assertEquals(2, report.getDuplicates());
+        assertEquals(2, report.getInvalid());
+        assertEquals(0, report.getFailed());
+        assertEquals(Set.of("cong-nghe", "tieu-thuyet-moi"), report.getUnknownCategories());
+        assertEquals(9, bookRepository.count());
+
+        Book nhaGiaKim = bookRepository.findByIsbn("978-604-1-00003-5").orElseThrow();
+        assertTrue(nhaGiaKim.getDescription().contains("\n"));
+        assertEquals(0, new BigDecimal("69000").compareTo(nhaGiaKim.getDiscountPrice()));
+        assertEquals(2, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM book_categories bc JOIN books b ON b.id = bc.book_id WHERE b.isbn = ?",
+                Integer.class, "978-604-1-00001-1"));
+    }
+
+    @Test
+    void testImportBooks_RowsOfFailedBatchAreNotTreatedAsDuplicates() throws IOException {
+        // Giá vượt DECIMAL(10, 2) làm cả batch đầu lỗi; dòng sau cùng ISBN phải được import lại
+        String csv = "isbn,title,author,price\n"
+                + "978-0-00-000001-1,Sách Một,Tác Giả,1000\n"
+                + "978-0-00-000002-2,Sách Hai,Tác Giả,999999999999\n"
+                + "978-0-00-000003-3,Sách Ba,Tác Giả,1000\n"
+                + "978-0-00-000004-4,Sách Bốn,Tác Giả,1000\n"
+                + "9780000000011,Sách Một,Tác Giả,1000\n";
+
+        ImportReportDTO report = bookImportService.importBooks(new StringReader(csv));
+
+        assertEquals(4, report.getFailed());
+        assertEquals(1, report.getImported());
+        assertEquals(0, report.getDuplicates());
+        assertTrue(bookRepository.findByIsbn("9780000000011").isPresent());
+        assertEquals(2, bookRepository.count());
+    }
+
+    @Test
+    void testImportBooks_MissingRequiredColumnIsRejected() {
+        Reader reader = new StringReader("isbn,title,price\n123,Test,1000\n");
+
+        assertThrows(IllegalArgumentException.class, () -> bookImportService.importBooks(reader));
+        assertEquals(1, bookRepository.count());
+    }
+}
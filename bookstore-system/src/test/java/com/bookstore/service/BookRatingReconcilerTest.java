@@ -0,0 +1,210 @@
+package com.bookstore.service;
+
+import com.bookstore.dto.RatingStatsDTO;
+import com.bookstore.entity.Book;
+import com.bookstore.entity.Review;
+import com.bookstore.repository.BookRatingStatsRepository;
+import com.bookstore.repository.BookRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Import({BookRatingStatsRepository.class, BookRatingReconciler.class, BookCache.class, ReviewService.class})
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:ratingstats;MODE=MSSQLServer;DB_CLOSE_DELAY=-1",
+        "spring.sql.init.mode=never",
+        "app.reviews.reconcile-batch-size=2"
+})
+class BookRatingReconcilerTest {
+
+    @MockBean
+    private OutboxService outboxService;
+
+    @Autowired
+    private BookRatingReconciler bookRatingReconciler;
+
+    @Autowired
+    private ReviewService reviewService;
+
+    @Autowired
+    private BookRatingStatsRepository bookRatingStatsRepository;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Book book;
+
+    private long reviewId = 1;
+
+    @BeforeEach
+    void setUp() {
+        book = bookRepository.save(book("9781000000201"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM reviews");
+        jdbcTemplate.update("DELETE FROM book_rating_stats");
+        bookRepository.deleteAll();
+    }
+
+    @Test
+    void testAdd_MaintainsSumCountAndHistogram() {
+        inTransaction(() -> {
+            bookRatingStatsRepository.add(book.getId(), 5, 1);
+            bookRatingStatsRepository.add(book.getId(), 4, 1);
+            bookRatingStatsRepository.add(book.getId(), 5, 1);
+            bookRatingStatsRepository.add(book.getId(), 4, -1);
+            bookRatingStatsRepository.syncBook(book.getId());
+        });
+
+        RatingStatsDTO stats = bookRatingStatsRepository.find(book.getId());
+        assertEquals(2, stats.getRatingCount());
+        assertEquals(10, stats.getRatingSum());
+        assertEquals(2, stats.getCount(5));
+        assertEquals(0, stats.getCount(4));
+        assertEquals(5.0, stats.getAverageRating());
+
+        Book reloaded = bookRepository.findById(book.getId()).orElseThrow();
+        assertEquals(2, reloaded.getReviewCount());
+        assertEquals(5.0, reloaded.getAverageRating());
+    }
+
+    @Test
+    void testReconcileAll_RepairsDriftFromReviews() {
+        Book other = bookRepository.save(book("9781000000202"));
+        Book unreviewed = bookRepository.save(book("9781000000203"));
+        insertReview(book.getId(), 5);
+        insertReview(book.getId(), 3);
+        insertReview(other.getId(), 1);
+        // Bảng tổng hợp bị lệch: thiếu một review 3 sao của book, chưa có dòng cho other
+        inTransaction(() -> bookRatingStatsRepository.add(book.getId(), 5, 1));
+
+        assertEquals(2, bookRatingReconciler.reconcileAll());
+
+        RatingStatsDTO stats = bookRatingStatsRepository.find(book.getId());
+        assertEquals(2, stats.getRatingCount());
+        assertEquals(1, stats.getCount(3));
+        assertEquals(4.0, stats.getAverageRating());
+        assertEquals(1, bookRatingStatsRepository.find(other.getId()).getCount(1));
+        assertEquals(0, bookRatingStatsRepository.find(unreviewed.getId()).getRatingCount());
+        assertEquals(2, bookRepository.findById(book.getId()).orElseThrow().getReviewCount());
+
+        // Đã khớp: lần sau không sửa gì
+        assertEquals(0, bookRatingReconciler.reconcileAll());
+    }
+
+    @Test
+    void testReconcileAll_KeepsIncrementOfConcurrentReview() throws Exception {
+        // Bảng tổng hợp bị lệch (thiếu review 4 sao) nên reconcile sẽ ghi đè dòng của book
+        insertReview(book.getId(), 4);
+        inTransaction(() -> bookRatingStatsRepository.overwrite(RatingStatsDTO.empty(book.getId())));
+
+        CountDownLatch added = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // Review đồng thời: đã cộng vào dòng tổng hợp, chưa ghi review và chưa commit
+            Future<?> review = executor.submit(() -> inTransaction(() -> {
+                bookRatingStatsRepository.add(book.getId(), 2, 1);
+                added.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                insertReview(book.getId(), 2);
+            }));
+            assertTrue(added.await(10, TimeUnit.SECONDS));
+
+            // Reconcile chờ khóa dòng tổng hợp thay vì đếm reviews khi review kia chưa commit
+            Future<Integer> reconcile = executor.submit(bookRatingReconciler::reconcileAll);
+            assertThrows(TimeoutException.class, () -> reconcile.get(200, TimeUnit.MILLISECONDS));
+
+            release.countDown();
+            review.get(5, TimeUnit.SECONDS);
+            assertEquals(1, reconcile.get(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+
+        RatingStatsDTO stats = bookRatingStatsRepository.find(book.getId());
+        assertEquals(2, stats.getRatingCount());
+        assertEquals(1, stats.getCount(2));
+        assertEquals(1, stats.getCount(4));
+        assertEquals(0, bookRatingReconciler.reconcileAll());
+    }
+
+    @Test
+    void testSaveReview_UpdatesStatsForNewAndEditedReview() {
+        Review review = reviewService.saveReview(Review.builder()
+                .book(book)
+                .rating(5)
+                .comment("comment")
+                .build());
+        review.setRating(2);
+        reviewService.saveReview(review);
+
+        RatingStatsDTO stats = bookRatingStatsRepository.find(book.getId());
+        assertEquals(1, stats.getRatingCount());
+        assertEquals(0, stats.getCount(5));
+        assertEquals(1, stats.getCount(2));
+        Book reloaded = bookRepository.findById(book.getId()).orElseThrow();
+        assertEquals(1, reloaded.getReviewCount());
+        assertEquals(2.0, reloaded.getAverageRating());
+        assertEquals(0, bookRatingReconciler.reconcileAll());
+    }
+
+    private void insertReview(Long bookId, int rating) {
+        jdbcTemplate.update("INSERT INTO reviews (id, book_id, rating, comment, created_at) VALUES (?, ?, ?, ?, ?)",
+                reviewId++, bookId, rating, "comment", LocalDateTime.now());
+    }
+
+    private void inTransaction(Runnable work) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> work.run());
+    }
+
+    private Book book(String isbn) {
+        return Book.builder()
+                .title("Book " + isbn)
+                .author("Author")
+                .isbn(isbn)
+                .price(new BigDecimal("50000"))
+                .stockQuantity(10)
+                .build();
+    }
+}
@@ -0,0 +1,142 @@
+package com.bookstore.service;
+
+import com.bookstore.entity.Book;
+import com.bookstore.repository.BookRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class BookSearchIndexTest {
+
+    @Mock
+    private BookRepository bookRepository;
+
+    @InjectMocks
+    private BookSearchIndex bookSearchIndex;
+
+    @BeforeEach
+    void setUp() {
+        bookSearchIndex.index(book(1L, "Lập Trình Java Cơ Bản", "Nguyễn Văn An", "978-604-1-00001-1"));
+        bookSearchIndex.index(book(2L, "Spring Boot in Action", "Craig Walls", "978-1617292545"));
+        bookSearchIndex.index(book(3L, "Java Concurrency in Practice", "Brian Goetz", "978-0321349606"));
+    }
+
+    @Test
+    void testSearch_FoldsVietnameseDiacritics() {
+        BookSearchIndex.SearchResult result = bookSearchIndex.search("lap trinh", 0, 10);
+
+        assertEquals(List.of(1L), result.bookIds());
+        assertEquals(1, result.totalHits());
+    }
+
+    @Test
+    void testSearch_MatchesPrefix() {
+        BookSearchIndex.SearchResult result = bookSearchIndex.search("spri", 0, 10);
+
+        assertEquals(List.of(2L), result.bookIds());
+    }
+
+    @Test
+    void testSearch_RequiresAllTerms() {
+        BookSearchIndex.SearchResult result = bookSearchIndex.search("java goetz", 0, 10);
+
+        assertEquals(List.of(3L), result.bookIds());
+    }
+
+    @Test
+    void testSearch_ByIsbnWithSeparators() {
+        BookSearchIndex.SearchResult result = bookSearchIndex.search("978-0321349606", 0, 10);
+
+        assertEquals(List.of(3L), result.bookIds());
+    }
+
+    @Test
+    void testSearch_Pagination() {
+        BookSearchIndex.SearchResult firstPage = bookSearchIndex.search("java", 0, 1);
+        BookSearchIndex.SearchResult secondPage = bookSearchIndex.search("java", 1, 1);
+
+        assertEquals(2, firstPage.totalHits());
+        assertEquals(1, firstPage.bookIds().size());
+        assertEquals(1, secondPage.bookIds().size());
+        assertNotEquals(firstPage.bookIds(), secondPage.bookIds());
+    }
+
+    @Test
+    void testIndex_UpdateReplacesPreviousDocument() {
+        bookSearchIndex.index(book(2L, "Spring Security in Action", "Laurentiu Spilca", "978-1617297731"));
+
+        assertTrue(bookSearchIndex.search("boot", 0, 10).bookIds().isEmpty());
+        assertEquals(List.of(2L), bookSearchIndex.search("security", 0, 10).bookIds());
+        assertEquals(3, bookSearchIndex.size());
+    }
+
+    @Test
+    void testRemove() {
+        bookSearchIndex.remove(3L);
+
+        assertEquals(List.of(1L), bookSearchIndex.search("java", 0, 10).bookIds());
+    }
+
+    @Test
+    void testRebuild_KeepsServingOldIndexUntilSwap() {
+        when(bookRepository.findSearchFieldsBatch(eq(0L), any())).thenAnswer(invocation -> {
+            // Đang rebuild: index cũ vẫn trả đủ kết quả
+            assertEquals(2, bookSearchIndex.search("java", 0, 10).totalHits());
+            return List.of(row(3L, "Java Concurrency in Practice", "Brian Goetz", "978-0321349606"),
+                    row(4L, "Effective Java", "Joshua Bloch", "978-0134685991"));
+        });
+
+        bookSearchIndex.rebuild();
+
+        assertTrue(bookSearchIndex.isReady());
+        assertEquals(2, bookSearchIndex.size());
+        assertTrue(bookSearchIndex.search("spring", 0, 10).bookIds().isEmpty());
+        assertEquals(List.of(4L), bookSearchIndex.search("bloch", 0, 10).bookIds());
+        assertEquals(2, bookSearchIndex.search("java", 0, 10).totalHits());
+    }
+
+    @Test
+    void testRebuild_AppliesChangesMadeWhileRebuilding() {
+        when(bookRepository.findSearchFieldsBatch(eq(0L), any())).thenAnswer(invocation -> {
+            List<Object[]> rows = List.of(row(2L, "Spring Boot in Action", "Craig Walls", "978-1617292545"),
+                    row(3L, "Java Concurrency in Practice", "Brian Goetz", "978-0321349606"));
+            // Lô đã đọc xong thì sách 3 bị xóa, sách 2 được sửa
+            bookSearchIndex.remove(3L);
+            bookSearchIndex.index(book(2L, "Spring Security in Action", "Laurentiu Spilca", "978-1617297731"));
+            return rows;
+        });
+
+        bookSearchIndex.rebuild();
+
+        assertTrue(bookSearchIndex.search("goetz", 0, 10).bookIds().isEmpty());
+        assertTrue(bookSearchIndex.search("boot", 0, 10).bookIds().isEmpty());
+        assertEquals(List.of(2L), bookSearchIndex.search("security", 0, 10).bookIds());
+        assertEquals(1, bookSearchIndex.size());
+    }
+
+    private static Object[] row(Long id, String title, String author, String isbn) {
+        return new Object[]{id, title, author, null, null, isbn};
+    }
+
+    private Book book(Long id, String title, String author, String isbn) {
+        return Book.builder()
+                .id(id)
+                .title(title)
+                .author(author)
+                .isbn(isbn)
+                .price(new BigDecimal("10.00"))
+                .build();
+    }
+}
@@ -2,27 +2,43 @@
 
 package com.bookstore.service;
 
+import com.bookstore.dto.BookDTO;
+import com.bookstore.dto.BookSearchDTO;
+import com.bookstore.dto.CursorPage;
+import com.bookstore.dto.FacetedSearchResultDTO;
 import com.bookstore.entity.Book;
 import com.bookstore.entity.Category;
+import com.bookstore.exception.InsufficientStockException;
 import com.bookstore.repository.BookRepository;
+import com.bookstore.repository.BookRepositoryCustom;
+import com.bookstore.repository.StockReservationRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -31,6 +47,27 @@ class BookServiceTest {
     @Mock
     private BookRepository bookRepository;
 
+    @Mock
+    private StockReservationRepository stockReservationRepository;
+
+    @Spy
+    private BookCache bookCache = new BookCache(100, Duration.ofMinutes(5));
+
+    @Mock
+    private RelatedBooksIndex relatedBooksIndex;
+
+    @Mock
+    private BookSearchIndex bookSearchIndex;
+
+    @Mock
+    private BookFacetIndex bookFacetIndex;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private OutboxService outboxService;
+
     @InjectMocks
     private BookService bookService;
 
@@ -70,37 +107,99 @@ class BookServiceTest {
     @Test
     void testGetAllBooks() {
         Pageable pageable = PageRequest.of(0, 10);
-        List<Book> books = Arrays.asList(book1, book2);
-        Page<Book> bookPage = new PageImpl<>(books, pageable, books.size());
+        List<BookDTO> books = Arrays.asList(BookDTO.from(book1), BookDTO.from(book2));
+        Page<BookDTO> bookPage = new PageImpl<>(books, pageable, books.size());
 
-        when(bookRepository.findAll(pageable)).thenReturn(bookPage);
+        when(bookRepository.findAllCards(pageable)).thenReturn(bookPage);
 
-        Page<Book> result = bookService.getAllBooks(pageable);
+        Page<BookDTO> result = bookService.getAllBooks(pageable);
 
         assertNotNull(result);
         assertEquals(2, result.getContent().size());
-        verify(bookRepository, times(1)).findAll(pageable);
+        verify(bookRepository, times(1)).findAllCards(pageable);
+        verify(bookRepository, never()).findAll(pageable);
+    }
+
+    @Test
+    void testFacetedSearch_KeywordFallsBackToAdvancedSearchUntilSearchIndexIsReady() {
+        Pageable pageable = PageRequest.of(0, 10);
+        BookSearchDTO criteria = new BookSearchDTO();
+        criteria.setKeyword("java");
+        when(bookFacetIndex.isReady()).thenReturn(true);
+        when(bookSearchIndex.isReady()).thenReturn(false);
+        when(bookRepository.advancedSearch("java", null, null, null, null, pageable))
+                .thenReturn(new PageImpl<>(List.of(book1), pageable, 1));
+
+        FacetedSearchResultDTO result = bookService.facetedSearch(criteria, pageable);
+
+        // Không bỏ qua từ khóa để trả về cả danh mục
+        assertEquals(List.of(1L), result.getBooks().map(BookDTO::getId).getContent());
+        verify(bookFacetIndex, never()).search(any(), any(), anyInt(), anyInt());
     }
 
     @Test
     void testGetBookById_Found() {
-        when(bookRepository.findById(1L)).thenReturn(Optional.of(book1));
+        when(bookRepository.findDetailedById(1L)).thenReturn(Optional.of(book1));
 
         Optional<Book> result = bookService.getBookById(1L);
 
         assertTrue(result.isPresent());
         assertEquals("Java Programming", result.get().getTitle());
-        verify(bookRepository, times(1)).findById(1L);
+        verify(bookRepository, times(1)).findDetailedById(1L);
     }
 
     @Test
     void testGetBookById_NotFound() {
-        when(bookRepository.findById(99L)).thenReturn(Optional.empty());
+        when(bookRepository.findDetailedById(99L)).thenReturn(Optional.empty());
 
         Optional<Book> result = bookService.getBookById(99L);
 
         assertFalse(result.isPresent());
-        verify(bookRepository, times(1)).findById(99L);
+        verify(bookRepository, times(1)).findDetailedById(99L);
+    }
+
+    @Test
+    void testGetBookById_ServedFromCache() {
+        when(bookRepository.findDetailedById(1L)).thenReturn(Optional.of(book1));
+
+        bookService.getBookById(1L);
+        Optional<Book> result = bookService.getBookById(1L);
+
+        assertTrue(result.isPresent());
+        verify(bookRepository, times(1)).findDetailedById(1L);
+    }
+
+    @Test
+    void testGetBookById_ReturnsCopyOfCachedBook() {
+        when(bookRepository.findDetailedById(1L)).thenReturn(Optional.of(book1));
+
+        Book first = bookService.getBookById(1L).orElseThrow();
+        first.setTitle("Changed");
+        first.setStockQuantity(0);
+        first.getCategories().add(new Category());
+        Book second = bookService.getBookById(1L).orElseThrow();
+
+        // Sửa bản đã đọc không đổi snapshot trong cache (cũng không đổi entity do repository trả về)
+        assertNotSame(first, second);
+        assertEquals("Java Programming", second.getTitle());
+        assertEquals(book1.getStockQuantity(), second.getStockQuantity());
+        assertEquals(book1.getCategories().size(), second.getCategories().size());
+        assertEquals("Java Programming", book1.getTitle());
+        verify(bookRepository, times(1)).findDetailedById(1L);
+    }
+
+    @Test
+    void testToggleBookAvailability_EvictsCachedBook() {
+        when(bookRepository.findDetailedById(1L)).thenReturn(Optional.of(book1));
+        when(bookRepository.findById(1L)).thenReturn(Optional.of(book1));
+        when(bookRepository.save(any(Book.class))).thenReturn(book1);
+
+        bookService.getBookById(1L);
+        bookService.toggleBookAvailability(1L);
+        bookService.getBookById(1L);
+
+        // 1 lần cho cache miss đầu, 1 lần nạp lại sau khi evict
+        verify(bookRepository, times(2)).findDetailedById(1L);
     }
 
     @Test
@@ -127,45 +226,196 @@ class BookServiceTest {
     @Test
     void testSearchBooks() {
         Pageable pageable = PageRequest.of(0, 10);
-        List<Book> books = Arrays.asList(book1);
-        Page<Book> bookPage = new PageImpl<>(books, pageable, books.size());
+        List<BookDTO> books = Arrays.asList(BookDTO.from(book1));
+        Page<BookDTO> bookPage = new PageImpl<>(books, pageable, books.size());
 
-        when(bookRepository.findByTitleContainingIgnoreCase("Java", pageable)).thenReturn(bookPage);
+        when(bookRepository.findCardsByTitleContaining("Java", pageable)).thenReturn(bookPage);
 
-        Page<Book> result = bookService.searchBooks("Java", pageable);
+        Page<BookDTO> result = bookService.searchBooks("Java", pageable);
 
         assertNotNull(result);
         assertEquals(1, result.getContent().size());
         assertEquals("Java Programming", result.getContent().get(0).getTitle());
     }
 
+    @Test
+    void testGetBooksPage_ResumesAfterLastRowOfPreviousPage() {
+        BookRepositoryCustom.KeysetSort sort = BookRepositoryCustom.KeysetSort.PRICE_ASC;
+        BookDTO card1 = BookDTO.from(book1);
+        BookDTO card2 = BookDTO.from(book2);
+        when(bookRepository.findKeysetPage(BookRepositoryCustom.Listing.ALL, null, sort, null, null, 2))
+                .thenReturn(Arrays.asList(card1, card2));
+
+        CursorPage<BookDTO> first = bookService.getBooksPage(BookRepositoryCustom.Listing.ALL, null, sort, "", 1);
+
+        assertEquals(List.of(card1), first.getContent());
+        assertTrue(first.isHasNext());
+        assertNotNull(first.getNextCursor());
+
+        when(bookRepository.findKeysetPage(BookRepositoryCustom.Listing.ALL, null, sort,
+                new BigDecimal("29.99"), 1L, 2)).thenReturn(List.of(card2));
+
+        CursorPage<BookDTO> second = bookService.getBooksPage(BookRepositoryCustom.Listing.ALL, null, sort,
+                first.getNextCursor(), 1);
+
+        assertEquals(List.of(card2), second.getContent());
+        assertFalse(second.isHasNext());
+        assertNull(second.getNextCursor());
+    }
+
+    @Test
+    void testGetBooksPage_SizeIsClampedToAllowedRange() {
+        BookRepositoryCustom.KeysetSort sort = BookRepositoryCustom.KeysetSort.NEWEST;
+        BookDTO card1 = BookDTO.from(book1);
+        BookDTO card2 = BookDTO.from(book2);
+        when(bookRepository.findKeysetPage(BookRepositoryCustom.Listing.ALL, null, sort, null, null, 2))
+                .thenReturn(Arrays.asList(card1, card2));
+        when(bookRepository.findKeysetPage(BookRepositoryCustom.Listing.ALL, null, sort, null, null, 101))
+                .thenReturn(Arrays.asList(card1, card2));
+
+        CursorPage<BookDTO> smallest = bookService.getBooksPage(BookRepositoryCustom.Listing.ALL, null, sort, "", 0);
+        CursorPage<BookDTO> largest = bookService.getBooksPage(BookRepositoryCustom.Listing.ALL, null, sort,
+                "", 1_000_000);
+
+        assertEquals(List.of(card1), smallest.getContent());
+        assertTrue(smallest.isHasNext());
+        assertEquals(List.of(card1, card2), largest.getContent());
+        assertFalse(largest.isHasNext());
+    }
+
+    @Test
+    void testGetBooksPage_InvalidCursorIsRejected() {
+        BookRepositoryCustom.KeysetSort sort = BookRepositoryCustom.KeysetSort.NEWEST;
+        String nullValue = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString("NEWEST|1|null".getBytes(StandardCharsets.UTF_8));
+
+        assertThrows(IllegalArgumentException.class, () -> bookService.getBooksPage(
+                BookRepositoryCustom.Listing.ON_SALE, null, sort, "not-a-cursor", 10));
+        assertThrows(IllegalArgumentException.class, () -> bookService.getBooksPage(
+                BookRepositoryCustom.Listing.ON_SALE, null, sort, nullValue, 10));
+        verify(bookRepository, never()).findKeysetPage(any(), any(), any(), any(), any(), anyInt());
+    }
+
+    @Test
+    void testGetBooksPage_CursorOfOtherSortStartsFromFirstPage() {
+        BookDTO card2 = BookDTO.from(book2);
+        String priceCursor = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString("PRICE_ASC|1|29.99".getBytes(StandardCharsets.UTF_8));
+        when(bookRepository.findKeysetPage(BookRepositoryCustom.Listing.ALL, null,
+                BookRepositoryCustom.KeysetSort.NEWEST, null, null, 11)).thenReturn(List.of(card2));
+
+        CursorPage<BookDTO> result = bookService.getBooksPage(BookRepositoryCustom.Listing.ALL, null,
+                BookRepositoryCustom.KeysetSort.NEWEST, priceCursor, 10);
+
+        assertEquals(List.of(card2), result.getContent());
+    }
+
+    @Test
+    void testGetBooksPage_BestSellingCursorTreatsMissingSoldQuantityAsZero() {
+        BookRepositoryCustom.KeysetSort sort = BookRepositoryCustom.KeysetSort.BEST_SELLING;
+        BookDTO card1 = BookDTO.from(book1);
+        card1.setSoldQuantity(null);
+        BookDTO card2 = BookDTO.from(book2);
+        when(bookRepository.findKeysetPage(BookRepositoryCustom.Listing.ALL, null, sort, null, null, 2))
+                .thenReturn(Arrays.asList(card1, card2));
+
+        CursorPage<BookDTO> first = bookService.getBooksPage(BookRepositoryCustom.Listing.ALL, null, sort, "", 1);
+        bookService.getBooksPage(BookRepositoryCustom.Listing.ALL, null, sort, first.getNextCursor(), 1);
+
+        verify(bookRepository).findKeysetPage(BookRepositoryCustom.Listing.ALL, null, sort, 0, 1L, 2);
+    }
+
     @Test
     void testUpdateStock() {
-        when(bookRepository.findById(1L)).thenReturn(Optional.of(book1));
-        when(bookRepository.save(any(Book.class))).thenReturn(book1);
+        when(bookRepository.subtractStock(1L, 5)).thenReturn(1);
 
         bookService.updateStock(1L, 5);
 
-        verify(bookRepository, times(1)).save(book1);
+        verify(bookRepository, times(1)).subtractStock(1L, 5);
+        verify(bookRepository, never()).save(any(Book.class));
+    }
+
+    @Test
+    void testReserveStock_DecrementsAllBooksInIdOrder() {
+        Map<Long, Integer> quantities = new LinkedHashMap<>();
+        quantities.put(2L, 1);
+        quantities.put(1L, 3);
+        when(stockReservationRepository.decrementAll(any())).thenReturn(List.of());
+
+        bookService.reserveStock(quantities);
+
+        verify(stockReservationRepository).decrementAll(argThat(ordered ->
+                List.of(1L, 2L).equals(List.copyOf(ordered.keySet()))));
+    }
+
+    @Test
+    void testReserveStock_WritesStockDecreasedPerBook() {
+        Map<Long, Integer> quantities = new LinkedHashMap<>();
+        quantities.put(1L, 2);
+        quantities.put(2L, 1);
+        when(stockReservationRepository.decrementAll(any())).thenReturn(List.of());
+
+        bookService.reserveStock(quantities);
+
+        verify(outboxService).stockDecreased(1L, 2);
+        verify(outboxService).stockDecreased(2L, 1);
+        verifyNoMoreInteractions(outboxService);
+    }
+
+    @Test
+    void testReserveStock_RejectsNonPositiveQuantity() {
+        assertThrows(IllegalArgumentException.class, () -> bookService.reserveStock(Map.of(1L, 0)));
+
+        verifyNoInteractions(stockReservationRepository, outboxService);
+    }
+
+    @Test
+    void testRestoreStock_MergesAndRestoresInIdOrder() {
+        Map<Long, Integer> quantities = new LinkedHashMap<>();
+        quantities.put(2L, 1);
+        quantities.put(1L, 3);
+
+        bookService.restoreStock(quantities);
+
+        verify(stockReservationRepository).restoreAll(argThat(ordered ->
+                List.of(1L, 2L).equals(List.copyOf(ordered.keySet())) && ordered.get(1L) == 3));
+        verify(bookRepository, never()).save(any(Book.class));
     }
 
     @Test
-    void testDecreaseStock_Success() {
+    void testUpdateBook_AppliesStockChangeAsDelta() {
+        Book details = Book.builder()
+                .title("Java Programming 2nd")
+                .author("John Doe")
+                .isbn("1234567890")
+                .price(new BigDecimal("250000"))
+                .stockQuantity(15)
+                .available(true)
+                .build();
+        int loadedStock = book1.getStockQuantity();
         when(bookRepository.findById(1L)).thenReturn(Optional.of(book1));
         when(bookRepository.save(any(Book.class))).thenReturn(book1);
+        when(bookRepository.adjustStock(1L, 15 - loadedStock)).thenReturn(1);
 
-        bookService.decreaseStock(1L, 5);
+        bookService.updateBook(1L, details);
 
-        verify(bookRepository, times(1)).save(book1);
+        verify(bookRepository).adjustStock(1L, 15 - loadedStock);
+        assertEquals(loadedStock, book1.getStockQuantity());
+        assertEquals("Java Programming 2nd", book1.getTitle());
     }
 
     @Test
-    void testDecreaseStock_InsufficientStock() {
-        when(bookRepository.findById(1L)).thenReturn(Optional.of(book1));
+    void testReserveStock_ReportsEveryShortage() {
+        List<InsufficientStockException.Shortage> shortages = List.of(
+                new InsufficientStockException.Shortage(1L, 15, 10),
+                new InsufficientStockException.Shortage(2L, 6, 5));
+        when(stockReservationRepository.decrementAll(any())).thenReturn(shortages);
 
-        assertThrows(IllegalArgumentException.class, () -> {
-            bookService.decreaseStock(1L, 15);
-        });
+        InsufficientStockException exception = assertThrows(InsufficientStockException.class,
+                () -> bookService.reserveStock(Map.of(1L, 15, 2L, 6)));
+
+        assertEquals(shortages, exception.getShortages());
+        verifyNoInteractions(outboxService);
     }
 
     @Test
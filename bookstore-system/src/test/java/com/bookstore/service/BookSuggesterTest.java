@@ -0,0 +1,116 @@
+package com.bookstore.service;
+
+import com.bookstore.dto.SuggestionDTO;
+import com.bookstore.entity.Category;
+import com.bookstore.event.BookChangedEvent;
+import com.bookstore.repository.BookRepository;
+import com.bookstore.repository.CategoryRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class BookSuggesterTest {
+
+    @Mock
+    private BookRepository bookRepository;
+
+    @Mock
+    private CategoryRepository categoryRepository;
+
+    @InjectMocks
+    private BookSuggester bookSuggester;
+
+    @BeforeEach
+    void setUp() {
+        List<Object[]> facts = new ArrayList<>();
+        facts.add(new Object[]{1L, "Harry Potter và Hòn Đá Phù Thủy", "J.K. Rowling", 500, 4.8, true});
+        facts.add(new Object[]{2L, "Harry Potter và Phòng Chứa Bí Mật", "J.K. Rowling", 50, 4.5, true});
+        facts.add(new Object[]{3L, "Hành Trình Về Phương Đông", "Baird T. Spalding", 10, 4.0, true});
+
+        List<Object[]> categoryPairs = new ArrayList<>();
+        categoryPairs.add(new Object[]{3L, 7L});
+
+        when(categoryRepository.findByActiveTrue())
+                .thenReturn(List.of(Category.builder().id(7L).name("Hạt Giống Tâm Hồn").build()));
+        when(bookRepository.findBookCategoryPairs()).thenReturn(categoryPairs);
+        when(bookRepository.findSuggestionFacts()).thenReturn(facts);
+
+        bookSuggester.rebuild();
+    }
+
+    @Test
+    void testSuggest_RanksBySoldQuantityAndRating() {
+        List<SuggestionDTO> result = bookSuggester.suggest("harry", 5);
+
+        assertEquals(List.of(1L, 2L), ids(result));
+    }
+
+    @Test
+    void testSuggest_MatchesInnerWordsWithoutDiacritics() {
+        List<String> texts = bookSuggester.suggest("phong chua", 5).stream()
+                .map(SuggestionDTO::getText)
+                .collect(Collectors.toList());
+
+        assertEquals(List.of("Harry Potter và Phòng Chứa Bí Mật"), texts);
+    }
+
+    @Test
+    void testSuggest_IncludesAuthorsAndCategories() {
+        List<SuggestionDTO> authors = bookSuggester.suggest("rowl", 5);
+        List<SuggestionDTO> categories = bookSuggester.suggest("hat giong", 5);
+
+        assertEquals(1, authors.size());
+        assertEquals("AUTHOR", authors.get(0).getType());
+        assertEquals("CATEGORY", categories.get(0).getType());
+        assertEquals(7L, categories.get(0).getId());
+    }
+
+    @Test
+    void testOnBookChanged_RemovesDeletedBook() {
+        bookSuggester.onBookChanged(new BookChangedEvent(1L, BookChangedEvent.ChangeType.DELETED));
+
+        List<SuggestionDTO> result = bookSuggester.suggest("ha", 5);
+
+        assertFalse(ids(result).contains(1L));
+        assertEquals(2L, result.get(0).getId());
+    }
+
+    @Test
+    void testOnBookChanged_ShortPrefixKeepsHeavierTitlesBeyondScanLimit() {
+        List<Object[]> facts = new ArrayList<>();
+        facts.add(new Object[]{1L, "Tam Quốc Diễn Nghĩa", "Khuyết Danh", 9000, 5.0, true});
+        facts.add(new Object[]{2L, "Tuyển Tập Nam Cao", "Nam Cao", 5000, 4.5, true});
+        // Hơn 20.000 key "tap ..." đứng giữa hai sách trên theo thứ tự chữ cái
+        for (long id = 100; id < 20_200; id++) {
+            facts.add(new Object[]{id, "Tập " + id, null, 1, 0.0, true});
+        }
+        when(bookRepository.findSuggestionFacts()).thenReturn(facts);
+        bookSuggester.rebuild();
+        assertEquals(List.of(1L, 2L), ids(bookSuggester.suggest("t", 2)));
+
+        // Sách đứng đầu bị hạ trọng số: sách kế tiếp phải lên đầu dù key của nó nằm sau giới hạn duyệt
+        when(bookRepository.findSuggestionFactsById(1L))
+                .thenReturn(List.<Object[]>of(new Object[]{1L, "Tam Quốc Diễn Nghĩa", "Khuyết Danh", 0, 0.0, true}));
+        when(bookRepository.findCategoryIdsByBookId(1L)).thenReturn(List.of());
+        bookSuggester.onBookChanged(new BookChangedEvent(1L, BookChangedEvent.ChangeType.UPDATED));
+
+        List<Long> top = ids(bookSuggester.suggest("t", 3));
+        assertEquals(2L, top.get(0));
+        assertFalse(top.contains(1L));
+    }
+
+    private List<Long> ids(List<SuggestionDTO> suggestions) {
+        return suggestions.stream().map(SuggestionDTO::getId).collect(Collectors.toList());
+    }
+}
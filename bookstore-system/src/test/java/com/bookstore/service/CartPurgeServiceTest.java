@@ -0,0 +1,113 @@
+package com.bookstore.service;
+
+import com.bookstore.entity.Book;
+import com.bookstore.repository.BookRepository;
+import com.bookstore.repository.CartPurgeRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Import({CartPurgeRepository.class, CartPurgeService.class})
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:cartpurge;MODE=MSSQLServer;DB_CLOSE_DELAY=-1",
+        "spring.sql.init.mode=never",
+        "app.cart.purge.retention=7d",
+        "app.cart.purge.batch-size=100",
+        "app.cart.purge.pause=0ms"
+})
+class CartPurgeServiceTest {
+
+    @Autowired
+    private CartPurgeService cartPurgeService;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Book book;
+
+    @BeforeEach
+    void setUp() {
+        book = bookRepository.save(Book.builder()
+                .title("Purge")
+                .author("Author")
+                .isbn("9781000000099")
+                .price(new BigDecimal("50000"))
+                .stockQuantity(10)
+                .build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM cart_items");
+        jdbcTemplate.update("DELETE FROM carts");
+        bookRepository.deleteAll();
+    }
+
+    @Test
+    void testPurge_DeletesExpiredCartsAndItemsInBatches() {
+        LocalDateTime old = LocalDateTime.now().minusDays(30);
+        insertCarts(1, 1_050, old, 2);
+        insertCarts(5_000, 10, LocalDateTime.now().minusDays(1), 2);
+
+        CartPurgeService.PurgeResult result = cartPurgeService.purge();
+
+        assertEquals(1_050, result.carts());
+        assertEquals(2_100, result.items());
+        assertEquals(10, count("carts"));
+        assertEquals(20, count("cart_items"));
+    }
+
+    @Test
+    void testPurge_NothingExpired() {
+        insertCarts(1, 3, LocalDateTime.now(), 1);
+
+        CartPurgeService.PurgeResult result = cartPurgeService.purge();
+
+        assertEquals(0, result.carts());
+        assertEquals(3, count("carts"));
+    }
+
+    private void insertCarts(long firstId, int count, LocalDateTime updatedAt, int itemsPerCart) {
+        Timestamp timestamp = Timestamp.valueOf(updatedAt);
+        List<Object[]> carts = new ArrayList<>();
+        List<Object[]> items = new ArrayList<>();
+        for (long id = firstId; id < firstId + count; id++) {
+            carts.add(new Object[]{id, "purge-" + id, itemsPerCart, timestamp, timestamp});
+            for (int i = 0; i < itemsPerCart; i++) {
+                items.add(new Object[]{id * 10 + i, id, book.getId()});
+            }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO carts (id, session_id, total_price, total_items, created_at, updated_at) " +
+                "VALUES (?, ?, 0, ?, ?, ?)", carts);
+        jdbcTemplate.batchUpdate("INSERT INTO cart_items (id, cart_id, book_id, quantity, unit_price) " +
+                "VALUES (?, ?, ?, 1, 50000)", items);
+    }
+
+    private int count(String table) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Integer.class);
+    }
+}
@@ -0,0 +1,125 @@
+package com.bookstore.service;
+
+import com.bookstore.entity.Book;
+import com.bookstore.entity.Cart;
+import com.bookstore.repository.BookRepository;
+import com.bookstore.repository.CartRepository;
+import com.bookstore.repository.CartStoreRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CartServiceTest {
+
+    private static final String CART = "guest-1";
+
+    @Mock
+    private CartRepository cartRepository;
+
+    @Mock
+    private BookRepository bookRepository;
+
+    @Mock
+    private CartStoreRepository cartStoreRepository;
+
+    @Mock
+    private CartPurgeService cartPurgeService;
+
+    @Mock
+    private UserService userService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private InventoryService inventoryService;
+
+    private CartService cartService;
+
+    @BeforeEach
+    void setUp() {
+        when(bookRepository.findDetailedById(1L)).thenReturn(Optional.of(book(1L, 5)));
+        when(bookRepository.findDetailedById(2L)).thenReturn(Optional.of(book(2L, 2)));
+        when(bookRepository.getStockQuantity(1L)).thenReturn(5);
+        when(bookRepository.getStockQuantity(2L)).thenReturn(2);
+
+        inventoryService = new InventoryService(bookRepository);
+        ReflectionTestUtils.setField(inventoryService, "reservationTtl", Duration.ofMinutes(15));
+        CartStore cartStore = new CartStore(cartStoreRepository, transactionManager, 100, Duration.ofMinutes(30), 500);
+        cartService = new CartService(cartRepository, bookRepository, inventoryService, cartStore,
+                new BookCache(100, Duration.ofMinutes(5)), cartPurgeService, cartStoreRepository, userService,
+                transactionManager);
+
+        cartService.addToCart(CART, 1L, 1);
+        cartService.addToCart(CART, 2L, 1);
+    }
+
+    @Test
+    void testUpdateCartItems_ShortageKeepsCartAndHolds() {
+        Map<Long, Integer> quantities = new LinkedHashMap<>();
+        quantities.put(1L, 4);
+        quantities.put(2L, 3);
+
+        assertThrows(IllegalStateException.class, () -> cartService.updateCartItems(CART, quantities));
+
+        // Dòng 1 đã giữ thêm được trả về lượng cũ, giỏ không đổi
+        assertEquals(1, inventoryService.getHeldQuantity(CART, 1L));
+        assertEquals(4, inventoryService.getAvailable(1L));
+        assertEquals(1, inventoryService.getHeldQuantity(CART, 2L));
+        assertEquals(2, cartService.getCartItemCount(CART));
+    }
+
+    @Test
+    void testUpdateCartItems_AppliesAllChanges() {
+        Map<Long, Integer> quantities = new LinkedHashMap<>();
+        quantities.put(1L, 3);
+        quantities.put(2L, 0);
+        quantities.put(9L, 1);
+
+        Cart cart = cartService.updateCartItems(CART, quantities);
+
+        assertEquals(1, cart.getItems().size());
+        assertEquals(3, cartService.getCartItemCount(CART));
+        assertEquals(3, inventoryService.getHeldQuantity(CART, 1L));
+        assertEquals(0, inventoryService.getHeldQuantity(CART, 2L));
+        assertEquals(2, inventoryService.getAvailable(2L));
+    }
+
+    @Test
+    void testUpdateCartItems_RejectsMissingQuantityBeforeTouchingHolds() {
+        Map<Long, Integer> quantities = new HashMap<>();
+        quantities.put(1L, 2);
+        quantities.put(2L, null);
+
+        assertThrows(IllegalArgumentException.class, () -> cartService.updateCartItems(CART, quantities));
+
+        assertEquals(1, inventoryService.getHeldQuantity(CART, 1L));
+        assertEquals(2, cartService.getCartItemCount(CART));
+    }
+
+    private static Book book(Long id, int stock) {
+        return Book.builder()
+                .id(id)
+                .title("Book " + id)
+                .author("Author")
+                .isbn("97800000000" + id)
+                .price(new BigDecimal("50000"))
+                .stockQuantity(stock)
+                .available(true)
+                .build();
+    }
+}
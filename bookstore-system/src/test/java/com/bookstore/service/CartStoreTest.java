@@ -0,0 +1,401 @@
+package com.bookstore.service;
+
+import com.bookstore.entity.Book;
+import com.bookstore.repository.BookRepository;
+import com.bookstore.repository.CartStoreRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+
+@DataJpaTest
+@Import({CartStoreRepository.class, CartStore.class})
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:cartstore;MODE=MSSQLServer;DB_CLOSE_DELAY=-1",
+        "spring.sql.init.mode=never",
+        "app.cart.flush-batch-size=2"
+})
+class CartStoreTest {
+
+    @Autowired
+    private CartStore cartStore;
+
+    @Autowired
+    private CartStoreRepository cartStoreRepository;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Book first;
+
+    private Book second;
+
+    @BeforeEach
+    void setUp() {
+        first = bookRepository.save(book("9781000000001"));
+        second = bookRepository.save(book("9781000000002"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        cartStore.flushAll();
+        jdbcTemplate.update("DELETE FROM cart_items");
+        jdbcTemplate.update("DELETE FROM carts");
+        bookRepository.deleteAll();
+    }
+
+    @Test
+    void testUpdate_DoesNotWriteUntilFlush() {
+        cartStore.update("s-1", state -> {
+            state.setQuantity(first.getId(), 2, first.getPrice());
+            return null;
+        });
+
+        assertEquals(1, cartStore.getDirtyCount());
+        assertEquals(0, countCarts());
+
+        cartStore.flush("s-1");
+
+        assertEquals(0, cartStore.getDirtyCount());
+        assertEquals(1, countCarts());
+        assertNotNull(cartStore.read("s-1", CartStore.CartState::getCartId));
+    }
+
+    @Test
+    void testFlush_WritesOnlyChangedLines() {
+        Book third = bookRepository.save(book("9781000000003"));
+        cartStore.update("lines-1", state -> {
+            state.setQuantity(first.getId(), 1, first.getPrice());
+            state.setQuantity(second.getId(), 1, second.getPrice());
+            return null;
+        });
+        cartStore.flush("lines-1");
+        Long cartId = cartStoreRepository.findCartId("lines-1");
+        Long firstLineId = lineId(cartId, first.getId());
+        Long secondLineId = lineId(cartId, second.getId());
+
+        cartStore.update("lines-1", state -> {
+            state.setQuantity(second.getId(), 4, second.getPrice());
+            state.setQuantity(third.getId(), 1, third.getPrice());
+            state.remove(first.getId());
+            return null;
+        });
+        cartStore.flush("lines-1");
+
+        // Dòng đã sửa giữ nguyên ID (UPDATE), dòng bỏ bị xóa, chỉ sách mới được INSERT
+        assertNull(lineId(cartId, first.getId()));
+        assertEquals(secondLineId, lineId(cartId, second.getId()));
+        assertNotNull(lineId(cartId, third.getId()));
+        assertNotEquals(firstLineId, lineId(cartId, third.getId()));
+        assertEquals(2, cartStoreRepository.findLines(cartId).size());
+        assertEquals(4, cartStoreRepository.findLines(cartId).stream()
+                .filter(line -> line.bookId() == second.getId()).findFirst().orElseThrow().quantity());
+        assertEquals(5, jdbcTemplate.queryForObject("SELECT total_items FROM carts WHERE id = ?", Integer.class, cartId));
+    }
+
+    @Test
+    void testFlushAll_WritesCartsAndItemsInBatches() {
+        for (int i = 0; i < 5; i++) {
+            cartStore.update("batch-" + i, state -> {
+                state.setQuantity(first.getId(), 1, first.getPrice());
+                state.setQuantity(second.getId(), 3, second.getPrice());
+                return null;
+            });
+        }
+
+        assertEquals(5, cartStore.flushAll());
+
+        assertEquals(5, countCarts());
+        assertEquals(10, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM cart_items", Integer.class));
+        Long cartId = cartStoreRepository.findCartId("batch-0");
+        assertEquals(4, jdbcTemplate.queryForObject("SELECT total_items FROM carts WHERE id = ?", Integer.class, cartId));
+    }
+
+    @Test
+    void testFlush_ReplacesItemsOfExistingCart() {
+        cartStore.update("s-2", state -> {
+            state.setQuantity(first.getId(), 1, first.getPrice());
+            state.setQuantity(second.getId(), 1, second.getPrice());
+            return null;
+        });
+        cartStore.flush("s-2");
+        Long cartId = cartStoreRepository.findCartId("s-2");
+
+        cartStore.update("s-2", state -> {
+            state.remove(first.getId());
+            state.setQuantity(second.getId(), 4, second.getPrice());
+            return null;
+        });
+        cartStore.flush("s-2");
+
+        assertEquals(cartId, cartStoreRepository.findCartId("s-2"));
+        var lines = cartStoreRepository.findLines(cartId);
+        assertEquals(1, lines.size());
+        assertEquals(second.getId(), lines.get(0).bookId());
+        assertEquals(4, lines.get(0).quantity());
+    }
+
+    @Test
+    void testGet_NewStoreReloadsFlushedCart() {
+        cartStore.update("s-3", state -> {
+            state.setQuantity(first.getId(), 2, first.getPrice());
+            return null;
+        });
+        cartStore.flush("s-3");
+
+        // Giống restart: store mới đọc lại giỏ từ DB
+        CartStore restarted = new CartStore(cartStoreRepository, transactionManager, 100, Duration.ofMinutes(30), 500);
+        CartStore.CartState state = restarted.get("s-3");
+
+        assertTrue(state.exists());
+        assertEquals(2, state.getQuantity(first.getId()));
+        assertEquals(new BigDecimal("100000"), state.getTotalPrice().setScale(0));
+    }
+
+    @Test
+    void testFlush_SkipsNewEmptyCart() {
+        cartStore.update("s-4", state -> {
+            state.setQuantity(first.getId(), 1, first.getPrice());
+            state.remove(first.getId());
+            return null;
+        });
+
+        cartStore.flush("s-4");
+
+        assertEquals(0, countCarts());
+        assertEquals(0, cartStore.getDirtyCount());
+    }
+
+    @Test
+    void testFlush_DoesNotWaitForWriteBehindOfOtherCarts() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CartStoreRepository slowRepository = spy(new CartStoreRepository(jdbcTemplate));
+        doAnswer(invocation -> {
+            List<CartStoreRepository.CartWrite> writes = invocation.getArgument(0);
+            if (writes.stream().anyMatch(write -> write.sessionId().equals("slow"))) {
+                writing.countDown();
+                release.await(10, TimeUnit.SECONDS);
+            }
+            return invocation.callRealMethod();
+        }).when(slowRepository).saveAll(anyList());
+        CartStore store = new CartStore(slowRepository, transactionManager, 100, Duration.ofMinutes(30), 1);
+        store.update("slow", state -> {
+            state.setQuantity(first.getId(), 1, first.getPrice());
+            return null;
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Integer> writeBehind = executor.submit(store::flushAll);
+            assertTrue(writing.await(10, TimeUnit.SECONDS));
+
+            // Job nền đang ghi giỏ "slow": checkout của giỏ khác vẫn flush được ngay
+            store.update("checkout", state -> {
+                state.setQuantity(second.getId(), 2, second.getPrice());
+                return null;
+            });
+            executor.submit(() -> store.flush("checkout")).get(5, TimeUnit.SECONDS);
+            assertNotNull(cartStoreRepository.findCartId("checkout"));
+
+            release.countDown();
+            assertEquals(1, writeBehind.get(10, TimeUnit.SECONDS));
+            assertEquals(0, store.getDirtyCount());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testMergeCarts_SumsSharedBooksAndMovesTheRest() {
+        cartStore.update("guest-1", state -> {
+            state.setQuantity(first.getId(), 2, first.getPrice());
+            state.setQuantity(second.getId(), 1, second.getPrice());
+            return null;
+        });
+        cartStore.update("user-cart-1", state -> {
+            state.setQuantity(first.getId(), 1, first.getPrice());
+            return null;
+        });
+        cartStore.flushAll();
+        Long userCartId = cartStoreRepository.findCartId("user-cart-1");
+
+        Long merged = cartStore.rewrite(List.of("guest-1", "user-cart-1"), () ->
+                new TransactionTemplate(transactionManager)
+                        .execute(status -> cartStoreRepository.mergeCarts("guest-1", "user-cart-1")));
+
+        assertEquals(userCartId, merged);
+        assertNull(cartStoreRepository.findCartId("guest-1"));
+        assertEquals(1, countCarts());
+        CartStore.CartState state = cartStore.get("user-cart-1");
+        assertEquals(3, state.getQuantity(first.getId()));
+        assertEquals(1, state.getQuantity(second.getId()));
+        assertEquals(4, jdbcTemplate.queryForObject("SELECT total_items FROM carts WHERE id = ?", Integer.class, merged));
+    }
+
+    @Test
+    void testRewrite_ConcurrentUpdateAndFlushDoNotOverwriteMergedLines() throws Exception {
+        cartStore.update("guest-3", state -> {
+            state.setQuantity(first.getId(), 2, first.getPrice());
+            return null;
+        });
+        cartStore.update("user-cart-3", state -> {
+            state.setQuantity(second.getId(), 1, second.getPrice());
+            return null;
+        });
+        cartStore.flushAll();
+        // Thay đổi chưa ghi của giỏ user: được ghi trước khi gộp
+        cartStore.update("user-cart-3", state -> {
+            state.setQuantity(second.getId(), 3, second.getPrice());
+            return null;
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?>[] concurrentUpdate = new Future<?>[1];
+            Long merged = cartStore.rewrite(List.of("guest-3", "user-cart-3"), () -> {
+                Long cartId = new TransactionTemplate(transactionManager)
+                        .execute(status -> cartStoreRepository.mergeCarts("guest-3", "user-cart-3"));
+                // Người dùng sửa giỏ và write-behind chạy ngay sau khi DB đã gộp, trước khi bỏ bản trong bộ nhớ
+                concurrentUpdate[0] = executor.submit(() -> cartStore.update("user-cart-3", state -> {
+                    state.setQuantity(second.getId(), 5, second.getPrice());
+                    return null;
+                }));
+                assertThrows(TimeoutException.class, () -> concurrentUpdate[0].get(200, TimeUnit.MILLISECONDS));
+                assertDoesNotThrow(() -> executor.submit(cartStore::flushAll).get(5, TimeUnit.SECONDS));
+                assertEquals(2, cartStoreRepository.findLines(cartId).size());
+                return cartId;
+            });
+
+            // Lần sửa bị chặn được áp lên giỏ đã gộp nạp lại từ DB
+            concurrentUpdate[0].get(5, TimeUnit.SECONDS);
+            cartStore.flushAll();
+            CartStore.CartState state = cartStore.get("user-cart-3");
+            assertEquals(2, state.getQuantity(first.getId()));
+            assertEquals(5, state.getQuantity(second.getId()));
+            assertEquals(2, cartStoreRepository.findLines(merged).size());
+            assertEquals(7, jdbcTemplate.queryForObject("SELECT total_items FROM carts WHERE id = ?", Integer.class, merged));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testUpdate_EvictionWhileLockedDoesNotLoseEdits() throws Exception {
+        cartStore.update("evict-1", state -> {
+            state.setQuantity(first.getId(), 1, first.getPrice());
+            return null;
+        });
+        cartStore.flushAll();
+
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> slowUpdate = executor.submit(() -> cartStore.update("evict-1", state -> {
+                locked.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                state.setQuantity(first.getId(), 2, first.getPrice());
+                return null;
+            }));
+            assertTrue(locked.await(10, TimeUnit.SECONDS));
+
+            // Giỏ chưa dirty bị đẩy khỏi cache giữa lúc khóa và lúc sửa: update khác phải chờ đúng object đó
+            cartStore.evict("evict-1");
+            Future<?> otherUpdate = executor.submit(() -> cartStore.update("evict-1", state -> {
+                state.setQuantity(second.getId(), 1, second.getPrice());
+                return null;
+            }));
+            assertThrows(TimeoutException.class, () -> otherUpdate.get(200, TimeUnit.MILLISECONDS));
+
+            release.countDown();
+            slowUpdate.get(5, TimeUnit.SECONDS);
+            otherUpdate.get(5, TimeUnit.SECONDS);
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+
+        cartStore.flush("evict-1");
+        CartStore.CartState state = cartStore.get("evict-1");
+        assertEquals(2, state.getQuantity(first.getId()));
+        assertEquals(1, state.getQuantity(second.getId()));
+        assertEquals(2, cartStoreRepository.findLines(state.getCartId()).size());
+    }
+
+    @Test
+    void testMergeCarts_UserWithoutCartTakesOverGuestCart() {
+        cartStore.update("guest-2", state -> {
+            state.setQuantity(first.getId(), 2, first.getPrice());
+            return null;
+        });
+        cartStore.flush("guest-2");
+        Long guestCartId = cartStoreRepository.findCartId("guest-2");
+
+        Long merged = new TransactionTemplate(transactionManager)
+                .execute(status -> cartStoreRepository.mergeCarts("guest-2", "user-cart-2"));
+
+        assertEquals(guestCartId, merged);
+        assertEquals(guestCartId, cartStoreRepository.findCartId("user-cart-2"));
+        assertEquals(1, cartStoreRepository.findLines(merged).size());
+    }
+
+    private Long lineId(Long cartId, Long bookId) {
+        List<Long> ids = jdbcTemplate.queryForList("SELECT id FROM cart_items WHERE cart_id = ? AND book_id = ?",
+                Long.class, cartId, bookId);
+        return ids.isEmpty() ? null : ids.get(0);
+    }
+
+    private int countCarts() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM carts", Integer.class);
+    }
+
+    private Book book(String isbn) {
+        return Book.builder()
+                .title("Book " + isbn)
+                .author("Author")
+                .isbn(isbn)
+                .price(new BigDecimal("50000"))
+                .stockQuantity(10)
+                .build();
+    }
+}
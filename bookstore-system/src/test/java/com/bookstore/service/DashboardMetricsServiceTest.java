@@ -0,0 +1,102 @@
+package com.bookstore.service;
+
+import com.bookstore.dto.DashboardMetricsDTO;
+import com.bookstore.entity.Order;
+import com.bookstore.repository.BookRepository;
+import com.bookstore.repository.CartRepository;
+import com.bookstore.repository.OrderRepository;
+import com.bookstore.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class DashboardMetricsServiceTest {
+
+    @Mock
+    private BookRepository bookRepository;
+
+    @Mock
+    private OrderRepository orderRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private CartRepository cartRepository;
+
+    @Mock
+    private RevenueService revenueService;
+
+    @InjectMocks
+    private DashboardMetricsService dashboardMetricsService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(dashboardMetricsService, "activeCartWindow", Duration.ofHours(24));
+
+        List<Object[]> statusCounts = new ArrayList<>();
+        statusCounts.add(new Object[]{Order.OrderStatus.PENDING, 3L});
+        statusCounts.add(new Object[]{Order.OrderStatus.DELIVERED, 7L});
+
+        when(bookRepository.count()).thenReturn(120L);
+        when(bookRepository.countAvailableBooks()).thenReturn(100L);
+        when(orderRepository.countGroupByStatus()).thenReturn(statusCounts);
+        when(userRepository.count()).thenReturn(40L);
+        when(cartRepository.countActiveCarts(any())).thenReturn(5L);
+        when(revenueService.getTotalRevenue()).thenReturn(new BigDecimal("1500000"));
+        when(revenueService.getDailyRevenue(any(), any()))
+                .thenReturn(Map.of(LocalDate.now(), new BigDecimal("200000")));
+    }
+
+    @Test
+    void testRefresh_ComputesAllKpisIntoOneSnapshot() {
+        DashboardMetricsDTO metrics = dashboardMetricsService.refresh();
+
+        assertEquals(120, metrics.getTotalBooks());
+        assertEquals(100, metrics.getAvailableBooks());
+        assertEquals(10, metrics.getTotalOrders());
+        assertEquals(3L, metrics.getOrdersByStatus().get("PENDING"));
+        assertEquals(0L, metrics.getOrdersByStatus().get("CANCELLED"));
+        assertEquals(40, metrics.getTotalUsers());
+        assertEquals(5, metrics.getActiveCarts());
+        assertEquals(new BigDecimal("1500000"), metrics.getTotalRevenue());
+        assertEquals(new BigDecimal("200000"), metrics.getTodayRevenue());
+    }
+
+    @Test
+    void testGetSnapshot_ServesFromMemoryAfterRefresh() {
+        DashboardMetricsDTO refreshed = dashboardMetricsService.refresh();
+
+        assertSame(refreshed, dashboardMetricsService.getSnapshot());
+        assertSame(refreshed, dashboardMetricsService.getSnapshot());
+        verify(orderRepository, times(1)).countGroupByStatus();
+    }
+
+    @Test
+    void testScheduledRefresh_FailureKeepsPreviousSnapshot() {
+        DashboardMetricsDTO previous = dashboardMetricsService.refresh();
+        when(userRepository.count()).thenThrow(new RuntimeException("db down"));
+
+        dashboardMetricsService.scheduledRefresh();
+
+        assertSame(previous, dashboardMetricsService.getSnapshot());
+    }
+}
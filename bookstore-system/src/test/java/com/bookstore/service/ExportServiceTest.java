@@ -0,0 +1,108 @@
+package com.bookstore.service;
+
+import com.bookstore.entity.Book;
+import com.bookstore.entity.Order;
+import com.bookstore.entity.OrderItem;
+import com.bookstore.entity.User;
+import com.bookstore.repository.BookRepository;
+import com.bookstore.repository.ExportRepository;
+import com.bookstore.repository.OrderRepository;
+import com.bookstore.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Import({ExportRepository.class, ExportService.class})
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:export;MODE=MSSQLServer;DB_CLOSE_DELAY=-1",
+        "spring.sql.init.mode=never",
+        "app.export.progress-interval=1"
+})
+class ExportServiceTest {
+
+    @Autowired
+    private ExportService exportService;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Test
+    void testExportBooks_WritesBomHeaderAndOneLinePerBook() throws IOException {
+        bookRepository.save(book("9780000000101", "Dế Mèn Phiêu Lưu Ký"));
+        bookRepository.save(book("9780000000102", "Sapiens, Lược Sử Loài Người"));
+        bookRepository.flush();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long rows = exportService.exportBooks(out);
+
+        String csv = out.toString(StandardCharsets.UTF_8);
+        String[] lines = csv.split("\r\n");
+        assertEquals(2, rows);
+        assertEquals('\uFEFF', csv.charAt(0));
+        assertEquals(3, lines.length);
+        assertTrue(lines[1].contains("Dế Mèn Phiêu Lưu Ký"));
+        // Tên có dấu phẩy phải được bọc ngoặc kép
+        assertTrue(lines[2].contains("\"Sapiens, Lược Sử Loài Người\""));
+        assertTrue(exportService.getRunningExports().isEmpty());
+    }
+
+    @Test
+    void testExportOrders_WritesOneLinePerOrderItemWithinRange() throws IOException {
+        Book book = bookRepository.save(book("9780000000201", "Nhà Giả Kim"));
+        User user = userRepository.save(User.builder()
+                .email("export@test.com").password("secret").fullName("Export Test").build());
+        Order order = Order.builder()
+                .orderNumber("ORD-EXPORT-1")
+                .user(user)
+                .paymentMethod("COD")
+                .totalAmount(new BigDecimal("158000.00"))
+                .build();
+        order.setOrderItems(List.of(
+                OrderItem.builder().order(order).book(book).quantity(2)
+                        .unitPrice(new BigDecimal("79000.00")).totalPrice(new BigDecimal("158000.00")).build()));
+        orderRepository.saveAndFlush(order);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long rows = exportService.exportOrders(out, LocalDateTime.now().minusDays(1), LocalDateTime.now().plusDays(1));
+        ByteArrayOutputStream empty = new ByteArrayOutputStream();
+        long none = exportService.exportOrders(empty, LocalDateTime.now().plusDays(1), LocalDateTime.now().plusDays(2));
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\r\n");
+        assertEquals(1, rows);
+        assertTrue(lines[1].startsWith("ORD-EXPORT-1,"));
+        assertTrue(lines[1].endsWith("9780000000201,Nhà Giả Kim,2,79000.00,158000.00"));
+        assertEquals(0, none);
+    }
+
+    private Book book(String isbn, String title) {
+        return Book.builder()
+                .title(title)
+                .author("Tác Giả")
+                .isbn(isbn)
+                .price(new BigDecimal("79000"))
+                .stockQuantity(10)
+                .build();
+    }
+}
@@ -0,0 +1,325 @@
+package com.bookstore.service;
+
+import com.bookstore.exception.InsufficientStockException;
+import com.bookstore.repository.BookRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class InventoryServiceTest {
+
+    @Mock
+    private BookRepository bookRepository;
+
+    @InjectMocks
+    private InventoryService inventoryService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(inventoryService, "reservationTtl", Duration.ofMinutes(15));
+
+        List<Object[]> levels = new ArrayList<>();
+        levels.add(new Object[]{1L, 10});
+        levels.add(new Object[]{2L, 3});
+        when(bookRepository.findStockLevels()).thenReturn(levels);
+
+        inventoryService.load();
+    }
+
+    @Test
+    void testReserve_MovesStockFromAvailableToReserved() {
+        assertTrue(inventoryService.reserve("cart-a", 1L, 4));
+
+        assertEquals(6, inventoryService.getAvailable(1L));
+        assertEquals(4, inventoryService.getReserved(1L));
+    }
+
+    @Test
+    void testReserve_SetsAbsoluteQuantityForHolder() {
+        inventoryService.reserve("cart-a", 1L, 4);
+        inventoryService.reserve("cart-a", 1L, 2);
+
+        assertEquals(8, inventoryService.getAvailable(1L));
+        assertEquals(2, inventoryService.getHeldQuantity("cart-a", 1L));
+    }
+
+    @Test
+    void testReserve_InsufficientStock_ReturnsFalseAndKeepsLedger() {
+        assertFalse(inventoryService.reserve("cart-a", 2L, 4));
+
+        assertEquals(3, inventoryService.getAvailable(2L));
+        assertEquals(0, inventoryService.getReserved(2L));
+    }
+
+    @Test
+    void testReleaseAll_ReturnsEveryHold() {
+        inventoryService.reserve("cart-a", 1L, 4);
+        inventoryService.reserve("cart-a", 2L, 1);
+
+        inventoryService.releaseAll("cart-a");
+
+        assertEquals(10, inventoryService.getAvailable(1L));
+        assertEquals(3, inventoryService.getAvailable(2L));
+        assertEquals(0, inventoryService.getReserved(1L));
+    }
+
+    @Test
+    void testConfirm_ConvertsHoldIntoSale() {
+        inventoryService.reserve("cart-a", 1L, 4);
+        inventoryService.reserve("cart-a", 2L, 1);
+
+        // Đặt 3 cuốn sách 1 (giữ 4), không mua sách 2
+        inventoryService.confirm("cart-a", Map.of(1L, 3));
+
+        assertEquals(7, inventoryService.getAvailable(1L));
+        assertEquals(0, inventoryService.getReserved(1L));
+        assertEquals(3, inventoryService.getAvailable(2L));
+        assertEquals(0, inventoryService.getHeldQuantity("cart-a", 1L));
+    }
+
+    @Test
+    void testReleaseExpiredHolds_ReleasesOnlyExpired() {
+        ReflectionTestUtils.setField(inventoryService, "reservationTtl", Duration.ofMinutes(-1));
+        inventoryService.reserve("cart-a", 1L, 4);
+        ReflectionTestUtils.setField(inventoryService, "reservationTtl", Duration.ofMinutes(15));
+        inventoryService.reserve("cart-b", 2L, 2);
+
+        inventoryService.releaseExpiredHolds();
+
+        assertEquals(10, inventoryService.getAvailable(1L));
+        assertEquals(1, inventoryService.getAvailable(2L));
+        assertEquals(2, inventoryService.getHeldQuantity("cart-b", 2L));
+    }
+
+    @Test
+    void testReleaseExpiredHolds_IgnoresHoldRenewedAfterExpiry() {
+        ReflectionTestUtils.setField(inventoryService, "reservationTtl", Duration.ofMinutes(-1));
+        inventoryService.reserve("cart-a", 1L, 4);
+        ReflectionTestUtils.setField(inventoryService, "reservationTtl", Duration.ofMinutes(15));
+        inventoryService.reserve("cart-a", 1L, 5);
+
+        inventoryService.releaseExpiredHolds();
+
+        assertEquals(5, inventoryService.getHeldQuantity("cart-a", 1L));
+        assertEquals(5, inventoryService.getAvailable(1L));
+    }
+
+    @Test
+    void testReserve_RenewingHoldKeepsOneWheelEntry() {
+        for (int i = 1; i <= 100; i++) {
+            inventoryService.reserve("cart-a", 1L, 1 + i % 3);
+        }
+        inventoryService.reserve("cart-b", 1L, 2);
+
+        assertEquals(2, inventoryService.pendingExpiries());
+    }
+
+    @Test
+    void testReleaseExpiredHolds_ReschedulesRenewedHoldOnce() {
+        ReflectionTestUtils.setField(inventoryService, "reservationTtl", Duration.ofMinutes(-1));
+        inventoryService.reserve("cart-a", 1L, 4);
+        ReflectionTestUtils.setField(inventoryService, "reservationTtl", Duration.ofMinutes(15));
+        inventoryService.reserve("cart-a", 1L, 4);
+
+        inventoryService.releaseExpiredHolds();
+        inventoryService.releaseExpiredHolds();
+
+        assertEquals(4, inventoryService.getHeldQuantity("cart-a", 1L));
+        assertEquals(1, inventoryService.pendingExpiries());
+    }
+
+    @Test
+    void testHoldForCheckout_CannotTakeStockHeldByOtherCart() {
+        inventoryService.reserve("cart-a", 2L, 2);
+
+        List<InsufficientStockException.Shortage> shortages =
+                inventoryService.holdForCheckout("order:direct", Map.of(1L, 3, 2L, 2));
+
+        assertEquals(List.of(new InsufficientStockException.Shortage(2L, 2, 1)), shortages);
+        // Hold vừa nâng cho sách 1 được trả lại
+        assertEquals(0, inventoryService.getHeldQuantity("order:direct", 1L));
+        assertEquals(10, inventoryService.getAvailable(1L));
+        assertEquals(2, inventoryService.getHeldQuantity("cart-a", 2L));
+    }
+
+    @Test
+    void testHoldForCheckout_TopsUpCartHoldThenConfirmSells() {
+        inventoryService.reserve("cart-a", 1L, 1);
+
+        assertTrue(inventoryService.holdForCheckout("cart-a", Map.of(1L, 3)).isEmpty());
+        inventoryService.confirm("cart-a", Map.of(1L, 3));
+
+        assertEquals(7, inventoryService.getAvailable(1L));
+        assertEquals(0, inventoryService.getReserved(1L));
+    }
+
+    @Test
+    void testHoldForCheckout_RolledBack_RestoresPreviousHold() {
+        inventoryService.reserve("cart-a", 1L, 1);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            assertTrue(inventoryService.holdForCheckout("cart-a", Map.of(1L, 3)).isEmpty());
+            assertEquals(3, inventoryService.getHeldQuantity("cart-a", 1L));
+
+            completeTransaction(TransactionSynchronization.STATUS_ROLLED_BACK);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertEquals(1, inventoryService.getHeldQuantity("cart-a", 1L));
+        assertEquals(9, inventoryService.getAvailable(1L));
+    }
+
+    @Test
+    void testReconcile_KeepsReservedAndCorrectsAvailable() {
+        inventoryService.reserve("cart-a", 1L, 4);
+
+        List<Object[]> levels = new ArrayList<>();
+        levels.add(new Object[]{1L, 20});
+        levels.add(new Object[]{2L, 3});
+        when(bookRepository.findStockLevels()).thenReturn(levels);
+
+        inventoryService.reconcile();
+
+        assertEquals(16, inventoryService.getAvailable(1L));
+        assertEquals(4, inventoryService.getReserved(1L));
+    }
+
+    @Test
+    void testReconcile_SkipsBookChangedWhileReadingDatabase() {
+        List<Object[]> levels = new ArrayList<>();
+        levels.add(new Object[]{1L, 10});
+        levels.add(new Object[]{2L, 5});
+        // Hủy đơn commit ngay sau khi reconcile đọc tồn kho cũ (10) của sách 1
+        when(bookRepository.findStockLevels()).thenAnswer(invocation -> {
+            inventoryService.stockReturned(1L, 2);
+            return levels;
+        });
+
+        inventoryService.reconcile();
+
+        assertEquals(12, inventoryService.getAvailable(1L));
+        assertEquals(5, inventoryService.getAvailable(2L));
+    }
+
+    @Test
+    void testReconcile_SkipsBookWithUncommittedChange() {
+        List<Object[]> levels = new ArrayList<>();
+        levels.add(new Object[]{1L, 8});
+        when(bookRepository.findStockLevels()).thenReturn(levels);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            // Đơn đã trừ DB (8) nhưng chưa commit: reconcile không được áp giá trị này rồi bị trừ thêm lần nữa
+            inventoryService.confirm(null, Map.of(1L, 2));
+            inventoryService.reconcile();
+            assertEquals(10, inventoryService.getAvailable(1L));
+
+            completeTransaction(TransactionSynchronization.STATUS_COMMITTED);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertEquals(8, inventoryService.getAvailable(1L));
+        inventoryService.reconcile();
+        assertEquals(8, inventoryService.getAvailable(1L));
+    }
+
+    private static void completeTransaction(int status) {
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(synchronization -> synchronization.afterCompletion(status));
+    }
+
+    @Test
+    void testConfirm_InTransaction_AppliesOnlyAfterCommit() {
+        inventoryService.reserve("cart-a", 1L, 4);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            inventoryService.confirm("cart-a", Map.of(1L, 3));
+            // Chưa commit: sổ và hold chưa đổi
+            assertEquals(6, inventoryService.getAvailable(1L));
+            assertEquals(4, inventoryService.getHeldQuantity("cart-a", 1L));
+
+            completeTransaction(TransactionSynchronization.STATUS_COMMITTED);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertEquals(7, inventoryService.getAvailable(1L));
+        assertEquals(0, inventoryService.getReserved(1L));
+    }
+
+    @Test
+    void testConfirm_RolledBack_KeepsHolds() {
+        inventoryService.reserve("cart-a", 1L, 4);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            inventoryService.confirm("cart-a", Map.of(1L, 3));
+            completeTransaction(TransactionSynchronization.STATUS_ROLLED_BACK);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertEquals(6, inventoryService.getAvailable(1L));
+        assertEquals(4, inventoryService.getHeldQuantity("cart-a", 1L));
+    }
+
+    @Test
+    void testGetAvailable_UnknownBookLoadsFromDatabase() {
+        when(bookRepository.getStockQuantity(9L)).thenReturn(12);
+
+        assertEquals(12, inventoryService.getAvailable(9L));
+        assertEquals(12, inventoryService.getAvailable(9L));
+        verify(bookRepository, times(1)).getStockQuantity(9L);
+    }
+
+    @Test
+    void testReserve_ConcurrentHoldersNeverOversell() throws InterruptedException {
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger succeeded = new AtomicInteger();
+
+        for (int i = 0; i < threads; i++) {
+            String holder = "cart-" + i;
+            executor.submit(() -> {
+                start.await();
+                if (inventoryService.reserve(holder, 1L, 1)) {
+                    succeeded.incrementAndGet();
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(10, succeeded.get());
+        assertEquals(0, inventoryService.getAvailable(1L));
+        assertEquals(10, inventoryService.getReserved(1L));
+    }
+}
@@ -0,0 +1,130 @@
+package com.bookstore.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderNumberGeneratorTest {
+
+    private static final long NOW = OrderNumberGenerator.EPOCH + 1_000_000L;
+
+    @Test
+    void testNextId_EncodesTimeAndNode() {
+        OrderNumberGenerator generator = new OrderNumberGenerator(7, () -> NOW);
+
+        long id = generator.nextId();
+
+        assertEquals(NOW, OrderNumberGenerator.timestampOf(id));
+        assertEquals(7, OrderNumberGenerator.nodeOf(id));
+        assertTrue(generator.next().startsWith(OrderNumberGenerator.PREFIX));
+    }
+
+    @Test
+    void testNextId_SameMillisecondIncrementsSequence() {
+        OrderNumberGenerator generator = new OrderNumberGenerator(1, () -> NOW);
+
+        long first = generator.nextId();
+        long second = generator.nextId();
+
+        assertEquals(first + 1, second);
+        assertEquals(NOW, OrderNumberGenerator.timestampOf(second));
+    }
+
+    @Test
+    void testNextId_SequenceOverflowBorrowsNextMillisecond() {
+        OrderNumberGenerator generator = new OrderNumberGenerator(1, () -> NOW);
+
+        long last = 0;
+        for (int i = 0; i <= 1 << OrderNumberGenerator.SEQUENCE_BITS; i++) {
+            long id = generator.nextId();
+            assertTrue(id > last);
+            last = id;
+        }
+
+        assertEquals(NOW + 1, OrderNumberGenerator.timestampOf(last));
+        assertEquals(1, OrderNumberGenerator.nodeOf(last));
+    }
+
+    @Test
+    void testNextId_ClockMovingBackwardsStaysMonotonic() {
+        AtomicLong clock = new AtomicLong(NOW);
+        OrderNumberGenerator generator = new OrderNumberGenerator(1, clock::get);
+
+        long before = generator.nextId();
+        clock.set(NOW - 5_000);
+        long after = generator.nextId();
+
+        assertTrue(after > before);
+    }
+
+    @Test
+    void testNextId_DifferentNodesNeverCollide() {
+        OrderNumberGenerator node1 = new OrderNumberGenerator(1, () -> NOW);
+        OrderNumberGenerator node2 = new OrderNumberGenerator(2, () -> NOW);
+
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(ids.add(node1.nextId()));
+            assertTrue(ids.add(node2.nextId()));
+        }
+    }
+
+    @Test
+    void testNextId_ConcurrentCallersGetUniqueIds() throws Exception {
+        OrderNumberGenerator generator = new OrderNumberGenerator(3, System::currentTimeMillis);
+        int threads = 8;
+        int perThread = 250_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Callable<long[]>> tasks = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                tasks.add(() -> {
+                    long[] ids = new long[perThread];
+                    for (int i = 0; i < perThread; i++) {
+                        ids[i] = generator.nextId();
+                    }
+                    return ids;
+                });
+            }
+            List<Future<long[]>> results = executor.invokeAll(tasks);
+
+            Set<Long> unique = new HashSet<>(threads * perThread * 2);
+            for (Future<long[]> result : results) {
+                long previous = Long.MIN_VALUE;
+                for (long id : result.get()) {
+                    // Trong một luồng mã luôn tăng dần
+                    assertTrue(id > previous);
+                    previous = id;
+                    unique.add(id);
+                }
+            }
+            assertEquals(threads * perThread, unique.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testConstructor_RejectsNodeIdOutOfRange() {
+        assertThrows(IllegalArgumentException.class, () -> new OrderNumberGenerator(-1, () -> NOW));
+        assertThrows(IllegalArgumentException.class,
+                () -> new OrderNumberGenerator(OrderNumberGenerator.MAX_NODE_ID + 1, () -> NOW));
+    }
+
+    @Test
+    void testResolveNodeId_UnsetFailsUnlessSingleNode() {
+        assertThrows(IllegalStateException.class, () -> new OrderNumberGenerator(null, false));
+        assertEquals(0, OrderNumberGenerator.resolveNodeId(null, true));
+        assertEquals(5, OrderNumberGenerator.resolveNodeId(5, false));
+    }
+}
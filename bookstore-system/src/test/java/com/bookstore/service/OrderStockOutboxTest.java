@@ -0,0 +1,174 @@
+package com.bookstore.service;
+
+import com.bookstore.entity.Book;
+import com.bookstore.entity.CartItem;
+import com.bookstore.entity.Order;
+import com.bookstore.entity.User;
+import com.bookstore.exception.InsufficientStockException;
+import com.bookstore.repository.BookRepository;
+import com.bookstore.repository.OutboxRepository;
+import com.bookstore.repository.StockReservationRepository;
+import com.bookstore.repository.UserRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Import({OrderService.class, BookService.class, BookCache.class, StockReservationRepository.class,
+        OutboxService.class, OutboxRepository.class, OrderNumberGenerator.class})
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:orderstockoutbox;MODE=MSSQLServer;DB_CLOSE_DELAY=-1",
+        "spring.sql.init.mode=never",
+        "app.order-number.node-id=1"
+})
+class OrderStockOutboxTest {
+
+    @MockBean
+    private InventoryService inventoryService;
+
+    @MockBean
+    private RevenueService revenueService;
+
+    @MockBean
+    private PostCheckoutService postCheckoutService;
+
+    @MockBean
+    private RelatedBooksIndex relatedBooksIndex;
+
+    @MockBean
+    private BookSearchIndex bookSearchIndex;
+
+    @MockBean
+    private BookFacetIndex bookFacetIndex;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private OutboxRepository outboxRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private User user;
+    private Book first;
+    private Book second;
+
+    @BeforeEach
+    void setUp() {
+        user = userRepository.save(User.builder()
+                .email("outbox@example.com")
+                .password("secret")
+                .fullName("Outbox User")
+                .build());
+        first = bookRepository.save(book("9781000000301", 5));
+        second = bookRepository.save(book("9781000000302", 1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM outbox_events");
+        jdbcTemplate.update("DELETE FROM order_items");
+        jdbcTemplate.update("DELETE FROM orders");
+        bookRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void testCreateOrder_WritesStockDecreasedForEveryBook() throws Exception {
+        Order order = orderService.createOrder(user.getId(),
+                List.of(item(first, 2), item(second, 1), item(first, 1)), "Address", "COD", null);
+
+        Map<Long, Integer> decreased = new HashMap<>();
+        List<String> eventTypes = new ArrayList<>();
+        for (var message : outboxRepository.fetchBatch(100)) {
+            eventTypes.add(message.eventType());
+            if ("StockDecreased".equals(message.eventType())) {
+                JsonNode payload = objectMapper.readTree(message.payload());
+                assertEquals(OutboxService.BOOK, message.aggregateType());
+                decreased.put(payload.get("bookId").asLong(), payload.get("quantity").asInt());
+            }
+        }
+
+        assertNotNull(order.getId());
+        assertEquals(Map.of(first.getId(), 3, second.getId(), 1), decreased);
+        assertEquals(1, eventTypes.stream().filter("OrderPlaced"::equals).count());
+        assertEquals(2, bookRepository.findById(first.getId()).orElseThrow().getStockQuantity());
+        assertEquals(0, bookRepository.findById(second.getId()).orElseThrow().getStockQuantity());
+    }
+
+    @Test
+    void testCreateOrder_ShortageLeavesNoStockEvents() {
+        assertThrows(InsufficientStockException.class, () -> orderService.createOrder(user.getId(),
+                List.of(item(first, 1), item(second, 2)), "Address", "COD", null));
+
+        assertEquals(0, outboxRepository.count());
+        assertEquals(5, bookRepository.findById(first.getId()).orElseThrow().getStockQuantity());
+    }
+
+    @Test
+    void testCancelOrder_RestoresStockAndSoldQuantity() {
+        Order order = orderService.createOrder(user.getId(),
+                List.of(item(first, 2), item(second, 1)), "Address", "COD", null);
+
+        orderService.cancelOrder(order.getId(), "changed mind");
+
+        Book reloaded = bookRepository.findById(first.getId()).orElseThrow();
+        assertEquals(5, reloaded.getStockQuantity());
+        assertEquals(0, reloaded.getSoldQuantity());
+        assertEquals(1, bookRepository.findById(second.getId()).orElseThrow().getStockQuantity());
+    }
+
+    private CartItem item(Book book, int quantity) {
+        return CartItem.builder()
+                .book(book)
+                .quantity(quantity)
+                .unitPrice(book.getPrice())
+                .build();
+    }
+
+    private Book book(String isbn, int stock) {
+        return Book.builder()
+                .title("Book " + isbn)
+                .author("Author")
+                .isbn(isbn)
+                .price(new BigDecimal("50000"))
+                .stockQuantity(stock)
+                .build();
+    }
+}
@@ -0,0 +1,207 @@
+package com.bookstore.service;
+
+import com.bookstore.event.OutboxMessage;
+import com.bookstore.repository.OutboxRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Import({OutboxRepository.class, OutboxService.class, OutboxRelay.class,
+        InProcessOutboxSink.class, FileOutboxSink.class, WebhookOutboxSink.class})
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:outbox;MODE=MSSQLServer;DB_CLOSE_DELAY=-1",
+        "spring.sql.init.mode=never",
+        "app.outbox.batch-size=500",
+        "app.outbox.max-backoff=1s",
+        "app.outbox.file.enabled=true",
+        "app.outbox.webhook.enabled=true"
+})
+class OutboxRelayTest {
+
+    private static HttpServer webhookStub;
+    private static final List<String> webhookBodies = new CopyOnWriteArrayList<>();
+    private static final AtomicInteger webhookStatus = new AtomicInteger(200);
+    private static Path outboxFile;
+
+    @Autowired
+    private OutboxService outboxService;
+
+    @Autowired
+    private OutboxRelay outboxRelay;
+
+    @Autowired
+    private OutboxRepository outboxRepository;
+
+    @Autowired
+    private InProcessOutboxSink inProcessOutboxSink;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final List<OutboxMessage> received = new CopyOnWriteArrayList<>();
+    private final Consumer<List<OutboxMessage>> subscriber = received::addAll;
+
+    @BeforeAll
+    static void startWebhookStub() throws IOException {
+        outboxFile = Files.createTempDirectory("outbox").resolve("events.jsonl");
+        webhookStub = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        webhookStub.createContext("/events", exchange -> {
+            try (InputStream body = exchange.getRequestBody()) {
+                int status = webhookStatus.get();
+                if (status == 200) {
+                    webhookBodies.add(new String(body.readAllBytes(), StandardCharsets.UTF_8));
+                }
+                exchange.sendResponseHeaders(status, -1);
+            } finally {
+                exchange.close();
+            }
+        });
+        webhookStub.start();
+    }
+
+    @AfterAll
+    static void stopWebhookStub() {
+        webhookStub.stop(0);
+    }
+
+    @DynamicPropertySource
+    static void outboxProperties(DynamicPropertyRegistry registry) {
+        registry.add("app.outbox.webhook.url",
+                () -> "http://localhost:" + webhookStub.getAddress().getPort() + "/events");
+        registry.add("app.outbox.file.path", () -> outboxFile.toString());
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        inProcessOutboxSink.subscribe(subscriber);
+        webhookBodies.clear();
+        webhookStatus.set(200);
+        Files.deleteIfExists(outboxFile);
+    }
+
+    @AfterEach
+    void tearDown() {
+        inProcessOutboxSink.unsubscribe(subscriber);
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                outboxRepository.delete(outboxRepository.fetchBatch(10_000)));
+    }
+
+    @Test
+    void testDrain_DeliversCommittedEventsToEverySinkAndDeletesThem() throws IOException {
+        inTransaction(() -> {
+            outboxService.stockDecreased(1L, 2);
+            outboxService.stockDecreased(2L, 1);
+            outboxService.append(OutboxService.ORDER, 10L, "OrderStatusChanged", Map.of("status", "SHIPPED"));
+        });
+
+        assertEquals(3, outboxRelay.drain());
+
+        assertEquals(List.of("StockDecreased", "StockDecreased", "OrderStatusChanged"),
+                received.stream().map(OutboxMessage::eventType).toList());
+        assertEquals(1, webhookBodies.size());
+        JsonNode delivered = objectMapper.readTree(webhookBodies.get(0));
+        assertEquals(3, delivered.size());
+        assertEquals(1, delivered.get(0).get("payload").get("bookId").asLong());
+        assertEquals(2, delivered.get(0).get("payload").get("quantity").asInt());
+        assertEquals(3, Files.readAllLines(outboxFile).size());
+        assertEquals(0, outboxRepository.count());
+    }
+
+    @Test
+    void testDrain_RolledBackEventsAreNeverRelayed() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            outboxService.stockDecreased(1L, 2);
+            status.setRollbackOnly();
+        });
+
+        assertEquals(0, outboxRelay.drain());
+        assertTrue(received.isEmpty());
+    }
+
+    @Test
+    void testDrain_SinkFailureKeepsEventsAndBacksOff() {
+        inTransaction(() -> {
+            outboxService.stockDecreased(1L, 2);
+            outboxService.stockDecreased(2L, 1);
+        });
+        webhookStatus.set(500);
+
+        assertEquals(0, outboxRelay.drain());
+        assertEquals(2, outboxRepository.count());
+        assertTrue(outboxRelay.isPaused());
+
+        webhookStatus.set(200);
+        await().atMost(Duration.ofSeconds(5)).until(() -> outboxRelay.drain() == 2);
+        assertEquals(0, outboxRepository.count());
+        assertEquals(1, webhookBodies.size());
+    }
+
+    @Test
+    void testDrain_RelaysBacklogInBatches() {
+        int events = 5_000;
+        inTransaction(() -> {
+            for (int i = 0; i < events; i++) {
+                outboxService.stockDecreased((long) i, 1);
+            }
+        });
+
+        assertEquals(events, outboxRelay.drain());
+
+        assertEquals(events, received.size());
+        assertEquals(events / 500, webhookBodies.size());
+        assertEquals(0, outboxRepository.count());
+    }
+
+    @Test
+    void testAppend_RequiresSurroundingTransaction() {
+        assertThrows(IllegalTransactionStateException.class, () -> outboxService.stockDecreased(1L, 1));
+    }
+
+    private void inTransaction(Runnable work) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> work.run());
+    }
+}
@@ -0,0 +1,181 @@
+package com.bookstore.service;
+
+import com.bookstore.entity.CheckoutTask;
+import com.bookstore.entity.Order;
+import com.bookstore.entity.User;
+import com.bookstore.event.OrderPlacedEvent;
+import com.bookstore.repository.CheckoutTaskRepository;
+import com.bookstore.repository.OrderRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class PostCheckoutServiceTest {
+
+    @Mock
+    private CheckoutTaskRepository checkoutTaskRepository;
+
+    @Mock
+    private OrderRepository orderRepository;
+
+    @Mock
+    private RelatedBooksIndex relatedBooksIndex;
+
+    @Mock
+    private BookFacetIndex bookFacetIndex;
+
+    @Mock
+    private ObjectProvider<EmailService> emailServiceProvider;
+
+    @Mock
+    private EmailService emailService;
+
+    @InjectMocks
+    private PostCheckoutService postCheckoutService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(postCheckoutService, "threads", 2);
+        ReflectionTestUtils.setField(postCheckoutService, "queueCapacity", 10);
+        ReflectionTestUtils.setField(postCheckoutService, "maxAttempts", 3);
+        ReflectionTestUtils.setField(postCheckoutService, "retryBackoff", Duration.ofSeconds(30));
+        ReflectionTestUtils.setField(postCheckoutService, "lease", Duration.ofMinutes(5));
+        postCheckoutService.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        postCheckoutService.stop();
+    }
+
+    @Test
+    void testProcess_SendsConfirmationAndMarksDone() {
+        claim(task(1));
+        when(emailServiceProvider.getIfAvailable()).thenReturn(emailService);
+        when(orderRepository.findWithUserById(100L)).thenReturn(Optional.of(order()));
+
+        postCheckoutService.process(1L);
+
+        verify(emailService).sendEmail(eq("buyer@test.com"), eq("Xác nhận đơn hàng ORD-1"), anyString());
+        verify(checkoutTaskRepository).updateStatus(eq(1L), eq(CheckoutTask.TaskStatus.DONE), any(), isNull());
+    }
+
+    @Test
+    void testProcess_FailureSchedulesRetryWithBackoff() {
+        claim(task(2));
+        when(emailServiceProvider.getIfAvailable()).thenReturn(emailService);
+        when(orderRepository.findWithUserById(100L)).thenReturn(Optional.of(order()));
+        doThrow(new RuntimeException("SMTP unavailable")).when(emailService).sendEmail(anyString(), anyString(), anyString());
+
+        LocalDateTime before = LocalDateTime.now();
+        postCheckoutService.process(1L);
+
+        // Lần thử thứ 2 thất bại -> chờ 30s * 2
+        ArgumentCaptor<LocalDateTime> nextAttempt = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(checkoutTaskRepository).updateStatus(eq(1L), eq(CheckoutTask.TaskStatus.PENDING),
+                nextAttempt.capture(), eq("SMTP unavailable"));
+        assertFalse(nextAttempt.getValue().isBefore(before.plusSeconds(60)));
+    }
+
+    @Test
+    void testProcess_GivesUpAfterMaxAttempts() {
+        claim(task(3));
+        when(emailServiceProvider.getIfAvailable()).thenReturn(emailService);
+        when(orderRepository.findWithUserById(100L)).thenReturn(Optional.of(order()));
+        doThrow(new RuntimeException("SMTP unavailable")).when(emailService).sendEmail(anyString(), anyString(), anyString());
+
+        postCheckoutService.process(1L);
+
+        verify(checkoutTaskRepository).updateStatus(eq(1L), eq(CheckoutTask.TaskStatus.FAILED), any(), eq("SMTP unavailable"));
+    }
+
+    @Test
+    void testProcess_SkipsTaskClaimedByAnotherWorker() {
+        when(checkoutTaskRepository.claim(eq(1L), any(), any())).thenReturn(0);
+
+        postCheckoutService.process(1L);
+
+        verify(checkoutTaskRepository, never()).findById(any());
+        verify(emailService, never()).sendEmail(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    void testOnOrderPlaced_RunsSideEffectsOffTheCallerThread() {
+        OrderPlacedEvent event = new OrderPlacedEvent(100L, 7L, Map.of(1L, 2));
+        AtomicReference<String> worker = new AtomicReference<>();
+        doAnswer(invocation -> {
+            worker.set(Thread.currentThread().getName());
+            return null;
+        }).when(relatedBooksIndex).onOrderPlaced(event);
+        when(checkoutTaskRepository.findPendingIdsByOrderId(100L)).thenReturn(List.of());
+
+        postCheckoutService.onOrderPlaced(event);
+
+        verify(bookFacetIndex, timeout(1000)).onOrderPlaced(event);
+        verify(checkoutTaskRepository, timeout(1000)).findPendingIdsByOrderId(100L);
+        assertTrue(worker.get().startsWith("checkout-worker-"));
+    }
+
+    @Test
+    void testEnqueue_SkipsWhenMailIsNotConfigured() {
+        when(emailServiceProvider.getIfAvailable()).thenReturn(null);
+
+        postCheckoutService.enqueue(order());
+
+        verify(checkoutTaskRepository, never()).save(any());
+    }
+
+    private void claim(CheckoutTask task) {
+        when(checkoutTaskRepository.claim(eq(task.getId()), any(), any())).thenReturn(1);
+        when(checkoutTaskRepository.findById(task.getId())).thenReturn(Optional.of(task));
+    }
+
+    private CheckoutTask task(int attempts) {
+        return CheckoutTask.builder()
+                .id(1L)
+                .orderId(100L)
+                .type(CheckoutTask.TaskType.ORDER_CONFIRMATION_EMAIL)
+                .status(CheckoutTask.TaskStatus.PROCESSING)
+                .attempts(attempts)
+                .nextAttemptAt(LocalDateTime.now().plusMinutes(5))
+                .build();
+    }
+
+    private Order order() {
+        return Order.builder()
+                .id(100L)
+                .orderNumber("ORD-1")
+                .user(User.builder().email("buyer@test.com").fullName("Buyer").build())
+                .totalAmount(new BigDecimal("150000"))
+                .shippingAddress("1 Lê Lợi, Q1")
+                .build();
+    }
+}
@@ -0,0 +1,125 @@
+package com.bookstore.service;
+
+import com.bookstore.entity.Order;
+import com.bookstore.event.BookChangedEvent;
+import com.bookstore.repository.BookRepository;
+import com.bookstore.repository.OrderItemRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class RelatedBooksIndexTest {
+
+    @Mock
+    private BookRepository bookRepository;
+
+    @Mock
+    private OrderItemRepository orderItemRepository;
+
+    @InjectMocks
+    private RelatedBooksIndex relatedBooksIndex;
+
+    private final List<Object[]> facts = new ArrayList<>();
+    private final List<Object[]> categoryPairs = new ArrayList<>();
+    private final List<Object[]> coPurchasedPairs = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        // Sách 1 và 2 từng được mua chung; sách 3 cùng tác giả với sách 1 (khác hoa/thường);
+        // sách 4 cùng danh mục; sách 6 cùng tác giả và danh mục nhưng ngừng bán
+        addBook(1L, "Robert Martin", 5, true, 10L);
+        addBook(2L, "Kent Beck", 1, true, 20L);
+        addBook(3L, "robert martin ", 50, true, 20L);
+        addBook(4L, "Martin Fowler", 100, true, 10L);
+        addBook(5L, "Tô Hoài", 500, true, 30L);
+        addBook(6L, "Robert Martin", 900, false, 10L);
+        coPurchasedPairs.add(new Object[]{1L, 2L, 1L});
+        coPurchasedPairs.add(new Object[]{2L, 1L, 1L});
+    }
+
+    @Test
+    void testRebuild_RanksCoPurchaseThenAuthorThenCategory() {
+        rebuild();
+
+        // Điểm quyết định thứ tự, không phải số lượng đã bán
+        assertEquals(List.of(2L, 3L, 4L), relatedBooksIndex.getRelatedBookIds(1L));
+        assertTrue(relatedBooksIndex.isReady());
+    }
+
+    @Test
+    void testRebuild_DropsUnavailableBooks() {
+        rebuild();
+
+        assertFalse(relatedBooksIndex.getRelatedBookIds(1L).contains(6L));
+        assertFalse(relatedBooksIndex.getRelatedBookIds(4L).contains(6L));
+        assertEquals(List.of(1L, 2L), relatedBooksIndex.getRelatedBookIds(3L));
+    }
+
+    @Test
+    void testRebuild_OnlyTopSellersOfEachCategoryAreCandidates() {
+        facts.clear();
+        categoryPairs.clear();
+        coPurchasedPairs.clear();
+        addBook(1L, null, 0, true, 10L, 40L);
+        for (long id = 100; id < 160; id++) {
+            addBook(id, null, (int) (1000 + id), true, 10L);
+        }
+        // Cùng hai danh mục với sách 1 nhưng xếp thứ 62 theo lượng bán ở danh mục 10: chỉ được điểm danh mục 40
+        addBook(200L, null, 0, true, 10L, 40L);
+
+        rebuild();
+
+        assertEquals(List.of(159L, 158L, 157L, 156L), relatedBooksIndex.getRelatedBookIds(1L));
+    }
+
+    @Test
+    void testRecordOrder_UpdatesCoPurchaseCounts() {
+        rebuild();
+
+        relatedBooksIndex.recordOrder(Map.of(1L, 1, 5L, 1));
+
+        // Sách 5 giờ ngang điểm sách 2 nhưng bán chạy hơn
+        assertEquals(List.of(5L, 2L, 3L, 4L), relatedBooksIndex.getRelatedBookIds(1L));
+        assertEquals(List.of(1L), relatedBooksIndex.getRelatedBookIds(5L));
+
+        relatedBooksIndex.recordOrder(Map.of(1L, 1, 2L, 1));
+
+        assertEquals(List.of(2L, 5L, 3L, 4L), relatedBooksIndex.getRelatedBookIds(1L));
+    }
+
+    @Test
+    void testOnBookChanged_DeletedBookIsRemovedFromBooksReferencingIt() {
+        rebuild();
+
+        relatedBooksIndex.onBookChanged(new BookChangedEvent(2L, BookChangedEvent.ChangeType.DELETED));
+
+        assertEquals(List.of(3L, 4L), relatedBooksIndex.getRelatedBookIds(1L));
+        assertTrue(relatedBooksIndex.getRelatedBookIds(2L).isEmpty());
+        assertFalse(relatedBooksIndex.getRelatedBookIds(3L).contains(2L));
+    }
+
+    private void rebuild() {
+        when(bookRepository.findRelatedBookFacts()).thenReturn(facts);
+        when(bookRepository.findBookCategoryPairs()).thenReturn(categoryPairs);
+        when(orderItemRepository.countCoPurchasedPairs(Order.OrderStatus.CANCELLED)).thenReturn(coPurchasedPairs);
+        relatedBooksIndex.rebuild();
+    }
+
+    private void addBook(Long id, String author, int sold, boolean available, Long... categoryIds) {
+        facts.add(new Object[]{id, author, sold, available});
+        for (Long categoryId : categoryIds) {
+            categoryPairs.add(new Object[]{id, categoryId});
+        }
+    }
+}
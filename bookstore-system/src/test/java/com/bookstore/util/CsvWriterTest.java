@@ -0,0 +1,32 @@
+package com.bookstore.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvWriterTest {
+
+    @Test
+    void testRow_QuotesOnlyWhenNeeded() throws IOException {
+        StringWriter out = new StringWriter();
+        CsvWriter csv = new CsvWriter(out);
+
+        csv.row("plain", "with,comma", "say \"hi\"", null, 42);
+
+        assertEquals("plain,\"with,comma\",\"say \"\"hi\"\"\",,42\r\n", out.toString());
+    }
+
+    @Test
+    void testRow_KeepsMultilineValueInOneField() throws IOException {
+        StringWriter out = new StringWriter();
+        CsvWriter csv = new CsvWriter(out);
+
+        csv.row("Số 1\nHà Nội", "x");
+        csv.row("y");
+
+        assertEquals("\"Số 1\nHà Nội\",x\r\ny\r\n", out.toString());
+    }
+}
@@ -0,0 +1,66 @@
+package com.bookstore.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingWheelTest {
+
+    private static final long TICK = 1_000L;
+
+    @Test
+    void testAdvance_ReturnsOnlyDueEntries() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, 8, 0);
+        wheel.schedule("a", 2 * TICK);
+        wheel.schedule("b", 5 * TICK);
+
+        assertEquals(List.of(), wheel.advance(TICK));
+        assertEquals(List.of("a"), wheel.advance(3 * TICK));
+        assertEquals(List.of("b"), wheel.advance(5 * TICK));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void testAdvance_NeverExpiresBeforeDeadline() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, 8, 0);
+        wheel.schedule("a", 2 * TICK + 1);
+
+        assertEquals(List.of(), wheel.advance(2 * TICK));
+        assertEquals(List.of("a"), wheel.advance(3 * TICK));
+    }
+
+    @Test
+    void testAdvance_HandlesDeadlinesBeyondOneRotation() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, 4, 0);
+        wheel.schedule("near", 2 * TICK);
+        wheel.schedule("far", 10 * TICK);
+
+        assertEquals(List.of("near"), wheel.advance(2 * TICK));
+        assertEquals(List.of(), wheel.advance(6 * TICK));
+        assertEquals(List.of("far"), wheel.advance(10 * TICK));
+    }
+
+    @Test
+    void testAdvance_CatchesUpAfterLongPause() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, 4, 0);
+        wheel.schedule("a", TICK);
+        wheel.schedule("b", 3 * TICK);
+        wheel.schedule("c", 20 * TICK);
+
+        List<String> expired = wheel.advance(100 * TICK);
+
+        assertEquals(3, expired.size());
+        assertTrue(expired.containsAll(List.of("a", "b", "c")));
+    }
+
+    @Test
+    void testSchedule_PastDeadlineExpiresOnNextAdvance() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, 8, 0);
+        wheel.advance(5 * TICK);
+        wheel.schedule("late", 2 * TICK);
+
+        assertEquals(List.of("late"), wheel.advance(5 * TICK));
+    }
+}